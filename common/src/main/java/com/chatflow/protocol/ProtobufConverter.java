@@ -1,6 +1,7 @@
 package com.chatflow.protocol;
 
 import com.chatflow.protocol.proto.MessageType;
+import com.chatflow.util.IsoTimestamps;
 
 public final class ProtobufConverter {
     private ProtobufConverter() {
@@ -26,6 +27,10 @@ public final class ProtobufConverter {
         }
         if (pojo.getTimestamp() != null) {
             builder.setTimestamp(pojo.getTimestamp());
+            long eventTsMs = IsoTimestamps.parseEpochMillis(pojo.getTimestamp());
+            if (eventTsMs != IsoTimestamps.INVALID) {
+                builder.setEventTsMs(eventTsMs);
+            }
         }
         if (pojo.getMessageType() != null) {
             builder.setMessageType(toProtoMessageType(pojo.getMessageType()));
@@ -0,0 +1,166 @@
+package com.chatflow.util;
+
+/**
+ * Allocation-free ISO-8601 to epoch-millis parser for the timestamp shapes the
+ * clients and servers actually emit ({@code Instant.toString()} and
+ * {@code OffsetDateTime.toString()}):
+ *
+ * <pre>
+ *   2024-01-15T10:20:30Z
+ *   2024-01-15T10:20:30.123Z
+ *   2024-01-15T10:20:30.123456789Z
+ *   2025-01-01T00:00:00+00:00
+ *   2025-01-01T00:00+05:30          (seconds omitted when zero)
+ * </pre>
+ *
+ * Anything else returns {@link #INVALID}; callers decide on a fallback.
+ */
+public final class IsoTimestamps {
+
+    /** Returned when the input is not a supported ISO-8601 instant. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private IsoTimestamps() {
+    }
+
+    public static long parseEpochMillis(CharSequence s) {
+        if (s == null) {
+            return INVALID;
+        }
+        int len = s.length();
+        // Shortest accepted form: "YYYY-MM-DDTHH:MMZ"
+        if (len < 17
+                || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(13) != ':') {
+            return INVALID;
+        }
+        char t = s.charAt(10);
+        if (t != 'T' && t != 't' && t != ' ') {
+            return INVALID;
+        }
+
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        boolean hasSeconds = s.charAt(16) == ':';
+        int second = hasSeconds ? digits(s, 17, 2) : 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int i = hasSeconds ? 19 : 16;
+        if (i >= len) {
+            return INVALID;
+        }
+        int millis = 0;
+        char c = s.charAt(i);
+        if (hasSeconds && (c == '.' || c == ',')) {
+            i++;
+            int fracDigits = 0;
+            while (i < len && isDigit(s.charAt(i))) {
+                if (fracDigits < 3) {
+                    millis = millis * 10 + (s.charAt(i) - '0');
+                }
+                fracDigits++;
+                i++;
+            }
+            if (fracDigits == 0 || fracDigits > 9) {
+                return INVALID;
+            }
+            for (int k = fracDigits; k < 3; k++) {
+                millis *= 10;
+            }
+        }
+
+        if (i >= len) {
+            return INVALID;
+        }
+        int offsetSeconds;
+        c = s.charAt(i);
+        if (c == 'Z' || c == 'z') {
+            offsetSeconds = 0;
+            i++;
+        } else if (c == '+' || c == '-') {
+            int sign = c == '-' ? -1 : 1;
+            int oh = digits(s, i + 1, 2);
+            int om;
+            if (i + 6 == len && s.charAt(i + 3) == ':') {
+                om = digits(s, i + 4, 2);
+                i += 6;
+            } else if (i + 5 == len) {
+                om = digits(s, i + 3, 2);
+                i += 5;
+            } else if (i + 3 == len) {
+                om = 0;
+                i += 3;
+            } else {
+                return INVALID;
+            }
+            if (oh < 0 || oh > 18 || om < 0 || om > 59) {
+                return INVALID;
+            }
+            offsetSeconds = sign * (oh * 3600 + om * 60);
+        } else {
+            return INVALID;
+        }
+        if (i != len) {
+            return INVALID;
+        }
+
+        long epochDay = daysFromCivil(year, month, day);
+        long secondsOfDay = hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochDay * MILLIS_PER_DAY + secondsOfDay * 1000L + millis;
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date
+     * (H. Hinnant's {@code days_from_civil}).
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int mp = (month + 9) % 12;
+        int doy = (153 * mp + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146_097L + doe - 719_468L;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        if (from + count > s.length()) {
+            return -1;
+        }
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
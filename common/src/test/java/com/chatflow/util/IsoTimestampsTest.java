@@ -0,0 +1,55 @@
+package com.chatflow.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IsoTimestampsTest {
+
+    @Test
+    void parseEpochMillis_instantToString_matchesJavaTime() {
+        long[] samples = {0L, 1_700_000_000_000L, 1_700_000_000_123L, 951_782_400_000L, 4_102_444_799_999L};
+        for (long ms : samples) {
+            String s = Instant.ofEpochMilli(ms).toString();
+            assertEquals(ms, IsoTimestamps.parseEpochMillis(s), s);
+        }
+    }
+
+    @Test
+    void parseEpochMillis_offsetDateTime_normalisedToUtc() {
+        long ms = 1_700_000_000_000L;
+        String s = OffsetDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneOffset.ofHoursMinutes(-7, -30)).toString();
+        assertEquals(ms, IsoTimestamps.parseEpochMillis(s));
+        assertEquals(1_735_689_600_000L, IsoTimestamps.parseEpochMillis("2025-01-01T00:00:00+00:00"));
+    }
+
+    @Test
+    void parseEpochMillis_secondsOmitted_accepted() {
+        assertEquals(1_735_689_600_000L, IsoTimestamps.parseEpochMillis("2025-01-01T05:30+05:30"));
+    }
+
+    @Test
+    void parseEpochMillis_nanosecondFraction_truncatedToMillis() {
+        assertEquals(1_705_314_030_123L, IsoTimestamps.parseEpochMillis("2024-01-15T10:20:30.123456789Z"));
+    }
+
+    @Test
+    void parseEpochMillis_leapDay_validatedByYear() {
+        assertNotEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("2024-02-29T00:00:00Z"));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("2023-02-29T00:00:00Z"));
+    }
+
+    @Test
+    void parseEpochMillis_invalidInput_returnsInvalid() {
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis(null));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis(""));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("1700000000000"));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("2024-01-15T10:20:30"));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("2024-13-15T10:20:30Z"));
+        assertEquals(IsoTimestamps.INVALID, IsoTimestamps.parseEpochMillis("2024-01-15T10:20:30Zjunk"));
+    }
+}
@@ -1,20 +1,33 @@
 package com.chatflow.consumerv3;
 
 import com.chatflow.protocol.proto.QueueChatMessage;
+import com.chatflow.util.IsoTimestamps;
 import com.google.protobuf.InvalidProtocolBufferException;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
 
 /**
  * Maps between wire-format bytes (Protobuf {@link QueueChatMessage}) and
  * the DynamoDB-oriented {@link CanonicalMessageRecord}.
  *
- * <p>Thread-safe: stateless, can be shared across virtual threads.
+ * <p>Thread-safe: the only shared state is the day-bucket memo, whose slots
+ * hold immutable entries; it can be shared across virtual threads.
  */
 public class CanonicalMessageMapper {
 
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    /** One memoized epoch-day → "YYYY-MM-DD" mapping. */
+    private record DayBucket(long epochDay, String bucket) {}
+
+    /**
+     * Direct-mapped memo indexed by {@code epochDay & (size-1)}.  Nearly every
+     * record in a batch falls on today (or yesterday around midnight), so a
+     * handful of slots removes the per-record {@link LocalDate} allocation.
+     * Slots are replaced wholesale with immutable records, so racy reads are safe.
+     */
+    private static final DayBucket[] DAY_BUCKETS = new DayBucket[8];
+
     /**
      * Decode a {@link QueueEnvelope}'s raw Protobuf bytes into a
      * {@link CanonicalMessageRecord} ready for DynamoDB persistence.
@@ -49,7 +62,9 @@ public class CanonicalMessageMapper {
             throw new IllegalArgumentException("roomId is blank for messageId=" + messageId);
         }
 
-        long eventTs   = parseTimestamp(proto.getTimestamp());
+        long eventTs   = proto.getEventTsMs() > 0
+            ? proto.getEventTsMs()                  // pre-parsed by the publisher
+            : parseTimestamp(proto.getTimestamp());
         String dayBucket = toDayBucket(eventTs);
         long ingestedAt  = System.currentTimeMillis();
 
@@ -73,30 +88,53 @@ public class CanonicalMessageMapper {
     // ── Helpers ───────────────────────────────────────────────────────────────
 
     /**
-     * Parse the proto {@code timestamp} string (epoch-ms as String) into a
-     * {@code long}. Falls back to current system time on parse failure so that
-     * mapping never throws for this field — a warning is the appropriate action
-     * and the caller can log it separately if needed.
+     * Parse the proto {@code timestamp} string into epoch-ms.  Accepts both
+     * numeric epoch-ms strings and ISO-8601 instants (what clients and
+     * server-v2 send, e.g. {@code Instant.toString()}).  Falls back to current
+     * system time on parse failure so that mapping never throws for this
+     * field — a warning is the appropriate action and the caller can log it
+     * separately if needed.
      */
     static long parseTimestamp(String ts) {
         if (ts == null || ts.isBlank()) {
             return System.currentTimeMillis();
         }
-        try {
-            return Long.parseLong(ts.trim());
-        } catch (NumberFormatException e) {
-            // Non-numeric format: return current time as safe fallback
-            return System.currentTimeMillis();
+        String v = ts.trim();
+        if (isAllDigits(v)) {
+            try {
+                return Long.parseLong(v);
+            } catch (NumberFormatException e) {
+                return System.currentTimeMillis();   // overflow
+            }
         }
+        long parsed = IsoTimestamps.parseEpochMillis(v);
+        // Unrecognised format: return current time as safe fallback
+        return parsed != IsoTimestamps.INVALID ? parsed : System.currentTimeMillis();
     }
 
     /**
      * Compute UTC day bucket string "YYYY-MM-DD" from epoch-ms.
      * Used for time-range queries and future TTL-based table cleanup.
+     * Memoized per epoch-day — see {@link #DAY_BUCKETS}.
      */
     static String toDayBucket(long epochMs) {
-        return LocalDate.ofInstant(Instant.ofEpochMilli(epochMs), ZoneOffset.UTC)
-                        .toString();   // ISO-8601: "2024-01-15"
+        long epochDay = Math.floorDiv(epochMs, MILLIS_PER_DAY);
+        int  slot     = (int) (epochDay & (DAY_BUCKETS.length - 1));
+        DayBucket cached = DAY_BUCKETS[slot];
+        if (cached != null && cached.epochDay() == epochDay) {
+            return cached.bucket();
+        }
+        String bucket = LocalDate.ofEpochDay(epochDay).toString();   // ISO-8601: "2024-01-15"
+        DAY_BUCKETS[slot] = new DayBucket(epochDay, bucket);
+        return bucket;
+    }
+
+    private static boolean isAllDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return !s.isEmpty();
     }
 
     private static String nullToEmpty(String s) {
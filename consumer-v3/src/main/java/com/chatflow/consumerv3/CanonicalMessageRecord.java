@@ -27,7 +27,7 @@ public class CanonicalMessageRecord {
     private long   roomSequence;
 
     // ── Timestamps ────────────────────────────────────────────────────────────
-    /** Client-originated epoch-ms (parsed from proto {@code timestamp} string). */
+    /** Client-originated epoch-ms (proto {@code event_ts_ms}, else parsed from {@code timestamp}). */
     private long   eventTs;
     /**
      * Wall-clock epoch-ms when consumer-v3 confirmed the DynamoDB write.
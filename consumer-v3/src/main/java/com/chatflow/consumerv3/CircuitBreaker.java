@@ -20,6 +20,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * the accumulator.  If open, the drain is skipped — messages remain in the
  * {@link BatchAccumulator} (still unacked in RabbitMQ), applying natural
  * back-pressure via the prefetch limit.  No explicit nacks are issued.
+ * With the spill log enabled, the drained batch is instead appended to the
+ * local {@link SpillLog} and acked; {@link SpillReplayer} drains it once the
+ * breaker is CLOSED again.
  *
  * <h3>Half-open</h3>
  * Not implemented — the breaker resets directly from OPEN to CLOSED after
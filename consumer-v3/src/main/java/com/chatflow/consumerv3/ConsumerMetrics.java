@@ -40,6 +40,13 @@ public class ConsumerMetrics {
     /** Number of times a flush was skipped because the circuit breaker was open. */
     private final LongAdder cbSkips            = new LongAdder();
 
+    // ── Spill log ─────────────────────────────────────────────────────────────
+    /** Deliveries appended to the local spill log (and acked) while the breaker was open. */
+    private final LongAdder spilled            = new LongAdder();
+    /** Spilled deliveries replayed into DynamoDB (or DLQ'd) after the breaker closed. */
+    private final LongAdder spillReplayed      = new LongAdder();
+    private final LongAdder spillFailures      = new LongAdder();
+
     // ── ACK / NACK ────────────────────────────────────────────────────────────
     private final LongAdder acksSucceeded      = new LongAdder();
     private final LongAdder nacksSent          = new LongAdder();
@@ -59,6 +66,9 @@ public class ConsumerMetrics {
     public void incDlqPublished()            { dlqPublished.increment(); }
     public void incDlqPublishFailures()      { dlqPublishFailures.increment(); }
     public void incCircuitBreakerSkips()     { cbSkips.increment(); }
+    public void incSpilled(int n)            { spilled.add(n); }
+    public void incSpillReplayed(int n)      { spillReplayed.add(n); }
+    public void incSpillFailures()           { spillFailures.increment(); }
     public void incAcksSucceeded()           { acksSucceeded.increment(); }
     public void incNacksSent()               { nacksSent.increment(); }
 
@@ -76,6 +86,8 @@ public class ConsumerMetrics {
     public long getDlqPublished()       { return dlqPublished.sum(); }
     public long getDlqPublishFailures() { return dlqPublishFailures.sum(); }
     public long getCircuitBreakerSkips(){ return cbSkips.sum(); }
+    public long getSpilled()            { return spilled.sum(); }
+    public long getSpillReplayed()      { return spillReplayed.sum(); }
 
     // ── Derived (not failed messages) ─────────────────────────────────────────
     /** Included for backward compatibility with any external consumers of this class. */
@@ -93,12 +105,14 @@ public class ConsumerMetrics {
                + "batches={} avgBatch={:.1f} | "
                + "written={} dup={} transient={} terminal={} retries={} | "
                + "dlq={} dlqFail={} cbSkip={} | "
+               + "spilled={} replayed={} spillFail={} | "
                + "acks={} nacks={}",
             messagesReceived.sum(), messagesParsed.sum(), parseFailures.sum(),
             batches, avgBatch,
             recordsWritten.sum(), duplicateMessages.sum(),
             transientFailures.sum(), terminalFailures.sum(), retries.sum(),
             dlqPublished.sum(), dlqPublishFailures.sum(), cbSkips.sum(),
+            spilled.sum(), spillReplayed.sum(), spillFailures.sum(),
             acksSucceeded.sum(), nacksSent.sum());
     }
 }
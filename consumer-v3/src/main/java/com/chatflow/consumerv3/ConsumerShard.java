@@ -0,0 +1,61 @@
+package com.chatflow.consumerv3;
+
+import com.rabbitmq.client.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One RabbitMQ consumption shard: a dedicated {@link Channel} (with its own
+ * {@code basicQos} prefetch window) plus the {@link BatchAccumulator} that
+ * buffers the deliveries arriving on it.
+ *
+ * <p>Rooms are partitioned across shards by {@link #partitionRooms}, so each
+ * channel gets its own dispatch thread and its own ack lock inside
+ * {@code ChannelN}.  Delivery tags are channel-scoped — every envelope drained
+ * from {@link #getAccumulator()} MUST be acked/nacked on {@link #getChannel()}.
+ */
+public class ConsumerShard {
+
+    private final int              id;
+    private final Channel          channel;
+    private final BatchAccumulator accumulator;
+    private final List<String>     queues;
+
+    public ConsumerShard(int id, Channel channel, BatchAccumulator accumulator, List<String> queues) {
+        this.id          = id;
+        this.channel     = channel;
+        this.accumulator = accumulator;
+        this.queues      = List.copyOf(queues);
+    }
+
+    public int              getId()          { return id; }
+    public Channel          getChannel()     { return channel; }
+    public BatchAccumulator getAccumulator() { return accumulator; }
+    public List<String>     getQueues()      { return queues; }
+
+    /**
+     * Round-robin the inclusive room range {@code [roomStart, roomEnd]} across
+     * {@code shardCount} shards.  Shard count is clamped to {@code [1, rooms]}
+     * so no shard is ever empty.
+     */
+    static List<List<Integer>> partitionRooms(int roomStart, int roomEnd, int shardCount) {
+        int rooms  = Math.max(0, roomEnd - roomStart + 1);
+        int shards = Math.max(1, Math.min(shardCount, Math.max(1, rooms)));
+
+        List<List<Integer>> partitions = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int roomId = roomStart; roomId <= roomEnd; roomId++) {
+            partitions.get((roomId - roomStart) % shards).add(roomId);
+        }
+        return partitions;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerShard{id=" + id + ", queues=" + queues.size()
+            + ", buffered=" + accumulator.size() + "}";
+    }
+}
@@ -11,6 +11,7 @@ import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,19 +26,20 @@ import java.util.concurrent.TimeUnit;
  *
  * <h3>Pipeline</h3>
  * <pre>
- *   RabbitMQ delivery callback  (RabbitMQ client thread)
- *     → QueueEnvelope → BatchAccumulator.add()
- *     → if batch full: submit drainAndFlush("batch-full") to vtExecutor
+ *   RabbitMQ delivery callback  (one dispatch thread per shard channel)
+ *     → QueueEnvelope → shard's BatchAccumulator.add()
+ *     → if batch full: submit drainAndFlush("batch-full", shard) to vtExecutor
  *
  *   ScheduledExecutorService  (v3-flush-scheduler thread)
- *     → every flushIntervalMs: if accumulator.isReady() submit drainAndFlush("timer")
+ *     → every flushIntervalMs: for each shard whose accumulator.isReady()
+ *       submit drainAndFlush("timer", shard)
  *
  *   vtExecutor  (virtual threads — blocks/parks on DynamoDB I/O and semaphore)
  *     → check CircuitBreaker — if OPEN: skip, messages stay unacked, return
  *     → accumulator.drain()
- *     → CanonicalMessageMapper.fromEnvelope() per envelope
+ *     → IndexedBatch: CanonicalMessageMapper.fromEnvelope() per position
  *     → PersistenceWriter.writeBatch()  (internal retry loop via RetryPolicy)
- *     → per-result ack/nack/dlq
+ *     → ack successes inline by position; failures → DlqStage (parallel)
  * </pre>
  *
  * <h3>ACK invariant</h3>
@@ -55,6 +57,21 @@ import java.util.concurrent.TimeUnit;
  * the breaker resets to CLOSED.  RabbitMQ's {@code prefetch} limit provides
  * natural back-pressure.
  *
+ * <h3>Spill log</h3>
+ * With {@code CHATFLOW_V3_SPILL_ENABLED=true}, a flush that finds the breaker
+ * OPEN appends the drained batch to a local {@link SpillLog} and acks it, so
+ * ingest continues at full speed through short persistence outages.  The
+ * {@link SpillReplayer} writes the log into DynamoDB once the breaker closes.
+ * Acks then mean "durable in the spill log" (per the configured fsync policy)
+ * rather than "durable in DynamoDB".
+ *
+ * <h3>Sharding</h3>
+ * Rooms are partitioned across {@code CHATFLOW_V3_RABBIT_CHANNELS} channels,
+ * spread over {@code CHATFLOW_V3_RABBIT_CONNECTIONS} connections.  Each
+ * {@link ConsumerShard} has its own prefetch window and accumulator, so
+ * delivery dispatch and ack lock contention scale with the shard count.
+ * A batch never mixes shards, which keeps delivery tags on their own channel.
+ *
  * <h3>Thread safety</h3>
  * The RabbitMQ Java client's {@link Channel} (ChannelN) synchronises all
  * operations internally, making {@code basicAck}/{@code basicNack} calls from
@@ -80,7 +97,6 @@ public class ConsumerV3App {
         // ── Build shared components ───────────────────────────────────────────
         ConsumerMetrics        metrics     = new ConsumerMetrics();
         CanonicalMessageMapper mapper      = new CanonicalMessageMapper();
-        BatchAccumulator       accumulator = new BatchAccumulator(config.batchSize, config.flushIntervalMs);
         RetryPolicy            retryPolicy = new RetryPolicy(config.retryBaseMs, config.retryMaxMs, config.maxRetries);
         CircuitBreaker         breaker     = new CircuitBreaker(config.cbEnabled, config.cbFailureThreshold, config.cbOpenDurationMs);
 
@@ -92,50 +108,76 @@ public class ConsumerV3App {
             .region(Region.of(config.dynamoRegion))
             .build();
 
-        DlqPublisher dlqPublisher = new DlqPublisher(sqsClient, config.sqsDlqUrl);
+        DlqPublisher dlqPublisher = new DlqPublisher(sqsClient, config.sqsDlqUrl, config.dlqConcurrency);
 
         PersistenceWriter writer = new PersistenceWriter(
             dynamoClient, config.dynamoTableCanonical,
             config.semaphorePermits, retryPolicy, metrics);
 
+        // Optional local spill log — absorbs batches while the breaker is OPEN
+        SpillLog spillLog = config.spillEnabled
+            ? new SpillLog(Path.of(config.spillDir), config.spillSegmentBytes,
+                           SpillLog.FsyncPolicy.parse(config.spillFsync))
+            : null;
+
         // Virtual-thread executor — one task = one virtual thread.
         // Parks (not blocks) during DynamoDB I/O and semaphore waits.
         ExecutorService vtExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-        // ── RabbitMQ topology + connection ────────────────────────────────────
+        // ── RabbitMQ connections + topology ───────────────────────────────────
         ConnectionFactory factory = buildConnectionFactory(config);
-        Connection connection = factory.newConnection("chatflow-consumer-v3");
-        Channel    channel    = connection.createChannel();
-        channel.basicQos(config.rabbitPrefetch);
-        declareTopology(channel, config);
+        List<Connection> connections = new ArrayList<>(config.rabbitConnections);
+        for (int i = 0; i < config.rabbitConnections; i++) {
+            connections.add(factory.newConnection("chatflow-consumer-v3-" + i));
+        }
 
-        List<String> queues = new ArrayList<>();
-        for (int roomId = config.roomStart; roomId <= config.roomEnd; roomId++) {
-            queues.add(config.queueNameForRoom(roomId));
+        try (Channel topologyChannel = connections.get(0).createChannel()) {
+            declareTopology(topologyChannel, config);
         }
-        log.info("Subscribing to {} room queues (room {}-{})",
-            queues.size(), config.roomStart, config.roomEnd);
-
-        // ── basicConsume for every assigned queue ─────────────────────────────
-        for (String queueName : queues) {
-            channel.basicConsume(
-                queueName, /*autoAck=*/ false,
-                (consumerTag, delivery) -> {
-                    metrics.incMessagesReceived();
-                    QueueEnvelope env = new QueueEnvelope(
-                        delivery.getBody(), delivery.getEnvelope(),
-                        delivery.getProperties(), queueName);
-
-                    boolean full = accumulator.add(env);
-                    if (full) {
-                        vtExecutor.submit(() ->
-                            drainAndFlush("batch-full", channel, accumulator,
-                                mapper, writer, dlqPublisher, breaker, metrics));
-                    }
-                },
-                cancelTag -> log.warn("Consumer cancelled for queue={}", queueName)
-            );
+
+        // ── One shard (channel + accumulator) per room partition ──────────────
+        List<List<Integer>> partitions =
+            ConsumerShard.partitionRooms(config.roomStart, config.roomEnd, config.rabbitChannels);
+        List<ConsumerShard> shards = new ArrayList<>(partitions.size());
+
+        for (int shardId = 0; shardId < partitions.size(); shardId++) {
+            Connection connection = connections.get(shardId % connections.size());
+            Channel    channel    = connection.createChannel();
+            channel.basicQos(config.rabbitPrefetch);
+
+            List<String> queues = new ArrayList<>();
+            for (int roomId : partitions.get(shardId)) {
+                queues.add(config.queueNameForRoom(roomId));
+            }
+            ConsumerShard shard = new ConsumerShard(shardId, channel,
+                new BatchAccumulator(config.batchSize, config.flushIntervalMs), queues);
+            shards.add(shard);
+
+            // ── basicConsume for every queue in this shard ────────────────────
+            for (String queueName : queues) {
+                channel.basicConsume(
+                    queueName, /*autoAck=*/ false,
+                    (consumerTag, delivery) -> {
+                        metrics.incMessagesReceived();
+                        QueueEnvelope env = new QueueEnvelope(
+                            delivery.getBody(), delivery.getEnvelope(),
+                            delivery.getProperties(), queueName);
+
+                        boolean full = shard.getAccumulator().add(env);
+                        if (full) {
+                            vtExecutor.submit(() ->
+                                drainAndFlush("batch-full", shard,
+                                    mapper, writer, dlqPublisher, breaker, metrics, spillLog));
+                        }
+                    },
+                    cancelTag -> log.warn("Consumer cancelled for queue={}", queueName)
+                );
+            }
+            log.info("Shard {} subscribed to {} room queues on connection {} (prefetch={})",
+                shardId, queues.size(), shardId % connections.size(), config.rabbitPrefetch);
         }
+        log.info("Subscribed rooms {}-{} across {} channel(s) on {} connection(s)",
+            config.roomStart, config.roomEnd, shards.size(), connections.size());
 
         // ── Periodic flush timer ──────────────────────────────────────────────
         ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -144,10 +186,12 @@ public class ConsumerV3App {
             return t;
         });
         flushScheduler.scheduleAtFixedRate(() -> {
-            if (accumulator.isReady()) {
-                vtExecutor.submit(() ->
-                    drainAndFlush("timer", channel, accumulator,
-                        mapper, writer, dlqPublisher, breaker, metrics));
+            for (ConsumerShard shard : shards) {
+                if (shard.getAccumulator().isReady()) {
+                    vtExecutor.submit(() ->
+                        drainAndFlush("timer", shard,
+                            mapper, writer, dlqPublisher, breaker, metrics, spillLog));
+                }
             }
         }, config.flushIntervalMs, config.flushIntervalMs, TimeUnit.MILLISECONDS);
 
@@ -161,6 +205,24 @@ public class ConsumerV3App {
             metrics::logSummary,
             config.metricsLogIntervalMs, config.metricsLogIntervalMs, TimeUnit.MILLISECONDS);
 
+        // ── Spill replay + interval fsync ─────────────────────────────────────
+        // Two threads: a long replay pass must not delay interval fsyncs
+        ScheduledExecutorService spillScheduler = spillLog == null ? null
+            : Executors.newScheduledThreadPool(2, r -> {
+                Thread t = new Thread(r, "v3-spill");
+                t.setDaemon(true);
+                return t;
+            });
+        if (spillScheduler != null) {
+            spillScheduler.scheduleWithFixedDelay(
+                new SpillReplayer(spillLog, mapper, writer, dlqPublisher, breaker, metrics, config.batchSize),
+                config.spillReplayIntervalMs, config.spillReplayIntervalMs, TimeUnit.MILLISECONDS);
+            if (SpillLog.FsyncPolicy.parse(config.spillFsync) == SpillLog.FsyncPolicy.INTERVAL) {
+                spillScheduler.scheduleWithFixedDelay(spillLog::syncIfDirty,
+                    config.spillFsyncIntervalMs, config.spillFsyncIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
         log.info("consumer-v3 running — waiting for messages. CircuitBreaker: {}", breaker);
 
         // ── Graceful shutdown ─────────────────────────────────────────────────
@@ -168,13 +230,18 @@ public class ConsumerV3App {
             log.info("Shutdown: stopping schedulers...");
             flushScheduler.shutdown();
             metricsReporter.shutdown();
-
-            // Final drain (bypass CB on shutdown to avoid leaving messages unacked)
-            List<QueueEnvelope> remaining = accumulator.drain();
-            if (!remaining.isEmpty()) {
-                log.info("Shutdown: processing {} remaining messages", remaining.size());
-                vtExecutor.submit(() ->
-                    processBatch(remaining, channel, mapper, writer, dlqPublisher, breaker, metrics));
+            if (spillScheduler != null) spillScheduler.shutdown();
+
+            // Final drain per shard (bypass CB on shutdown to avoid leaving messages unacked)
+            for (ConsumerShard shard : shards) {
+                List<QueueEnvelope> remaining = shard.getAccumulator().drain();
+                if (!remaining.isEmpty()) {
+                    log.info("Shutdown: processing {} remaining messages on shard {}",
+                        remaining.size(), shard.getId());
+                    vtExecutor.submit(() ->
+                        processBatch(remaining, shard.getChannel(),
+                            mapper, writer, dlqPublisher, breaker, metrics));
+                }
             }
 
             vtExecutor.shutdown();
@@ -187,17 +254,39 @@ public class ConsumerV3App {
                 Thread.currentThread().interrupt();
             }
 
-            try { channel.close();    } catch (Exception ignored) {}
-            try { connection.close(); } catch (Exception ignored) {}
+            // A replay pass or fsync may still be running; let it finish before
+            // the spill log and writer it uses are closed.
+            if (spillScheduler != null) {
+                try {
+                    if (!spillScheduler.awaitTermination(15, TimeUnit.SECONDS)) {
+                        log.warn("spillScheduler did not terminate in 15s, forcing");
+                        spillScheduler.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            for (ConsumerShard shard : shards) {
+                try { shard.getChannel().close(); } catch (Exception ignored) {}
+            }
+            for (Connection connection : connections) {
+                try { connection.close(); } catch (Exception ignored) {}
+            }
+            if (spillLog != null) spillLog.close();
             writer.close();
             dlqPublisher.close();
             metrics.logSummary();
             log.info("consumer-v3 shutdown complete.");
         }, "v3-shutdown"));
 
-        connection.addBlockedListener(
-            reason -> log.warn("RabbitMQ connection blocked: {}", reason),
-            () -> log.info("RabbitMQ connection unblocked"));
+        for (Connection connection : connections) {
+            connection.addBlockedListener(
+                reason -> log.warn("RabbitMQ connection {} blocked: {}",
+                    connection.getClientProvidedName(), reason),
+                () -> log.info("RabbitMQ connection {} unblocked",
+                    connection.getClientProvidedName()));
+        }
 
         Thread.currentThread().join();
     }
@@ -207,16 +296,24 @@ public class ConsumerV3App {
     // ─────────────────────────────────────────────────────────────────────────
 
     private static void drainAndFlush(
-            String reason, Channel channel, BatchAccumulator accumulator,
+            String reason, ConsumerShard shard,
             CanonicalMessageMapper mapper, PersistenceWriter writer,
-            DlqPublisher dlqPublisher, CircuitBreaker breaker, ConsumerMetrics metrics) {
+            DlqPublisher dlqPublisher, CircuitBreaker breaker, ConsumerMetrics metrics,
+            SpillLog spillLog) {
+
+        BatchAccumulator accumulator = shard.getAccumulator();
 
         // ── Circuit breaker check (before draining) ───────────────────────────
-        // If OPEN: do NOT drain — messages stay in accumulator (still unacked
-        // in RabbitMQ), applying natural back-pressure via the prefetch limit.
+        // If OPEN with spill enabled: append the batch to the local log and ack.
+        // If OPEN without spill: do NOT drain — messages stay in accumulator
+        // (still unacked in RabbitMQ), applying back-pressure via the prefetch limit.
         if (breaker.isOpen()) {
-            log.warn("CircuitBreaker OPEN — skipping flush('{}'), {} msgs held in accumulator",
-                reason, accumulator.size());
+            if (spillLog != null) {
+                spillBatch(reason, shard, spillLog, metrics);
+                return;
+            }
+            log.warn("CircuitBreaker OPEN — skipping flush('{}') on shard {}, {} msgs held in accumulator",
+                reason, shard.getId(), accumulator.size());
             metrics.incCircuitBreakerSkips();
             return;
         }
@@ -224,11 +321,42 @@ public class ConsumerV3App {
         List<QueueEnvelope> batch = accumulator.drain();
         if (batch.isEmpty()) return;
 
-        log.debug("Flush('{}') batch.size={}", reason, batch.size());
+        log.debug("Flush('{}') shard={} batch.size={}", reason, shard.getId(), batch.size());
         metrics.incBatchesFlushed();
         metrics.addTotalBatchSize(batch.size());
 
-        processBatch(batch, channel, mapper, writer, dlqPublisher, breaker, metrics);
+        processBatch(batch, shard.getChannel(), mapper, writer, dlqPublisher, breaker, metrics);
+    }
+
+    /**
+     * Append a drained batch to the spill log, then ack it.  If the append
+     * fails the deliveries are nacked with requeue so RabbitMQ keeps them.
+     */
+    private static void spillBatch(String reason, ConsumerShard shard,
+                                   SpillLog spillLog, ConsumerMetrics metrics) {
+        List<QueueEnvelope> batch = shard.getAccumulator().drain();
+        if (batch.isEmpty()) return;
+
+        Channel channel = shard.getChannel();
+        try {
+            spillLog.append(batch);
+        } catch (Exception e) {
+            metrics.incSpillFailures();
+            log.error("Spill append FAILED on shard {} ({} msgs) — nacking requeue: {}",
+                shard.getId(), batch.size(), e.getMessage());
+            for (QueueEnvelope env : batch) {
+                safeNack(channel, env.getDeliveryTag(), true);
+                metrics.incNacksSent();
+            }
+            return;
+        }
+
+        for (QueueEnvelope env : batch) {
+            safeAck(channel, env.getDeliveryTag());
+            metrics.incAcksSucceeded();
+        }
+        metrics.incSpilled(batch.size());
+        log.debug("Flush('{}') shard={} spilled {} msgs (breaker OPEN)", reason, shard.getId(), batch.size());
     }
 
     // ─────────────────────────────────────────────────────────────────────────
@@ -236,87 +364,106 @@ public class ConsumerV3App {
     // ─────────────────────────────────────────────────────────────────────────
 
     /**
-     * Full pipeline for one batch:
+     * Full pipeline for one batch, indexed by position via {@link IndexedBatch}:
      * <ol>
-     *   <li>Map envelopes → canonical records (parse failures → DLQ immediately)</li>
+     *   <li>Map envelopes → canonical records (parse failures → DLQ stage immediately,
+     *       overlapping the DynamoDB write)</li>
      *   <li>Write records to DynamoDB (PersistenceWriter handles internal retries)</li>
      *   <li>Update circuit breaker based on batch outcome</li>
-     *   <li>Ack/nack each delivery per result</li>
+     *   <li>Ack SUCCESS/DUPLICATE inline; hand terminal failures to the DLQ stage</li>
      * </ol>
+     * The DLQ stage publishes with batched {@code SendMessageBatch} calls and
+     * acks/nacks each delivery on its own result; this method returns once
+     * every delivery is settled.
      */
     private static void processBatch(
-            List<QueueEnvelope> batch, Channel channel,
+            List<QueueEnvelope> envelopes, Channel channel,
             CanonicalMessageMapper mapper, PersistenceWriter writer,
             DlqPublisher dlqPublisher, CircuitBreaker breaker, ConsumerMetrics metrics) {
 
-        // ── Phase 1: map → records ────────────────────────────────────────────
-        List<CanonicalMessageRecord> records    = new ArrayList<>(batch.size());
-        Map<String, QueueEnvelope>   idToEnv    = new HashMap<>(batch.size() * 2);
-
-        for (QueueEnvelope env : batch) {
-            try {
-                CanonicalMessageRecord record = mapper.fromEnvelope(env);
-                records.add(record);
-                idToEnv.put(record.getMessageId(), env);
-                metrics.incMessagesParsed();
-                log.debug("Parsed messageId={} roomId={}", record.getMessageId(), record.getRoomId());
-            } catch (Exception e) {
-                metrics.incParseFailures();
-                log.error("Parse failure deliveryTag={} queue={}: {}",
-                    env.getDeliveryTag(), env.getQueueName(), e.getMessage());
-
-                // Parse errors are non-retryable — send straight to DLQ
-                DlqPublishResult dlqResult =
-                    dlqPublisher.publish(env, null, FailureType.PARSE_ERROR, e.getMessage(), 0);
-                handleDlqResult(channel, env, dlqResult, "parse-error", metrics);
+        IndexedBatch batch = new IndexedBatch(envelopes);
+
+        try (DlqStage dlqStage = new DlqStage(dlqPublisher)) {
+
+            // ── Phase 1: map → records ────────────────────────────────────────
+            for (int i = 0; i < batch.size(); i++) {
+                QueueEnvelope env = batch.envelope(i);
+                try {
+                    CanonicalMessageRecord record = mapper.fromEnvelope(env);
+                    batch.setRecord(i, record);
+                    metrics.incMessagesParsed();
+                    log.debug("Parsed messageId={} roomId={}", record.getMessageId(), record.getRoomId());
+                } catch (Exception e) {
+                    metrics.incParseFailures();
+                    log.error("Parse failure deliveryTag={} queue={}: {}",
+                        env.getDeliveryTag(), env.getQueueName(), e.getMessage());
+
+                    // Parse errors are non-retryable — send straight to DLQ
+                    batch.setParseError(i, e.getMessage());
+                    dlqStage.submit(env, null, FailureType.PARSE_ERROR, e.getMessage(), 0,
+                        dlqResult -> handleDlqResult(channel, env, dlqResult, "parse-error", metrics));
+                }
             }
-        }
 
-        if (records.isEmpty()) return;
+            // Parse errors go out as one SendMessageBatch group while DynamoDB is written
+            dlqStage.flush();
 
-        // ── Phase 2: write to DynamoDB (retries handled inside PersistenceWriter) ──
-        PersistenceBatchResult result = writer.writeBatch(records);
-        log.info("Batch write: {}", result);
+            if (batch.getWriteCount() == 0) return;
 
-        // ── Phase 3: update circuit breaker ──────────────────────────────────
-        if (result.hasTerminalFailures()) {
-            breaker.recordFailure();
-            log.warn("CircuitBreaker.recordFailure(): terminalFailures={} in this batch",
-                result.getTerminalFailureCount());
-        } else {
-            breaker.recordSuccess();
-        }
+            // ── Phase 2: write to DynamoDB (retries handled inside PersistenceWriter) ──
+            PersistenceBatchResult result = writer.writeBatch(batch.recordsToWrite());
+            log.info("Batch write: {}", result);
+            try {
+                batch.applyResults(result.getResults());
+            } catch (IllegalStateException e) {
+                // Writer broke its ordering contract — requeue rather than guess
+                log.error("BUG: {} — nacking {} parsed deliveries for redelivery",
+                    e.getMessage(), batch.getWriteCount());
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.record(i) != null) {
+                        safeNack(channel, batch.envelope(i).getDeliveryTag(), true);
+                        metrics.incNacksSent();
+                    }
+                }
+                return;
+            }
 
-        // ── Phase 4: ack / nack per result ────────────────────────────────────
-        for (PersistenceRecordResult rr : result.getResults()) {
-            QueueEnvelope env = idToEnv.get(rr.getMessageId());
-            if (env == null) {
-                log.error("BUG: no envelope for messageId={}", rr.getMessageId());
-                continue;
+            // ── Phase 3: update circuit breaker ──────────────────────────────
+            if (result.hasTerminalFailures()) {
+                breaker.recordFailure();
+                log.warn("CircuitBreaker.recordFailure(): terminalFailures={} in this batch",
+                    result.getTerminalFailureCount());
+            } else {
+                breaker.recordSuccess();
             }
-            CanonicalMessageRecord rec = findRecord(records, rr.getMessageId());
-
-            switch (rr.getStatus()) {
-                case SUCCESS -> {
-                    safeAck(channel, env.getDeliveryTag());
-                    metrics.incRecordsWritten(1);
-                    metrics.incAcksSucceeded();
-                    log.debug("SUCCESS messageId={}", rr.getMessageId());
-                }
-                case DUPLICATE -> {
-                    // Already in DynamoDB — idempotent success, safe to ack
-                    safeAck(channel, env.getDeliveryTag());
-                    metrics.incDuplicateMessages();
-                    metrics.incAcksSucceeded();
-                    log.debug("DUPLICATE messageId={}, acking", rr.getMessageId());
-                }
-                case FAILURE -> {
-                    // Terminal failure after retries exhausted — route to SQS DLQ
-                    DlqPublishResult dlqResult = dlqPublisher.publish(
-                        env, rec, rr.getFailureType(),
-                        rr.getErrorMessage(), rr.getRetryCount());
-                    handleDlqResult(channel, env, dlqResult,
-                        "terminal-write(retries=" + rr.getRetryCount() + ")", metrics);
+
+            // ── Phase 4: ack inline / route failures to DLQ stage ────────────
+            for (int i = 0; i < batch.size(); i++) {
+                PersistenceRecordResult rr = batch.result(i);
+                if (rr == null) continue;   // parse failure — already in DLQ stage
+                QueueEnvelope env = batch.envelope(i);
+
+                switch (rr.getStatus()) {
+                    case SUCCESS -> {
+                        safeAck(channel, env.getDeliveryTag());
+                        metrics.incRecordsWritten(1);
+                        metrics.incAcksSucceeded();
+                        log.debug("SUCCESS messageId={}", rr.getMessageId());
+                    }
+                    case DUPLICATE -> {
+                        // Already in DynamoDB — idempotent success, safe to ack
+                        safeAck(channel, env.getDeliveryTag());
+                        metrics.incDuplicateMessages();
+                        metrics.incAcksSucceeded();
+                        log.debug("DUPLICATE messageId={}, acking", rr.getMessageId());
+                    }
+                    case FAILURE -> {
+                        // Terminal failure after retries exhausted — route to SQS DLQ
+                        String context = "terminal-write(retries=" + rr.getRetryCount() + ")";
+                        dlqStage.submit(env, batch.record(i), rr.getFailureType(),
+                            rr.getErrorMessage(), rr.getRetryCount(),
+                            dlqResult -> handleDlqResult(channel, env, dlqResult, context, metrics));
+                    }
                 }
             }
         }
@@ -378,16 +525,6 @@ public class ConsumerV3App {
         }
     }
 
-    // ── Misc helpers ──────────────────────────────────────────────────────────
-
-    private static CanonicalMessageRecord findRecord(List<CanonicalMessageRecord> records,
-                                                      String messageId) {
-        for (CanonicalMessageRecord r : records) {
-            if (messageId.equals(r.getMessageId())) return r;
-        }
-        return null;
-    }
-
     // ── RabbitMQ setup helpers ────────────────────────────────────────────────
 
     private static ConnectionFactory buildConnectionFactory(ConsumerV3Config config) {
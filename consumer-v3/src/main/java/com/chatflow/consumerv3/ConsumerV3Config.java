@@ -14,7 +14,15 @@ public class ConsumerV3Config {
     public final String rabbitPassword;
     public final String rabbitVhost;
     public final String rabbitExchange;
+    /** Per-channel prefetch — each consumption shard gets its own window. */
     public final int    rabbitPrefetch;
+    /** Number of AMQP connections; channels are spread round-robin across them. */
+    public final int    rabbitConnections;
+    /**
+     * Number of consumption shards (channels).  Rooms are partitioned across
+     * them, each with its own dispatch thread and {@link BatchAccumulator}.
+     */
+    public final int    rabbitChannels;
 
     // ── Room / queue sharding ─────────────────────────────────────────────────
     public final int  roomStart;
@@ -28,6 +36,8 @@ public class ConsumerV3Config {
 
     // ── SQS DLQ ───────────────────────────────────────────────────────────────
     public final String sqsDlqUrl;
+    /** Max concurrent SQS {@code SendMessageBatch} calls from the DLQ publisher. */
+    public final int    dlqConcurrency;
 
     // ── Batch / flush ─────────────────────────────────────────────────────────
     public final int  batchSize;
@@ -50,6 +60,16 @@ public class ConsumerV3Config {
     /** How long (ms) the circuit stays OPEN before auto-resetting to CLOSED. */
     public final long    cbOpenDurationMs;
 
+    // ── Spill log (circuit-breaker OPEN) ──────────────────────────────────────
+    /** Append + ack batches to a local log while the breaker is OPEN, replay later. */
+    public final boolean spillEnabled;
+    public final String  spillDir;
+    public final long    spillSegmentBytes;
+    /** ALWAYS | INTERVAL | NEVER — see {@link SpillLog.FsyncPolicy}. */
+    public final String  spillFsync;
+    public final long    spillFsyncIntervalMs;
+    public final long    spillReplayIntervalMs;
+
     // ── Observability ─────────────────────────────────────────────────────────
     public final int  metricsPort;
     public final long metricsLogIntervalMs;
@@ -62,6 +82,8 @@ public class ConsumerV3Config {
         this.rabbitVhost          = b.rabbitVhost;
         this.rabbitExchange       = b.rabbitExchange;
         this.rabbitPrefetch       = b.rabbitPrefetch;
+        this.rabbitConnections    = Math.max(1, b.rabbitConnections);
+        this.rabbitChannels       = Math.max(1, b.rabbitChannels);
         this.roomStart            = b.roomStart;
         this.roomEnd              = b.roomEnd;
         this.queueMessageTtlMs    = b.queueMessageTtlMs;
@@ -69,6 +91,7 @@ public class ConsumerV3Config {
         this.dynamoRegion         = b.dynamoRegion;
         this.dynamoTableCanonical = b.dynamoTableCanonical;
         this.sqsDlqUrl            = b.sqsDlqUrl;
+        this.dlqConcurrency       = Math.max(1, b.dlqConcurrency);
         this.batchSize            = b.batchSize;
         this.flushIntervalMs      = b.flushIntervalMs;
         this.semaphorePermits     = b.semaphorePermits;
@@ -78,6 +101,12 @@ public class ConsumerV3Config {
         this.cbEnabled            = b.cbEnabled;
         this.cbFailureThreshold   = b.cbFailureThreshold;
         this.cbOpenDurationMs     = b.cbOpenDurationMs;
+        this.spillEnabled         = b.spillEnabled;
+        this.spillDir             = b.spillDir;
+        this.spillSegmentBytes    = b.spillSegmentBytes;
+        this.spillFsync           = b.spillFsync;
+        this.spillFsyncIntervalMs = b.spillFsyncIntervalMs;
+        this.spillReplayIntervalMs = b.spillReplayIntervalMs;
         this.metricsPort          = b.metricsPort;
         this.metricsLogIntervalMs = b.metricsLogIntervalMs;
     }
@@ -102,6 +131,8 @@ public class ConsumerV3Config {
             .rabbitVhost(env("CHATFLOW_V3_RABBIT_VHOST", "/"))
             .rabbitExchange(env("CHATFLOW_V3_RABBIT_EXCHANGE", "chat.exchange"))
             .rabbitPrefetch(intEnv("CHATFLOW_V3_RABBIT_PREFETCH", 200))
+            .rabbitConnections(intEnv("CHATFLOW_V3_RABBIT_CONNECTIONS", 1))
+            .rabbitChannels(intEnv("CHATFLOW_V3_RABBIT_CHANNELS", 1))
             // Rooms
             .roomStart(roomStart)
             .roomEnd(roomEnd)
@@ -112,6 +143,7 @@ public class ConsumerV3Config {
             .dynamoTableCanonical(env("CHATFLOW_V3_DYNAMO_TABLE_CANONICAL", "messages_by_id"))
             // SQS DLQ
             .sqsDlqUrl(env("CHATFLOW_V3_SQS_DLQ_URL", ""))
+            .dlqConcurrency(intEnv("CHATFLOW_V3_DLQ_CONCURRENCY", 16))
             // Batch
             .batchSize(intEnv("CHATFLOW_V3_BATCH_SIZE", 100))
             .flushIntervalMs(longEnv("CHATFLOW_V3_FLUSH_INTERVAL_MS", 500))
@@ -124,6 +156,13 @@ public class ConsumerV3Config {
             .cbEnabled(boolEnv("CHATFLOW_V3_CB_ENABLED", true))
             .cbFailureThreshold(intEnv("CHATFLOW_V3_CB_FAILURE_THRESHOLD", 5))
             .cbOpenDurationMs(longEnv("CHATFLOW_V3_CB_OPEN_MS", 30_000))
+            // Spill log
+            .spillEnabled(boolEnv("CHATFLOW_V3_SPILL_ENABLED", false))
+            .spillDir(env("CHATFLOW_V3_SPILL_DIR", "./consumer-v3-spill"))
+            .spillSegmentBytes(longEnv("CHATFLOW_V3_SPILL_SEGMENT_BYTES", 64L * 1024 * 1024))
+            .spillFsync(env("CHATFLOW_V3_SPILL_FSYNC", "ALWAYS"))
+            .spillFsyncIntervalMs(longEnv("CHATFLOW_V3_SPILL_FSYNC_INTERVAL_MS", 100))
+            .spillReplayIntervalMs(longEnv("CHATFLOW_V3_SPILL_REPLAY_INTERVAL_MS", 1_000))
             // Observability
             .metricsPort(intEnv("CHATFLOW_V3_METRICS_PORT", 8091))
             .metricsLogIntervalMs(longEnv("CHATFLOW_V3_METRICS_LOG_INTERVAL_MS", 30_000))
@@ -160,13 +199,16 @@ public class ConsumerV3Config {
     @Override
     public String toString() {
         return "ConsumerV3Config{rabbit=" + rabbitHost + ":" + rabbitPort
+            + ", conns=" + rabbitConnections + ", channels=" + rabbitChannels
+            + ", prefetch=" + rabbitPrefetch
             + ", rooms=" + roomStart + ".." + roomEnd
             + ", dynamo=" + dynamoRegion + "/" + dynamoTableCanonical
             + ", dlqUrl=" + (sqsDlqUrl.isBlank() ? "<none>" : "<set>")
             + ", batch=" + batchSize + ", flush=" + flushIntervalMs + "ms"
             + ", maxRetries=" + maxRetries
             + ", cb=" + cbEnabled + "(thr=" + cbFailureThreshold
-            + ",open=" + cbOpenDurationMs + "ms)" + "}";
+            + ",open=" + cbOpenDurationMs + "ms)"
+            + ", spill=" + (spillEnabled ? spillDir + "(fsync=" + spillFsync + ")" : "off") + "}";
     }
 
     // ── Builder ───────────────────────────────────────────────────────────────
@@ -176,16 +218,21 @@ public class ConsumerV3Config {
         String  rabbitUsername = "guest";  String rabbitPassword = "guest";
         String  rabbitVhost = "/";         String rabbitExchange = "chat.exchange";
         int     rabbitPrefetch = 200;
+        int     rabbitConnections = 1;     int    rabbitChannels = 1;
         int     roomStart = 1;             int    roomEnd = 20;
         long    queueMessageTtlMs = 60_000; int   queueMaxLength = 10_000;
         String  dynamoRegion = "us-east-1"; String dynamoTableCanonical = "messages_by_id";
-        String  sqsDlqUrl = "";
+        String  sqsDlqUrl = "";           int    dlqConcurrency = 16;
         int     batchSize = 100;           long   flushIntervalMs = 500;
         int     semaphorePermits = 64;
         long    retryBaseMs = 50;          long   retryMaxMs = 5_000;
         int     maxRetries = 5;
         boolean cbEnabled = true;          int    cbFailureThreshold = 5;
         long    cbOpenDurationMs = 30_000;
+        boolean spillEnabled = false;      String spillDir = "./consumer-v3-spill";
+        long    spillSegmentBytes = 64L * 1024 * 1024;
+        String  spillFsync = "ALWAYS";     long   spillFsyncIntervalMs = 100;
+        long    spillReplayIntervalMs = 1_000;
         int     metricsPort = 8091;        long   metricsLogIntervalMs = 30_000;
 
         public Builder rabbitHost(String v)            { this.rabbitHost = v; return this; }
@@ -195,6 +242,8 @@ public class ConsumerV3Config {
         public Builder rabbitVhost(String v)           { this.rabbitVhost = v; return this; }
         public Builder rabbitExchange(String v)        { this.rabbitExchange = v; return this; }
         public Builder rabbitPrefetch(int v)           { this.rabbitPrefetch = v; return this; }
+        public Builder rabbitConnections(int v)        { this.rabbitConnections = v; return this; }
+        public Builder rabbitChannels(int v)           { this.rabbitChannels = v; return this; }
         public Builder roomStart(int v)                { this.roomStart = v; return this; }
         public Builder roomEnd(int v)                  { this.roomEnd = v; return this; }
         public Builder queueMessageTtlMs(long v)       { this.queueMessageTtlMs = v; return this; }
@@ -202,6 +251,7 @@ public class ConsumerV3Config {
         public Builder dynamoRegion(String v)          { this.dynamoRegion = v; return this; }
         public Builder dynamoTableCanonical(String v)  { this.dynamoTableCanonical = v; return this; }
         public Builder sqsDlqUrl(String v)             { this.sqsDlqUrl = v; return this; }
+        public Builder dlqConcurrency(int v)           { this.dlqConcurrency = v; return this; }
         public Builder batchSize(int v)                { this.batchSize = v; return this; }
         public Builder flushIntervalMs(long v)         { this.flushIntervalMs = v; return this; }
         public Builder semaphorePermits(int v)         { this.semaphorePermits = v; return this; }
@@ -211,6 +261,12 @@ public class ConsumerV3Config {
         public Builder cbEnabled(boolean v)            { this.cbEnabled = v; return this; }
         public Builder cbFailureThreshold(int v)       { this.cbFailureThreshold = v; return this; }
         public Builder cbOpenDurationMs(long v)        { this.cbOpenDurationMs = v; return this; }
+        public Builder spillEnabled(boolean v)         { this.spillEnabled = v; return this; }
+        public Builder spillDir(String v)              { this.spillDir = v; return this; }
+        public Builder spillSegmentBytes(long v)       { this.spillSegmentBytes = v; return this; }
+        public Builder spillFsync(String v)            { this.spillFsync = v; return this; }
+        public Builder spillFsyncIntervalMs(long v)    { this.spillFsyncIntervalMs = v; return this; }
+        public Builder spillReplayIntervalMs(long v)   { this.spillReplayIntervalMs = v; return this; }
         public Builder metricsPort(int v)              { this.metricsPort = v; return this; }
         public Builder metricsLogIntervalMs(long v)    { this.metricsLogIntervalMs = v; return this; }
         public ConsumerV3Config build()                { return new ConsumerV3Config(this); }
@@ -1,16 +1,30 @@
 package com.chatflow.consumerv3;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
 import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
-import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * Publishes unrecoverable messages to an SQS Dead-Letter Queue.
@@ -39,27 +53,61 @@ import java.util.Map;
  *   "rawPayloadBase64" : "<base64 of original Protobuf bytes>"
  * }
  * </pre>
- * <b>Message attributes</b> carry a subset for quick filtering without
- * deserializing the body.
+ * The body is written directly with a streaming {@link JsonGenerator} — no
+ * intermediate map.  <b>Message attributes</b> carry a subset for quick
+ * filtering without deserializing the body.
+ *
+ * <h3>Batching</h3>
+ * {@link #publishBatch} groups entries into {@code SendMessageBatch} calls of
+ * at most {@value #SQS_BATCH_LIMIT} entries and {@value #SQS_BATCH_MAX_BYTES}
+ * bytes, sends the chunks concurrently on virtual threads (bounded by
+ * {@code maxInFlightBatches}), and returns one {@link DlqPublishResult} per
+ * entry so each delivery can still be acked or nacked on its own.
  *
  * <h3>Atomicity guarantee</h3>
- * Callers <em>must not</em> ack the RabbitMQ delivery unless this method
- * returns {@link DlqPublishResult#isSuccess()}.  If SQS publish fails,
- * the caller must {@code basicNack(requeue=true)} to avoid message loss.
+ * Callers <em>must not</em> ack the RabbitMQ delivery unless its result is
+ * {@link DlqPublishResult#isSuccess()}.  If SQS publish fails, the caller
+ * must {@code basicNack(requeue=true)} to avoid message loss.
  *
- * <p>Thread-safe: stateless except for the shared {@link SqsClient}.
+ * <p>Thread-safe: stateless except for the shared {@link SqsClient} and the
+ * in-flight semaphore.
  */
 public class DlqPublisher {
 
     private static final Logger log = LogManager.getLogger(DlqPublisher.class);
 
-    private final SqsClient    sqsClient;
-    private final String       dlqUrl;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    /** SQS SendMessageBatch accepts at most 10 entries per call. */
+    static final int SQS_BATCH_LIMIT     = 10;
+    /** SQS caps the total payload of one SendMessageBatch at 256 KiB. */
+    static final int SQS_BATCH_MAX_BYTES = 256 * 1024;
+    /** Rough allowance for message attributes per entry when sizing chunks. */
+    private static final int ATTRIBUTE_OVERHEAD_BYTES = 512;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /** One failed delivery bound for the DLQ. */
+    public record Entry(QueueEnvelope envelope,
+                        CanonicalMessageRecord record,
+                        FailureType failureType,
+                        String errorMessage,
+                        int retryCount) {}
+
+    private final SqsClient sqsClient;
+    private final String    dlqUrl;
+    private final Semaphore inFlight;
 
     public DlqPublisher(SqsClient sqsClient, String dlqUrl) {
+        this(sqsClient, dlqUrl, 16);
+    }
+
+    /**
+     * @param maxInFlightBatches cap on concurrent {@code SendMessageBatch}
+     *                           calls across all callers
+     */
+    public DlqPublisher(SqsClient sqsClient, String dlqUrl, int maxInFlightBatches) {
         this.sqsClient = sqsClient;
         this.dlqUrl    = dlqUrl;
+        this.inFlight  = new Semaphore(Math.max(1, maxInFlightBatches));
     }
 
     /** {@code true} when a DLQ URL is configured and SQS client is available. */
@@ -68,7 +116,7 @@ public class DlqPublisher {
     }
 
     /**
-     * Publish a failed message to the SQS DLQ.
+     * Publish a single failed message to the SQS DLQ.
      *
      * @param envelope     the original RabbitMQ delivery (provides raw payload + metadata)
      * @param record       the parsed record; {@code null} for PARSE_ERROR failures
@@ -83,62 +131,178 @@ public class DlqPublisher {
             FailureType failureType,
             String errorMessage,
             int retryCount) {
+        return publishBatch(List.of(
+            new Entry(envelope, record, failureType, errorMessage, retryCount))).get(0);
+    }
+
+    /**
+     * Publish many failed messages with {@code SendMessageBatch}.
+     *
+     * @return one result per entry, in the same order as {@code entries}
+     */
+    public List<DlqPublishResult> publishBatch(List<Entry> entries) {
+        int n = entries.size();
+        if (n == 0) return List.of();
 
         if (!isEnabled()) {
-            String id = record != null ? record.getMessageId() : "<unknown>";
-            log.warn("DLQ not configured — dropping messageId={} failureType={}", id, failureType);
+            for (Entry e : entries) {
+                log.warn("DLQ not configured — dropping messageId={} failureType={}",
+                    messageIdOf(e), e.failureType());
+            }
             // DISABLED: caller treats this as "best-effort acknowledged"
-            return DlqPublishResult.disabled();
+            return Collections.nCopies(n, DlqPublishResult.disabled());
+        }
+
+        DlqPublishResult[] out     = new DlqPublishResult[n];
+        String[]           bodies  = new String[n];
+        int[]              sizes   = new int[n];
+        long               failedAt = System.currentTimeMillis();
+
+        for (int i = 0; i < n; i++) {
+            try {
+                bodies[i] = encodeBody(entries.get(i), failedAt);
+                sizes[i]  = bodies[i].getBytes(StandardCharsets.UTF_8).length + ATTRIBUTE_OVERHEAD_BYTES;
+            } catch (IOException e) {
+                log.error("DLQ body encode failed for messageId='{}': {}",
+                    messageIdOf(entries.get(i)), e.getMessage());
+                out[i] = DlqPublishResult.failure("encode failed: " + e.getMessage());
+                sizes[i] = -1;   // skipped by planChunks
+            }
         }
 
-        String messageId = record != null ? record.getMessageId() : "";
-        String roomId    = record != null ? record.getRoomId()    : "";
-        String userId    = record != null ? record.getUserId()    : "";
+        List<int[]> chunks = planChunks(sizes, SQS_BATCH_LIMIT, SQS_BATCH_MAX_BYTES);
+        if (chunks.size() == 1) {
+            sendChunk(entries, bodies, chunks.get(0), out);
+        } else {
+            try (ExecutorService chunkExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int[] chunk : chunks) {
+                    chunkExecutor.submit(() -> sendChunk(entries, bodies, chunk, out));
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (out[i] == null) out[i] = DlqPublishResult.failure("no SQS outcome reported");
+        }
+        return Arrays.asList(out);
+    }
+
+    // ── Chunking ──────────────────────────────────────────────────────────────
+
+    /**
+     * Group entry indexes into SendMessageBatch chunks of at most
+     * {@code maxEntries} entries and {@code maxBytes} total size.
+     * Entries with a negative size are skipped.  An entry larger than
+     * {@code maxBytes} on its own gets a chunk of its own (SQS will reject it
+     * and the per-entry failure is reported normally).
+     * Package-private for unit tests.
+     */
+    static List<int[]> planChunks(int[] sizes, int maxEntries, int maxBytes) {
+        List<int[]> chunks = new ArrayList<>();
+        int[] current = new int[maxEntries];
+        int count = 0;
+        long bytes = 0;
+
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] < 0) continue;
+            if (count > 0 && (count == maxEntries || bytes + sizes[i] > maxBytes)) {
+                chunks.add(Arrays.copyOf(current, count));
+                count = 0;
+                bytes = 0;
+            }
+            current[count++] = i;
+            bytes += sizes[i];
+        }
+        if (count > 0) chunks.add(Arrays.copyOf(current, count));
+        return chunks;
+    }
+
+    private void sendChunk(List<Entry> entries, String[] bodies, int[] chunk, DlqPublishResult[] out) {
+        List<SendMessageBatchRequestEntry> requestEntries = new ArrayList<>(chunk.length);
+        for (int i : chunk) {
+            requestEntries.add(SendMessageBatchRequestEntry.builder()
+                .id(Integer.toString(i))   // entry position — unique within the batch
+                .messageBody(bodies[i])
+                .messageAttributes(attributes(entries.get(i)))
+                .build());
+        }
 
         try {
-            // ── Body (JSON) ───────────────────────────────────────────────────
-            Map<String, Object> body = new LinkedHashMap<>();
-            body.put("messageId",        messageId);
-            body.put("roomId",           roomId);
-            body.put("userId",           userId);
-            body.put("failureType",      failureType.name());
-            body.put("errorMessage",     errorMessage != null ? errorMessage : "");
-            body.put("retryCount",       retryCount);
-            body.put("failedAt",         System.currentTimeMillis());
-            body.put("queueName",        envelope.getQueueName());
-            body.put("deliveryTag",      envelope.getDeliveryTag());
-            body.put("rawPayloadBase64", Base64.getEncoder()
-                                               .encodeToString(envelope.getPayload()));
-
-            String bodyJson = objectMapper.writeValueAsString(body);
-
-            // ── Message attributes (quick filtering, max 10) ──────────────────
-            Map<String, MessageAttributeValue> attrs = new HashMap<>();
-            attrs.put("failureType", strAttr(failureType.name()));
-            attrs.put("retryCount",  numAttr(retryCount));
-            if (!messageId.isBlank()) attrs.put("messageId", strAttr(messageId));
-            if (!roomId.isBlank())    attrs.put("roomId",    strAttr(roomId));
-            if (!userId.isBlank())    attrs.put("userId",    strAttr(userId));
-
-            // ── Send ──────────────────────────────────────────────────────────
-            SendMessageRequest req = SendMessageRequest.builder()
-                .queueUrl(dlqUrl)
-                .messageBody(bodyJson)
-                .messageAttributes(attrs)
-                .build();
-
-            sqsClient.sendMessage(req);
-            log.info("DLQ published: messageId='{}' failureType={} retries={}",
-                messageId, failureType, retryCount);
-            return DlqPublishResult.success();
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i : chunk) out[i] = DlqPublishResult.failure("dlq publish interrupted");
+            return;
+        }
 
+        try {
+            SendMessageBatchResponse response = sqsClient.sendMessageBatch(
+                SendMessageBatchRequest.builder()
+                    .queueUrl(dlqUrl)
+                    .entries(requestEntries)
+                    .build());
+
+            for (SendMessageBatchResultEntry ok : response.successful()) {
+                int i = Integer.parseInt(ok.id());
+                out[i] = DlqPublishResult.success();
+                Entry e = entries.get(i);
+                log.info("DLQ published: messageId='{}' failureType={} retries={}",
+                    messageIdOf(e), e.failureType(), e.retryCount());
+            }
+            for (BatchResultErrorEntry err : response.failed()) {
+                int i = Integer.parseInt(err.id());
+                out[i] = DlqPublishResult.failure(err.code() + ": " + err.message());
+                log.error("DLQ publish FAILED for messageId='{}' failureType={}: {} {}",
+                    messageIdOf(entries.get(i)), entries.get(i).failureType(),
+                    err.code(), err.message());
+            }
         } catch (Exception e) {
-            log.error("DLQ publish FAILED for messageId='{}' failureType={}: {}",
-                messageId, failureType, e.getMessage());
-            return DlqPublishResult.failure(e.getMessage());
+            log.error("DLQ sendMessageBatch FAILED for {} entries: {}", chunk.length, e.getMessage());
+            for (int i : chunk) out[i] = DlqPublishResult.failure(e.getMessage());
+        } finally {
+            inFlight.release();
         }
     }
 
+    // ── Body / attributes ─────────────────────────────────────────────────────
+
+    private static String encodeBody(Entry e, long failedAt) throws IOException {
+        CanonicalMessageRecord record = e.record();
+        StringWriter sw = new StringWriter(256 + e.envelope().getPayload().length * 4 / 3);
+        try (JsonGenerator gen = JSON.createGenerator(sw)) {
+            gen.writeStartObject();
+            gen.writeStringField("messageId",    record != null ? nullToEmpty(record.getMessageId()) : "");
+            gen.writeStringField("roomId",       record != null ? nullToEmpty(record.getRoomId())    : "");
+            gen.writeStringField("userId",       record != null ? nullToEmpty(record.getUserId())    : "");
+            gen.writeStringField("failureType",  e.failureType().name());
+            gen.writeStringField("errorMessage", nullToEmpty(e.errorMessage()));
+            gen.writeNumberField("retryCount",   e.retryCount());
+            gen.writeNumberField("failedAt",     failedAt);
+            gen.writeStringField("queueName",    e.envelope().getQueueName());
+            gen.writeNumberField("deliveryTag",  e.envelope().getDeliveryTag());
+            gen.writeStringField("rawPayloadBase64",
+                Base64.getEncoder().encodeToString(e.envelope().getPayload()));
+            gen.writeEndObject();
+        }
+        return sw.toString();
+    }
+
+    /** Message attributes for quick filtering (SQS allows max 10). */
+    private static Map<String, MessageAttributeValue> attributes(Entry e) {
+        CanonicalMessageRecord record = e.record();
+        String messageId = record != null ? nullToEmpty(record.getMessageId()) : "";
+        String roomId    = record != null ? nullToEmpty(record.getRoomId())    : "";
+        String userId    = record != null ? nullToEmpty(record.getUserId())    : "";
+
+        Map<String, MessageAttributeValue> attrs = new HashMap<>(8);
+        attrs.put("failureType", strAttr(e.failureType().name()));
+        attrs.put("retryCount",  numAttr(e.retryCount()));
+        if (!messageId.isBlank()) attrs.put("messageId", strAttr(messageId));
+        if (!roomId.isBlank())    attrs.put("roomId",    strAttr(roomId));
+        if (!userId.isBlank())    attrs.put("userId",    strAttr(userId));
+        return attrs;
+    }
+
     // ── SQS attribute helpers ─────────────────────────────────────────────────
 
     private static MessageAttributeValue strAttr(String value) {
@@ -155,6 +319,14 @@ public class DlqPublisher {
             .build();
     }
 
+    private static String messageIdOf(Entry e) {
+        return e.record() != null ? e.record().getMessageId() : "<unknown>";
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
     // ── Lifecycle ─────────────────────────────────────────────────────────────
 
     public void close() {
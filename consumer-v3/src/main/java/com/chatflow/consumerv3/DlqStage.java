@@ -0,0 +1,83 @@
+package com.chatflow.consumerv3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs DLQ publishes for one batch off the ack path.
+ *
+ * <p>{@link #submit} only buffers the failed delivery.  {@link #flush()} hands
+ * everything buffered so far to {@link DlqPublisher#publishBatch} on a
+ * virtual thread, then invokes each entry's callback (which acks or nacks)
+ * with its own {@link DlqPublishResult}.  Concurrency across chunks and
+ * batches is bounded inside {@link DlqPublisher}.
+ *
+ * <p>{@link #close()} flushes anything still buffered and waits for every
+ * publish to finish, which keeps the batch's virtual thread alive until all
+ * its deliveries are settled.
+ *
+ * <p>Not thread-safe — owned by the virtual thread processing the batch.
+ */
+public class DlqStage implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(DlqStage.class);
+
+    private final DlqPublisher    publisher;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private List<DlqPublisher.Entry>          pending   = new ArrayList<>();
+    private List<Consumer<DlqPublishResult>>  callbacks = new ArrayList<>();
+
+    public DlqStage(DlqPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Buffer one failed delivery for the next {@link #flush()}.
+     *
+     * @param onResult invoked on the publishing virtual thread with the outcome
+     */
+    public void submit(QueueEnvelope envelope, CanonicalMessageRecord record,
+                       FailureType failureType, String errorMessage, int retryCount,
+                       Consumer<DlqPublishResult> onResult) {
+        pending.add(new DlqPublisher.Entry(envelope, record, failureType, errorMessage, retryCount));
+        callbacks.add(onResult);
+    }
+
+    /** Dispatch everything buffered so far as one batched publish. */
+    public void flush() {
+        if (pending.isEmpty()) return;
+        List<DlqPublisher.Entry>         entries = pending;
+        List<Consumer<DlqPublishResult>> onDone  = callbacks;
+        pending   = new ArrayList<>();
+        callbacks = new ArrayList<>();
+
+        executor.submit(() -> {
+            List<DlqPublishResult> results;
+            try {
+                results = publisher.publishBatch(entries);
+            } catch (Exception e) {
+                log.error("DLQ stage publishBatch threw for {} entries: {}", entries.size(), e.getMessage());
+                DlqPublishResult failure = DlqPublishResult.failure(e.getMessage());
+                for (Consumer<DlqPublishResult> cb : onDone) cb.accept(failure);
+                return;
+            }
+            for (int i = 0; i < onDone.size(); i++) {
+                onDone.get(i).accept(results.get(i));
+            }
+        });
+    }
+
+    /** Flush remaining entries and wait for all publishes to complete. */
+    @Override
+    public void close() {
+        flush();
+        executor.close();
+    }
+}
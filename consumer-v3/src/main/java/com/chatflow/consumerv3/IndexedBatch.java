@@ -0,0 +1,104 @@
+package com.chatflow.consumerv3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One drained batch, with envelope, parsed record and write result held by
+ * position so that correlation is O(1) per delivery.
+ *
+ * <pre>
+ *   position i  →  envelope(i)   always present
+ *                  record(i)     null if parsing failed (see parseError(i))
+ *                  result(i)     set by applyResults() for parsed records
+ * </pre>
+ *
+ * <p>{@link #recordsToWrite()} returns parsed records in position order;
+ * {@link PersistenceWriter#writeBatch} returns results in the same order, so
+ * {@link #applyResults} maps the k-th result straight back to its position
+ * without any messageId lookup (and without collapsing in-batch duplicates).
+ *
+ * <p>Not thread-safe — owned by the virtual thread processing the batch.
+ */
+public class IndexedBatch {
+
+    private final List<QueueEnvelope>       envelopes;
+    private final CanonicalMessageRecord[]  records;
+    private final String[]                  parseErrors;
+    private final PersistenceRecordResult[] results;
+
+    /** Position of the k-th record handed to the writer. */
+    private final int[] writePositions;
+    private int         writeCount;
+    private int         parseErrorCount;
+
+    public IndexedBatch(List<QueueEnvelope> envelopes) {
+        int n = envelopes.size();
+        this.envelopes      = envelopes;
+        this.records        = new CanonicalMessageRecord[n];
+        this.parseErrors    = new String[n];
+        this.results        = new PersistenceRecordResult[n];
+        this.writePositions = new int[n];
+    }
+
+    public int size() { return envelopes.size(); }
+
+    public QueueEnvelope           envelope(int i)    { return envelopes.get(i); }
+    public CanonicalMessageRecord  record(int i)      { return records[i]; }
+    public PersistenceRecordResult result(int i)      { return results[i]; }
+    public String                  parseError(int i)  { return parseErrors[i]; }
+    public boolean                 isParseFailure(int i) { return records[i] == null && parseErrors[i] != null; }
+
+    public int getWriteCount()      { return writeCount; }
+    public int getParseErrorCount() { return parseErrorCount; }
+
+    /** Record a successfully parsed envelope; it will be handed to the writer. */
+    public void setRecord(int i, CanonicalMessageRecord record) {
+        records[i] = record;
+        writePositions[writeCount++] = i;
+    }
+
+    /** Record a parse failure; the envelope goes straight to the DLQ. */
+    public void setParseError(int i, String error) {
+        parseErrors[i] = error != null ? error : "parse error";
+        parseErrorCount++;
+    }
+
+    /** Parsed records in position order — the input for {@link PersistenceWriter#writeBatch}. */
+    public List<CanonicalMessageRecord> recordsToWrite() {
+        List<CanonicalMessageRecord> out = new ArrayList<>(writeCount);
+        for (int k = 0; k < writeCount; k++) {
+            out.add(records[writePositions[k]]);
+        }
+        return out;
+    }
+
+    /**
+     * Attach writer results by position.
+     *
+     * @throws IllegalStateException if the writer returned a different number
+     *         of results, or a result whose messageId does not match its slot
+     */
+    public void applyResults(List<PersistenceRecordResult> writeResults) {
+        if (writeResults.size() != writeCount) {
+            throw new IllegalStateException("writer returned " + writeResults.size()
+                + " results for " + writeCount + " records");
+        }
+        for (int k = 0; k < writeCount; k++) {
+            int pos = writePositions[k];
+            PersistenceRecordResult rr = writeResults.get(k);
+            if (!records[pos].getMessageId().equals(rr.getMessageId())) {
+                throw new IllegalStateException("result order mismatch at index " + k
+                    + ": expected messageId=" + records[pos].getMessageId()
+                    + " got " + rr.getMessageId());
+            }
+            results[pos] = rr;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedBatch{size=" + size() + ", parsed=" + writeCount
+            + ", parseErrors=" + parseErrorCount + "}";
+    }
+}
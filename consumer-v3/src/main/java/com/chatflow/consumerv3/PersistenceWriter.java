@@ -66,6 +66,9 @@ public class PersistenceWriter {
      * Transient failures are retried internally; after retries are exhausted
      * the record is returned as {@link FailureType#TERMINAL}.
      *
+     * <p>Results are returned in the same order as {@code records}, one per
+     * record — {@link IndexedBatch#applyResults} relies on this.
+     *
      * <p>Designed to run on a virtual thread.
      */
     public PersistenceBatchResult writeBatch(List<CanonicalMessageRecord> records) {
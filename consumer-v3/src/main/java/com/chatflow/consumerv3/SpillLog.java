@@ -0,0 +1,297 @@
+package com.chatflow.consumerv3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead spill log used while the {@link CircuitBreaker} is OPEN.
+ *
+ * <p>Instead of holding deliveries unacked in memory, {@link ConsumerV3App}
+ * appends each drained batch here and then acks it to RabbitMQ.  The
+ * {@link SpillReplayer} later drains the log into DynamoDB once the breaker
+ * closes.  Replay is safe to repeat: canonical writes are conditional, so a
+ * re-replayed record comes back as {@code DUPLICATE}.
+ *
+ * <h3>Layout</h3>
+ * <pre>
+ *   {dir}/spill-00000000000000000001.log   sealed   (replayable)
+ *   {dir}/spill-00000000000000000002.log   active   (memory-mapped, appending)
+ *
+ *   frame := int32 frameLen | int32 crc32 | int16 queueLen | queue UTF-8 | payload
+ *            (frameLen covers everything after the crc; a zero frameLen marks
+ *             the end of the written region — mapped files are zero-filled)
+ * </pre>
+ * Each segment is a fixed-size memory-mapped file; when the next frame does
+ * not fit, the segment is sealed and a new one is started.  On startup every
+ * segment already on disk is treated as sealed.
+ *
+ * <h3>Durability</h3>
+ * {@link FsyncPolicy#ALWAYS} forces the mapped region to disk before
+ * {@link #append} returns, so an ack implies the batch is on stable storage.
+ * {@link FsyncPolicy#INTERVAL} relies on the caller invoking
+ * {@link #syncIfDirty()} periodically (bounded loss window on host crash);
+ * {@link FsyncPolicy#NEVER} leaves flushing to the OS page cache.
+ *
+ * <p>Thread-safe: appends, seals and syncs serialise on one lock.  Sealed
+ * segments are immutable and read without the lock.
+ */
+public class SpillLog implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(SpillLog.class);
+
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".log";
+    /** frameLen + crc32. */
+    private static final int HEADER_BYTES = 8;
+
+    public enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER;
+
+        static FsyncPolicy parse(String v) {
+            try { return valueOf(v.trim().toUpperCase(Locale.ROOT)); }
+            catch (Exception e) { return ALWAYS; }
+        }
+    }
+
+    /** One spilled delivery, as read back from a sealed segment. */
+    public record Entry(String queueName, byte[] payload) {}
+
+    private final Path        dir;
+    private final long        segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long             nextSegmentSeq;
+    private Path             activePath;
+    private FileChannel      activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private boolean          dirty;
+
+    public SpillLog(Path dir, long segmentBytes, FsyncPolicy fsyncPolicy) throws IOException {
+        this.dir          = dir;
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.fsyncPolicy  = fsyncPolicy;
+        Files.createDirectories(dir);
+
+        List<Path> existing = listSegments(dir);
+        long maxSeq = 0;
+        for (Path p : existing) {
+            maxSeq = Math.max(maxSeq, segmentSeq(p));
+        }
+        this.nextSegmentSeq = maxSeq + 1;
+        log.info("SpillLog opened dir={} segmentBytes={} fsync={} existingSegments={}",
+            dir, this.segmentBytes, fsyncPolicy, existing.size());
+    }
+
+    /**
+     * Append a drained batch.  Returns only after the frames are written
+     * (and forced to disk under {@link FsyncPolicy#ALWAYS}); the caller may
+     * then ack the deliveries.
+     */
+    public void append(List<QueueEnvelope> batch) throws IOException {
+        lock.lock();
+        try {
+            for (QueueEnvelope env : batch) {
+                byte[] queue   = env.getQueueName().getBytes(StandardCharsets.UTF_8);
+                byte[] payload = env.getPayload();
+                int frameLen   = 2 + queue.length + payload.length;
+                int needed     = HEADER_BYTES + frameLen;
+
+                if (activeBuffer == null || activeBuffer.remaining() < needed + 4) {
+                    rotate(needed + 4);
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(queue);
+                crc.update(payload);
+
+                activeBuffer.putInt(frameLen);
+                activeBuffer.putInt((int) crc.getValue());
+                activeBuffer.putShort((short) queue.length);
+                activeBuffer.put(queue);
+                activeBuffer.put(payload);
+            }
+            dirty = true;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                activeBuffer.force();
+                dirty = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Force the active segment to disk if anything was appended since the last sync. */
+    public void syncIfDirty() {
+        lock.lock();
+        try {
+            if (dirty && activeBuffer != null) {
+                activeBuffer.force();
+                dirty = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seal the active segment if it holds any frames, so the replayer can
+     * pick it up.  The next append opens a fresh segment.
+     */
+    public void sealActive() throws IOException {
+        lock.lock();
+        try {
+            if (activeBuffer != null && activeBuffer.position() > 0) {
+                closeActive();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sealed segments in append order (oldest first). */
+    public List<Path> sealedSegments() throws IOException {
+        lock.lock();
+        try {
+            List<Path> out = new ArrayList<>();
+            for (Path p : listSegments(dir)) {
+                if (!p.equals(activePath)) out.add(p);
+            }
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@code true} if any sealed or active segment holds frames. */
+    public boolean hasPending() throws IOException {
+        lock.lock();
+        try {
+            if (activeBuffer != null && activeBuffer.position() > 0) return true;
+            for (Path p : listSegments(dir)) {
+                if (!p.equals(activePath)) return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read every intact frame of a sealed segment.  Reading stops at the
+     * first zero length or CRC mismatch (a torn write at crash time).
+     */
+    public static List<Entry> readSegment(Path segment) throws IOException {
+        List<Entry> out = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            while (buf.remaining() >= HEADER_BYTES) {
+                int frameLen = buf.getInt();
+                if (frameLen <= 0) break;
+                int expectedCrc = buf.getInt();
+                if (frameLen < 2 || frameLen > buf.remaining()) {
+                    log.warn("SpillLog: truncated frame in {} at offset {}", segment, buf.position() - HEADER_BYTES);
+                    break;
+                }
+                int queueLen = buf.getShort() & 0xFFFF;
+                if (queueLen > frameLen - 2) {
+                    log.warn("SpillLog: corrupt frame header in {}", segment);
+                    break;
+                }
+                byte[] queue   = new byte[queueLen];
+                byte[] payload = new byte[frameLen - 2 - queueLen];
+                buf.get(queue);
+                buf.get(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(queue);
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    log.warn("SpillLog: CRC mismatch in {} — stopping at frame {}", segment, out.size());
+                    break;
+                }
+                out.add(new Entry(new String(queue, StandardCharsets.UTF_8), payload));
+            }
+        }
+        return out;
+    }
+
+    /** Delete a fully replayed sealed segment. */
+    public void delete(Path segment) throws IOException {
+        Files.deleteIfExists(segment);
+        log.info("SpillLog: replayed and deleted {}", segment.getFileName());
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closeActive();
+        } catch (IOException e) {
+            log.warn("SpillLog close failed: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ── Segment management (lock held) ────────────────────────────────────────
+
+    private void rotate(int minBytes) throws IOException {
+        closeActive();
+        long size = Math.max(segmentBytes, minBytes);
+        activePath = dir.resolve(String.format("%s%020d%s", PREFIX, nextSegmentSeq++, SUFFIX));
+        activeChannel = FileChannel.open(activePath,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        log.info("SpillLog: opened segment {} ({} bytes)", activePath.getFileName(), size);
+    }
+
+    private void closeActive() throws IOException {
+        if (activeBuffer == null) return;
+        if (fsyncPolicy != FsyncPolicy.NEVER) activeBuffer.force();
+        int written = activeBuffer.position();
+        activeChannel.close();
+        if (written == 0) {
+            Files.deleteIfExists(activePath);
+        } else {
+            log.info("SpillLog: sealed segment {} ({} bytes used)", activePath.getFileName(), written);
+        }
+        activeBuffer  = null;
+        activeChannel = null;
+        activePath    = null;
+        dirty         = false;
+    }
+
+    private static List<Path> listSegments(Path dir) throws IOException {
+        List<Path> out = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) out.add(p);
+        }
+        out.sort((a, b) -> Long.compare(segmentSeq(a), segmentSeq(b)));
+        return out;
+    }
+
+    private static long segmentSeq(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
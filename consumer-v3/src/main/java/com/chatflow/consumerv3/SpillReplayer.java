@@ -0,0 +1,150 @@
+package com.chatflow.consumerv3;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drains the {@link SpillLog} into DynamoDB once the {@link CircuitBreaker}
+ * has closed.
+ *
+ * <p>Scheduled with a fixed delay on its own thread, so at most one replay
+ * pass runs at a time.  Each pass:
+ * <ol>
+ *   <li>returns immediately if the breaker is OPEN;</li>
+ *   <li>seals the active segment so it becomes replayable;</li>
+ *   <li>replays sealed segments oldest-first in chunks of {@code batchSize}
+ *       through the same mapper → writer → DLQ path as live traffic;</li>
+ *   <li>deletes a segment once every frame in it has been written or
+ *       DLQ'd.</li>
+ * </ol>
+ * A pass stops early (keeping its position in memory) when the breaker
+ * re-opens or a DLQ publish fails.  After a restart, replay starts again at
+ * the head of the oldest segment — already-written records come back as
+ * {@code DUPLICATE}.
+ */
+public class SpillReplayer implements Runnable {
+
+    private static final Logger log = LogManager.getLogger(SpillReplayer.class);
+
+    private final SpillLog               spillLog;
+    private final CanonicalMessageMapper mapper;
+    private final PersistenceWriter      writer;
+    private final DlqPublisher           dlqPublisher;
+    private final CircuitBreaker         breaker;
+    private final ConsumerMetrics        metrics;
+    private final int                    batchSize;
+
+    /** Segment currently being replayed, and the next frame index within it. */
+    private Path resumeSegment;
+    private int  resumeIndex;
+
+    public SpillReplayer(SpillLog spillLog, CanonicalMessageMapper mapper,
+                         PersistenceWriter writer, DlqPublisher dlqPublisher,
+                         CircuitBreaker breaker, ConsumerMetrics metrics, int batchSize) {
+        this.spillLog     = spillLog;
+        this.mapper       = mapper;
+        this.writer       = writer;
+        this.dlqPublisher = dlqPublisher;
+        this.breaker      = breaker;
+        this.metrics      = metrics;
+        this.batchSize    = Math.max(1, batchSize);
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (breaker.isOpen() || !spillLog.hasPending()) return;
+            spillLog.sealActive();
+
+            for (Path segment : spillLog.sealedSegments()) {
+                List<SpillLog.Entry> entries = SpillLog.readSegment(segment);
+                int start = segment.equals(resumeSegment) ? resumeIndex : 0;
+                if (start == 0) {
+                    log.info("SpillReplayer: replaying {} ({} frames)", segment.getFileName(), entries.size());
+                }
+
+                for (int i = start; i < entries.size(); i += batchSize) {
+                    if (breaker.isOpen()) {
+                        pause(segment, i, "circuit breaker re-opened");
+                        return;
+                    }
+                    List<SpillLog.Entry> chunk = entries.subList(i, Math.min(i + batchSize, entries.size()));
+                    if (!replayChunk(chunk)) {
+                        pause(segment, i, "DLQ publish failed");
+                        return;
+                    }
+                }
+
+                spillLog.delete(segment);
+                resumeSegment = null;
+                resumeIndex   = 0;
+            }
+        } catch (Exception e) {
+            // Never let an exception kill the scheduled task
+            log.error("SpillReplayer pass failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void pause(Path segment, int index, String reason) {
+        resumeSegment = segment;
+        resumeIndex   = index;
+        log.warn("SpillReplayer: paused at {}#{} — {}", segment.getFileName(), index, reason);
+    }
+
+    /**
+     * Replay one chunk.  Returns {@code false} if any failed record could not
+     * be handed to the DLQ, in which case the chunk is retried next pass.
+     */
+    private boolean replayChunk(List<SpillLog.Entry> chunk) {
+        List<DlqPublisher.Entry>     dlqEntries = new ArrayList<>();
+        List<CanonicalMessageRecord> records    = new ArrayList<>(chunk.size());
+        List<QueueEnvelope>          envelopes  = new ArrayList<>(chunk.size());
+
+        for (SpillLog.Entry e : chunk) {
+            // deliveryTag 0: the original delivery was acked when it was spilled
+            QueueEnvelope env = new QueueEnvelope(e.payload(), 0L, e.queueName(), e.queueName());
+            try {
+                records.add(mapper.fromEnvelope(env));
+                envelopes.add(env);
+            } catch (Exception ex) {
+                metrics.incParseFailures();
+                dlqEntries.add(new DlqPublisher.Entry(env, null, FailureType.PARSE_ERROR, ex.getMessage(), 0));
+            }
+        }
+
+        if (!records.isEmpty()) {
+            PersistenceBatchResult result = writer.writeBatch(records);
+            if (result.hasTerminalFailures()) breaker.recordFailure();
+            else                              breaker.recordSuccess();
+
+            List<PersistenceRecordResult> results = result.getResults();
+            for (int k = 0; k < results.size(); k++) {
+                PersistenceRecordResult rr = results.get(k);
+                switch (rr.getStatus()) {
+                    case SUCCESS   -> metrics.incRecordsWritten(1);
+                    case DUPLICATE -> metrics.incDuplicateMessages();
+                    case FAILURE   -> dlqEntries.add(new DlqPublisher.Entry(
+                        envelopes.get(k), records.get(k), rr.getFailureType(),
+                        rr.getErrorMessage(), rr.getRetryCount()));
+                }
+            }
+        }
+
+        if (!dlqEntries.isEmpty()) {
+            for (DlqPublishResult dr : dlqPublisher.publishBatch(dlqEntries)) {
+                if (dr.isFailure()) {
+                    metrics.incDlqPublishFailures();
+                    return false;
+                }
+                if (dr.isSuccess()) metrics.incDlqPublished();
+            }
+        }
+
+        metrics.incSpillReplayed(chunk.size());
+        return true;
+    }
+}
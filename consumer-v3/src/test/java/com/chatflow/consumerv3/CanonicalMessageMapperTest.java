@@ -101,6 +101,33 @@ class CanonicalMessageMapperTest {
         assertTrue(record.getIngestedAt() > eventTs);
     }
 
+    @Test
+    void fromProto_eventTsMs_preferredOverTimestampString() {
+        QueueChatMessage proto = QueueChatMessage.newBuilder()
+            .setMessageId("msg-006")
+            .setRoomId("room.1")
+            .setTimestamp("2020-01-01T00:00:00Z")
+            .setEventTsMs(1_700_000_000_000L)
+            .build();
+
+        CanonicalMessageRecord record = mapper.fromProto(proto);
+        assertEquals(1_700_000_000_000L, record.getEventTs());
+        assertEquals("2023-11-14", record.getDayBucket());
+    }
+
+    @Test
+    void fromProto_isoTimestamp_parsedNotDefaultedToNow() {
+        QueueChatMessage proto = QueueChatMessage.newBuilder()
+            .setMessageId("msg-007")
+            .setRoomId("room.1")
+            .setTimestamp("2023-11-14T22:13:20.000Z")
+            .build();
+
+        CanonicalMessageRecord record = mapper.fromProto(proto);
+        assertEquals(1_700_000_000_000L, record.getEventTs());
+        assertEquals("2023-11-14", record.getDayBucket());
+    }
+
     // ── fromEnvelope ──────────────────────────────────────────────────────────
 
     @Test
@@ -151,6 +178,35 @@ class CanonicalMessageMapperTest {
         assertTrue(result >= before && result <= after);
     }
 
+    @Test
+    void parseTimestamp_isoInstant_parsed() {
+        assertEquals(1_700_000_000_123L,
+            CanonicalMessageMapper.parseTimestamp("2023-11-14T22:13:20.123Z"));
+    }
+
+    @Test
+    void parseTimestamp_isoWithOffset_normalisedToUtc() {
+        assertEquals(1_700_000_000_000L,
+            CanonicalMessageMapper.parseTimestamp("2023-11-15T00:13:20+02:00"));
+    }
+
+    @Test
+    void toDayBucket_memoizedAcrossDays_staysCorrect() {
+        long day = 86_400_000L;
+        long base = 1_700_000_000_000L;
+        // Alternate across more days than the memo has slots
+        for (int i = 0; i < 20; i++) {
+            long ts = base + (i % 10) * day;
+            String expected = java.time.LocalDate.ofEpochDay(Math.floorDiv(ts, day)).toString();
+            assertEquals(expected, CanonicalMessageMapper.toDayBucket(ts));
+        }
+    }
+
+    @Test
+    void toDayBucket_preEpoch_usesFloorDivision() {
+        assertEquals("1969-12-31", CanonicalMessageMapper.toDayBucket(-1L));
+    }
+
     @Test
     void toDayBucket_knownEpoch_correctDate() {
         // 2023-11-14T22:13:20 UTC → day bucket 2023-11-14
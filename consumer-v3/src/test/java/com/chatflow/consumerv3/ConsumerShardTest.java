@@ -0,0 +1,52 @@
+package com.chatflow.consumerv3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumerShardTest {
+
+    // ── partitionRooms ────────────────────────────────────────────────────────
+
+    @Test
+    void partitionRooms_singleShard_getsAllRooms() {
+        List<List<Integer>> parts = ConsumerShard.partitionRooms(1, 5, 1);
+        assertEquals(1, parts.size());
+        assertEquals(List.of(1, 2, 3, 4, 5), parts.get(0));
+    }
+
+    @Test
+    void partitionRooms_roundRobin_acrossShards() {
+        List<List<Integer>> parts = ConsumerShard.partitionRooms(1, 7, 3);
+        assertEquals(3, parts.size());
+        assertEquals(List.of(1, 4, 7), parts.get(0));
+        assertEquals(List.of(2, 5),    parts.get(1));
+        assertEquals(List.of(3, 6),    parts.get(2));
+    }
+
+    @Test
+    void partitionRooms_moreShardsThanRooms_clampedToRoomCount() {
+        List<List<Integer>> parts = ConsumerShard.partitionRooms(10, 11, 8);
+        assertEquals(2, parts.size(), "no shard should be left without rooms");
+        assertEquals(List.of(10), parts.get(0));
+        assertEquals(List.of(11), parts.get(1));
+    }
+
+    @Test
+    void partitionRooms_nonPositiveShardCount_treatedAsOne() {
+        List<List<Integer>> parts = ConsumerShard.partitionRooms(1, 3, 0);
+        assertEquals(1, parts.size());
+        assertEquals(3, parts.get(0).size());
+    }
+
+    @Test
+    void partitionRooms_everyRoomAssignedExactlyOnce() {
+        List<List<Integer>> parts = ConsumerShard.partitionRooms(1, 20, 6);
+        long total = parts.stream().mapToLong(List::size).sum();
+        long distinct = parts.stream().flatMap(List::stream).distinct().count();
+        assertEquals(20, total);
+        assertEquals(20, distinct);
+    }
+}
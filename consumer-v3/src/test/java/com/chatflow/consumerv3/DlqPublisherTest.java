@@ -0,0 +1,185 @@
+package com.chatflow.consumerv3;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DlqPublisherTest {
+
+    /**
+     * Answers each SendMessageBatch from the entry ids: ids in {@code failIds}
+     * are reported failed, ids in {@code dropIds} are left out of the response,
+     * and a request holding {@code throwId} throws.  Every call waits on
+     * {@code inFlight} so a test can check that chunks were sent together.
+     */
+    private static final class FakeSqs implements SqsClient {
+        final List<SendMessageBatchRequest> requests = new ArrayList<>();
+        final CountDownLatch inFlight;
+        Set<String> failIds = Set.of();
+        Set<String> dropIds = Set.of();
+        String      throwId;
+
+        FakeSqs(int expectedConcurrentCalls) {
+            inFlight = new CountDownLatch(expectedConcurrentCalls);
+        }
+
+        @Override
+        public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest request) {
+            synchronized (requests) {
+                requests.add(request);
+            }
+            inFlight.countDown();
+            try {
+                inFlight.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            List<SendMessageBatchResultEntry> ok     = new ArrayList<>();
+            List<BatchResultErrorEntry>       failed = new ArrayList<>();
+            for (SendMessageBatchRequestEntry e : request.entries()) {
+                if (e.id().equals(throwId)) throw new IllegalStateException("sqs unavailable");
+                if (dropIds.contains(e.id())) continue;
+                if (failIds.contains(e.id())) {
+                    failed.add(BatchResultErrorEntry.builder()
+                        .id(e.id()).code("InvalidMessageContents").message("rejected").senderFault(true).build());
+                } else {
+                    ok.add(SendMessageBatchResultEntry.builder().id(e.id()).messageId("sqs-" + e.id()).build());
+                }
+            }
+            return SendMessageBatchResponse.builder().successful(ok).failed(failed).build();
+        }
+
+        @Override public String serviceName() { return "sqs"; }
+        @Override public void close() {}
+    }
+
+    private static List<DlqPublisher.Entry> entries(int n) {
+        List<DlqPublisher.Entry> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            QueueEnvelope env = new QueueEnvelope(new byte[]{(byte) i}, i, "room.1", "room.1");
+            out.add(new DlqPublisher.Entry(env, null, FailureType.TERMINAL, "write failed", 3));
+        }
+        return out;
+    }
+
+    // ── planChunks ────────────────────────────────────────────────────────────
+
+    @Test
+    void planChunks_splitsAtEntryLimit() {
+        int[] sizes = new int[23];
+        Arrays.fill(sizes, 100);
+
+        List<int[]> chunks = DlqPublisher.planChunks(sizes, 10, 256 * 1024);
+        assertEquals(3, chunks.size());
+        assertEquals(10, chunks.get(0).length);
+        assertEquals(10, chunks.get(1).length);
+        assertEquals(3,  chunks.get(2).length);
+        assertEquals(20, chunks.get(2)[0]);
+    }
+
+    @Test
+    void planChunks_splitsAtByteLimit() {
+        int[] sizes = {400, 400, 400, 400};
+        List<int[]> chunks = DlqPublisher.planChunks(sizes, 10, 1_000);
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new int[]{0, 1}, chunks.get(0));
+        assertArrayEquals(new int[]{2, 3}, chunks.get(1));
+    }
+
+    @Test
+    void planChunks_oversizedEntry_getsOwnChunk() {
+        int[] sizes = {100, 5_000, 100};
+        List<int[]> chunks = DlqPublisher.planChunks(sizes, 10, 1_000);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new int[]{1}, chunks.get(1));
+    }
+
+    @Test
+    void planChunks_skipsNegativeSizes() {
+        int[] sizes = {100, -1, 100};
+        List<int[]> chunks = DlqPublisher.planChunks(sizes, 10, 1_000);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new int[]{0, 2}, chunks.get(0));
+    }
+
+    // ── publishBatch ──────────────────────────────────────────────────────────
+
+    @Test
+    void publishBatch_disabled_returnsDisabledPerEntry() {
+        DlqPublisher publisher = new DlqPublisher(null, "");
+        QueueEnvelope env = new QueueEnvelope(new byte[]{1, 2}, 7L, "room.1", "room.1");
+
+        List<DlqPublishResult> results = publisher.publishBatch(List.of(
+            new DlqPublisher.Entry(env, null, FailureType.PARSE_ERROR, "bad", 0),
+            new DlqPublisher.Entry(env, null, FailureType.PARSE_ERROR, "bad", 0)));
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(DlqPublishResult::isDisabled));
+    }
+
+    @Test
+    void publishBatch_empty_returnsEmpty() {
+        DlqPublisher publisher = new DlqPublisher(null, "");
+        assertTrue(publisher.publishBatch(List.of()).isEmpty());
+    }
+
+    @Test
+    void publishBatch_perEntryOutcomes_mappedBackToBatchPositions() {
+        FakeSqs sqs = new FakeSqs(3);
+        sqs.failIds = Set.of("3", "14", "24");
+        sqs.dropIds = Set.of("7");
+        DlqPublisher publisher = new DlqPublisher(sqs, "https://sqs.local/dlq");
+
+        List<DlqPublishResult> results = publisher.publishBatch(entries(25));
+
+        assertEquals(0, sqs.inFlight.getCount(), "the three chunks were sent concurrently");
+        assertEquals(3, sqs.requests.size());
+        assertTrue(sqs.requests.stream().allMatch(r -> r.entries().size() <= DlqPublisher.SQS_BATCH_LIMIT));
+        assertEquals(25, results.size());
+        for (int i = 0; i < 25; i++) {
+            DlqPublishResult r = results.get(i);
+            if (i == 3 || i == 14 || i == 24) {
+                assertTrue(r.isFailure(), "entry " + i);
+                assertEquals("InvalidMessageContents: rejected", r.getErrorMessage());
+            } else if (i == 7) {
+                assertTrue(r.isFailure(), "entry missing from the response is not a success");
+            } else {
+                assertTrue(r.isSuccess(), "entry " + i);
+            }
+        }
+    }
+
+    @Test
+    void publishBatch_chunkThrows_failsOnlyThatChunk() {
+        FakeSqs sqs = new FakeSqs(3);
+        sqs.throwId = "12";
+        DlqPublisher publisher = new DlqPublisher(sqs, "https://sqs.local/dlq");
+
+        List<DlqPublishResult> results = publisher.publishBatch(entries(25));
+
+        assertEquals(25, results.size());
+        for (int i = 0; i < 25; i++) {
+            DlqPublishResult r = results.get(i);
+            if (i >= 10 && i < 20) {
+                assertTrue(r.isFailure(), "entry " + i + " was in the failed chunk");
+                assertEquals("sqs unavailable", r.getErrorMessage());
+            } else {
+                assertTrue(r.isSuccess(), "entry " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.chatflow.consumerv3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedBatchTest {
+
+    private static QueueEnvelope envelope(long tag) {
+        return new QueueEnvelope(new byte[0], tag, "room.1", "room.1");
+    }
+
+    private static CanonicalMessageRecord record(String messageId) {
+        CanonicalMessageRecord r = new CanonicalMessageRecord();
+        r.setMessageId(messageId);
+        return r;
+    }
+
+    private static IndexedBatch batchOf(int n) {
+        QueueEnvelope[] envs = new QueueEnvelope[n];
+        for (int i = 0; i < n; i++) envs[i] = envelope(i + 1);
+        return new IndexedBatch(List.of(envs));
+    }
+
+    // ── recordsToWrite ────────────────────────────────────────────────────────
+
+    @Test
+    void recordsToWrite_skipsParseFailures_inPositionOrder() {
+        IndexedBatch batch = batchOf(4);
+        batch.setRecord(0, record("a"));
+        batch.setParseError(1, "bad bytes");
+        batch.setRecord(2, record("c"));
+        batch.setRecord(3, record("d"));
+
+        List<CanonicalMessageRecord> toWrite = batch.recordsToWrite();
+        assertEquals(3, toWrite.size());
+        assertEquals("a", toWrite.get(0).getMessageId());
+        assertEquals("c", toWrite.get(1).getMessageId());
+        assertEquals("d", toWrite.get(2).getMessageId());
+        assertEquals(1, batch.getParseErrorCount());
+        assertTrue(batch.isParseFailure(1));
+        assertFalse(batch.isParseFailure(0));
+    }
+
+    // ── applyResults ──────────────────────────────────────────────────────────
+
+    @Test
+    void applyResults_mapsResultsBackToEnvelopePositions() {
+        IndexedBatch batch = batchOf(3);
+        batch.setParseError(0, "bad");
+        batch.setRecord(1, record("m1"));
+        batch.setRecord(2, record("m2"));
+
+        batch.applyResults(List.of(
+            PersistenceRecordResult.success("m1"),
+            PersistenceRecordResult.terminalFailure("m2", "boom", 3)));
+
+        assertNull(batch.result(0));
+        assertTrue(batch.result(1).isSuccess());
+        assertTrue(batch.result(2).isTerminalFailure());
+        assertEquals(3L, batch.envelope(2).getDeliveryTag());
+    }
+
+    @Test
+    void applyResults_duplicateMessageIdsInBatch_keepDistinctSlots() {
+        IndexedBatch batch = batchOf(2);
+        batch.setRecord(0, record("same"));
+        batch.setRecord(1, record("same"));
+
+        batch.applyResults(List.of(
+            PersistenceRecordResult.success("same"),
+            PersistenceRecordResult.duplicate("same")));
+
+        assertTrue(batch.result(0).isSuccess());
+        assertTrue(batch.result(1).isDuplicate());
+    }
+
+    @Test
+    void applyResults_sizeMismatch_throws() {
+        IndexedBatch batch = batchOf(2);
+        batch.setRecord(0, record("a"));
+        batch.setRecord(1, record("b"));
+
+        assertThrows(IllegalStateException.class,
+            () -> batch.applyResults(List.of(PersistenceRecordResult.success("a"))));
+    }
+
+    @Test
+    void applyResults_orderMismatch_throws() {
+        IndexedBatch batch = batchOf(2);
+        batch.setRecord(0, record("a"));
+        batch.setRecord(1, record("b"));
+
+        assertThrows(IllegalStateException.class, () -> batch.applyResults(List.of(
+            PersistenceRecordResult.success("b"),
+            PersistenceRecordResult.success("a"))));
+    }
+}
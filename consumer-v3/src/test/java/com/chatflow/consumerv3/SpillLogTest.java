@@ -0,0 +1,121 @@
+package com.chatflow.consumerv3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillLogTest {
+
+    @TempDir
+    Path dir;
+
+    private static QueueEnvelope envelope(long tag, String queue, byte[] payload) {
+        return new QueueEnvelope(payload, tag, queue, queue);
+    }
+
+    // ── append / seal / read ──────────────────────────────────────────────────
+
+    @Test
+    void append_thenSeal_framesReadBackInOrder() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.ALWAYS)) {
+            spill.append(List.of(
+                envelope(1, "room.1", new byte[]{1, 2, 3}),
+                envelope(2, "room.2", new byte[]{4})));
+            assertTrue(spill.hasPending());
+            assertTrue(spill.sealedSegments().isEmpty(), "active segment is not yet sealed");
+
+            spill.sealActive();
+            List<Path> sealed = spill.sealedSegments();
+            assertEquals(1, sealed.size());
+
+            List<SpillLog.Entry> entries = SpillLog.readSegment(sealed.get(0));
+            assertEquals(2, entries.size());
+            assertEquals("room.1", entries.get(0).queueName());
+            assertArrayEquals(new byte[]{1, 2, 3}, entries.get(0).payload());
+            assertEquals("room.2", entries.get(1).queueName());
+            assertArrayEquals(new byte[]{4}, entries.get(1).payload());
+        }
+    }
+
+    @Test
+    void append_segmentFull_rotatesToNewSegment() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 64 * 1024, SpillLog.FsyncPolicy.NEVER)) {
+            byte[] payload = new byte[20_000];
+            for (int i = 0; i < 5; i++) {
+                spill.append(List.of(envelope(i, "room.1", payload)));
+            }
+            spill.sealActive();
+
+            List<Path> sealed = spill.sealedSegments();
+            assertTrue(sealed.size() >= 2, "5 x 20KB frames cannot fit one 64KB segment");
+            int total = 0;
+            for (Path p : sealed) total += SpillLog.readSegment(p).size();
+            assertEquals(5, total);
+        }
+    }
+
+    @Test
+    void delete_removesSegment_andClearsPending() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.ALWAYS)) {
+            spill.append(List.of(envelope(1, "room.1", new byte[]{9})));
+            spill.sealActive();
+            spill.delete(spill.sealedSegments().get(0));
+            assertFalse(spill.hasPending());
+        }
+    }
+
+    // ── Recovery ──────────────────────────────────────────────────────────────
+
+    @Test
+    void reopen_existingSegmentsAreSealed_andNewSegmentsSortAfter() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.ALWAYS)) {
+            spill.append(List.of(envelope(1, "room.1", new byte[]{1})));
+        }
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.ALWAYS)) {
+            assertEquals(1, spill.sealedSegments().size(), "segment from previous run is replayable");
+            spill.append(List.of(envelope(2, "room.1", new byte[]{2})));
+            spill.sealActive();
+
+            List<Path> sealed = spill.sealedSegments();
+            assertEquals(2, sealed.size());
+            assertArrayEquals(new byte[]{1}, SpillLog.readSegment(sealed.get(0)).get(0).payload());
+            assertArrayEquals(new byte[]{2}, SpillLog.readSegment(sealed.get(1)).get(0).payload());
+        }
+    }
+
+    @Test
+    void readSegment_corruptTail_stopsAtLastIntactFrame() throws Exception {
+        Path segment;
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.ALWAYS)) {
+            spill.append(List.of(
+                envelope(1, "room.1", new byte[]{1, 1}),
+                envelope(2, "room.1", new byte[]{2, 2})));
+            spill.sealActive();
+            segment = spill.sealedSegments().get(0);
+        }
+
+        // Flip the last payload byte of the second frame → CRC mismatch
+        int firstFrame = 8 + 2 + "room.1".length() + 2;
+        int lastByte   = firstFrame + 8 + 2 + "room.1".length() + 1;
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{(byte) 0x7F}), lastByte);
+        }
+
+        List<SpillLog.Entry> entries = SpillLog.readSegment(segment);
+        assertEquals(1, entries.size());
+        assertArrayEquals(new byte[]{1, 1}, entries.get(0).payload());
+    }
+
+    @Test
+    void fsyncPolicy_parse_unknownFallsBackToAlways() {
+        assertEquals(SpillLog.FsyncPolicy.INTERVAL, SpillLog.FsyncPolicy.parse("interval"));
+        assertEquals(SpillLog.FsyncPolicy.ALWAYS,   SpillLog.FsyncPolicy.parse("bogus"));
+    }
+}
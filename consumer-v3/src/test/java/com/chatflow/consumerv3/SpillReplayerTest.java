@@ -0,0 +1,145 @@
+package com.chatflow.consumerv3;
+
+import com.chatflow.protocol.proto.QueueChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpillReplayerTest {
+
+    @TempDir
+    Path dir;
+
+    /** Records written messageIds in order; {@code afterPut} sees the running count. */
+    private static final class FakeDynamo implements DynamoDbClient {
+        final List<String> written = new ArrayList<>();
+        IntConsumer afterPut = n -> {};
+
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            written.add(request.item().get("messageId").s());
+            afterPut.accept(written.size());
+            return PutItemResponse.builder().build();
+        }
+
+        @Override public String serviceName() { return "dynamodb"; }
+        @Override public void close() {}
+    }
+
+    /** Breaker the test opens and closes directly. */
+    private static final class SwitchBreaker extends CircuitBreaker {
+        volatile boolean open;
+
+        SwitchBreaker() { super(true, 1, 60_000); }
+
+        @Override public boolean isOpen() { return open; }
+    }
+
+    private final FakeDynamo    dynamo  = new FakeDynamo();
+    private final SwitchBreaker breaker = new SwitchBreaker();
+
+    private SpillReplayer replayer(SpillLog spill, int batchSize) {
+        ConsumerMetrics metrics = new ConsumerMetrics();
+        PersistenceWriter writer = new PersistenceWriter(
+            dynamo, "messages_by_id", 1, new RetryPolicy(1, 1, 0), metrics);
+        return new SpillReplayer(spill, new CanonicalMessageMapper(), writer,
+            new DlqPublisher(null, ""), breaker, metrics, batchSize);
+    }
+
+    /** Append one batch and seal it, so each call makes one segment. */
+    private static void spillSegment(SpillLog spill, String... messageIds) throws Exception {
+        List<QueueEnvelope> batch = new ArrayList<>();
+        for (String id : messageIds) {
+            byte[] payload = QueueChatMessage.newBuilder()
+                .setMessageId(id)
+                .setRoomId("room.1")
+                .setEventTsMs(1_700_000_000_000L)
+                .build()
+                .toByteArray();
+            batch.add(new QueueEnvelope(payload, 1L, "room.1", "room.1"));
+        }
+        spill.append(batch);
+        spill.sealActive();
+    }
+
+    // ── Order and deletion ────────────────────────────────────────────────────
+
+    @Test
+    void run_replaysSegmentsOldestFirst_andDeletesThem() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.NEVER)) {
+            spillSegment(spill, "a1", "a2");
+            spillSegment(spill, "b1");
+            spillSegment(spill, "c1", "c2");
+
+            replayer(spill, 2).run();
+
+            assertEquals(List.of("a1", "a2", "b1", "c1", "c2"), dynamo.written);
+            assertTrue(spill.sealedSegments().isEmpty());
+            assertFalse(spill.hasPending());
+        }
+    }
+
+    @Test
+    void segment_deletedOnlyOnceFullyReplayed() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.NEVER)) {
+            spillSegment(spill, "a1", "a2", "a3");
+            spillSegment(spill, "b1", "b2");
+            List<Path> segments = spill.sealedSegments();
+            // Open the breaker once the first segment is done and b1 is written
+            dynamo.afterPut = n -> { if (n == 4) breaker.open = true; };
+
+            replayer(spill, 1).run();
+
+            assertEquals(List.of("a1", "a2", "a3", "b1"), dynamo.written);
+            assertEquals(List.of(segments.get(1)), spill.sealedSegments(),
+                "fully replayed segment deleted, partly replayed one kept");
+        }
+    }
+
+    // ── Breaker and resume ────────────────────────────────────────────────────
+
+    @Test
+    void breakerReopened_stopsPassMidSegment() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.NEVER)) {
+            spillSegment(spill, "m1", "m2", "m3", "m4", "m5");
+            spillSegment(spill, "n1");
+            dynamo.afterPut = n -> { if (n == 2) breaker.open = true; };
+            SpillReplayer replayer = replayer(spill, 2);
+
+            replayer.run();
+            assertEquals(List.of("m1", "m2"), dynamo.written, "no chunk started after the breaker opened");
+            assertEquals(2, spill.sealedSegments().size());
+
+            replayer.run();
+            assertEquals(2, dynamo.written.size(), "pass skipped while the breaker is open");
+        }
+    }
+
+    @Test
+    void nextPass_resumesAfterLastReplayedChunk() throws Exception {
+        try (SpillLog spill = new SpillLog(dir, 1024 * 1024, SpillLog.FsyncPolicy.NEVER)) {
+            spillSegment(spill, "m1", "m2", "m3", "m4", "m5");
+            spillSegment(spill, "n1");
+            dynamo.afterPut = n -> { if (n == 2) breaker.open = true; };
+            SpillReplayer replayer = replayer(spill, 2);
+            replayer.run();
+
+            dynamo.afterPut = n -> {};
+            breaker.open = false;
+            replayer.run();
+
+            assertEquals(List.of("m1", "m2", "m3", "m4", "m5", "n1"), dynamo.written,
+                "replayed frames are not written again");
+            assertFalse(spill.hasPending());
+        }
+    }
+}
@@ -14,6 +14,10 @@ export CHATFLOW_V3_RABBIT_PASSWORD="guest"
 export CHATFLOW_V3_RABBIT_VHOST="/"
 export CHATFLOW_V3_RABBIT_EXCHANGE="chat.exchange"
 export CHATFLOW_V3_RABBIT_PREFETCH="200"
+# Consumption shards: rooms are partitioned across CHANNELS channels, spread
+# round-robin over CONNECTIONS connections.  PREFETCH applies per channel.
+export CHATFLOW_V3_RABBIT_CONNECTIONS="2"
+export CHATFLOW_V3_RABBIT_CHANNELS="4"
 
 # ── DynamoDB ──────────────────────────────────────────────────────────────────
 export CHATFLOW_V3_DYNAMO_REGION="us-east-1"
@@ -22,6 +26,8 @@ export CHATFLOW_V3_DYNAMO_TABLE_CANONICAL="messages_by_id"
 # ── SQS DLQ ───────────────────────────────────────────────────────────────────
 # Obtain from Terraform output: sqs_dlq_url
 export CHATFLOW_V3_SQS_DLQ_URL="https://sqs.us-east-1.amazonaws.com/123456789012/chatflow-consumer-v3-dlq"
+# Max concurrent SQS SendMessageBatch calls from the DLQ publisher
+export CHATFLOW_V3_DLQ_CONCURRENCY="16"
 
 # ── Batch / flush ─────────────────────────────────────────────────────────────
 export CHATFLOW_V3_BATCH_SIZE="100"
@@ -41,6 +47,18 @@ export CHATFLOW_V3_CB_FAILURE_THRESHOLD="5"
 # Stay open for this many ms before auto-resetting to CLOSED
 export CHATFLOW_V3_CB_OPEN_MS="30000"
 
+# ── Spill log ─────────────────────────────────────────────────────────────────
+# When enabled, batches drained while the breaker is OPEN are appended to a
+# local memory-mapped log and acked; a background replayer writes them to
+# DynamoDB once the breaker closes.  Put SPILL_DIR on a persistent volume.
+export CHATFLOW_V3_SPILL_ENABLED="false"
+export CHATFLOW_V3_SPILL_DIR="/var/lib/chatflow/consumer-v3/spill"
+export CHATFLOW_V3_SPILL_SEGMENT_BYTES="67108864"
+# ALWAYS: fsync before every ack | INTERVAL: fsync every SPILL_FSYNC_INTERVAL_MS | NEVER
+export CHATFLOW_V3_SPILL_FSYNC="ALWAYS"
+export CHATFLOW_V3_SPILL_FSYNC_INTERVAL_MS="100"
+export CHATFLOW_V3_SPILL_REPLAY_INTERVAL_MS="1000"
+
 # ── Observability ─────────────────────────────────────────────────────────────
 export CHATFLOW_V3_METRICS_PORT="8091"
 export CHATFLOW_V3_METRICS_LOG_INTERVAL_MS="30000"
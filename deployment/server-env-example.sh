@@ -3,6 +3,8 @@
 
 export CHATFLOW_SERVER_ID="server-1"
 export CHATFLOW_INTERNAL_TOKEN="replace-with-shared-secret"
+# Serve /api/* and /internal/broadcast over HTTP/2 cleartext (h2c) as well
+export CHATFLOW_HTTP2_CLEARTEXT="false"
 
 export CHATFLOW_RABBIT_HOST="rabbitmq-host"
 export CHATFLOW_RABBIT_PORT="5672"
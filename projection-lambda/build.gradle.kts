@@ -46,6 +46,21 @@ dependencies {
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+// Local pipeline runner (src/local): drives both handlers against in-memory
+// DynamoDB / SQS / Redis stand-ins.  Not part of the Lambda jar.
+val local by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets.main.get().runtimeClasspath
+}
+
+tasks.register<JavaExec>("runLocalPipeline") {
+    group = "application"
+    description = "Benchmark the CDC projection pipeline in-process (see LocalPipelineRunner)"
+    classpath = local.runtimeClasspath
+    mainClass.set("com.chatflow.cdc.LocalPipelineRunner")
+    javaLauncher.set(javaToolchains.launcherFor(java.toolchain))
+}
+
 tasks.test {
     useJUnitPlatform()
 }
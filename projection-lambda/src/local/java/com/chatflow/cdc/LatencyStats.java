@@ -0,0 +1,58 @@
+package com.chatflow.cdc;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Thread-safe latency sample collector for the local pipeline runner.
+ * Samples are kept raw (nanoseconds) and sorted once at report time, so
+ * percentiles are exact rather than bucketed.
+ */
+final class LatencyStats {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int    count;
+
+    LatencyStats(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    static String header() {
+        return String.format(Locale.ROOT, "  %-26s %9s %9s %9s %9s %9s",
+            "stage", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    }
+
+    /** One report row: count, p50, p90, p99 and max in milliseconds. */
+    synchronized String row() {
+        if (count == 0) {
+            return String.format(Locale.ROOT, "  %-26s %9d %9s %9s %9s %9s", name, 0, "-", "-", "-", "-");
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "  %-26s %9d %9.2f %9.2f %9.2f %9.2f", name, count,
+            ms(percentile(sorted, 50)), ms(percentile(sorted, 90)),
+            ms(percentile(sorted, 99)), ms(sorted[count - 1]));
+    }
+
+    /** Nearest-rank percentile over an ascending array. */
+    static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,166 @@
+package com.chatflow.cdc;
+
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent.DynamodbStreamRecord;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Stand-in for a DynamoDB Streams shard: hands out stream records in order,
+ * up to a batch size per poll, the way the Lambda event source mapping does.
+ *
+ * <h3>Sources</h3>
+ * <ul>
+ *   <li>{@link #generated}: synthetic canonical messages, produced lazily so
+ *       large runs do not hold the whole log in memory.  Users are skewed
+ *       (a few hot senders), rooms are uniform, timestamps advance ~1 ms per
+ *       message and {@code ingestedAt} trails {@code eventTs} by 20-120 ms.</li>
+ *   <li>{@link #file}: one JSON object per line holding the canonical
+ *       attributes ({@code messageId, roomId, userId, username, message,
+ *       messageType, roomSequence, eventTs, ingestedAt, dayBucket}).  String
+ *       values become {@code S}, numbers become {@code N}.  An optional
+ *       {@code eventName} field (default {@code INSERT}) lets a log include
+ *       MODIFY/REMOVE records.  The file is read to EOF as it is polled.</li>
+ * </ul>
+ */
+abstract class LocalChangeLog implements AutoCloseable {
+
+    private long sequence;
+
+    /** Next records in log order; empty once the log is exhausted. */
+    final List<DynamodbStreamRecord> poll(int max) {
+        List<DynamodbStreamRecord> out = new ArrayList<>(max);
+        while (out.size() < max) {
+            Map<String, Object> attrs = next();
+            if (attrs == null) {
+                break;
+            }
+            Object eventName = attrs.remove("eventName");
+            out.add(record(eventName != null ? eventName.toString() : "INSERT", attrs));
+        }
+        return out;
+    }
+
+    /** Canonical attributes of the next change, or {@code null} at end of log. */
+    abstract Map<String, Object> next();
+
+    @Override
+    public void close() {
+    }
+
+    private DynamodbStreamRecord record(String eventName, Map<String, Object> attrs) {
+        String seq = String.format("%021d", ++sequence);
+        Map<String, AttributeValue> image = new HashMap<>(attrs.size() * 2);
+        attrs.forEach((k, v) -> {
+            AttributeValue av = new AttributeValue();
+            if (v instanceof Number) {
+                av.setN(v.toString());
+            } else {
+                av.setS(String.valueOf(v));
+            }
+            image.put(k, av);
+        });
+
+        StreamRecord sr = new StreamRecord();
+        sr.setSequenceNumber(seq);
+        sr.setNewImage(image);
+
+        DynamodbStreamRecord rec = new DynamodbStreamRecord();
+        rec.setEventName(eventName);
+        rec.setEventID("local-" + seq);
+        rec.setDynamodb(sr);
+        return rec;
+    }
+
+    // -- Generated ------------------------------------------------------------
+
+    static LocalChangeLog generated(int records, int rooms, int users, long seed) {
+        return new LocalChangeLog() {
+            private final Random random = new Random(seed);
+            private final long[] roomSeq = new long[Math.max(1, rooms)];
+            private long eventTs = 1_735_689_600_000L; // 2025-01-01T00:00:00Z
+            private int  emitted;
+
+            @Override
+            Map<String, Object> next() {
+                if (emitted >= records) {
+                    return null;
+                }
+                emitted++;
+                double r = random.nextDouble();
+                int user = (int) (Math.max(1, users) * r * r);
+                int room = random.nextInt(roomSeq.length);
+                eventTs += random.nextInt(3);
+
+                Map<String, Object> attrs = new HashMap<>(16);
+                attrs.put("messageId",    new UUID(random.nextLong(), random.nextLong()).toString());
+                attrs.put("roomId",       "room-" + room);
+                attrs.put("userId",       "user-" + user);
+                attrs.put("username",     "user" + user);
+                attrs.put("message",      "local pipeline message " + emitted);
+                attrs.put("messageType",  "TEXT");
+                attrs.put("roomSequence", ++roomSeq[room]);
+                attrs.put("eventTs",      eventTs);
+                attrs.put("ingestedAt",   eventTs + 20 + random.nextInt(100));
+                attrs.put("dayBucket",    LocalDate.ofEpochDay(Math.floorDiv(eventTs, 86_400_000L)).toString());
+                return attrs;
+            }
+        };
+    }
+
+    // -- File-backed ----------------------------------------------------------
+
+    static LocalChangeLog file(Path path) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        ObjectMapper mapper = new ObjectMapper();
+        return new LocalChangeLog() {
+            @Override
+            Map<String, Object> next() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        Map<String, Object> attrs = new HashMap<>(16);
+                        Iterator<Map.Entry<String, JsonNode>> fields = mapper.readTree(line).fields();
+                        while (fields.hasNext()) {
+                            Map.Entry<String, JsonNode> f = fields.next();
+                            JsonNode v = f.getValue();
+                            attrs.put(f.getKey(), v.isNumber() ? v.numberValue() : v.asText());
+                        }
+                        return attrs;
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read change log " + path, e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // read-only; nothing to flush
+                }
+            }
+        };
+    }
+}
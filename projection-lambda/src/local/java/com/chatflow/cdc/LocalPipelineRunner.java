@@ -0,0 +1,217 @@
+package com.chatflow.cdc;
+
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent.DynamodbStreamRecord;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the whole CDC projection pipeline in one JVM against in-memory stores:
+ *
+ * <pre>
+ *   LocalChangeLog --(stream batch)--> CdcProjectorHandler.processEvent
+ *        --> LocalDynamoDb (room_messages, user_messages, user_rooms)
+ *        --> LocalSqs --(SQS batch)--> RedisAnalyticsHandler.processEvent
+ *        --> LocalRedis (analytics script stand-in)
+ * </pre>
+ *
+ * The projector runs on the main thread like a single stream shard; analytics
+ * consumers poll the local queue concurrently like Lambda B's SQS pollers.
+ * The production classes ({@link ProjectionWriter}, {@link SqsPublisher},
+ * {@link RedisAnalytics}) are used unchanged through their package-private
+ * constructors, so a throughput change in any of them shows up here.
+ *
+ * <h3>Usage</h3>
+ * <pre>
+ *   ./gradlew :projection-lambda:runLocalPipeline --args="--records=200000 --encoding=packed"
+ *
+ *   --records=N               generated records (default 100000)
+ *   --rooms=N --users=N       generated key space (default 20 / 5000)
+ *   --seed=N                  generator seed (default 42)
+ *   --change-log=FILE         replay a JSON-lines change log instead of generating
+ *   --stream-batch=N          records per projector invocation (default 100)
+ *   --sqs-batch=N             messages per analytics invocation (default 10)
+ *   --analytics-consumers=N   concurrent analytics invocations (default 2)
+ *   --encoding=json|packed    SQS analytics encoding (default json)
+ *   --write-concurrency=N     PROJECTION_WRITE_CONCURRENCY (default 16)
+ *   --sqs-concurrency=N       SQS_SEND_CONCURRENCY (default 16)
+ *   --redis-chunk=N           REDIS_ANALYTICS_CHUNK_SIZE (default 500)
+ *   --active-users=set|hll|both
+ *   --dynamo-latency-ms=F     simulated round trip per call (default 4)
+ *   --sqs-latency-ms=F        (default 6)
+ *   --redis-latency-ms=F      (default 0.5)
+ *   --log-level=LEVEL         pipeline log level (default warn)
+ * </pre>
+ *
+ * Leave {@code REDIS_ENDPOINT} and {@code SQS_ANALYTICS_QUEUE_URL} unset: the
+ * handlers' static initialisers read the environment and would otherwise
+ * open real connections.
+ */
+public final class LocalPipelineRunner {
+
+    private static final String ROOM_MESSAGES = "room_messages";
+    private static final String USER_MESSAGES = "user_messages";
+    private static final String USER_ROOMS    = "user_rooms";
+
+    private LocalPipelineRunner() {
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> opts = parseArgs(argv);
+        Configurator.setRootLevel(Level.toLevel(opts.getOrDefault("log-level", "warn"), Level.WARN));
+
+        int     records     = intOpt(opts, "records", 100_000);
+        int     streamBatch = Math.max(1, intOpt(opts, "stream-batch", 100));
+        int     sqsBatch    = Math.max(1, intOpt(opts, "sqs-batch", 10));
+        int     consumers   = Math.max(1, intOpt(opts, "analytics-consumers", 2));
+        boolean packed      = "packed".equalsIgnoreCase(opts.getOrDefault("encoding", "json"));
+
+        Map<String, Long> projectedAt = new ConcurrentHashMap<>();
+        LatencyStats endToEnd  = new LatencyStats("end-to-end per record");
+        LatencyStats projector = new LatencyStats("projector invocation");
+        LatencyStats analytics = new LatencyStats("analytics invocation");
+
+        LocalStores.LocalDynamoDb dynamo = new LocalStores.LocalDynamoDb(nanosOpt(opts, "dynamo-latency-ms", 4.0));
+        LocalStores.LocalSqs      sqs    = new LocalStores.LocalSqs(nanosOpt(opts, "sqs-latency-ms", 6.0));
+        LocalStores.LocalRedis    redis  = new LocalStores.LocalRedis(nanosOpt(opts, "redis-latency-ms", 0.5), id -> {
+            Long start = projectedAt.remove(id);
+            if (start != null) {
+                endToEnd.record(System.nanoTime() - start);
+            }
+        });
+
+        ProjectionWriter writer = new ProjectionWriter(dynamo, ROOM_MESSAGES, USER_MESSAGES, USER_ROOMS,
+            intOpt(opts, "write-concurrency", 16));
+        SqsPublisher publisher = new SqsPublisher(sqs, "local://analytics", packed,
+            SqsPublisher.MAX_PACKED_BODY_CHARS, intOpt(opts, "sqs-concurrency", 16));
+        RedisAnalytics redisAnalytics = new RedisAnalytics(redis, 3600, intOpt(opts, "redis-chunk", 500),
+            RedisAnalytics.ActiveUsersMode.parse(opts.getOrDefault("active-users", "set")));
+
+        AtomicLong projectorFailures = new AtomicLong();
+        AtomicLong analyticsFailures = new AtomicLong();
+        AtomicLong polled            = new AtomicLong();
+        AtomicBoolean producerDone   = new AtomicBoolean();
+
+        List<Thread> pollers = new ArrayList<>(consumers);
+        for (int i = 0; i < consumers; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (true) {
+                        List<SQSMessage> batch = sqs.receive(sqsBatch, 20);
+                        if (batch.isEmpty()) {
+                            // producerDone is set only after every send has returned,
+                            // so an empty queue seen after it means fully drained
+                            if (producerDone.get() && sqs.isEmpty()) {
+                                return;
+                            }
+                            continue;
+                        }
+                        SQSEvent event = new SQSEvent();
+                        event.setRecords(batch);
+                        long start = System.nanoTime();
+                        SQSBatchResponse resp = RedisAnalyticsHandler.processEvent(event, redisAnalytics);
+                        analytics.record(System.nanoTime() - start);
+                        analyticsFailures.addAndGet(resp.getBatchItemFailures().size());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "analytics-poller-" + i);
+            t.start();
+            pollers.add(t);
+        }
+
+        long runStart = System.nanoTime();
+        try (LocalChangeLog log = opts.containsKey("change-log")
+                ? LocalChangeLog.file(Path.of(opts.get("change-log")))
+                : LocalChangeLog.generated(records, intOpt(opts, "rooms", 20),
+                    intOpt(opts, "users", 5_000), intOpt(opts, "seed", 42))) {
+            List<DynamodbStreamRecord> batch;
+            while (!(batch = log.poll(streamBatch)).isEmpty()) {
+                polled.addAndGet(batch.size());
+                DynamodbEvent event = new DynamodbEvent();
+                event.setRecords(batch);
+                long start = System.nanoTime();
+                for (DynamodbStreamRecord rec : batch) {
+                    AttributeValue id = rec.getDynamodb().getNewImage().get("messageId");
+                    if (id != null && id.getS() != null) {
+                        projectedAt.put(id.getS(), start);
+                    }
+                }
+                StreamsEventResponse resp = CdcProjectorHandler.processEvent(event, writer, publisher);
+                projector.record(System.nanoTime() - start);
+                projectorFailures.addAndGet(resp.getBatchItemFailures().size());
+            }
+        }
+        long projectorDone = System.nanoTime();
+
+        producerDone.set(true);
+        for (Thread t : pollers) {
+            t.join();
+        }
+        long runEnd = System.nanoTime();
+
+        double projectorSecs = (projectorDone - runStart) / 1e9;
+        double totalSecs     = (runEnd - runStart) / 1e9;
+        System.out.printf(Locale.ROOT, "Local CDC pipeline: %d records, stream batch %d, sqs batch %d x %d pollers, encoding %s%n",
+            polled.get(), streamBatch, sqsBatch, consumers, packed ? "packed" : "json");
+        System.out.printf(Locale.ROOT, "  projector   %10.0f records/s  (%.2f s)%n", polled.get() / projectorSecs, projectorSecs);
+        System.out.printf(Locale.ROOT, "  end-to-end  %10.0f records/s  (%.2f s)%n", redis.processed.size() / totalSecs, totalSecs);
+        System.out.println();
+        System.out.println(LatencyStats.header());
+        for (LatencyStats s : List.of(projector, analytics, endToEnd,
+                dynamo.batchWrites, dynamo.updates, sqs.sends, redis.evals)) {
+            System.out.println(s.row());
+        }
+        System.out.println();
+        System.out.printf(Locale.ROOT, "  failures    projector=%d analytics=%d%n",
+            projectorFailures.get(), analyticsFailures.get());
+        System.out.printf(Locale.ROOT, "  stores      %s=%d %s=%d %s=%d sqsMessages=%d redisFirstSeen=%d%n",
+            ROOM_MESSAGES, dynamo.size(ROOM_MESSAGES), USER_MESSAGES, dynamo.size(USER_MESSAGES),
+            USER_ROOMS, dynamo.size(USER_ROOMS), sqs.sent(), redis.processed.size());
+    }
+
+    // -- Args -----------------------------------------------------------------
+
+    private static Map<String, String> parseArgs(String[] argv) {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : argv) {
+            if (!a.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + a);
+            }
+            int eq = a.indexOf('=');
+            if (eq < 0) {
+                opts.put(a.substring(2), "true");
+            } else {
+                opts.put(a.substring(2, eq), a.substring(eq + 1));
+            }
+        }
+        return opts;
+    }
+
+    private static int intOpt(Map<String, String> opts, String key, int defaultVal) {
+        String v = opts.get(key);
+        return v != null ? Integer.parseInt(v.trim()) : defaultVal;
+    }
+
+    private static long nanosOpt(Map<String, String> opts, String key, double defaultMs) {
+        String v = opts.get(key);
+        double ms = v != null ? Double.parseDouble(v.trim()) : defaultMs;
+        return (long) (Math.max(0.0, ms) * 1_000_000L);
+    }
+}
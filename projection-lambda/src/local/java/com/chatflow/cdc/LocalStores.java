@@ -0,0 +1,223 @@
+package com.chatflow.cdc;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import io.lettuce.core.RedisNoScriptException;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * In-memory stand-ins for DynamoDB, SQS and Redis used by
+ * {@link LocalPipelineRunner}.  Each adds a fixed simulated round-trip latency
+ * per call and records the call's wall time, so projection throughput can be
+ * measured against a known store cost instead of a live AWS account.
+ */
+final class LocalStores {
+
+    private LocalStores() {
+    }
+
+    private static void simulateLatency(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    // -- DynamoDB -------------------------------------------------------------
+
+    /** Keeps projection items per table; only the calls ProjectionWriter makes. */
+    static final class LocalDynamoDb implements DynamoDbClient {
+        final Map<String, Map<String, Map<String, AttributeValue>>> tables = new ConcurrentHashMap<>();
+        final LatencyStats batchWrites = new LatencyStats("dynamo BatchWriteItem");
+        final LatencyStats updates     = new LatencyStats("dynamo UpdateItem");
+        private final long latencyNanos;
+
+        LocalDynamoDb(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            long start = System.nanoTime();
+            simulateLatency(latencyNanos);
+            request.requestItems().forEach((table, writes) -> {
+                for (WriteRequest w : writes) {
+                    put(table, w.putRequest().item());
+                }
+            });
+            batchWrites.record(System.nanoTime() - start);
+            return BatchWriteItemResponse.builder().unprocessedItems(Map.of()).build();
+        }
+
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            simulateLatency(latencyNanos);
+            put(request.tableName(), request.item());
+            return PutItemResponse.builder().build();
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            long start = System.nanoTime();
+            simulateLatency(latencyNanos);
+            Map<String, AttributeValue> key = request.key();
+            String id = key.get("userId").s() + "|" + key.get("roomId").s();
+            Map<String, AttributeValue> values = request.expressionAttributeValues();
+            table(request.tableName()).merge(id, Map.of("lastActivityTs", values.get(":ts")),
+                (a, b) -> Long.parseLong(b.get("lastActivityTs").n()) > Long.parseLong(a.get("lastActivityTs").n()) ? b : a);
+            updates.record(System.nanoTime() - start);
+            return UpdateItemResponse.builder().build();
+        }
+
+        int size(String table) {
+            return table(table).size();
+        }
+
+        private void put(String table, Map<String, AttributeValue> item) {
+            AttributeValue pk = item.get("pk");
+            AttributeValue sk = item.get("sk");
+            String id = (pk != null ? pk.s() : "") + "|" + (sk != null ? sk.s() : "");
+            table(table).putIfAbsent(id, item);
+        }
+
+        private Map<String, Map<String, AttributeValue>> table(String name) {
+            return tables.computeIfAbsent(name, k -> new ConcurrentHashMap<>());
+        }
+
+        @Override public String serviceName() { return "dynamodb"; }
+        @Override public void close() { }
+    }
+
+    // -- SQS ------------------------------------------------------------------
+
+    /** Unbounded FIFO queue; consumers receive up to a batch at a time. */
+    static final class LocalSqs implements SqsClient {
+        final LatencyStats sends = new LatencyStats("sqs SendMessageBatch");
+        private final BlockingQueue<SQSMessage> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong ids = new AtomicLong();
+        private final long latencyNanos;
+
+        LocalSqs(long latencyNanos) {
+            this.latencyNanos = latencyNanos;
+        }
+
+        @Override
+        public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest request) {
+            long start = System.nanoTime();
+            simulateLatency(latencyNanos);
+            List<SendMessageBatchResultEntry> ok = new ArrayList<>(request.entries().size());
+            for (SendMessageBatchRequestEntry e : request.entries()) {
+                SQSMessage msg = new SQSMessage();
+                msg.setMessageId("local-sqs-" + ids.incrementAndGet());
+                msg.setBody(e.messageBody());
+                queue.add(msg);
+                ok.add(SendMessageBatchResultEntry.builder().id(e.id()).messageId(msg.getMessageId()).build());
+            }
+            sends.record(System.nanoTime() - start);
+            return SendMessageBatchResponse.builder().successful(ok).failed(List.of()).build();
+        }
+
+        /** Up to {@code max} messages, waiting at most {@code waitMs} for the first. */
+        List<SQSMessage> receive(int max, long waitMs) throws InterruptedException {
+            List<SQSMessage> out = new ArrayList<>(max);
+            SQSMessage first = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                out.add(first);
+                queue.drainTo(out, max - 1);
+            }
+            return out;
+        }
+
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        long sent() {
+            return ids.get();
+        }
+
+        @Override public String serviceName() { return "sqs"; }
+        @Override public void close() { }
+    }
+
+    // -- Redis ----------------------------------------------------------------
+
+    /**
+     * Script-cache stand-in for {@link RedisAnalytics}: answers NOSCRIPT until
+     * the script is loaded, applies the processed-marker dedupe, and reports
+     * each first-seen messageId to {@code onApplied}.  Replies complete after
+     * the simulated round trip on a timer, so pipelined chunks overlap the way
+     * they do on a real connection while execution stays serial as in Redis.
+     */
+    static final class LocalRedis implements RedisAnalytics.ScriptRunner {
+        final LatencyStats evals = new LatencyStats("redis EVALSHA");
+        final Set<String>  processed = ConcurrentHashMap.newKeySet();
+        private final Set<String> scripts = ConcurrentHashMap.newKeySet();
+        private final long latencyNanos;
+        private final Consumer<String> onApplied;
+
+        LocalRedis(long latencyNanos, Consumer<String> onApplied) {
+            this.latencyNanos = latencyNanos;
+            this.onApplied    = onApplied;
+        }
+
+        @Override
+        public String scriptLoad(String script) {
+            simulateLatency(latencyNanos);
+            String sha = RedisAnalytics.sha1Hex(script);
+            scripts.add(sha);
+            return sha;
+        }
+
+        @Override
+        public CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args) {
+            long start = System.nanoTime();
+            if (!scripts.contains(sha)) {
+                return CompletableFuture.failedFuture(
+                    new RedisNoScriptException("NOSCRIPT No matching script. Please use EVAL."));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                long firstSeen = apply(args);
+                evals.record(System.nanoTime() - start);
+                return firstSeen;
+            }, CompletableFuture.delayedExecutor(latencyNanos, TimeUnit.NANOSECONDS));
+        }
+
+        private synchronized long apply(String[] args) {
+            int count = Integer.parseInt(args[3]);
+            long firstSeen = 0;
+            for (int i = 0; i < count; i++) {
+                String messageId = args[4 + i * 5];
+                if (processed.add(messageId)) {
+                    firstSeen++;
+                    onApplied.accept(messageId);
+                }
+            }
+            return firstSeen;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.chatflow.cdc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding that packs many {@link AnalyticsEvent}s into one SQS
+ * message body (the {@code packed} value of {@code SQS_ANALYTICS_ENCODING}).
+ *
+ * <h3>Wire format</h3>
+ * The body is Base64 (standard alphabet, so it can never start with
+ * <code>{</code> and is distinguishable from a JSON body) of:
+ * <pre>
+ *   byte    version (= 1)
+ *   event*  until end of buffer:
+ *     str     messageId
+ *     ref     userId
+ *     ref     roomId
+ *     zigzag  eventTsMs - previous eventTsMs   (previous = 0 for the first event)
+ *     zigzag  ingestedAtMs - eventTsMs
+ *
+ *   str     := varint byteLength, UTF-8 bytes
+ *   ref     := varint 0, str          (new string, appended to the table)
+ *            | varint n               (n-1 = index into the per-message table)
+ *   varint  := unsigned LEB128; zigzag := varint of (v << 1) ^ (v >> 63)
+ * </pre>
+ * User and room ids repeat heavily within a stream batch, so they go through a
+ * per-message string table; timestamps are delta-coded because a batch spans
+ * a few seconds at most.  Decoding is a straight cursor walk - no reflection.
+ */
+final class AnalyticsEventCodec {
+
+    static final byte VERSION = 1;
+
+    /** One packed SQS body and the chatflow messageIds it carries, in order. */
+    record Packed(String body, List<String> messageIds) {}
+
+    private AnalyticsEventCodec() {
+    }
+
+    /** {@code true} for a packed body; JSON bodies start with <code>{</code>. */
+    static boolean isPacked(String body) {
+        return body != null && !body.isEmpty() && body.charAt(0) != '{';
+    }
+
+    /**
+     * Pack events into as few bodies as possible, none longer than
+     * {@code maxBodyChars} after Base64.  An event is never split across bodies.
+     */
+    static List<Packed> pack(List<AnalyticsEvent> events, int maxBodyChars) {
+        int maxRaw = Math.max(64, maxBodyChars / 4 * 3);
+        List<Packed> out = new ArrayList<>();
+        Writer w = new Writer(Math.min(maxRaw, 4096));
+        for (AnalyticsEvent e : events) {
+            byte[] id   = utf8(e.messageId);
+            byte[] user = utf8(e.userId);
+            byte[] room = utf8(e.roomId);
+            // Worst case: three new strings with 5-byte length prefixes plus a 1-byte ref tag
+            // each, and three 10-byte varints
+            int bound = id.length + user.length + room.length + 3 * 6 + 3 * 10;
+            if (!w.ids.isEmpty() && w.size + bound > maxRaw) {
+                out.add(w.finish());
+                w = new Writer(Math.min(maxRaw, 4096));
+            }
+            w.event(e, id, user, room);
+        }
+        if (!w.ids.isEmpty()) {
+            out.add(w.finish());
+        }
+        return out;
+    }
+
+    /**
+     * Decode a packed body.
+     *
+     * @throws IllegalArgumentException if the body is not valid packed data
+     */
+    static List<AnalyticsEvent> unpack(String body) {
+        byte[] buf;
+        try {
+            buf = Base64.getDecoder().decode(body);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("packed analytics body is not valid Base64", e);
+        }
+        if (buf.length == 0 || buf[0] != VERSION) {
+            throw new IllegalArgumentException("unsupported packed analytics version");
+        }
+        Reader r = new Reader(buf);
+        List<String> table = new ArrayList<>();
+        List<AnalyticsEvent> out = new ArrayList<>();
+        long prevTs = 0L;
+        while (r.pos < buf.length) {
+            String messageId = r.str();
+            String userId    = r.ref(table);
+            String roomId    = r.ref(table);
+            long eventTsMs   = prevTs + r.zigzag();
+            long ingestedMs  = eventTsMs + r.zigzag();
+            out.add(new AnalyticsEvent(messageId, userId, roomId, eventTsMs, ingestedMs));
+            prevTs = eventTsMs;
+        }
+        return out;
+    }
+
+    // -- Encoding -------------------------------------------------------------
+
+    private static final class Writer {
+        byte[] buf;
+        int    size;
+        long   prevTs;
+        final Map<String, Integer> table = new HashMap<>();
+        final List<String>         ids   = new ArrayList<>();
+
+        Writer(int initial) {
+            buf = new byte[Math.max(16, initial)];
+            buf[size++] = VERSION;
+        }
+
+        void event(AnalyticsEvent e, byte[] id, byte[] user, byte[] room) {
+            str(id);
+            ref(e.userId, user);
+            ref(e.roomId, room);
+            zigzag(e.eventTsMs - prevTs);
+            zigzag(e.ingestedAtMs - e.eventTsMs);
+            prevTs = e.eventTsMs;
+            ids.add(e.messageId);
+        }
+
+        Packed finish() {
+            String body = Base64.getEncoder().encodeToString(Arrays.copyOf(buf, size));
+            return new Packed(body, List.copyOf(ids));
+        }
+
+        private void ref(String s, byte[] bytes) {
+            String key = s != null ? s : "";
+            Integer idx = table.get(key);
+            if (idx != null) {
+                varint(idx + 1L);
+                return;
+            }
+            table.put(key, table.size());
+            varint(0L);
+            str(bytes);
+        }
+
+        private void str(byte[] bytes) {
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void zigzag(long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        private void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+    // -- Decoding -------------------------------------------------------------
+
+    private static final class Reader {
+        final byte[] buf;
+        int pos = 1;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        String str() {
+            long len = varint();
+            if (len < 0 || len > buf.length - pos) {
+                throw new IllegalArgumentException("truncated string at offset " + pos);
+            }
+            String s = new String(buf, pos, (int) len, StandardCharsets.UTF_8);
+            pos += (int) len;
+            return s;
+        }
+
+        String ref(List<String> table) {
+            long tag = varint();
+            if (tag == 0L) {
+                String s = str();
+                table.add(s);
+                return s;
+            }
+            if (tag > table.size()) {
+                throw new IllegalArgumentException("string ref " + tag + " out of range");
+            }
+            return table.get((int) tag - 1);
+        }
+
+        long zigzag() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= buf.length) {
+                    throw new IllegalArgumentException("truncated varint");
+                }
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("varint too long");
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+}
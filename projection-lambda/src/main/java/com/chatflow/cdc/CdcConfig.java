@@ -8,9 +8,16 @@ package com.chatflow.cdc;
  * DYNAMO_TABLE_ROOM_MESSAGES      projection table name (Lambda A)
  * DYNAMO_TABLE_USER_MESSAGES      projection table name (Lambda A)
  * DYNAMO_TABLE_USER_ROOMS         projection table name (Lambda A)
+ * PROJECTION_WRITE_CONCURRENCY    max in-flight DynamoDB projection calls (default: 16) (Lambda A)
  * SQS_ANALYTICS_QUEUE_URL         SQS queue for analytics events (Lambda A)
+ * SQS_ANALYTICS_ENCODING          json | packed  (default: json) (Lambda A)
+ * SQS_SEND_CONCURRENCY            max in-flight SendMessageBatch calls (default: 16) (Lambda A)
  * REDIS_ENDPOINT                  host:port  (leave empty to disable Redis) (Lambda B)
  * REDIS_DEDUPE_EXPIRE_SECONDS     dedupe key TTL (default: 3600) (Lambda B)
+ * REDIS_ANALYTICS_CHUNK_SIZE      records per pipelined EVALSHA (default: 500) (Lambda B)
+ * REDIS_ACTIVE_USERS_MODE         set | hll | both  (default: set) (Lambda B)
+ * REDIS_KEY_LAYOUT                flat | cluster  (default: flat) (Lambda B)
+ * REDIS_CLUSTER_SHARDS            sub-tags per time bucket in cluster layout (default: 1) (Lambda B)
  * </pre>
  */
 public class CdcConfig {
@@ -20,30 +27,59 @@ public class CdcConfig {
     public final String tableUserMessages;
     public final String tableUserRooms;
 
+    /** Upper bound on concurrent BatchWriteItem / UpdateItem calls per writer. */
+    public final int    projectionWriteConcurrency;
+
     /** SQS queue URL for analytics events (Lambda A sends here). Empty = SQS disabled. */
     public final String sqsAnalyticsQueueUrl;
+    /** {@code json} (one event per message) or {@code packed} (see AnalyticsEventCodec). */
+    public final String sqsAnalyticsEncoding;
+    /** Upper bound on concurrent SendMessageBatch calls per publisher. */
+    public final int    sqsSendConcurrency;
 
     /** Redis hostname extracted from REDIS_ENDPOINT. Empty string = Redis disabled. */
     public final String redisHost;
     public final int    redisPort;
     public final int    dedupeExpireSeconds;
+    /** Records per analytics script call; larger batches are split and pipelined. */
+    public final int    analyticsChunkSize;
+    /** Active-user tracking: {@code set}, {@code hll} or {@code both}. */
+    public final String activeUsersMode;
+    /** {@code flat} (single shard) or {@code cluster} (hash-tagged by time bucket). */
+    public final String redisKeyLayout;
+    /** Sub-tags per time bucket in the cluster layout; readers must use the same value. */
+    public final int    redisClusterShards;
 
     private CdcConfig(String dynamoRegion,
                        String tableRoomMessages,
                        String tableUserMessages,
                        String tableUserRooms,
+                       int    projectionWriteConcurrency,
                        String sqsAnalyticsQueueUrl,
+                       String sqsAnalyticsEncoding,
+                       int    sqsSendConcurrency,
                        String redisHost,
                        int    redisPort,
-                       int    dedupeExpireSeconds) {
+                       int    dedupeExpireSeconds,
+                       int    analyticsChunkSize,
+                       String activeUsersMode,
+                       String redisKeyLayout,
+                       int    redisClusterShards) {
         this.dynamoRegion          = dynamoRegion;
         this.tableRoomMessages     = tableRoomMessages;
         this.tableUserMessages     = tableUserMessages;
         this.tableUserRooms        = tableUserRooms;
+        this.projectionWriteConcurrency = projectionWriteConcurrency;
         this.sqsAnalyticsQueueUrl  = sqsAnalyticsQueueUrl;
+        this.sqsAnalyticsEncoding  = sqsAnalyticsEncoding;
+        this.sqsSendConcurrency    = sqsSendConcurrency;
         this.redisHost             = redisHost;
         this.redisPort             = redisPort;
         this.dedupeExpireSeconds   = dedupeExpireSeconds;
+        this.analyticsChunkSize    = analyticsChunkSize;
+        this.activeUsersMode       = activeUsersMode;
+        this.redisKeyLayout        = redisKeyLayout;
+        this.redisClusterShards    = redisClusterShards;
     }
 
     /** True when SQS_ANALYTICS_QUEUE_URL is set (Lambda A should publish). */
@@ -51,6 +87,11 @@ public class CdcConfig {
         return !sqsAnalyticsQueueUrl.isBlank();
     }
 
+    /** True when analytics events should be packed many-per-message. */
+    public boolean isSqsAnalyticsPacked() {
+        return "packed".equalsIgnoreCase(sqsAnalyticsEncoding.trim());
+    }
+
     /** True when REDIS_ENDPOINT is set and Redis analytics should be applied. */
     public boolean isRedisEnabled() {
         return !redisHost.isBlank();
@@ -78,10 +119,17 @@ public class CdcConfig {
             env("DYNAMO_TABLE_ROOM_MESSAGES",    "chatflow-room-messages"),
             env("DYNAMO_TABLE_USER_MESSAGES",    "chatflow-user-messages"),
             env("DYNAMO_TABLE_USER_ROOMS",       "chatflow-user-rooms"),
+            Math.max(1, intEnv("PROJECTION_WRITE_CONCURRENCY", 16)),
             env("SQS_ANALYTICS_QUEUE_URL",       ""),
+            env("SQS_ANALYTICS_ENCODING",        "json"),
+            Math.max(1, intEnv("SQS_SEND_CONCURRENCY", 16)),
             redisHost,
             redisPort,
-            intEnv("REDIS_DEDUPE_EXPIRE_SECONDS", 3600)
+            intEnv("REDIS_DEDUPE_EXPIRE_SECONDS", 3600),
+            Math.max(1, intEnv("REDIS_ANALYTICS_CHUNK_SIZE", 500)),
+            env("REDIS_ACTIVE_USERS_MODE",       "set"),
+            env("REDIS_KEY_LAYOUT",              "flat"),
+            Math.max(1, intEnv("REDIS_CLUSTER_SHARDS", 1))
         );
     }
 
@@ -105,8 +153,11 @@ public class CdcConfig {
             + ", roomMessages=" + tableRoomMessages
             + ", userMessages=" + tableUserMessages
             + ", userRooms="    + tableUserRooms
-            + ", sqsAnalytics=" + (isSqsAnalyticsEnabled() ? sqsAnalyticsQueueUrl : "disabled")
+            + ", writeConcurrency=" + projectionWriteConcurrency
+            + ", sqsAnalytics=" + (isSqsAnalyticsEnabled() ? sqsAnalyticsQueueUrl + " (" + sqsAnalyticsEncoding + ")" : "disabled")
             + ", redis="        + (isRedisEnabled() ? redisHost + ":" + redisPort : "disabled")
+            + ", activeUsers="  + activeUsersMode
+            + ", redisLayout="  + redisKeyLayout + (redisClusterShards > 1 ? "/" + redisClusterShards : "")
             + "}";
     }
 }
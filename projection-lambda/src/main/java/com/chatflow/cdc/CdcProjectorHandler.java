@@ -7,6 +7,7 @@ import com.amazonaws.services.lambda.runtime.events.DynamodbEvent.DynamodbStream
 import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
 import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse.BatchItemFailure;
 import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -21,7 +22,8 @@ import java.util.Set;
  *
  * <h3>Pipeline per INSERT record</h3>
  * <ol>
- *   <li>Parse {@link ProjectionEvent} from {@code NEW_IMAGE}.</li>
+ *   <li>Parse {@link ProjectionEvent} from {@code NEW_IMAGE} (non-INSERT
+ *       records are skipped before the image is touched).</li>
  *   <li>Batch-write projections to room_messages, user_messages, user_rooms via
  *       {@link ProjectionWriter} (same batch-write strategy as before).</li>
  *   <li>For every record that was successfully projected, publish an
@@ -94,20 +96,16 @@ public class CdcProjectorHandler implements RequestHandler<DynamodbEvent, Stream
         int processed = 0, skipped = 0;
         List<PendingInsert> inserts = new ArrayList<>();
 
-        // Phase 0: parse stream records
+        // Phase 0: parse stream records; only INSERTs reach the image
         for (DynamodbStreamRecord record : event.getRecords()) {
             if (!"INSERT".equals(record.getEventName())) {
                 skipped++;
                 continue;
             }
 
-            String seqNum = record.getDynamodb() != null
-                ? record.getDynamodb().getSequenceNumber()
-                : null;
-
-            Map<String, AttributeValue> newImage = record.getDynamodb() != null
-                ? record.getDynamodb().getNewImage()
-                : null;
+            StreamRecord streamRecord = record.getDynamodb();
+            String seqNum = streamRecord != null ? streamRecord.getSequenceNumber() : null;
+            Map<String, AttributeValue> newImage = streamRecord != null ? streamRecord.getNewImage() : null;
 
             if (newImage == null) {
                 log.error("INSERT record eventID={} seqNum={} has null NewImage",
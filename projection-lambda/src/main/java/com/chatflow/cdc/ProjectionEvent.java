@@ -10,6 +10,15 @@ import java.util.Map;
  *
  * <p>Field names mirror the canonical table attributes written by
  * {@code consumer-v3 PersistenceWriter.buildItem()}.
+ *
+ * <h3>Numeric attributes</h3>
+ * {@link #fromNewImage} parses {@code roomSequence}, {@code eventTs} and
+ * {@code ingestedAt} once, into plain final fields: every record needs
+ * {@code eventTsMs} and {@code ingestedAtMs} for analytics and the
+ * {@code user_rooms} merge, so deferring the parse would save only
+ * {@code roomSequence}.  The {@code N} text is kept alongside, and the
+ * projection item builders copy it straight through ({@link #eventTsN()}
+ * etc.) instead of formatting each value back with {@link Long#toString}.
  */
 public class ProjectionEvent {
 
@@ -30,20 +39,65 @@ public class ProjectionEvent {
     /** UTC day string "YYYY-MM-DD" from canonical table. */
     public final String dayBucket;
 
+    // Raw N text from the stream image; null when built from values
+    private final String roomSequenceText;
+    private final String eventTsText;
+    private final String ingestedAtText;
+
     public ProjectionEvent(String messageId, String roomId, String userId,
                             String username, String message, String messageType,
                             long roomSequence, long eventTsMs, long ingestedAtMs,
                             String dayBucket) {
-        this.messageId    = messageId;
-        this.roomId       = roomId;
-        this.userId       = userId;
-        this.username     = username;
-        this.message      = message;
-        this.messageType  = messageType;
-        this.roomSequence = roomSequence;
-        this.eventTsMs    = eventTsMs;
-        this.ingestedAtMs = ingestedAtMs;
-        this.dayBucket    = dayBucket;
+        this.messageId        = messageId;
+        this.roomId           = roomId;
+        this.userId           = userId;
+        this.username         = username;
+        this.message          = message;
+        this.messageType      = messageType;
+        this.dayBucket        = dayBucket;
+        this.roomSequenceText = null;
+        this.eventTsText      = null;
+        this.ingestedAtText   = null;
+        this.roomSequence     = roomSequence;
+        this.eventTsMs        = eventTsMs;
+        this.ingestedAtMs     = ingestedAtMs;
+    }
+
+    private ProjectionEvent(String messageId, String roomId, String userId,
+                            String username, String message, String messageType,
+                            String roomSequenceText, String eventTsText, String ingestedAtText,
+                            String dayBucket) {
+        this.messageId        = messageId;
+        this.roomId           = roomId;
+        this.userId           = userId;
+        this.username         = username;
+        this.message          = message;
+        this.messageType      = messageType;
+        this.dayBucket        = dayBucket;
+        this.roomSequenceText = roomSequenceText;
+        this.eventTsText      = eventTsText;
+        this.ingestedAtText   = ingestedAtText;
+        this.roomSequence     = parseLong(roomSequenceText);
+        this.eventTsMs        = parseLong(eventTsText);
+        this.ingestedAtMs     = parseLong(ingestedAtText);
+    }
+
+    // ── Numeric attributes ────────────────────────────────────────────────────
+
+    // DynamoDB N text, identical to Long.toString of the decoded value.  The
+    // stream text is passed through without parsing when it is already in that
+    // canonical form (always, for values written by consumer-v3).
+
+    String roomSequenceN() {
+        return canonicalLong(roomSequenceText) ? roomSequenceText : Long.toString(roomSequence);
+    }
+
+    String eventTsN() {
+        return canonicalLong(eventTsText) ? eventTsText : Long.toString(eventTsMs);
+    }
+
+    String ingestedAtN() {
+        return canonicalLong(ingestedAtText) ? ingestedAtText : Long.toString(ingestedAtMs);
     }
 
     // ── Projection table keys ─────────────────────────────────────────────────
@@ -69,7 +123,7 @@ public class ProjectionEvent {
      * Millisecond precision with UUID suffix ensures global sort order uniqueness.
      */
     public String sortKey() {
-        return eventTsMs + "#" + messageId;
+        return eventTsN() + "#" + messageId;
     }
 
     // ── Redis bucket helpers ──────────────────────────────────────────────────
@@ -83,8 +137,9 @@ public class ProjectionEvent {
     // ── Factory from DynamoDB Streams NEW_IMAGE ───────────────────────────────
 
     /**
-     * Parse a DynamoDB Streams {@code NEW_IMAGE} attribute map into a
-     * {@link ProjectionEvent}.
+     * Build a {@link ProjectionEvent} from a DynamoDB Streams {@code NEW_IMAGE}
+     * attribute map.  A missing or malformed number reads as
+     * {@code 0}.
      *
      * @throws IllegalArgumentException if {@code messageId} or {@code roomId} are blank
      */
@@ -117,13 +172,35 @@ public class ProjectionEvent {
         return (v != null && v.getS() != null) ? v.getS() : "";
     }
 
-    private static long n(Map<String, AttributeValue> img, String key) {
+    private static String n(Map<String, AttributeValue> img, String key) {
         AttributeValue v = img.get(key);
-        if (v == null || v.getN() == null) return 0L;
-        try { return Long.parseLong(v.getN()); }
+        return (v != null && v.getN() != null) ? v.getN() : "0";
+    }
+
+    private static long parseLong(String text) {
+        try { return Long.parseLong(text); }
         catch (NumberFormatException e) { return 0L; }
     }
 
+    /**
+     * True when {@code text} is exactly what {@link Long#toString(long)} would
+     * print for its value: optional '-', no leading zeros, at most 18 digits
+     * (so it cannot overflow).
+     */
+    static boolean canonicalLong(String text) {
+        if (text == null) return false;
+        int len = text.length();
+        int i = len > 0 && text.charAt(0) == '-' ? 1 : 0;
+        int digits = len - i;
+        if (digits < 1 || digits > 18) return false;
+        if (text.charAt(i) == '0') return digits == 1 && i == 0;
+        for (; i < len; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
     /** Convert "YYYY-MM-DD" dayBucket to compact "YYYYMMDD" for composite keys. */
     private String compactDay() {
         return dayBucket.replace("-", "");
@@ -133,6 +210,6 @@ public class ProjectionEvent {
     public String toString() {
         return "ProjectionEvent{messageId='" + messageId
             + "', roomId='" + roomId + "', userId='" + userId
-            + "', eventTsMs=" + eventTsMs + ", dayBucket='" + dayBucket + "'}";
+            + "', eventTsMs=" + eventTsN() + ", dayBucket='" + dayBucket + "'}";
     }
 }
@@ -16,9 +16,16 @@ import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
 
 /**
@@ -31,7 +38,8 @@ import java.util.function.Function;
  *   <li>{@code user_messages}:  PK={@code pk} = "userId#yyyyMMdd",
  *       SK={@code sk} = "eventTsMs#messageId" - all messages by a user per day</li>
  *   <li>{@code user_rooms}: PK={@code userId}, SK={@code roomId},
- *       UpdateItem with conditional {@code lastActivityTs}</li>
+ *       UpdateItem with conditional {@code lastActivityTs}, coalesced to one
+ *       update per pair per stream batch</li>
  * </ul>
  *
  * <h3>Idempotency</h3>
@@ -39,6 +47,13 @@ import java.util.function.Function;
  * {@code attribute_not_exists(sk)} so duplicate Lambda invocations (at-least-once)
  * are safe. {@code user_rooms} uses a conditional update that only advances
  * {@code lastActivityTs} when the new value is greater.
+ *
+ * <h3>Concurrency</h3>
+ * {@link #writeBatch} issues the 25-item {@code BatchWriteItem} chunks for
+ * both message tables at once, then the {@code user_rooms} updates at once,
+ * each call on its own virtual thread.  A semaphore caps in-flight DynamoDB
+ * calls at {@code PROJECTION_WRITE_CONCURRENCY}.  Every task reports the
+ * messageIds it failed, so attribution is per record exactly as before.
  */
 public class ProjectionWriter {
 
@@ -51,6 +66,8 @@ public class ProjectionWriter {
     private final String         tableRoomMessages;
     private final String         tableUserMessages;
     private final String         tableUserRooms;
+    private final Semaphore      inFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
 
     public static final class BatchWriteResult {
         private static final BatchWriteResult SUCCESS = new BatchWriteResult(Set.of());
@@ -75,12 +92,26 @@ public class ProjectionWriter {
     }
 
     public ProjectionWriter(CdcConfig config) {
-        this.client = DynamoDbClient.builder()
-            .region(Region.of(config.dynamoRegion))
-            .build();
-        this.tableRoomMessages = config.tableRoomMessages;
-        this.tableUserMessages = config.tableUserMessages;
-        this.tableUserRooms    = config.tableUserRooms;
+        this(DynamoDbClient.builder()
+                .region(Region.of(config.dynamoRegion))
+                .build(),
+            config.tableRoomMessages,
+            config.tableUserMessages,
+            config.tableUserRooms,
+            config.projectionWriteConcurrency);
+    }
+
+    /** Package-private so tests can supply a fake {@link DynamoDbClient}. */
+    ProjectionWriter(DynamoDbClient client,
+                     String tableRoomMessages,
+                     String tableUserMessages,
+                     String tableUserRooms,
+                     int maxInFlight) {
+        this.client            = client;
+        this.tableRoomMessages = tableRoomMessages;
+        this.tableUserMessages = tableUserMessages;
+        this.tableUserRooms    = tableUserRooms;
+        this.inFlight          = new Semaphore(Math.max(1, maxInFlight));
     }
 
     /** For test subclasses that override {@link #write} - avoids building a real DynamoDB client. */
@@ -89,6 +120,7 @@ public class ProjectionWriter {
         this.tableRoomMessages = null;
         this.tableUserMessages = null;
         this.tableUserRooms    = null;
+        this.inFlight          = new Semaphore(1);
     }
 
     /**
@@ -103,32 +135,75 @@ public class ProjectionWriter {
 
     /**
      * Write a stream batch more efficiently:
-     * room/user message projections use BatchWriteItem, then successful records
-     * advance user_rooms via conditional UpdateItem.
+     * room/user message projections use BatchWriteItem (all chunks of both
+     * tables concurrently), then records that landed in both tables advance
+     * user_rooms via concurrent conditional UpdateItem - one per
+     * (userId, roomId) pair, carrying the pair's newest eventTsMs.
      */
     public BatchWriteResult writeBatch(List<ProjectionEvent> events) {
         if (events == null || events.isEmpty()) {
             return BatchWriteResult.success();
         }
 
+        List<Callable<Set<String>>> messageTasks = new ArrayList<>();
+        addChunkTasks(messageTasks, tableRoomMessages, events, ProjectionWriter::roomMessagesItem);
+        addChunkTasks(messageTasks, tableUserMessages, events, ProjectionWriter::userMessagesItem);
+
         Set<String> failed = new HashSet<>();
-        failed.addAll(batchWriteMessages(tableRoomMessages, events, ProjectionWriter::roomMessagesItem));
-        failed.addAll(batchWriteMessages(tableUserMessages, events, ProjectionWriter::userMessagesItem));
+        if (!runAll(messageTasks, failed)) {
+            return BatchWriteResult.failed(allMessageIds(events));
+        }
 
+        List<UserRoomUpdate> updates = coalesceUserRooms(events, failed);
+        List<Callable<Set<String>>> userRoomTasks = new ArrayList<>(updates.size());
+        for (UserRoomUpdate update : updates) {
+            userRoomTasks.add(() -> {
+                ProjectionEvent pe = update.latest();
+                try {
+                    writeUserRooms(pe);
+                    return Set.of();
+                } catch (RuntimeException e) {
+                    log.warn("user_rooms write failed userId={} roomId={} messages={}: {}",
+                        pe.userId, pe.roomId, update.messageIds().size(), e.getMessage());
+                    return Set.copyOf(update.messageIds());
+                }
+            });
+        }
+        if (!runAll(userRoomTasks, failed)) {
+            return BatchWriteResult.failed(allMessageIds(events));
+        }
+
+        return BatchWriteResult.failed(failed);
+    }
+
+    // user_rooms coalescing
+
+    /** One conditional user_rooms update standing in for every message of a (userId, roomId) pair. */
+    record UserRoomUpdate(ProjectionEvent latest, List<String> messageIds) {}
+
+    private record UserRoomKey(String userId, String roomId) {}
+
+    /**
+     * Group events by (userId, roomId), skipping {@code skip}ped messageIds.
+     * Only the newest event per pair can pass the {@code lastActivityTs < :ts}
+     * condition, so it alone is written; a failure fans back out to every
+     * messageId in {@link UserRoomUpdate#messageIds()}.  Pairs keep first-seen order.
+     */
+    static List<UserRoomUpdate> coalesceUserRooms(List<ProjectionEvent> events, Set<String> skip) {
+        Map<UserRoomKey, ProjectionEvent> latest   = new LinkedHashMap<>();
+        Map<UserRoomKey, List<String>>    contribs = new HashMap<>();
         for (ProjectionEvent pe : events) {
-            if (failed.contains(pe.messageId)) {
+            if (skip.contains(pe.messageId)) {
                 continue;
             }
-            try {
-                writeUserRooms(pe);
-            } catch (RuntimeException e) {
-                failed.add(pe.messageId);
-                log.warn("user_rooms write failed messageId={} userId={} roomId={}: {}",
-                    pe.messageId, pe.userId, pe.roomId, e.getMessage());
-            }
+            UserRoomKey key = new UserRoomKey(pe.userId, pe.roomId);
+            latest.merge(key, pe, (a, b) -> b.eventTsMs > a.eventTsMs ? b : a);
+            contribs.computeIfAbsent(key, k -> new ArrayList<>(1)).add(pe.messageId);
         }
 
-        return BatchWriteResult.failed(failed);
+        List<UserRoomUpdate> out = new ArrayList<>(latest.size());
+        latest.forEach((key, pe) -> out.add(new UserRoomUpdate(pe, contribs.get(key))));
+        return out;
     }
 
     // room_messages
@@ -172,7 +247,7 @@ public class ProjectionWriter {
         key.put("roomId", s(pe.roomId));
 
         Map<String, AttributeValue> values = new HashMap<>(2);
-        values.put(":ts",       n(pe.eventTsMs));
+        values.put(":ts",       n(pe.eventTsN()));
         values.put(":username", s(pe.username));
 
         try {
@@ -184,11 +259,11 @@ public class ProjectionWriter {
                 .expressionAttributeValues(values)
                 .build());
             log.debug("user_rooms userId={} roomId={} lastActivityTs={}",
-                pe.userId, pe.roomId, pe.eventTsMs);
+                pe.userId, pe.roomId, pe.eventTsN());
         } catch (ConditionalCheckFailedException e) {
             // A newer (or equal) message already set lastActivityTs - safe to ignore
             log.debug("user_rooms userId={} roomId={} - no update (existing ts >= {})",
-                pe.userId, pe.roomId, pe.eventTsMs);
+                pe.userId, pe.roomId, pe.eventTsN());
         }
     }
 
@@ -204,9 +279,9 @@ public class ProjectionWriter {
         item.put("username",     s(pe.username));
         item.put("message",      s(pe.message));
         item.put("messageType",  s(pe.messageType));
-        item.put("roomSequence", n(pe.roomSequence));
-        item.put("eventTsMs",    n(pe.eventTsMs));
-        item.put("ingestedAtMs", n(pe.ingestedAtMs));
+        item.put("roomSequence", n(pe.roomSequenceN()));
+        item.put("eventTsMs",    n(pe.eventTsN()));
+        item.put("ingestedAtMs", n(pe.ingestedAtN()));
         return item;
     }
 
@@ -220,8 +295,8 @@ public class ProjectionWriter {
         item.put("username",     s(pe.username));
         item.put("message",      s(pe.message));
         item.put("messageType",  s(pe.messageType));
-        item.put("eventTsMs",    n(pe.eventTsMs));
-        item.put("ingestedAtMs", n(pe.ingestedAtMs));
+        item.put("eventTsMs",    n(pe.eventTsN()));
+        item.put("ingestedAtMs", n(pe.ingestedAtN()));
         return item;
     }
 
@@ -231,11 +306,13 @@ public class ProjectionWriter {
         return AttributeValue.fromS(v != null ? v : "");
     }
 
-    private static AttributeValue n(long v) {
-        return AttributeValue.fromN(Long.toString(v));
+    /** {@code text} is already canonical N text (see ProjectionEvent#eventTsN). */
+    private static AttributeValue n(String text) {
+        return AttributeValue.fromN(text);
     }
 
-    private Set<String> batchWriteMessages(
+    private void addChunkTasks(
+            List<Callable<Set<String>>> tasks,
             String tableName,
             List<ProjectionEvent> events,
             Function<ProjectionEvent, Map<String, AttributeValue>> itemBuilder) {
@@ -248,12 +325,55 @@ public class ProjectionWriter {
                 .build());
         }
 
-        Set<String> failed = new HashSet<>();
         for (int start = 0; start < requests.size(); start += MAX_BATCH_WRITE_SIZE) {
-            int end = Math.min(start + MAX_BATCH_WRITE_SIZE, requests.size());
-            failed.addAll(batchWriteChunk(tableName, requests.subList(start, end)));
+            List<WriteRequest> chunk = requests.subList(start, Math.min(start + MAX_BATCH_WRITE_SIZE, requests.size()));
+            tasks.add(() -> batchWriteChunk(tableName, chunk));
+        }
+    }
+
+    /**
+     * Run every task on a virtual thread, each holding an {@link #inFlight}
+     * permit, and add the messageIds they report as failed to {@code failed}.
+     * Returns {@code false} if the wait was interrupted; the caller then fails
+     * the whole batch so the stream retries it.
+     */
+    private boolean runAll(List<Callable<Set<String>>> tasks, Set<String> failed) {
+        if (tasks.isEmpty()) {
+            return true;
+        }
+        List<Future<Set<String>>> futures = new ArrayList<>(tasks.size());
+        for (Callable<Set<String>> task : tasks) {
+            futures.add(executor.submit(() -> {
+                inFlight.acquire();
+                try {
+                    return task.call();
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+        try {
+            for (Future<Set<String>> future : futures) {
+                failed.addAll(future.get());
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            log.warn("Projection writes interrupted with {} tasks outstanding", tasks.size());
+            return false;
+        } catch (ExecutionException e) {
+            // Tasks catch their own DynamoDB errors; anything here is a bug
+            throw new IllegalStateException("Projection write task failed", e.getCause());
         }
-        return failed;
+    }
+
+    private static Set<String> allMessageIds(List<ProjectionEvent> events) {
+        Set<String> ids = new HashSet<>(events.size());
+        for (ProjectionEvent pe : events) {
+            ids.add(pe.messageId);
+        }
+        return ids;
     }
 
     private Set<String> batchWriteChunk(String tableName, List<WriteRequest> chunk) {
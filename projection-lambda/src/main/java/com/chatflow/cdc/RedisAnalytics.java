@@ -1,13 +1,35 @@
 package com.chatflow.cdc;
 
+import io.lettuce.core.AbstractRedisClient;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.api.async.RedisScriptingAsyncCommands;
+import io.lettuce.core.api.sync.RedisScriptingCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Redis analytics with atomically-safe per-message deduplication.
  *
@@ -27,26 +49,70 @@ import org.apache.logging.log4j.Logger;
  * Because all six Redis writes occur inside one Lua script, Redis executes them
  * atomically with respect to other clients - no intermediate state is visible.
  *
+ * <h3>Script caching and pipelining</h3>
+ * The script is invoked with {@code EVALSHA} using its SHA-1 computed locally,
+ * so the source is only sent when Redis answers {@code NOSCRIPT} (first use
+ * against a fresh server, or after {@code SCRIPT FLUSH} / failover); the
+ * writer then runs {@code SCRIPT LOAD} once and retries the affected calls.
+ * A batch larger than {@code REDIS_ANALYTICS_CHUNK_SIZE} records is split into
+ * chunks issued back-to-back on the async connection without waiting for
+ * replies (pipelined).  Each chunk is atomic on its own; a failed chunk fails
+ * the batch, and the retry is safe because already-applied records hit their
+ * processed markers and count as duplicates.
+ *
  * <h3>Analytics keys written atomically (on first-seen)</h3>
  * <pre>
  *   analytics:processed:{messageId}       SET NX EX ttl        (dedupe marker)
- *   active_users:minute:{min}             SADD  userId
- *   top_users:minute:{min}                ZINCRBY userId 1
- *   top_rooms:minute:{min}                ZINCRBY roomId 1
+ *   active_users:minute:{min}             SADD  userId        (mode set | both)
+ *   active_users_hll:{minute|hour|day}:{n} PFADD userId       (mode hll | both)
+ *   top_users:{minute|hour|day}:{n}       ZINCRBY userId 1
+ *   top_rooms:{minute|hour|day}:{n}       ZINCRBY roomId 1
  *   messages:second:{sec}                 INCR
- *   messages:minute:{min}                 INCR
+ *   messages:{minute|hour|day}:{n}        INCR
+ *
+ *   hour = floor(minute / 60), day = floor(minute / 1440)  (UTC epoch units)
  * </pre>
  *
+ * <h3>Roll-ups</h3>
+ * Hour and day keys are maintained in the same script as the minute keys, so
+ * they are exactly the sum (or union) of the minutes beneath them and never
+ * need a separate compaction pass.  Readers cover a window with whole days,
+ * then whole hours, then minutes at the edges.  Deltas are aggregated per
+ * chunk first, so each roll-up key costs one command per chunk rather than
+ * one per record.  Active-user sets are not rolled up (memory); use HLL mode.
+ *
+ * <h3>Active-user mode</h3>
+ * {@code REDIS_ACTIVE_USERS_MODE} picks how distinct users are tracked:
+ * {@code set} (exact, memory grows with distinct users), {@code hll}
+ * (HyperLogLog, ~12 KB per key, ~0.8% standard error) or {@code both} while
+ * readers migrate.
+ *
  * <h3>Projection health</h3>
  * {@link #updateProjectionHealth} is intentionally separate and must be called
  * only after DynamoDB projection writes AND {@link #dedupeAndRecordAnalytics}
  * both succeed.
  *
- * <h3>Redis Cluster note</h3>
- * The six keys above hash to different slots; the Lua script therefore requires
- * a single-shard / non-clustered Redis (e.g. ElastiCache single-node).
- * For Cluster support, wrap all six keys in the same hash tag, e.g.
- * {@code {msg-<id>}:active_users:...}.
+ * <h3>Cluster key layout</h3>
+ * The keys above hash to different slots, so the flat layout (default)
+ * requires a single-shard Redis.  {@code REDIS_KEY_LAYOUT=cluster} switches to
+ * keys hash-tagged by time bucket, one tag per level and bucket:
+ * <pre>
+ *   {m:N}:messages  {m:N}:top_users  {m:N}:top_rooms        (minute N)
+ *   {m:N}:active_users  {m:N}:active_users_hll  {m:N}:messages:second:{sec}
+ *   {h:N}:...  {d:N}:...                                    (hour / day N)
+ *   {x:N}:processed:{messageId}                             (dedupe, per tag)
+ *   {projection}:lastProjectedIngestedAt / lastProjectedMessageId
+ * </pre>
+ * With {@code REDIS_CLUSTER_SHARDS=S > 1} each tag is split into S sub-tags
+ * ({@code {m:N.0}} .. {@code {m:N.S-1}}) by messageId hash, so the current
+ * minute, hour and day spread over up to 3*S slots instead of three; readers
+ * sum or union the S sub-keys.  A batch is grouped by tag and each group runs
+ * {@link #CLUSTER_SCRIPT} against its own slot; all groups are issued before
+ * any reply is awaited, so the cluster client pipelines them to every shard in
+ * parallel.  Each tag keeps its own processed marker, which makes every group
+ * independently atomic and idempotent (a retried batch re-applies only the
+ * groups that failed) at the cost of three markers per message.  Health
+ * markers advance in a separate call once every group has succeeded.
  */
 public class RedisAnalytics {
 
@@ -69,6 +135,9 @@ public class RedisAnalytics {
      *   ARGV[5 + n*5 + 3]  minute bucket
      *   ARGV[5 + n*5 + 4]  second bucket
      *
+     * Trailer (after the last record, optional):
+     *   ARGV[5 + count*5]  active-user mode: set | hll | both (default set)
+     *
      * Returns: number of first-seen records written to analytics.
      * </pre>
      */
@@ -77,11 +146,31 @@ public class RedisAnalytics {
         "local healthTs = tonumber(ARGV[2])\n" +
         "local healthId = ARGV[3]\n" +
         "local count = tonumber(ARGV[4])\n" +
-        "local activeUsers = {}\n" +
-        "local topUsers = {}\n" +
-        "local topRooms = {}\n" +
-        "local perSecond = {}\n" +
-        "local perMinute = {}\n" +
+        "local auMode = ARGV[5 + count * 5] or 'set'\n" +
+        "local writeSet = auMode ~= 'hll'\n" +
+        "local writeHll = auMode ~= 'set'\n" +
+        "local counters = {}\n" +
+        "local zsets = {}\n" +
+        "local sets = {}\n" +
+        "local hlls = {}\n" +
+        "local function bump(tbl, key, member)\n" +
+        "  local t = tbl[key]\n" +
+        "  if t == nil then t = {}; tbl[key] = t end\n" +
+        "  t[member] = (t[member] or 0) + 1\n" +
+        "end\n" +
+        "local function incr(key)\n" +
+        "  counters[key] = (counters[key] or 0) + 1\n" +
+        "end\n" +
+        "local function members(t)\n" +
+        "  local out = {}\n" +
+        "  for m, _ in pairs(t) do out[#out + 1] = m end\n" +
+        "  return out\n" +
+        "end\n" +
+        "local function callAll(cmd, key, list)\n" +
+        "  for i = 1, #list, 1000 do\n" +
+        "    redis.call(cmd, key, unpack(list, i, math.min(i + 999, #list)))\n" +
+        "  end\n" +
+        "end\n" +
         "local firstSeen = 0\n" +
         "local offset = 5\n" +
         "for i = 1, count do\n" +
@@ -93,36 +182,41 @@ public class RedisAnalytics {
         "  offset = offset + 5\n" +
         "  if redis.call('SET', 'analytics:processed:' .. messageId, '1', 'NX', 'EX', ttl) then\n" +
         "    firstSeen = firstSeen + 1\n" +
-        "    if activeUsers[minute] == nil then activeUsers[minute] = {} end\n" +
-        "    activeUsers[minute][userId] = 1\n" +
-        "    if topUsers[minute] == nil then topUsers[minute] = {} end\n" +
-        "    topUsers[minute][userId] = (topUsers[minute][userId] or 0) + 1\n" +
-        "    if topRooms[minute] == nil then topRooms[minute] = {} end\n" +
-        "    topRooms[minute][roomId] = (topRooms[minute][roomId] or 0) + 1\n" +
-        "    perSecond[second] = (perSecond[second] or 0) + 1\n" +
-        "    perMinute[minute] = (perMinute[minute] or 0) + 1\n" +
+        "    local hour = tostring(math.floor(tonumber(minute) / 60))\n" +
+        "    local day = tostring(math.floor(tonumber(minute) / 1440))\n" +
+        "    incr('messages:second:' .. second)\n" +
+        "    incr('messages:minute:' .. minute)\n" +
+        "    incr('messages:hour:' .. hour)\n" +
+        "    incr('messages:day:' .. day)\n" +
+        "    bump(zsets, 'top_users:minute:' .. minute, userId)\n" +
+        "    bump(zsets, 'top_users:hour:' .. hour, userId)\n" +
+        "    bump(zsets, 'top_users:day:' .. day, userId)\n" +
+        "    bump(zsets, 'top_rooms:minute:' .. minute, roomId)\n" +
+        "    bump(zsets, 'top_rooms:hour:' .. hour, roomId)\n" +
+        "    bump(zsets, 'top_rooms:day:' .. day, roomId)\n" +
+        "    if writeSet then\n" +
+        "      bump(sets, 'active_users:minute:' .. minute, userId)\n" +
+        "    end\n" +
+        "    if writeHll then\n" +
+        "      bump(hlls, 'active_users_hll:minute:' .. minute, userId)\n" +
+        "      bump(hlls, 'active_users_hll:hour:' .. hour, userId)\n" +
+        "      bump(hlls, 'active_users_hll:day:' .. day, userId)\n" +
+        "    end\n" +
         "  end\n" +
         "end\n" +
-        "for minute, users in pairs(activeUsers) do\n" +
-        "  for userId, _ in pairs(users) do\n" +
-        "    redis.call('SADD', 'active_users:minute:' .. minute, userId)\n" +
-        "  end\n" +
+        "for key, delta in pairs(counters) do\n" +
+        "  redis.call('INCRBY', key, delta)\n" +
         "end\n" +
-        "for minute, counts in pairs(topUsers) do\n" +
-        "  for userId, delta in pairs(counts) do\n" +
-        "    redis.call('ZINCRBY', 'top_users:minute:' .. minute, delta, userId)\n" +
+        "for key, deltas in pairs(zsets) do\n" +
+        "  for member, delta in pairs(deltas) do\n" +
+        "    redis.call('ZINCRBY', key, delta, member)\n" +
         "  end\n" +
         "end\n" +
-        "for minute, counts in pairs(topRooms) do\n" +
-        "  for roomId, delta in pairs(counts) do\n" +
-        "    redis.call('ZINCRBY', 'top_rooms:minute:' .. minute, delta, roomId)\n" +
-        "  end\n" +
-        "end\n" +
-        "for second, delta in pairs(perSecond) do\n" +
-        "  redis.call('INCRBY', 'messages:second:' .. second, delta)\n" +
+        "for key, users in pairs(sets) do\n" +
+        "  callAll('SADD', key, members(users))\n" +
         "end\n" +
-        "for minute, delta in pairs(perMinute) do\n" +
-        "  redis.call('INCRBY', 'messages:minute:' .. minute, delta)\n" +
+        "for key, users in pairs(hlls) do\n" +
+        "  callAll('PFADD', key, members(users))\n" +
         "end\n" +
         "local currentHealthTs = tonumber(redis.call('GET', 'projection:lastProjectedIngestedAt') or '0')\n" +
         "if healthTs > currentHealthTs then\n" +
@@ -131,11 +225,146 @@ public class RedisAnalytics {
         "end\n" +
         "return firstSeen\n";
 
+    static final String ANALYTICS_SCRIPT_SHA = sha1Hex(ANALYTICS_SCRIPT);
+
+    /**
+     * Lua script for the cluster layout: dedupe + analytics for the records of
+     * one hash-tagged bucket.  Every key it touches carries the tag, so the
+     * whole call runs on one slot.
+     *
+     * <pre>
+     * KEYS[1]  slot tag, e.g. {m:28333333} (used as the key prefix)
+     * ARGV[1]  dedupe TTL in seconds
+     * ARGV[2]  level: m | h | d  (per-second counters and sets: minute only)
+     * ARGV[3]  active-user mode: set | hll | both
+     * ARGV[4]  record count
+     *
+     * Per record:
+     *   ARGV[5 + n*4 + 0]  messageId
+     *   ARGV[5 + n*4 + 1]  userId
+     *   ARGV[5 + n*4 + 2]  roomId
+     *   ARGV[5 + n*4 + 3]  second bucket
+     *
+     * Returns: number of first-seen records.
+     * </pre>
+     */
+    static final String CLUSTER_SCRIPT =
+        "local tag = KEYS[1]\n" +
+        "local ttl = tonumber(ARGV[1])\n" +
+        "local level = ARGV[2]\n" +
+        "local auMode = ARGV[3]\n" +
+        "local count = tonumber(ARGV[4])\n" +
+        "local writeSet = level == 'm' and auMode ~= 'hll'\n" +
+        "local writeHll = auMode ~= 'set'\n" +
+        "local seconds = {}\n" +
+        "local users = {}\n" +
+        "local rooms = {}\n" +
+        "local firstSeen = 0\n" +
+        "local offset = 5\n" +
+        "for i = 1, count do\n" +
+        "  local messageId = ARGV[offset]\n" +
+        "  local userId = ARGV[offset + 1]\n" +
+        "  local roomId = ARGV[offset + 2]\n" +
+        "  local second = ARGV[offset + 3]\n" +
+        "  offset = offset + 4\n" +
+        "  if redis.call('SET', tag .. ':processed:' .. messageId, '1', 'NX', 'EX', ttl) then\n" +
+        "    firstSeen = firstSeen + 1\n" +
+        "    if level == 'm' then seconds[second] = (seconds[second] or 0) + 1 end\n" +
+        "    users[userId] = (users[userId] or 0) + 1\n" +
+        "    rooms[roomId] = (rooms[roomId] or 0) + 1\n" +
+        "  end\n" +
+        "end\n" +
+        "if firstSeen == 0 then return 0 end\n" +
+        "redis.call('INCRBY', tag .. ':messages', firstSeen)\n" +
+        "for second, delta in pairs(seconds) do\n" +
+        "  redis.call('INCRBY', tag .. ':messages:second:' .. second, delta)\n" +
+        "end\n" +
+        "local ids = {}\n" +
+        "for userId, delta in pairs(users) do\n" +
+        "  redis.call('ZINCRBY', tag .. ':top_users', delta, userId)\n" +
+        "  ids[#ids + 1] = userId\n" +
+        "end\n" +
+        "for roomId, delta in pairs(rooms) do\n" +
+        "  redis.call('ZINCRBY', tag .. ':top_rooms', delta, roomId)\n" +
+        "end\n" +
+        "for i = 1, #ids, 1000 do\n" +
+        "  local last = math.min(i + 999, #ids)\n" +
+        "  if writeSet then redis.call('SADD', tag .. ':active_users', unpack(ids, i, last)) end\n" +
+        "  if writeHll then redis.call('PFADD', tag .. ':active_users_hll', unpack(ids, i, last)) end\n" +
+        "end\n" +
+        "return firstSeen\n";
+
+    static final String CLUSTER_SCRIPT_SHA = sha1Hex(CLUSTER_SCRIPT);
+
+    /**
+     * Forward-only health marker update for the cluster layout.
+     * KEYS[1] ingestedAt key, KEYS[2] messageId key (same tag);
+     * ARGV[1] ingestedAtMs, ARGV[2] messageId.
+     */
+    static final String HEALTH_SCRIPT =
+        "local current = tonumber(redis.call('GET', KEYS[1]) or '0')\n" +
+        "if tonumber(ARGV[1]) > current then\n" +
+        "  redis.call('SET', KEYS[1], ARGV[1])\n" +
+        "  redis.call('SET', KEYS[2], ARGV[2])\n" +
+        "  return 1\n" +
+        "end\n" +
+        "return 0\n";
+
+    static final String HEALTH_SCRIPT_SHA = sha1Hex(HEALTH_SCRIPT);
+
+    static final String CLUSTER_HEALTH_INGESTED_AT_KEY = "{projection}:lastProjectedIngestedAt";
+    static final String CLUSTER_HEALTH_MESSAGE_ID_KEY  = "{projection}:lastProjectedMessageId";
+    private static final int CLUSTER_ARG_WIDTH = 4;
+
+    /** How distinct active users are recorded; see the class comment. */
+    public enum ActiveUsersMode {
+        SET, HLL, BOTH;
+
+        static ActiveUsersMode parse(String v) {
+            try { return valueOf(v.trim().toUpperCase(java.util.Locale.ROOT)); }
+            catch (Exception e) { return SET; }
+        }
+
+        String arg() { return name().toLowerCase(java.util.Locale.ROOT); }
+    }
+
+    /** Redis key layout; see the class comment. */
+    public enum KeyLayout {
+        FLAT, CLUSTER;
+
+        static KeyLayout parse(String v) {
+            try { return valueOf(v.trim().toUpperCase(java.util.Locale.ROOT)); }
+            catch (Exception e) { return FLAT; }
+        }
+    }
+
+    /**
+     * The two script commands the analytics path issues.  Package-private so
+     * tests can stand in for Redis without a server.  {@code keys} routes the
+     * call to a slot in cluster mode and is empty for the flat layout.
+     */
+    interface ScriptRunner {
+        String scriptLoad(String script);
+
+        CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args);
+    }
+
+    /** One script invocation. */
+    private record ScriptCall(String script, String sha, String[] keys, String[] args) {}
+
+    private static final String[] NO_KEYS = new String[0];
+
     private final boolean                                enabled;
-    private final RedisClient                            client;
-    private final StatefulRedisConnection<String,String> connection;
-    private final RedisCommands<String, String>          sync;
+    private final AbstractRedisClient                    client;
+    private final StatefulConnection<String,String>      connection;
+    private final RedisClusterCommands<String, String>   sync;
+    private final ScriptRunner                           scripts;
     private final int                                    dedupeExpireSeconds;
+    private final int                                    chunkSize;
+    private final ActiveUsersMode                        activeUsersMode;
+    private final KeyLayout                              keyLayout;
+    private final int                                    clusterShards;
+    private final long                                   timeoutMs;
 
     public RedisAnalytics(CdcConfig config) {
         if (config.isRedisEnabled()) {
@@ -143,57 +372,216 @@ public class RedisAnalytics {
                 .withHost(config.redisHost)
                 .withPort(config.redisPort)
                 .build();
-            this.client              = RedisClient.create(uri);
-            this.connection          = client.connect();
-            this.sync                = connection.sync();
+            this.keyLayout           = KeyLayout.parse(config.redisKeyLayout);
+            if (keyLayout == KeyLayout.CLUSTER) {
+                RedisClusterClient cluster = RedisClusterClient.create(uri);
+                StatefulRedisClusterConnection<String, String> conn = cluster.connect();
+                this.client          = cluster;
+                this.connection      = conn;
+                this.sync            = conn.sync();
+                this.scripts         = lettuceRunner(conn.sync(), conn.async());
+            } else {
+                RedisClient standalone = RedisClient.create(uri);
+                StatefulRedisConnection<String, String> conn = standalone.connect();
+                this.client          = standalone;
+                this.connection      = conn;
+                this.sync            = conn.sync();
+                this.scripts         = lettuceRunner(conn.sync(), conn.async());
+            }
             this.dedupeExpireSeconds = config.dedupeExpireSeconds;
+            this.chunkSize           = config.analyticsChunkSize;
+            this.activeUsersMode     = ActiveUsersMode.parse(config.activeUsersMode);
+            this.clusterShards       = config.redisClusterShards;
+            this.timeoutMs           = connection.getTimeout().toMillis();
             this.enabled             = true;
-            log.info("Redis connected: {}:{}", config.redisHost, config.redisPort);
+            log.info("Redis connected: {}:{} layout={}", config.redisHost, config.redisPort, keyLayout);
         } else {
             this.enabled             = false;
             this.client              = null;
             this.connection          = null;
             this.sync                = null;
+            this.scripts             = null;
             this.dedupeExpireSeconds = 0;
+            this.chunkSize           = 1;
+            this.activeUsersMode     = ActiveUsersMode.SET;
+            this.keyLayout           = KeyLayout.FLAT;
+            this.clusterShards       = 1;
+            this.timeoutMs           = 0L;
             log.info("Redis disabled - analytics skipped");
         }
     }
 
+    /** For tests: drive the script path through a stand-in {@link ScriptRunner}. */
+    RedisAnalytics(ScriptRunner scripts, int dedupeExpireSeconds, int chunkSize) {
+        this(scripts, dedupeExpireSeconds, chunkSize, ActiveUsersMode.SET);
+    }
+
+    RedisAnalytics(ScriptRunner scripts, int dedupeExpireSeconds, int chunkSize,
+                   ActiveUsersMode activeUsersMode) {
+        this(scripts, dedupeExpireSeconds, chunkSize, activeUsersMode, KeyLayout.FLAT, 1);
+    }
+
+    RedisAnalytics(ScriptRunner scripts, int dedupeExpireSeconds, int chunkSize,
+                   ActiveUsersMode activeUsersMode, KeyLayout keyLayout, int clusterShards) {
+        this.enabled             = true;
+        this.client              = null;
+        this.connection          = null;
+        this.sync                = null;
+        this.scripts             = scripts;
+        this.dedupeExpireSeconds = dedupeExpireSeconds;
+        this.chunkSize           = Math.max(1, chunkSize);
+        this.activeUsersMode     = activeUsersMode;
+        this.keyLayout           = keyLayout;
+        this.clusterShards       = Math.max(1, clusterShards);
+        this.timeoutMs           = 10_000L;
+    }
+
     public boolean isEnabled() { return enabled; }
 
     /**
      * Atomically deduplicate and record analytics for an invocation batch.
      *
      * <p>Each record still keeps its own processed marker, but the Redis
-     * counters are aggregated in Lua and flushed once per batch to reduce write
-     * amplification. Health markers are also advanced once per batch and only
+     * counters are aggregated in Lua and flushed once per chunk to reduce write
+     * amplification. Health markers are also advanced once per chunk and only
      * move forward.
      *
      * @return number of first-seen records that contributed analytics updates
      */
-    @SuppressWarnings("unchecked")
-    public long recordBatchAnalytics(java.util.List<ProjectionEvent> events) {
+    public long recordBatchAnalytics(List<ProjectionEvent> events) {
         if (!enabled || events == null || events.isEmpty()) {
             return 0L;
         }
-        String[] args = buildBatchAnalyticsArgs(events, dedupeExpireSeconds);
-        Long result = (Long) sync.eval(ANALYTICS_SCRIPT, ScriptOutputType.INTEGER, new String[0], args);
-        return result != null ? result : 0L;
+
+        if (keyLayout == KeyLayout.CLUSTER) {
+            return recordClusterBatch(events);
+        }
+
+        List<ScriptCall> calls = new ArrayList<>((events.size() + chunkSize - 1) / chunkSize);
+        for (int start = 0; start < events.size(); start += chunkSize) {
+            List<ProjectionEvent> chunk = events.subList(start, Math.min(start + chunkSize, events.size()));
+            calls.add(new ScriptCall(ANALYTICS_SCRIPT, ANALYTICS_SCRIPT_SHA, NO_KEYS,
+                buildBatchAnalyticsArgs(chunk, dedupeExpireSeconds, activeUsersMode)));
+        }
+
+        long firstSeen = 0L;
+        for (long n : runAll(calls)) {
+            firstSeen += n;
+        }
+        return firstSeen;
+    }
+
+    /**
+     * Cluster layout: one script call per hash tag (and per chunk within a
+     * tag), then the health markers.  Returns first-seen counts from the
+     * minute level, where every record appears exactly once.
+     */
+    private long recordClusterBatch(List<ProjectionEvent> events) {
+        List<ScriptCall> calls = new ArrayList<>();
+        List<Boolean> minuteLevel = new ArrayList<>();
+        for (Map.Entry<String, List<ProjectionEvent>> group : groupByClusterTag(events, clusterShards).entrySet()) {
+            String tag = group.getKey();
+            List<ProjectionEvent> tagged = group.getValue();
+            for (int start = 0; start < tagged.size(); start += chunkSize) {
+                List<ProjectionEvent> chunk = tagged.subList(start, Math.min(start + chunkSize, tagged.size()));
+                calls.add(new ScriptCall(CLUSTER_SCRIPT, CLUSTER_SCRIPT_SHA, new String[] {tag},
+                    buildClusterArgs(tag, chunk, dedupeExpireSeconds, activeUsersMode)));
+                minuteLevel.add(tag.startsWith("{m:"));
+            }
+        }
+
+        long[] results = runAll(calls);
+        long firstSeen = 0L;
+        for (int i = 0; i < results.length; i++) {
+            if (minuteLevel.get(i)) {
+                firstSeen += results[i];
+            }
+        }
+
+        ProjectionEvent latest = latestByIngestedAt(events);
+        runAll(List.of(new ScriptCall(HEALTH_SCRIPT, HEALTH_SCRIPT_SHA,
+            new String[] {CLUSTER_HEALTH_INGESTED_AT_KEY, CLUSTER_HEALTH_MESSAGE_ID_KEY},
+            new String[] {String.valueOf(latest.ingestedAtMs), latest.messageId})));
+        return firstSeen;
+    }
+
+    /**
+     * Issue every call before awaiting any reply, then re-issue the calls that
+     * hit NOSCRIPT after loading each missing script once.
+     */
+    private long[] runAll(List<ScriptCall> calls) {
+        List<CompletableFuture<Long>> pending = new ArrayList<>(calls.size());
+        for (ScriptCall call : calls) {
+            pending.add(scripts.evalsha(call.sha(), call.keys(), call.args()));
+        }
+
+        long[] results = new long[calls.size()];
+        List<Integer> noScript = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                results[i] = await(pending.get(i));
+            } catch (RedisNoScriptException e) {
+                // Script never ran for this call - safe to re-issue after loading
+                noScript.add(i);
+            }
+        }
+
+        if (!noScript.isEmpty()) {
+            Set<String> loaded = new HashSet<>();
+            for (int i : noScript) {
+                ScriptCall call = calls.get(i);
+                if (loaded.add(call.sha())) {
+                    String sha = scripts.scriptLoad(call.script());
+                    log.info("Analytics script (re)loaded sha={} after NOSCRIPT on {} call(s)", sha, noScript.size());
+                }
+            }
+            List<CompletableFuture<Long>> retries = new ArrayList<>(noScript.size());
+            for (int i : noScript) {
+                ScriptCall call = calls.get(i);
+                retries.add(scripts.evalsha(call.sha(), call.keys(), call.args()));
+            }
+            for (int r = 0; r < retries.size(); r++) {
+                results[noScript.get(r)] = await(retries.get(r));
+            }
+        }
+        return results;
+    }
+
+    private long await(CompletableFuture<Long> future) {
+        try {
+            Long result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return result != null ? result : 0L;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("Analytics script failed", cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException("Analytics script timed out after " + timeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted awaiting analytics script", e);
+        }
     }
 
     /**
      * Backward-compatible single-record wrapper for tests and one-off callers.
      */
     public boolean dedupeAndRecordAnalytics(ProjectionEvent pe) {
-        return recordBatchAnalytics(java.util.List.of(pe)) > 0L;
+        return recordBatchAnalytics(List.of(pe)) > 0L;
     }
 
     /**
      * Backward-compatible health update helper.
      */
     public void updateProjectionHealth(ProjectionEvent pe) {
-        sync.set("projection:lastProjectedIngestedAt", String.valueOf(pe.ingestedAtMs));
-        sync.set("projection:lastProjectedMessageId",  pe.messageId);
+        boolean cluster = keyLayout == KeyLayout.CLUSTER;
+        sync.set(cluster ? CLUSTER_HEALTH_INGESTED_AT_KEY : "projection:lastProjectedIngestedAt",
+            String.valueOf(pe.ingestedAtMs));
+        sync.set(cluster ? CLUSTER_HEALTH_MESSAGE_ID_KEY : "projection:lastProjectedMessageId",
+            pe.messageId);
     }
 
     // Helpers for unit tests
@@ -201,9 +589,14 @@ public class RedisAnalytics {
     /**
      * Build the ordered ARGV array for {@link #ANALYTICS_SCRIPT}.
      */
-    static String[] buildBatchAnalyticsArgs(java.util.List<ProjectionEvent> events, int dedupeExpireSeconds) {
+    static String[] buildBatchAnalyticsArgs(List<ProjectionEvent> events, int dedupeExpireSeconds) {
+        return buildBatchAnalyticsArgs(events, dedupeExpireSeconds, ActiveUsersMode.SET);
+    }
+
+    static String[] buildBatchAnalyticsArgs(List<ProjectionEvent> events, int dedupeExpireSeconds,
+                                            ActiveUsersMode activeUsersMode) {
         ProjectionEvent latest = latestByIngestedAt(events);
-        java.util.List<String> args = new java.util.ArrayList<>(4 + events.size() * BATCH_ARG_WIDTH);
+        List<String> args = new ArrayList<>(5 + events.size() * BATCH_ARG_WIDTH);
         args.add(String.valueOf(dedupeExpireSeconds));
         args.add(String.valueOf(latest != null ? latest.ingestedAtMs : 0L));
         args.add(latest != null ? latest.messageId : "");
@@ -215,10 +608,56 @@ public class RedisAnalytics {
             args.add(String.valueOf(pe.minuteBucket()));
             args.add(String.valueOf(pe.secondBucket()));
         }
+        args.add(activeUsersMode.arg());
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Hash tag for a cluster-layout bucket: {@code {m:N}}, {@code {h:N}} or
+     * {@code {d:N}}, with a {@code .shard} suffix when {@code shards > 1}.
+     */
+    static String clusterTag(char level, long bucket, int shard, int shards) {
+        return shards > 1
+            ? "{" + level + ":" + bucket + "." + shard + "}"
+            : "{" + level + ":" + bucket + "}";
+    }
+
+    /** Sub-tag a message lands in; stable across retries. */
+    static int clusterShard(String messageId, int shards) {
+        return shards > 1 ? Math.floorMod(messageId.hashCode(), shards) : 0;
+    }
+
+    /** Every record under its minute, hour and day tag; tags in first-seen order. */
+    static Map<String, List<ProjectionEvent>> groupByClusterTag(List<ProjectionEvent> events, int shards) {
+        Map<String, List<ProjectionEvent>> groups = new LinkedHashMap<>();
+        for (ProjectionEvent pe : events) {
+            int shard = clusterShard(pe.messageId, shards);
+            long minute = pe.minuteBucket();
+            groups.computeIfAbsent(clusterTag('m', minute, shard, shards), k -> new ArrayList<>()).add(pe);
+            groups.computeIfAbsent(clusterTag('h', Math.floorDiv(minute, 60L), shard, shards), k -> new ArrayList<>()).add(pe);
+            groups.computeIfAbsent(clusterTag('d', Math.floorDiv(minute, 1_440L), shard, shards), k -> new ArrayList<>()).add(pe);
+        }
+        return groups;
+    }
+
+    /** Build the ordered ARGV array for {@link #CLUSTER_SCRIPT}. */
+    static String[] buildClusterArgs(String tag, List<ProjectionEvent> events, int dedupeExpireSeconds,
+                                     ActiveUsersMode activeUsersMode) {
+        List<String> args = new ArrayList<>(4 + events.size() * CLUSTER_ARG_WIDTH);
+        args.add(String.valueOf(dedupeExpireSeconds));
+        args.add(String.valueOf(tag.charAt(1)));
+        args.add(activeUsersMode.arg());
+        args.add(String.valueOf(events.size()));
+        for (ProjectionEvent pe : events) {
+            args.add(pe.messageId);
+            args.add(pe.userId);
+            args.add(pe.roomId);
+            args.add(String.valueOf(pe.secondBucket()));
+        }
         return args.toArray(new String[0]);
     }
 
-    static ProjectionEvent latestByIngestedAt(java.util.List<ProjectionEvent> events) {
+    static ProjectionEvent latestByIngestedAt(List<ProjectionEvent> events) {
         ProjectionEvent latest = null;
         for (ProjectionEvent pe : events) {
             if (latest == null || pe.ingestedAtMs > latest.ingestedAtMs) {
@@ -227,4 +666,30 @@ public class RedisAnalytics {
         }
         return latest;
     }
+
+    private static ScriptRunner lettuceRunner(RedisScriptingCommands<String, String> sync,
+                                              RedisScriptingAsyncCommands<String, String> async) {
+        return new ScriptRunner() {
+            @Override
+            public String scriptLoad(String script) {
+                return sync.scriptLoad(script);
+            }
+
+            @Override
+            public CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args) {
+                return async.<Long>evalsha(sha, ScriptOutputType.INTEGER, keys, args)
+                    .toCompletableFuture();
+            }
+        };
+    }
+
+    /** SHA-1 hex digest, matching what Redis returns from {@code SCRIPT LOAD}. */
+    static String sha1Hex(String script) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(sha1.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
 }
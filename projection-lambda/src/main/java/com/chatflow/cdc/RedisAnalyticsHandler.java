@@ -17,7 +17,9 @@ import java.util.List;
  *
  * <h3>Pipeline</h3>
  * <ol>
- *   <li>Parse {@link AnalyticsEvent} from each SQS message body (JSON).</li>
+ *   <li>Parse {@link AnalyticsEvent}s from each SQS message body: one JSON
+ *       event, or many events in the packed binary form
+ *       ({@link AnalyticsEventCodec}).</li>
  *   <li>Convert to lightweight {@link ProjectionEvent} stubs that carry only
  *       the fields consumed by {@link RedisAnalytics}.</li>
  *   <li>Call {@link RedisAnalytics#recordBatchAnalytics} once for the whole
@@ -27,8 +29,9 @@ import java.util.List;
  *
  * <h3>Failure semantics</h3>
  * <ul>
- *   <li>JSON parse failure for a single message: that SQS message ID is added
- *       to {@code batchItemFailures}; remaining messages are still processed.</li>
+ *   <li>Parse failure for a single message (JSON or packed): that SQS message
+ *       ID is added to {@code batchItemFailures}; remaining messages are still
+ *       processed.</li>
  *   <li>Redis not enabled (REDIS_ENDPOINT blank): all successfully-parsed SQS
  *       message IDs are added to {@code batchItemFailures}.  This forces SQS to
  *       redeliver the messages instead of silently dropping analytics data.
@@ -89,8 +92,14 @@ public class RedisAnalyticsHandler implements RequestHandler<SQSEvent, SQSBatchR
         // Phase 1: parse all messages; isolate parse failures per message
         for (SQSMessage msg : messages) {
             try {
-                AnalyticsEvent ae = mapper.readValue(msg.getBody(), AnalyticsEvent.class);
-                analyticsEvents.add(ae.toProjectionEvent());
+                String body = msg.getBody();
+                if (AnalyticsEventCodec.isPacked(body)) {
+                    for (AnalyticsEvent ae : AnalyticsEventCodec.unpack(body)) {
+                        analyticsEvents.add(ae.toProjectionEvent());
+                    }
+                } else {
+                    analyticsEvents.add(mapper.readValue(body, AnalyticsEvent.class).toProjectionEvent());
+                }
                 parsedSqsIds.add(msg.getMessageId());
             } catch (Exception e) {
                 log.error("Failed to parse SQS message sqsId={}: {}",
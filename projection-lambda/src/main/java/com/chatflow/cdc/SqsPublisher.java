@@ -17,11 +17,30 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * Publishes {@link AnalyticsEvent} messages to SQS in chunks of up to 10
  * (the {@code SendMessageBatch} limit).
  *
+ * <h3>Encoding</h3>
+ * {@code SQS_ANALYTICS_ENCODING=json} (default) sends one JSON event per SQS
+ * message.  {@code packed} sends many events per message using
+ * {@link AnalyticsEventCodec}, each body up to {@value #MAX_PACKED_BODY_CHARS}
+ * characters and each {@code SendMessageBatch} call within the 256 KiB request
+ * limit.  {@link RedisAnalyticsHandler} accepts both, so the two Lambdas can be
+ * switched in either order.
+ *
+ * <h3>Concurrency</h3>
+ * The {@code SendMessageBatch} calls for one {@link #sendBatch} run
+ * concurrently on virtual threads, at most {@code SQS_SEND_CONCURRENCY} in
+ * flight.  Each call reports its own failed messageIds, so the returned set
+ * is the same as a sequential send would produce.
+ *
  * <h3>Failure semantics</h3>
  * <ul>
  *   <li>JSON serialization failure for one event: that chatflow messageId is
@@ -30,6 +49,7 @@ import java.util.Set;
  *       are mapped back to their chatflow messageId and returned.</li>
  *   <li>SQS call throws an exception: all messageIds in the affected chunk are
  *       returned as failed.</li>
+ *   <li>Packed mode: a failed SQS entry fails every messageId packed into it.</li>
  * </ul>
  *
  * The caller ({@link CdcProjectorHandler}) maps failed messageIds back to
@@ -41,65 +61,169 @@ public class SqsPublisher {
     private static final Logger log = LogManager.getLogger(SqsPublisher.class);
     /** SQS SendMessageBatch accepts at most 10 entries per call. */
     private static final int SQS_BATCH_LIMIT = 10;
+    /** SQS caps a single message, and the sum of a batch request, at 256 KiB. */
+    private static final int SQS_MAX_REQUEST_BYTES = 256 * 1024;
+    /** Packed body cap; leaves headroom under the 256 KiB message limit. */
+    static final int MAX_PACKED_BODY_CHARS = 240 * 1024;
+    private static final int DEFAULT_SEND_CONCURRENCY = 16;
 
     private final SqsClient    sqsClient;
     private final String       queueUrl;
     private final ObjectMapper mapper;
+    private final boolean      packed;
+    private final int          maxPackedBodyChars;
+    private final Semaphore    inFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
 
     public SqsPublisher(CdcConfig config) {
         this.sqsClient = SqsClient.builder()
             .region(Region.of(config.dynamoRegion))
             .build();
-        this.queueUrl = config.sqsAnalyticsQueueUrl;
-        this.mapper   = new ObjectMapper();
+        this.queueUrl           = config.sqsAnalyticsQueueUrl;
+        this.mapper             = new ObjectMapper();
+        this.packed             = config.isSqsAnalyticsPacked();
+        this.maxPackedBodyChars = MAX_PACKED_BODY_CHARS;
+        this.inFlight           = new Semaphore(config.sqsSendConcurrency);
     }
 
     /** Package-private constructor for unit tests that inject a fake client. */
     SqsPublisher(SqsClient sqsClient, String queueUrl) {
-        this.sqsClient = sqsClient;
-        this.queueUrl  = queueUrl;
-        this.mapper    = new ObjectMapper();
+        this(sqsClient, queueUrl, false, MAX_PACKED_BODY_CHARS, DEFAULT_SEND_CONCURRENCY);
+    }
+
+    SqsPublisher(SqsClient sqsClient, String queueUrl, boolean packed, int maxPackedBodyChars) {
+        this(sqsClient, queueUrl, packed, maxPackedBodyChars, DEFAULT_SEND_CONCURRENCY);
+    }
+
+    SqsPublisher(SqsClient sqsClient, String queueUrl, boolean packed, int maxPackedBodyChars,
+                 int sendConcurrency) {
+        this.sqsClient          = sqsClient;
+        this.queueUrl           = queueUrl;
+        this.mapper             = new ObjectMapper();
+        this.packed             = packed;
+        this.maxPackedBodyChars = maxPackedBodyChars;
+        this.inFlight           = new Semaphore(Math.max(1, sendConcurrency));
     }
 
     /**
-     * Send all events to SQS, chunked at {@value #SQS_BATCH_LIMIT} per call.
+     * Send all events to SQS, chunked at {@value #SQS_BATCH_LIMIT} entries per call.
      *
      * @return chatflow messageIds for which the send definitively failed
      */
     public Set<String> sendBatch(List<AnalyticsEvent> events) {
         Set<String> failed = new HashSet<>();
-        for (int start = 0; start < events.size(); start += SQS_BATCH_LIMIT) {
-            int end = Math.min(start + SQS_BATCH_LIMIT, events.size());
-            failed.addAll(sendChunk(events.subList(start, end)));
+        List<Chunk> chunks = packed ? packedChunks(events) : jsonChunks(events, failed);
+        if (chunks.size() == 1) {
+            failed.addAll(sendChunk(chunks.get(0)));
+            return failed;
+        }
+
+        List<Future<Set<String>>> futures = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            futures.add(executor.submit(() -> {
+                inFlight.acquire();
+                try {
+                    return sendChunk(chunk);
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                failed.addAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted awaiting SQS sends; failing {} unconfirmed chunks", futures.size() - i);
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                    failed.addAll(chunks.get(j).messageIds());
+                }
+                break;
+            } catch (ExecutionException e) {
+                // sendChunk catches SQS errors itself; treat anything else as a failed chunk
+                log.error("SQS chunk task failed: {}", e.getCause().getMessage(), e.getCause());
+                failed.addAll(chunks.get(i).messageIds());
+            }
         }
         return failed;
     }
 
-    private Set<String> sendChunk(List<AnalyticsEvent> chunk) {
-        Set<String> failed = new HashSet<>();
-        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(chunk.size());
-        // batchEntryId (string index) -> chatflow messageId
-        Map<String, String> idMap = new LinkedHashMap<>(chunk.size() * 2);
+    /** One {@code SendMessageBatch} request and the chatflow messageIds behind each entry. */
+    private record Chunk(List<SendMessageBatchRequestEntry> entries, Map<String, List<String>> idMap) {
+        List<String> messageIds() {
+            List<String> ids = new ArrayList<>();
+            for (List<String> v : idMap.values()) ids.addAll(v);
+            return ids;
+        }
+    }
 
-        for (int i = 0; i < chunk.size(); i++) {
-            AnalyticsEvent event = chunk.get(i);
-            String batchId = String.valueOf(i);
-            try {
-                String body = mapper.writeValueAsString(event);
-                entries.add(SendMessageBatchRequestEntry.builder()
-                    .id(batchId)
-                    .messageBody(body)
-                    .build());
-                idMap.put(batchId, event.messageId);
-            } catch (JsonProcessingException e) {
-                log.error("Serialize failed messageId={}: {}", event.messageId, e.getMessage());
-                failed.add(event.messageId);
+    private List<Chunk> jsonChunks(List<AnalyticsEvent> events, Set<String> failed) {
+        List<Chunk> chunks = new ArrayList<>((events.size() + SQS_BATCH_LIMIT - 1) / SQS_BATCH_LIMIT);
+        for (int start = 0; start < events.size(); start += SQS_BATCH_LIMIT) {
+            int end = Math.min(start + SQS_BATCH_LIMIT, events.size());
+            List<AnalyticsEvent> chunk = events.subList(start, end);
+
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>(chunk.size());
+            // batchEntryId (string index) -> chatflow messageIds carried by that entry
+            Map<String, List<String>> idMap = new LinkedHashMap<>(chunk.size() * 2);
+            for (int i = 0; i < chunk.size(); i++) {
+                AnalyticsEvent event = chunk.get(i);
+                String batchId = String.valueOf(i);
+                try {
+                    entries.add(entry(batchId, mapper.writeValueAsString(event)));
+                    idMap.put(batchId, List.of(event.messageId));
+                } catch (JsonProcessingException e) {
+                    log.error("Serialize failed messageId={}: {}", event.messageId, e.getMessage());
+                    failed.add(event.messageId);
+                }
+            }
+            if (!entries.isEmpty()) {
+                chunks.add(new Chunk(entries, idMap));
             }
         }
+        return chunks;
+    }
 
-        if (entries.isEmpty()) {
-            return failed;
+    private List<Chunk> packedChunks(List<AnalyticsEvent> events) {
+        List<AnalyticsEventCodec.Packed> bodies = AnalyticsEventCodec.pack(events, maxPackedBodyChars);
+        List<Chunk> chunks = new ArrayList<>();
+
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(SQS_BATCH_LIMIT);
+        Map<String, List<String>> idMap = new LinkedHashMap<>();
+        int requestBytes = 0;
+        for (AnalyticsEventCodec.Packed p : bodies) {
+            int bytes = p.body().length(); // Base64 is ASCII: chars == bytes
+            if (!entries.isEmpty()
+                    && (entries.size() == SQS_BATCH_LIMIT || requestBytes + bytes > SQS_MAX_REQUEST_BYTES)) {
+                chunks.add(new Chunk(entries, idMap));
+                entries = new ArrayList<>(SQS_BATCH_LIMIT);
+                idMap = new LinkedHashMap<>();
+                requestBytes = 0;
+            }
+            String batchId = String.valueOf(entries.size());
+            entries.add(entry(batchId, p.body()));
+            idMap.put(batchId, p.messageIds());
+            requestBytes += bytes;
+        }
+        if (!entries.isEmpty()) {
+            chunks.add(new Chunk(entries, idMap));
         }
+        log.debug("SQS packed: events={} messages={} requests={}", events.size(), bodies.size(), chunks.size());
+        return chunks;
+    }
+
+    private static SendMessageBatchRequestEntry entry(String batchId, String body) {
+        return SendMessageBatchRequestEntry.builder()
+            .id(batchId)
+            .messageBody(body)
+            .build();
+    }
+
+    private Set<String> sendChunk(Chunk chunk) {
+        List<SendMessageBatchRequestEntry> entries = chunk.entries();
+        Map<String, List<String>> idMap = chunk.idMap();
+        Set<String> failed = new HashSet<>();
 
         try {
             SendMessageBatchResponse response = sqsClient.sendMessageBatch(
@@ -108,17 +232,20 @@ public class SqsPublisher {
                     .entries(entries)
                     .build());
             for (BatchResultErrorEntry err : response.failed()) {
-                String chatflowId = idMap.get(err.id());
-                if (chatflowId != null) {
-                    log.error("SQS batch send failed messageId={} batchId={} code={} msg={}",
-                        chatflowId, err.id(), err.code(), err.message());
-                    failed.add(chatflowId);
+                List<String> chatflowIds = idMap.get(err.id());
+                if (chatflowIds != null) {
+                    log.error("SQS batch send failed messageIds={} batchId={} code={} msg={}",
+                        chatflowIds.size() == 1 ? chatflowIds.get(0) : chatflowIds.size() + " packed",
+                        err.id(), err.code(), err.message());
+                    failed.addAll(chatflowIds);
                 }
             }
             log.debug("SQS chunk sent: total={} failed={}", entries.size(), response.failed().size());
         } catch (Exception e) {
             log.error("SQS sendMessageBatch threw exception, failing entire chunk: {}", e.getMessage(), e);
-            failed.addAll(idMap.values());
+            for (List<String> ids : idMap.values()) {
+                failed.addAll(ids);
+            }
         }
 
         return failed;
@@ -0,0 +1,101 @@
+package com.chatflow.cdc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip and framing tests for the packed SQS analytics encoding.
+ */
+class AnalyticsEventCodecTest {
+
+    private static List<AnalyticsEvent> events(int n) {
+        List<AnalyticsEvent> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long ts = 1_700_000_000_000L + i * 37L;
+            out.add(new AnalyticsEvent("msg-" + i, "user-" + (i % 13), "room-" + (i % 5), ts, ts + 250 + i % 3));
+        }
+        return out;
+    }
+
+    private static void assertSameEvent(AnalyticsEvent expected, AnalyticsEvent actual) {
+        assertEquals(expected.messageId,    actual.messageId);
+        assertEquals(expected.userId,       actual.userId);
+        assertEquals(expected.roomId,       actual.roomId);
+        assertEquals(expected.eventTsMs,    actual.eventTsMs);
+        assertEquals(expected.ingestedAtMs, actual.ingestedAtMs);
+    }
+
+    @Test
+    void pack_thenUnpack_roundTripsEveryField() {
+        List<AnalyticsEvent> in = events(500);
+        List<AnalyticsEventCodec.Packed> packed = AnalyticsEventCodec.pack(in, SqsPublisher.MAX_PACKED_BODY_CHARS);
+        assertEquals(1, packed.size());
+
+        List<AnalyticsEvent> out = AnalyticsEventCodec.unpack(packed.get(0).body());
+        assertEquals(in.size(), out.size());
+        for (int i = 0; i < in.size(); i++) {
+            assertSameEvent(in.get(i), out.get(i));
+        }
+        assertEquals(in.get(42).messageId, packed.get(0).messageIds().get(42));
+    }
+
+    @Test
+    void pack_isMuchSmallerThanJson() {
+        List<AnalyticsEvent> in = events(500);
+        int packedChars = AnalyticsEventCodec.pack(in, SqsPublisher.MAX_PACKED_BODY_CHARS).get(0).body().length();
+        // A JSON AnalyticsEvent is ~120 chars
+        assertTrue(packedChars < 500 * 40, "packed body was " + packedChars + " chars");
+    }
+
+    @Test
+    void pack_respectsBodyLimit_andSplitsWithoutLosingEvents() {
+        List<AnalyticsEvent> in = events(1_000);
+        List<AnalyticsEventCodec.Packed> packed = AnalyticsEventCodec.pack(in, 2_000);
+        assertTrue(packed.size() > 1);
+
+        List<AnalyticsEvent> out = new ArrayList<>();
+        for (AnalyticsEventCodec.Packed p : packed) {
+            assertTrue(p.body().length() <= 2_000, "body length " + p.body().length());
+            List<AnalyticsEvent> decoded = AnalyticsEventCodec.unpack(p.body());
+            assertEquals(p.messageIds().size(), decoded.size());
+            out.addAll(decoded);
+        }
+        assertEquals(in.size(), out.size());
+        for (int i = 0; i < in.size(); i++) {
+            assertSameEvent(in.get(i), out.get(i));
+        }
+    }
+
+    @Test
+    void roundTrip_unicodeAndOutOfOrderTimestamps() {
+        List<AnalyticsEvent> in = List.of(
+            new AnalyticsEvent("m1", "\u30e6\u30fc\u30b6\u30fc", "room-\u00e9", 5_000L, 4_000L),
+            new AnalyticsEvent("m2", "\u30e6\u30fc\u30b6\u30fc", "room-\u00e9", 1_000L, 9_000L));
+        List<AnalyticsEvent> out = AnalyticsEventCodec.unpack(AnalyticsEventCodec.pack(in, 10_000).get(0).body());
+        assertSameEvent(in.get(0), out.get(0));
+        assertSameEvent(in.get(1), out.get(1));
+    }
+
+    @Test
+    void isPacked_distinguishesJson() {
+        assertFalse(AnalyticsEventCodec.isPacked("{\"messageId\":\"m1\"}"));
+        assertTrue(AnalyticsEventCodec.isPacked(AnalyticsEventCodec.pack(events(1), 10_000).get(0).body()));
+    }
+
+    @Test
+    void unpack_rejectsCorruptBodies() {
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsEventCodec.unpack("not base64!!"));
+        assertThrows(IllegalArgumentException.class,
+            () -> AnalyticsEventCodec.unpack(Base64.getEncoder().encodeToString(new byte[]{9, 1, 2})));
+
+        String body = AnalyticsEventCodec.pack(events(3), 10_000).get(0).body();
+        byte[] raw = Base64.getDecoder().decode(body);
+        String truncated = Base64.getEncoder().encodeToString(java.util.Arrays.copyOf(raw, raw.length - 4));
+        assertThrows(IllegalArgumentException.class, () -> AnalyticsEventCodec.unpack(truncated));
+    }
+}
@@ -97,4 +97,46 @@ class LuaScriptKeyTest {
         assertTrue(script.contains("firstSeen = firstSeen + 1"), "should count first-seen records");
         assertTrue(script.contains("return firstSeen"), "should return aggregate first-seen count");
     }
+
+    // Active-user mode trailer
+
+    @Test
+    void args_trailer_defaultsToSetMode() {
+        String[] args = RedisAnalytics.buildBatchAnalyticsArgs(java.util.List.of(PE, PE2), 3600);
+        assertEquals(4 + 2 * 5 + 1, args.length);
+        assertEquals("set", args[args.length - 1]);
+    }
+
+    @Test
+    void args_trailer_carriesHllMode() {
+        String[] args = RedisAnalytics.buildBatchAnalyticsArgs(
+            java.util.List.of(PE), 3600, RedisAnalytics.ActiveUsersMode.HLL);
+        assertEquals("hll", args[9]);
+    }
+
+    @Test
+    void activeUsersMode_parse_unknownFallsBackToSet() {
+        assertEquals(RedisAnalytics.ActiveUsersMode.BOTH, RedisAnalytics.ActiveUsersMode.parse(" Both "));
+        assertEquals(RedisAnalytics.ActiveUsersMode.SET,  RedisAnalytics.ActiveUsersMode.parse("bogus"));
+    }
+
+    @Test
+    void analyticsScript_writesMinuteAndHourHll() {
+        String script = RedisAnalytics.ANALYTICS_SCRIPT;
+        assertTrue(script.contains("'PFADD'"), "PFADD missing");
+        assertTrue(script.contains("active_users_hll:minute:"), "minute HLL key missing");
+        assertTrue(script.contains("active_users_hll:hour:"), "hour HLL key missing");
+        assertTrue(script.contains("active_users_hll:day:"), "day HLL key missing");
+    }
+
+    @Test
+    void analyticsScript_maintainsHourAndDayRollups() {
+        String script = RedisAnalytics.ANALYTICS_SCRIPT;
+        for (String family : new String[]{"messages", "top_users", "top_rooms"}) {
+            assertTrue(script.contains("'" + family + ":hour:'"), family + " hour roll-up missing");
+            assertTrue(script.contains("'" + family + ":day:'"), family + " day roll-up missing");
+        }
+        assertTrue(script.contains("/ 60"), "hour = floor(minute / 60)");
+        assertTrue(script.contains("/ 1440"), "day = floor(minute / 1440)");
+    }
 }
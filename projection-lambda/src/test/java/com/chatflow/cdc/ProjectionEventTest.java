@@ -128,4 +128,53 @@ class ProjectionEventTest {
         assertEquals(0L,  pe.ingestedAtMs);
         assertEquals("",  pe.dayBucket);
     }
+
+    // N text pass-through
+
+    @Test
+    void canonicalNumberText_passedThroughUnformatted() {
+        Map<String, AttributeValue> img = sampleImage();
+        ProjectionEvent pe = ProjectionEvent.fromNewImage(img);
+        assertSame(img.get("eventTs").getN(),      pe.eventTsN());
+        assertSame(img.get("ingestedAt").getN(),   pe.ingestedAtN());
+        assertSame(img.get("roomSequence").getN(), pe.roomSequenceN());
+    }
+
+    @Test
+    void nonCanonicalNumberText_normalisedLikeParse() {
+        Map<String, AttributeValue> img = sampleImage();
+        putN(img, "roomSequence", "007");
+        putN(img, "eventTs",      "not-a-number");
+        putN(img, "ingestedAt",   "-0");
+
+        ProjectionEvent pe = ProjectionEvent.fromNewImage(img);
+        assertEquals("7", pe.roomSequenceN());
+        assertEquals(7L,  pe.roomSequence);
+        assertEquals("0", pe.eventTsN());
+        assertEquals(0L,  pe.eventTsMs);
+        assertEquals("0", pe.ingestedAtN());
+        assertEquals("0#msg-123", pe.sortKey());
+    }
+
+    @Test
+    void builtFromValues_numberTextMatchesValues() {
+        ProjectionEvent pe = new ProjectionEvent("m1", "r1", "u1", "", "", "", 3L, -5L, 1_000L, "");
+        assertEquals("3",    pe.roomSequenceN());
+        assertEquals("-5",   pe.eventTsN());
+        assertEquals("1000", pe.ingestedAtN());
+        assertEquals(1_000L, pe.ingestedAtMs);
+    }
+
+    @Test
+    void canonicalLong_matchesLongToStringForm() {
+        assertTrue(ProjectionEvent.canonicalLong("0"));
+        assertTrue(ProjectionEvent.canonicalLong("1700000000000"));
+        assertTrue(ProjectionEvent.canonicalLong("-42"));
+        assertFalse(ProjectionEvent.canonicalLong(""));
+        assertFalse(ProjectionEvent.canonicalLong("-"));
+        assertFalse(ProjectionEvent.canonicalLong("-0"));
+        assertFalse(ProjectionEvent.canonicalLong("01"));
+        assertFalse(ProjectionEvent.canonicalLong("1e3"));
+        assertFalse(ProjectionEvent.canonicalLong("9223372036854775807"), "19 digits may overflow");
+    }
 }
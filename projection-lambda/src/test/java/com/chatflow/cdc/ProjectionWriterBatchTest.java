@@ -0,0 +1,199 @@
+package com.chatflow.cdc;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Exercises {@link ProjectionWriter#writeBatch} against an in-memory
+ * {@link DynamoDbClient} fake: concurrency bound, per-record failure
+ * attribution and user_rooms coalescing.
+ */
+class ProjectionWriterBatchTest {
+
+    private static final String ROOM_MESSAGES = "room_messages";
+    private static final String USER_MESSAGES = "user_messages";
+    private static final String USER_ROOMS    = "user_rooms";
+
+    /** Records calls and peak concurrency; fails configured messageIds/userIds. */
+    private static final class FakeDynamo implements DynamoDbClient {
+        final Set<String>   unprocessedRoomIds = ConcurrentHashMap.newKeySet();
+        final Set<String>   failingUserRooms   = ConcurrentHashMap.newKeySet();
+        final Set<String>   userRoomsWritten   = ConcurrentHashMap.newKeySet();
+        final List<String>  userRoomTs         = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger batchCalls         = new AtomicInteger();
+        final AtomicInteger active             = new AtomicInteger();
+        final AtomicInteger peak               = new AtomicInteger();
+
+        private void enter() {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try { Thread.sleep(5); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            enter();
+            try {
+                batchCalls.incrementAndGet();
+                Map<String, List<WriteRequest>> unprocessed = new ConcurrentHashMap<>();
+                request.requestItems().forEach((table, writes) -> {
+                    List<WriteRequest> left = new ArrayList<>();
+                    for (WriteRequest w : writes) {
+                        String id = w.putRequest().item().get("messageId").s();
+                        if (ROOM_MESSAGES.equals(table) && unprocessedRoomIds.contains(id)) left.add(w);
+                    }
+                    if (!left.isEmpty()) unprocessed.put(table, left);
+                });
+                return BatchWriteItemResponse.builder().unprocessedItems(unprocessed).build();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            enter();
+            try {
+                Map<String, AttributeValue> key = request.key();
+                String userId = key.get("userId").s();
+                if (failingUserRooms.contains(userId)) {
+                    throw new RuntimeException("throttled");
+                }
+                userRoomsWritten.add(userId + "/" + key.get("roomId").s());
+                userRoomTs.add(request.expressionAttributeValues().get(":ts").n());
+                return UpdateItemResponse.builder().build();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override public String serviceName() { return "dynamodb"; }
+        @Override public void close() { }
+    }
+
+    private static List<ProjectionEvent> events(int n) {
+        List<ProjectionEvent> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(new ProjectionEvent(
+                "msg-" + i, "room-" + (i % 3), "user-" + i, "u" + i, "hello", "TEXT",
+                i, 1_700_100_000_000L + i, 1_700_100_001_000L, "2023-11-16"));
+        }
+        return out;
+    }
+
+    private static ProjectionEvent event(String messageId, String userId, String roomId, long eventTsMs) {
+        return new ProjectionEvent(messageId, roomId, userId, "u", "hello", "TEXT",
+            1L, eventTsMs, eventTsMs + 1, "2023-11-16");
+    }
+
+    private static ProjectionWriter writer(FakeDynamo dynamo, int concurrency) {
+        return new ProjectionWriter(dynamo, ROOM_MESSAGES, USER_MESSAGES, USER_ROOMS, concurrency);
+    }
+
+    @Test
+    void writeBatch_allSucceed_writesEveryChunkAndUserRoom() {
+        FakeDynamo dynamo = new FakeDynamo();
+        ProjectionWriter.BatchWriteResult result = writer(dynamo, 8).writeBatch(events(60));
+
+        assertTrue(result.failedMessageIds().isEmpty());
+        assertEquals(6, dynamo.batchCalls.get(), "3 chunks per table x 2 tables");
+        assertEquals(60, dynamo.userRoomsWritten.size());
+    }
+
+    @Test
+    void writeBatch_inFlightCallsNeverExceedConcurrency() {
+        FakeDynamo dynamo = new FakeDynamo();
+        writer(dynamo, 4).writeBatch(events(200));
+
+        assertTrue(dynamo.peak.get() <= 4, "peak in-flight was " + dynamo.peak.get());
+        assertTrue(dynamo.peak.get() > 1, "calls should overlap");
+    }
+
+    @Test
+    void writeBatch_failuresAttributedPerRecord() {
+        FakeDynamo dynamo = new FakeDynamo();
+        dynamo.unprocessedRoomIds.add("msg-30");
+        dynamo.failingUserRooms.add("user-5");
+
+        ProjectionWriter.BatchWriteResult result = writer(dynamo, 8).writeBatch(events(60));
+
+        assertEquals(Set.of("msg-30", "msg-5"), result.failedMessageIds());
+        assertFalse(dynamo.userRoomsWritten.contains("user-30/room-0"),
+            "user_rooms must not advance for a message whose projection failed");
+        assertEquals(58, dynamo.userRoomsWritten.size());
+    }
+
+    @Test
+    void writeBatch_emptyInput_noCalls() {
+        FakeDynamo dynamo = new FakeDynamo();
+        assertTrue(writer(dynamo, 8).writeBatch(List.of()).failedMessageIds().isEmpty());
+        assertEquals(0, dynamo.batchCalls.get());
+    }
+
+    // user_rooms coalescing
+
+    @Test
+    void coalesceUserRooms_keepsNewestPerPair_andEveryContributor() {
+        List<ProjectionWriter.UserRoomUpdate> updates = ProjectionWriter.coalesceUserRooms(List.of(
+            event("m1", "alice", "r1", 100),
+            event("m2", "alice", "r1", 300),
+            event("m3", "bob",   "r1", 200),
+            event("m4", "alice", "r1", 250),
+            event("m5", "alice", "r2", 50)), Set.of());
+
+        assertEquals(3, updates.size());
+        assertEquals("m2", updates.get(0).latest().messageId);
+        assertEquals(List.of("m1", "m2", "m4"), updates.get(0).messageIds());
+        assertEquals(List.of("m3"), updates.get(1).messageIds());
+        assertEquals(List.of("m5"), updates.get(2).messageIds());
+    }
+
+    @Test
+    void coalesceUserRooms_skipsFailedMessages() {
+        List<ProjectionWriter.UserRoomUpdate> updates = ProjectionWriter.coalesceUserRooms(List.of(
+            event("m1", "alice", "r1", 100),
+            event("m2", "alice", "r1", 300)), Set.of("m2"));
+
+        assertEquals(1, updates.size());
+        assertEquals("m1", updates.get(0).latest().messageId);
+    }
+
+    @Test
+    void writeBatch_sendsOneUpdatePerPair_withMaxTimestamp() {
+        FakeDynamo dynamo = new FakeDynamo();
+        writer(dynamo, 8).writeBatch(List.of(
+            event("m1", "alice", "r1", 100),
+            event("m2", "alice", "r1", 300),
+            event("m3", "alice", "r1", 200)));
+
+        assertEquals(List.of("300"), dynamo.userRoomTs);
+    }
+
+    @Test
+    void writeBatch_coalescedUpdateFails_fansOutToEveryContributor() {
+        FakeDynamo dynamo = new FakeDynamo();
+        dynamo.failingUserRooms.add("alice");
+
+        ProjectionWriter.BatchWriteResult result = writer(dynamo, 8).writeBatch(List.of(
+            event("m1", "alice", "r1", 100),
+            event("m2", "alice", "r1", 300),
+            event("m3", "bob",   "r1", 200)));
+
+        assertEquals(Set.of("m1", "m2"), result.failedMessageIds());
+    }
+}
@@ -0,0 +1,127 @@
+package com.chatflow.cdc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cluster key layout: hash-tag grouping and per-slot script dispatch in
+ * {@link RedisAnalytics#recordBatchAnalytics}.
+ */
+class RedisAnalyticsClusterTest {
+
+    private static final long MIN = 60_000L;
+
+    /** Accepts every call; analytics calls report all records as first-seen. */
+    private static final class RecordingRunner implements RedisAnalytics.ScriptRunner {
+        final List<String>   shas = new ArrayList<>();
+        final List<String[]> keys = new ArrayList<>();
+        final List<String[]> args = new ArrayList<>();
+
+        @Override
+        public String scriptLoad(String script) {
+            return RedisAnalytics.sha1Hex(script);
+        }
+
+        @Override
+        public CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args) {
+            this.shas.add(sha);
+            this.keys.add(keys);
+            this.args.add(args);
+            long result = RedisAnalytics.CLUSTER_SCRIPT_SHA.equals(sha) ? Long.parseLong(args[3]) : 1L;
+            return CompletableFuture.completedFuture(result);
+        }
+    }
+
+    private static ProjectionEvent event(String messageId, long eventTsMs) {
+        return new ProjectionEvent(messageId, "room-1", "user-" + messageId, "u", "hi", "TEXT",
+            1L, eventTsMs, eventTsMs + 500, "1970-01-01");
+    }
+
+    private static RedisAnalytics cluster(RecordingRunner runner, int shards) {
+        return new RedisAnalytics(runner, 3600, 500, RedisAnalytics.ActiveUsersMode.HLL,
+            RedisAnalytics.KeyLayout.CLUSTER, shards);
+    }
+
+    @Test
+    void clusterTag_format() {
+        assertEquals("{m:12345}",   RedisAnalytics.clusterTag('m', 12345, 0, 1));
+        assertEquals("{d:20}",      RedisAnalytics.clusterTag('d', 20, 0, 1));
+        assertEquals("{h:205.3}",   RedisAnalytics.clusterTag('h', 205, 3, 8));
+    }
+
+    @Test
+    void groupByClusterTag_eachRecordOncePerLevel() {
+        // minute 59 and minute 60 straddle an hour boundary, same day
+        Map<String, List<ProjectionEvent>> groups = RedisAnalytics.groupByClusterTag(List.of(
+            event("a", 59 * MIN), event("b", 59 * MIN + 1), event("c", 60 * MIN)), 1);
+
+        assertEquals(List.of("{m:59}", "{h:0}", "{d:0}", "{m:60}", "{h:1}"), new ArrayList<>(groups.keySet()));
+        assertEquals(2, groups.get("{m:59}").size());
+        assertEquals(3, groups.get("{d:0}").size());
+    }
+
+    @Test
+    void shardedTags_stableAndCoverEveryRecordOnce() {
+        List<ProjectionEvent> events = new ArrayList<>();
+        for (int i = 0; i < 200; i++) events.add(event("msg-" + i, 5 * MIN));
+
+        Map<String, List<ProjectionEvent>> groups = RedisAnalytics.groupByClusterTag(events, 4);
+        int minuteRecords = 0;
+        for (Map.Entry<String, List<ProjectionEvent>> g : groups.entrySet()) {
+            if (g.getKey().startsWith("{m:")) minuteRecords += g.getValue().size();
+        }
+        assertEquals(200, minuteRecords);
+        assertEquals(12, groups.size(), "4 sub-tags x minute/hour/day");
+        assertEquals(RedisAnalytics.clusterShard("msg-7", 4), RedisAnalytics.clusterShard("msg-7", 4));
+    }
+
+    @Test
+    void recordBatch_oneSlotPerCall_healthLast() {
+        RecordingRunner runner = new RecordingRunner();
+        long firstSeen = cluster(runner, 1).recordBatchAnalytics(List.of(
+            event("a", 59 * MIN), event("b", 60 * MIN)));
+
+        assertEquals(2L, firstSeen, "counted once, from the minute level");
+        assertEquals(6, runner.shas.size(), "{m:59} {h:0} {d:0} {m:60} {h:1} + health");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(RedisAnalytics.CLUSTER_SCRIPT_SHA, runner.shas.get(i));
+            assertEquals(1, runner.keys.get(i).length);
+            assertEquals(String.valueOf(runner.keys.get(i)[0].charAt(1)), runner.args.get(i)[1]);
+        }
+        assertEquals(RedisAnalytics.HEALTH_SCRIPT_SHA, runner.shas.get(5));
+        assertArrayEquals(new String[] {
+            RedisAnalytics.CLUSTER_HEALTH_INGESTED_AT_KEY, RedisAnalytics.CLUSTER_HEALTH_MESSAGE_ID_KEY },
+            runner.keys.get(5));
+        assertEquals("b", runner.args.get(5)[1]);
+    }
+
+    @Test
+    void clusterArgs_layout() {
+        String[] args = RedisAnalytics.buildClusterArgs("{m:2}", List.of(event("a", 120_500L)), 3600,
+            RedisAnalytics.ActiveUsersMode.BOTH);
+        assertArrayEquals(new String[] {"3600", "m", "both", "1", "a", "user-a", "room-1", "120"}, args);
+    }
+
+    @Test
+    void clusterScript_everyKeyCarriesTheTag() {
+        Matcher m = Pattern.compile("redis\\.call\\('[A-Z]+', ([^,)]+)").matcher(RedisAnalytics.CLUSTER_SCRIPT);
+        Set<String> keyExprs = new HashSet<>();
+        while (m.find()) keyExprs.add(m.group(1));
+        assertFalse(keyExprs.isEmpty());
+        for (String expr : keyExprs) {
+            assertTrue(expr.startsWith("tag .."), "key not hash-tagged: " + expr);
+        }
+        assertTrue(RedisAnalytics.CLUSTER_HEALTH_INGESTED_AT_KEY.startsWith("{projection}"));
+        assertTrue(RedisAnalytics.CLUSTER_HEALTH_MESSAGE_ID_KEY.startsWith("{projection}"));
+    }
+}
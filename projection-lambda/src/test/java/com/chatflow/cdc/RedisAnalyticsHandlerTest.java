@@ -300,4 +300,42 @@ class RedisAnalyticsHandlerTest {
         assertEquals(1, resp.getBatchItemFailures().size());
         assertEquals("sqs-1", resp.getBatchItemFailures().get(0).getItemIdentifier());
     }
+
+    // ---- Packed bodies -------------------------------------------------------
+
+    /**
+     * A packed body fans out to every event it carries, alongside JSON bodies
+     * in the same SQS batch.
+     */
+    @Test
+    void packedAndJsonMessages_allEventsForwarded() throws Exception {
+        String packed = AnalyticsEventCodec.pack(List.of(
+            new AnalyticsEvent("msg-p1", "u1", "r1", 1000L, 2000L),
+            new AnalyticsEvent("msg-p2", "u2", "r1", 1100L, 2100L)), 10_000).get(0).body();
+        List<SQSMessage> msgs = List.of(
+            sqsMessage("sqs-packed", packed),
+            analyticsMessage("sqs-json", "msg-j1", "u3", "r2", 1200L, 2200L));
+
+        CapturingAnalytics analytics = new CapturingAnalytics(3L);
+        SQSBatchResponse resp = RedisAnalyticsHandler.processEvent(sqsEvent(msgs), analytics);
+
+        assertTrue(resp.getBatchItemFailures().isEmpty());
+        assertEquals(1, analytics.calls.size());
+        assertEquals(List.of("msg-p1", "msg-p2", "msg-j1"),
+            analytics.calls.get(0).stream().map(pe -> pe.messageId).toList());
+    }
+
+    @Test
+    void corruptPackedMessage_failsOnlyThatMessage() throws Exception {
+        List<SQSMessage> msgs = List.of(
+            sqsMessage("sqs-corrupt", "AQ//"),
+            analyticsMessage("sqs-json", "msg-j1", "u3", "r2", 1200L, 2200L));
+
+        CapturingAnalytics analytics = new CapturingAnalytics(1L);
+        SQSBatchResponse resp = RedisAnalyticsHandler.processEvent(sqsEvent(msgs), analytics);
+
+        assertEquals(1, resp.getBatchItemFailures().size());
+        assertEquals("sqs-corrupt", resp.getBatchItemFailures().get(0).getItemIdentifier());
+        assertEquals(1, analytics.calls.get(0).size());
+    }
 }
@@ -0,0 +1,122 @@
+package com.chatflow.cdc;
+
+import io.lettuce.core.RedisNoScriptException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives {@link RedisAnalytics#recordBatchAnalytics} through a stand-in
+ * {@link RedisAnalytics.ScriptRunner} that behaves like Redis' script cache:
+ * EVALSHA of an unknown digest fails with NOSCRIPT until SCRIPT LOAD.
+ */
+class RedisAnalyticsScriptTest {
+
+    /** Script cache stand-in. Each EVALSHA reports every record as first-seen. */
+    private static final class FakeScriptCache implements RedisAnalytics.ScriptRunner {
+        final Set<String>    cached   = new HashSet<>();
+        final List<String[]> evalArgs = new ArrayList<>();
+        int loads;
+        int noScriptReplies;
+
+        @Override
+        public String scriptLoad(String script) {
+            loads++;
+            String sha = RedisAnalytics.sha1Hex(script);
+            cached.add(sha);
+            return sha;
+        }
+
+        @Override
+        public CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args) {
+            if (!cached.contains(sha)) {
+                noScriptReplies++;
+                return CompletableFuture.failedFuture(
+                    new RedisNoScriptException("NOSCRIPT No matching script. Please use EVAL."));
+            }
+            evalArgs.add(args);
+            return CompletableFuture.completedFuture(Long.parseLong(args[3]));
+        }
+    }
+
+    private static List<ProjectionEvent> events(int n) {
+        List<ProjectionEvent> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(new ProjectionEvent(
+                "msg-" + i, "room-1", "user-" + (i % 7), "u", "hi", "TEXT",
+                i, 120_000L + i, 121_000L + i, "1970-01-01"));
+        }
+        return out;
+    }
+
+    @Test
+    void sha1Hex_matchesKnownDigest() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", RedisAnalytics.sha1Hex("abc"));
+    }
+
+    @Test
+    void firstCall_noScript_loadsOnceAndRetries() {
+        FakeScriptCache redis = new FakeScriptCache();
+        RedisAnalytics analytics = new RedisAnalytics(redis, 3600, 500);
+
+        assertEquals(1200L, analytics.recordBatchAnalytics(events(1200)));
+        assertEquals(1, redis.loads, "SCRIPT LOAD once for all NOSCRIPT chunks");
+        assertEquals(3, redis.noScriptReplies);
+        assertEquals(3, redis.evalArgs.size());
+    }
+
+    @Test
+    void warmCache_neverSendsScriptSource() {
+        FakeScriptCache redis = new FakeScriptCache();
+        redis.cached.add(RedisAnalytics.ANALYTICS_SCRIPT_SHA);
+        RedisAnalytics analytics = new RedisAnalytics(redis, 3600, 500);
+
+        analytics.recordBatchAnalytics(events(10));
+        analytics.recordBatchAnalytics(events(10));
+
+        assertEquals(0, redis.loads);
+        assertEquals(2, redis.evalArgs.size());
+    }
+
+    @Test
+    void scriptFlushed_reloadsTransparently() {
+        FakeScriptCache redis = new FakeScriptCache();
+        RedisAnalytics analytics = new RedisAnalytics(redis, 3600, 500);
+        analytics.recordBatchAnalytics(events(5));
+
+        redis.cached.clear(); // SCRIPT FLUSH / failover to a fresh replica
+        assertEquals(5L, analytics.recordBatchAnalytics(events(5)));
+        assertEquals(2, redis.loads);
+    }
+
+    @Test
+    void largeBatch_splitIntoChunks_inOrder() {
+        FakeScriptCache redis = new FakeScriptCache();
+        redis.cached.add(RedisAnalytics.ANALYTICS_SCRIPT_SHA);
+        RedisAnalytics analytics = new RedisAnalytics(redis, 3600, 4);
+
+        assertEquals(10L, analytics.recordBatchAnalytics(events(10)));
+        assertEquals(3, redis.evalArgs.size());
+        assertEquals("4", redis.evalArgs.get(0)[3]);
+        assertEquals("msg-4", redis.evalArgs.get(1)[4]);
+        assertEquals("2", redis.evalArgs.get(2)[3]);
+    }
+
+    @Test
+    void chunkFailure_propagates() {
+        RedisAnalytics analytics = new RedisAnalytics(new RedisAnalytics.ScriptRunner() {
+            @Override public String scriptLoad(String script) { return ""; }
+            @Override public CompletableFuture<Long> evalsha(String sha, String[] keys, String[] args) {
+                return CompletableFuture.failedFuture(new IllegalStateException("OOM command not allowed"));
+            }
+        }, 3600, 500);
+
+        assertThrows(IllegalStateException.class, () -> analytics.recordBatchAnalytics(events(3)));
+    }
+}
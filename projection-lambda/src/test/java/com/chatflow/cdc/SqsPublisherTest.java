@@ -0,0 +1,157 @@
+package com.chatflow.cdc;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link SqsPublisher#sendBatch} chunking and failed-messageId mapping
+ * against a fake {@link SqsClient}.
+ */
+class SqsPublisherTest {
+
+    /** Records requests; {@code failEntry} decides which entries SQS rejects. */
+    private static final class FakeSqs implements SqsClient {
+        final List<SendMessageBatchRequest> requests = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak   = new AtomicInteger();
+        Function<SendMessageBatchRequestEntry, Boolean> failEntry = e -> false;
+        Function<SendMessageBatchRequest, Boolean> throwOn = r -> false;
+        long latencyMs;
+
+        @Override
+        public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest request) {
+            requests.add(request);
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                return respond(request);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        private SendMessageBatchResponse respond(SendMessageBatchRequest request) {
+            if (latencyMs > 0) {
+                try { Thread.sleep(latencyMs); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+            if (throwOn.apply(request)) throw new IllegalStateException("connection reset");
+            List<BatchResultErrorEntry> failed = new ArrayList<>();
+            for (SendMessageBatchRequestEntry e : request.entries()) {
+                if (failEntry.apply(e)) {
+                    failed.add(BatchResultErrorEntry.builder().id(e.id()).code("InternalError").senderFault(false).build());
+                }
+            }
+            return SendMessageBatchResponse.builder().failed(failed).successful(List.of()).build();
+        }
+
+        @Override public String serviceName() { return "sqs"; }
+        @Override public void close() { }
+    }
+
+    private static List<AnalyticsEvent> events(int n) {
+        List<AnalyticsEvent> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            out.add(new AnalyticsEvent("msg-" + i, "user-" + (i % 7), "room-1", 1_000L + i, 2_000L + i));
+        }
+        return out;
+    }
+
+    // ---- JSON mode -----------------------------------------------------------
+
+    @Test
+    void json_chunksOfTen_oneEventPerEntry() {
+        FakeSqs sqs = new FakeSqs();
+        Set<String> failed = new SqsPublisher(sqs, "q").sendBatch(events(25));
+
+        assertTrue(failed.isEmpty());
+        assertEquals(3, sqs.requests.size());
+        assertEquals(25, sqs.requests.stream().mapToInt(r -> r.entries().size()).sum());
+    }
+
+    @Test
+    void json_partialFailure_mapsBackToMessageId() {
+        FakeSqs sqs = new FakeSqs();
+        sqs.failEntry = e -> e.messageBody().contains("\"msg-13\"");
+
+        assertEquals(Set.of("msg-13"), new SqsPublisher(sqs, "q").sendBatch(events(25)));
+    }
+
+    // ---- Packed mode ---------------------------------------------------------
+
+    @Test
+    void packed_smallBatch_singleMessage() {
+        FakeSqs sqs = new FakeSqs();
+        Set<String> failed = new SqsPublisher(sqs, "q", true, SqsPublisher.MAX_PACKED_BODY_CHARS).sendBatch(events(1_000));
+
+        assertTrue(failed.isEmpty());
+        assertEquals(1, sqs.requests.size());
+        assertEquals(1, sqs.requests.get(0).entries().size());
+        assertEquals(1_000, AnalyticsEventCodec.unpack(sqs.requests.get(0).entries().get(0).messageBody()).size());
+    }
+
+    @Test
+    void packed_failedEntry_failsEveryPackedMessageId() {
+        FakeSqs sqs = new FakeSqs();
+        sqs.failEntry = e -> e.id().equals("1");
+
+        Set<String> failed = new SqsPublisher(sqs, "q", true, 1_000).sendBatch(events(200));
+
+        SendMessageBatchRequestEntry rejected = sqs.requests.get(0).entries().get(1);
+        Set<String> expected = Set.copyOf(AnalyticsEventCodec.unpack(rejected.messageBody())
+            .stream().map(e -> e.messageId).toList());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, failed);
+    }
+
+    @Test
+    void packed_sendThrows_failsAllEvents() {
+        FakeSqs sqs = new FakeSqs();
+        sqs.throwOn = r -> true;
+
+        assertEquals(200, new SqsPublisher(sqs, "q", true, 1_000).sendBatch(events(200)).size());
+    }
+
+    // ---- Concurrency ---------------------------------------------------------
+
+    @Test
+    void chunksSentConcurrently_boundedBySendConcurrency() {
+        FakeSqs sqs = new FakeSqs();
+        sqs.latencyMs = 20;
+
+        Set<String> failed = new SqsPublisher(sqs, "q", false, SqsPublisher.MAX_PACKED_BODY_CHARS, 4)
+            .sendBatch(events(200));
+
+        assertTrue(failed.isEmpty());
+        assertEquals(20, sqs.requests.size());
+        assertTrue(sqs.peak.get() <= 4, "peak in-flight was " + sqs.peak.get());
+        assertTrue(sqs.peak.get() > 1, "chunks should overlap");
+    }
+
+    @Test
+    void concurrentSend_failuresStayPerMessageId() {
+        FakeSqs sqs = new FakeSqs();
+        sqs.latencyMs = 5;
+        sqs.failEntry = e -> e.messageBody().contains("\"msg-7\"") || e.messageBody().contains("\"msg-155\"");
+        // The chunk holding msg-90..msg-99 throws outright
+        sqs.throwOn = r -> r.entries().stream().anyMatch(e -> e.messageBody().contains("\"msg-93\""));
+
+        Set<String> failed = new SqsPublisher(sqs, "q", false, SqsPublisher.MAX_PACKED_BODY_CHARS, 8)
+            .sendBatch(events(200));
+
+        Set<String> expected = new java.util.HashSet<>(Set.of("msg-7", "msg-155"));
+        for (int i = 90; i < 100; i++) expected.add("msg-" + i);
+        assertEquals(expected, failed);
+    }
+}
@@ -1,54 +1,181 @@
 package com.chatflow.serverv2;
 
 import io.lettuce.core.*;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Redis analytics queries for the API layer.
  *
  * <h3>Key schema (mirrors RedisAnalytics in projection-lambda)</h3>
  * <pre>
- *   active_users:minute:{min}    SADD userId
- *   top_users:minute:{min}       ZINCRBY userId
- *   top_rooms:minute:{min}       ZINCRBY roomId
+ *   active_users:minute:{min}    SADD userId       (mode set | both)
+ *   active_users_hll:{minute|hour|day}:{n}  PFADD userId  (mode hll | both)
+ *   top_users:{minute|hour|day}:{n}         ZINCRBY userId
+ *   top_rooms:{minute|hour|day}:{n}         ZINCRBY roomId
  *   messages:second:{sec}        INCR
- *   messages:minute:{min}        INCR
+ *   messages:{minute|hour|day}:{n}          INCR
  * </pre>
  *
+ * <h3>Roll-ups</h3>
+ * Range queries over rolled-up families go through {@link #rollupKeys}: whole
+ * UTC days inside the window read the day key, whole remaining hours the hour
+ * key, and only the ragged edges read minute keys.  A day-aligned 7-day top-N
+ * therefore unions 7 keys instead of 10,080.  Per-minute / per-second series
+ * still read their own buckets.  Roll-ups only exist for data written since
+ * the roll-up writer was deployed: minutes before
+ * {@code CHATFLOW_V3_ANALYTICS_ROLLUP_START_MS} are always read from minute
+ * keys, so windows reaching back past it are not undercounted.
+ *
  * <h3>Union queries</h3>
- * Multi-minute ranges use SUNIONSTORE / ZUNIONSTORE with a short-lived temp key
- * (TTL=30s, UUID suffix to avoid collisions) to compute union size atomically.
+ * Multi-key ranges are combined server-side by a read-only Lua script, one
+ * {@code EVALSHA} per query: {@link #SET_UNION_COUNT_SCRIPT} counts the
+ * distinct members of the SUNION, {@link #ZSET_UNION_TOP_SCRIPT} returns the
+ * top N of the ZUNION (Redis 6.2+).  Nothing is written, so dashboard reads
+ * cause no temp keys, expiries or replication traffic.
+ *
+ * <p>In HLL mode ({@code CHATFLOW_V3_ACTIVE_USERS_MODE=hll|both}) the active-user
+ * count is one multi-key {@code PFCOUNT} over the roll-up keys, which merges
+ * the HyperLogLogs server-side without a temp key.
+ *
+ * <h3>Cluster layout</h3>
+ * With {@code CHATFLOW_V3_REDIS_KEY_LAYOUT=cluster} the Lambda writes keys
+ * hash-tagged by time bucket ({@code {m:N}:top_rooms}, {@code {h:N}:messages},
+ * {@code {d:N}:active_users_hll}, {@code {m:N}:messages:second:S}), optionally
+ * split into {@code CHATFLOW_V3_REDIS_CLUSTER_SHARDS} sub-tags per bucket
+ * ({@code {m:N.0}} ..).  The connection is then a cluster client: counters are
+ * read with MGET (split per slot by Lettuce) and summed over sub-tags.  Union
+ * queries cannot span slots, so sets and sorted sets are read per key (SMEMBERS,
+ * ZRANGE WITHSCORES, all in flight together) and merged here.  HyperLogLogs
+ * can only be merged by Redis: their keys are first copied into one temp tag
+ * ({@code {tmp:...}:i}, DUMP/RESTORE with the temp TTL), counted there, and
+ * the copies deleted.
+ *
+ * <h3>Async access</h3>
+ * Queries run on the connection's async commands and return
+ * {@link CompletableFuture}s; the plain getters join them.  Per-minute and
+ * per-second series read all their buckets with one MGET, and
+ * {@link #getSummaryAsync} issues every metric of a window at once, so Lettuce
+ * pipelines them on the shared connection instead of waiting for each reply.
+ * The sync commands remain for {@link ProjectionHealthService}.
  */
 public class AnalyticsService {
 
     private static final Logger log = LoggerFactory.getLogger(AnalyticsService.class);
     private static final int TEMP_KEY_TTL_SECONDS = 30;
 
+    /** Summary key listing the metrics that fell back after a Redis failure. */
+    static final String DEGRADED_METRICS = "degradedMetrics";
+
+    /**
+     * Lua script: number of distinct members across the sets {@code KEYS}.
+     * SUNION runs over chunks of 1000 keys to stay within Lua's unpack limit.
+     */
+    static final String SET_UNION_COUNT_SCRIPT =
+        "local seen, n = {}, 0\n" +
+        "for i = 1, #KEYS, 1000 do\n" +
+        "  local chunk = {}\n" +
+        "  for k = i, math.min(i + 999, #KEYS) do chunk[#chunk + 1] = KEYS[k] end\n" +
+        "  for _, m in ipairs(redis.call('SUNION', unpack(chunk))) do\n" +
+        "    if not seen[m] then seen[m] = true; n = n + 1 end\n" +
+        "  end\n" +
+        "end\n" +
+        "return n\n";
+
+    static final String SET_UNION_COUNT_SHA = sha1Hex(SET_UNION_COUNT_SCRIPT);
+
+    /**
+     * Lua script: top {@code ARGV[1]} members of the sum of the sorted sets
+     * {@code KEYS}, as {@code [member, score, ..]} in ZREVRANGE order.  ZUNION
+     * runs over chunks of 1000 keys and the chunks are summed in Lua.
+     */
+    static final String ZSET_UNION_TOP_SCRIPT =
+        "local scores, members = {}, {}\n" +
+        "for i = 1, #KEYS, 1000 do\n" +
+        "  local args = {math.min(1000, #KEYS - i + 1)}\n" +
+        "  for k = i, math.min(i + 999, #KEYS) do args[#args + 1] = KEYS[k] end\n" +
+        "  args[#args + 1] = 'WITHSCORES'\n" +
+        "  local r = redis.call('ZUNION', unpack(args))\n" +
+        "  for k = 1, #r, 2 do\n" +
+        "    local m = r[k]\n" +
+        "    if scores[m] == nil then members[#members + 1] = m; scores[m] = 0 end\n" +
+        "    scores[m] = scores[m] + tonumber(r[k + 1])\n" +
+        "  end\n" +
+        "end\n" +
+        "table.sort(members, function(a, b)\n" +
+        "  if scores[a] ~= scores[b] then return scores[a] > scores[b] end\n" +
+        "  return a > b\n" +
+        "end)\n" +
+        "local out = {}\n" +
+        "for k = 1, math.min(tonumber(ARGV[1]), #members) do\n" +
+        "  out[#out + 1] = members[k]\n" +
+        "  out[#out + 1] = tostring(scores[members[k]])\n" +
+        "end\n" +
+        "return out\n";
+
+    static final String ZSET_UNION_TOP_SHA = sha1Hex(ZSET_UNION_TOP_SCRIPT);
+
     private final boolean                          enabled;
-    private final RedisClient                      client;
-    private final StatefulRedisConnection<String,String> conn;
-    private final RedisCommands<String, String>    sync;
+    private final AbstractRedisClient              client;
+    private final StatefulConnection<String,String> conn;
+    private final RedisClusterCommands<String, String> sync;
+    private final RedisClusterAsyncCommands<String, String> async;
+    private final boolean                          activeUsersHll;
+    private final boolean                          cluster;
+    private final int                              shards;
+    private final long                             rollupStartMs;
 
     public AnalyticsService(ServerV2PersistenceConfig config) {
+        this.activeUsersHll = config.isActiveUsersHll();
+        this.cluster        = config.isRedisCluster();
+        this.shards         = cluster ? config.redisClusterShards : 1;
+        this.rollupStartMs  = config.analyticsRollupStartMs;
         if (config.isRedisEnabled()) {
             RedisURI uri = RedisURI.builder()
                 .withHost(config.redisHost)
                 .withPort(config.redisPort)
                 .build();
-            this.client  = RedisClient.create(uri);
-            this.conn    = client.connect();
-            this.sync    = conn.sync();
+            if (cluster) {
+                RedisClusterClient clusterClient = RedisClusterClient.create(uri);
+                StatefulRedisClusterConnection<String, String> clusterConn = clusterClient.connect();
+                this.client = clusterClient;
+                this.conn   = clusterConn;
+                this.sync   = clusterConn.sync();
+                this.async  = clusterConn.async();
+            } else {
+                RedisClient redisClient = RedisClient.create(uri);
+                StatefulRedisConnection<String, String> redisConn = redisClient.connect();
+                this.client = redisClient;
+                this.conn   = redisConn;
+                this.sync   = redisConn.sync();
+                this.async  = redisConn.async();
+            }
             this.enabled = true;
-            log.info("AnalyticsService connected to Redis {}:{}", config.redisHost, config.redisPort);
+            log.info("AnalyticsService connected to Redis {}:{} (layout={}, shards={})",
+                config.redisHost, config.redisPort, cluster ? "cluster" : "flat", shards);
         } else {
             this.client  = null;
             this.conn    = null;
             this.sync    = null;
+            this.async   = null;
             this.enabled = false;
             log.info("AnalyticsService: Redis not configured — analytics will return empty data");
         }
@@ -57,103 +184,357 @@ public class AnalyticsService {
     public boolean isEnabled() { return enabled; }
 
     /** Package-private: Redis commands, for sharing with ProjectionHealthService. */
-    RedisCommands<String, String> sync() { return sync; }
+    RedisClusterCommands<String, String> sync() { return sync; }
+
+    // ── Summary ───────────────────────────────────────────────────────────────
+
+    /**
+     * All window metrics of {@code /api/analytics/summary}, issued together so
+     * the window costs one concurrent round of Redis I/O.  Keys, in order:
+     * messagesPerMinute, messagesPerSecond, messageCount, topUsers, topRooms,
+     * activeUserCount.  Each metric falls back to empty / zero on failure, so
+     * the future itself does not fail; the names of metrics that fell back
+     * are listed under {@link #DEGRADED_METRICS}, absent when all succeeded.
+     */
+    public CompletableFuture<Map<String, Object>> getSummaryAsync(long startMs, long endMs, int topN) {
+        Set<String> degraded = ConcurrentHashMap.newKeySet();
+        CompletableFuture<List<Map<String, Object>>> perMinute =
+            getMessagesPerMinuteAsync(startMs, endMs, () -> degraded.add("messagesPerMinute"));
+        CompletableFuture<List<Map<String, Object>>> perSecond =
+            getMessagesPerSecondAsync(startMs, endMs, () -> degraded.add("messagesPerSecond"));
+        CompletableFuture<Long> messages =
+            getMessageCountAsync(startMs, endMs, () -> degraded.add("messageCount"));
+        CompletableFuture<List<Map<String, Object>>> topUsers =
+            getTopFromZsets("top_users", startMs, endMs, topN, "userId", () -> degraded.add("topUsers"));
+        CompletableFuture<List<Map<String, Object>>> topRooms =
+            getTopFromZsets("top_rooms", startMs, endMs, topN, "roomId", () -> degraded.add("topRooms"));
+        CompletableFuture<Long> active =
+            getActiveUserCountAsync(startMs, endMs, () -> degraded.add("activeUserCount"));
+        return CompletableFuture.allOf(perMinute, perSecond, messages, topUsers, topRooms, active)
+            .thenApply(v -> {
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("messagesPerMinute", perMinute.join());
+                summary.put("messagesPerSecond", perSecond.join());
+                summary.put("messageCount",      messages.join());
+                summary.put("topUsers",          topUsers.join());
+                summary.put("topRooms",          topRooms.join());
+                summary.put("activeUserCount",   active.join());
+                if (!degraded.isEmpty()) summary.put(DEGRADED_METRICS, new TreeSet<>(degraded));
+                return summary;
+            });
+    }
+
+    /** True if some metric of a {@link #getSummaryAsync} result fell back to empty / zero. */
+    static boolean isDegraded(Map<String, Object> summary) {
+        return summary.containsKey(DEGRADED_METRICS);
+    }
 
     // ── Active users ──────────────────────────────────────────────────────────
 
+    public long getActiveUserCount(long startMs, long endMs) {
+        return getActiveUserCountAsync(startMs, endMs).join();
+    }
+
     /**
      * Count distinct active users across all minute buckets in [startMs, endMs].
-     * Uses SUNIONSTORE into a temp key with a short TTL.
+     * Set mode counts the union of the minute sets; HLL mode is a single
+     * PFCOUNT (approximate, ~0.8% standard error).
      */
-    public long getActiveUserCount(long startMs, long endMs) {
-        if (!enabled) return 0L;
-        try {
-            String[] keys = minuteKeys("active_users:minute:", startMs, endMs);
-            if (keys.length == 0) return 0L;
-            String tmp = tempKey("active_users_union");
-            sync.sunionstore(tmp, keys);
-            sync.expire(tmp, TEMP_KEY_TTL_SECONDS);
-            long count = sync.scard(tmp);
-            sync.del(tmp);
-            return count;
-        } catch (Exception e) {
-            log.warn("getActiveUserCount failed: {}", e.getMessage());
-            return 0L;
-        }
+    public CompletableFuture<Long> getActiveUserCountAsync(long startMs, long endMs) {
+        return getActiveUserCountAsync(startMs, endMs, null);
+    }
+
+    private CompletableFuture<Long> getActiveUserCountAsync(long startMs, long endMs, Runnable onFallback) {
+        if (!enabled) return CompletableFuture.completedFuture(0L);
+        return recover("getActiveUserCount", 0L, onFallback, () -> {
+            if (activeUsersHll) {
+                String[] keys = rollupKeys("active_users_hll", startMs, endMs, cluster, shards, rollupStartMs);
+                if (keys.length == 0) return CompletableFuture.completedFuture(0L);
+                if (!cluster || keys.length == 1) return async.pfcount(keys).thenApply(AnalyticsService::orZero);
+                return onCopies("active_users_hll", keys, copies -> {
+                    if (copies.length == 0) return CompletableFuture.completedFuture(0L);
+                    return async.pfcount(copies).thenApply(AnalyticsService::orZero);
+                });
+            }
+            String[] keys = bucketKeys("active_users", MINUTE, startMs / 60_000L, endMs / 60_000L, cluster, shards);
+            if (keys.length == 0) return CompletableFuture.completedFuture(0L);
+            if (!cluster) {
+                return this.<Long>evalScript(SET_UNION_COUNT_SCRIPT, SET_UNION_COUNT_SHA,
+                    ScriptOutputType.INTEGER, keys).thenApply(AnalyticsService::orZero);
+            }
+            List<CompletableFuture<Set<String>>> members = new ArrayList<>(keys.length);
+            for (String key : keys) members.add(async.smembers(key).toCompletableFuture());
+            return allOf(members).thenApply(v -> {
+                Set<String> union = new HashSet<>();
+                for (CompletableFuture<Set<String>> f : members) union.addAll(f.join());
+                return (long) union.size();
+            });
+        });
     }
 
     // ── Message counters ──────────────────────────────────────────────────────
 
+    public long getMessageCount(long startMs, long endMs) {
+        return getMessageCountAsync(startMs, endMs).join();
+    }
+
+    /** Total messages in [startMs, endMs], summed from the coarsest covering counters. */
+    public CompletableFuture<Long> getMessageCountAsync(long startMs, long endMs) {
+        return getMessageCountAsync(startMs, endMs, null);
+    }
+
+    private CompletableFuture<Long> getMessageCountAsync(long startMs, long endMs, Runnable onFallback) {
+        if (!enabled) return CompletableFuture.completedFuture(0L);
+        return recover("getMessageCount", 0L, onFallback, () -> {
+            String[] keys = rollupKeys("messages", startMs, endMs, cluster, shards, rollupStartMs);
+            if (keys.length == 0) return CompletableFuture.completedFuture(0L);
+            return async.mget(keys).thenApply(values -> {
+                long total = 0L;
+                for (long count : bucketCounts(values, values.size())) total += count;
+                return total;
+            });
+        });
+    }
+
     public List<Map<String, Object>> getMessagesPerMinute(long startMs, long endMs) {
-        if (!enabled) return List.of();
-        List<Map<String, Object>> out = new ArrayList<>();
+        return getMessagesPerMinuteAsync(startMs, endMs).join();
+    }
+
+    /** Per-minute counts for every minute of [startMs, endMs], read with one MGET. */
+    public CompletableFuture<List<Map<String, Object>>> getMessagesPerMinuteAsync(long startMs, long endMs) {
+        return getMessagesPerMinuteAsync(startMs, endMs, null);
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> getMessagesPerMinuteAsync(
+            long startMs, long endMs, Runnable onFallback) {
+        if (!enabled) return CompletableFuture.completedFuture(List.of());
         long minStart = startMs / 60_000L;
         long minEnd   = endMs   / 60_000L;
-        try {
-            for (long b = minStart; b <= minEnd; b++) {
-                String val = sync.get("messages:minute:" + b);
-                long count = val != null ? Long.parseLong(val) : 0L;
-                out.add(Map.of("bucket", b, "count", count));
-            }
-        } catch (Exception e) {
-            log.warn("getMessagesPerMinute failed: {}", e.getMessage());
-        }
-        return out;
+        return recover("getMessagesPerMinute", List.of(), onFallback, () -> {
+            String[] keys = bucketKeys("messages", MINUTE, minStart, minEnd, cluster, shards);
+            if (keys.length == 0) return CompletableFuture.completedFuture(List.of());
+            return async.mget(keys).thenApply(values -> series(minStart, bucketCounts(values, shards)));
+        });
     }
 
     public List<Map<String, Object>> getMessagesPerSecond(long startMs, long endMs) {
-        if (!enabled) return List.of();
-        List<Map<String, Object>> out = new ArrayList<>();
+        return getMessagesPerSecondAsync(startMs, endMs).join();
+    }
+
+    /** Per-second counts from startMs, capped at 300 seconds, read with one MGET. */
+    public CompletableFuture<List<Map<String, Object>>> getMessagesPerSecondAsync(long startMs, long endMs) {
+        return getMessagesPerSecondAsync(startMs, endMs, null);
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> getMessagesPerSecondAsync(
+            long startMs, long endMs, Runnable onFallback) {
+        if (!enabled) return CompletableFuture.completedFuture(List.of());
         long secStart = startMs / 1_000L;
         long secEnd   = endMs   / 1_000L;
         // Cap to avoid huge ranges
         long cap = Math.min(secEnd - secStart + 1, 300);
-        try {
+        return recover("getMessagesPerSecond", List.of(), onFallback, () -> {
+            List<String> keys = new ArrayList<>();
             for (long b = secStart; b < secStart + cap; b++) {
-                String val = sync.get("messages:second:" + b);
-                long count = val != null ? Long.parseLong(val) : 0L;
-                out.add(Map.of("bucket", b, "count", count));
+                keys.addAll(Arrays.asList(secondKeys(b, cluster, shards)));
             }
-        } catch (Exception e) {
-            log.warn("getMessagesPerSecond failed: {}", e.getMessage());
-        }
-        return out;
+            if (keys.isEmpty()) return CompletableFuture.completedFuture(List.of());
+            return async.mget(keys.toArray(new String[0]))
+                .thenApply(values -> series(secStart, bucketCounts(values, shards)));
+        });
     }
 
     // ── Top users / rooms ─────────────────────────────────────────────────────
 
     public List<Map<String, Object>> getTopUsers(long startMs, long endMs, int topN) {
-        return getTopFromZsets("top_users:minute:", startMs, endMs, topN, "userId");
+        return getTopUsersAsync(startMs, endMs, topN).join();
     }
 
     public List<Map<String, Object>> getTopRooms(long startMs, long endMs, int topN) {
-        return getTopFromZsets("top_rooms:minute:", startMs, endMs, topN, "roomId");
+        return getTopRoomsAsync(startMs, endMs, topN).join();
     }
 
-    @SuppressWarnings("unchecked")
-    private List<Map<String, Object>> getTopFromZsets(
-            String prefix, long startMs, long endMs, int topN, String idField) {
-        if (!enabled) return List.of();
-        try {
-            String[] keys = minuteKeys(prefix, startMs, endMs);
-            if (keys.length == 0) return List.of();
-            String tmp = tempKey("zunion");
-            sync.zunionstore(tmp, keys);
-            sync.expire(tmp, TEMP_KEY_TTL_SECONDS);
-            List<ScoredValue<String>> top = sync.zrevrangeWithScores(tmp, 0, topN - 1);
-            sync.del(tmp);
-            List<Map<String, Object>> out = new ArrayList<>(top.size());
-            for (ScoredValue<String> sv : top) {
-                Map<String, Object> m = new LinkedHashMap<>();
-                m.put(idField, sv.getValue());
-                m.put("messageCount", (long) sv.getScore());
-                out.add(m);
+    public CompletableFuture<List<Map<String, Object>>> getTopUsersAsync(long startMs, long endMs, int topN) {
+        return getTopFromZsets("top_users", startMs, endMs, topN, "userId", null);
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> getTopRoomsAsync(long startMs, long endMs, int topN) {
+        return getTopFromZsets("top_rooms", startMs, endMs, topN, "roomId", null);
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> getTopFromZsets(
+            String family, long startMs, long endMs, int topN, String idField, Runnable onFallback) {
+        if (!enabled) return CompletableFuture.completedFuture(List.of());
+        return recover("getTop" + idField, List.of(), onFallback, () -> {
+            String[] keys = rollupKeys(family, startMs, endMs, cluster, shards, rollupStartMs);
+            if (keys.length == 0) return CompletableFuture.completedFuture(List.of());
+            CompletionStage<List<ScoredValue<String>>> top;
+            if (keys.length == 1) {
+                // Window is exactly one bucket (e.g. one whole day) - no union needed
+                top = async.zrevrangeWithScores(keys[0], 0, topN - 1);
+            } else if (!cluster) {
+                top = this.<List<Object>>evalScript(ZSET_UNION_TOP_SCRIPT, ZSET_UNION_TOP_SHA,
+                    ScriptOutputType.MULTI, keys, Integer.toString(topN)).thenApply(AnalyticsService::scoredPairs);
+            } else {
+                List<CompletableFuture<List<ScoredValue<String>>>> parts = new ArrayList<>(keys.length);
+                for (String key : keys) parts.add(async.zrangeWithScores(key, 0, -1).toCompletableFuture());
+                top = allOf(parts).thenApply(v -> {
+                    List<List<ScoredValue<String>>> values = new ArrayList<>(parts.size());
+                    for (CompletableFuture<List<ScoredValue<String>>> f : parts) values.add(f.join());
+                    return mergeTop(values, topN);
+                });
             }
-            return out;
+            return top.thenApply(values -> {
+                List<Map<String, Object>> out = new ArrayList<>(values.size());
+                for (ScoredValue<String> sv : values) {
+                    Map<String, Object> m = new LinkedHashMap<>();
+                    m.put(idField, sv.getValue());
+                    m.put("messageCount", (long) sv.getScore());
+                    out.add(m);
+                }
+                return out;
+            });
+        });
+    }
+
+    // ── Redis helpers ─────────────────────────────────────────────────────────
+
+    /**
+     * Runs {@code query} and logs and substitutes {@code fallback} if it throws
+     * or its future fails, so one failed metric does not fail a whole summary.
+     * {@code onFallback}, if not null, runs when the fallback is used.
+     */
+    private <T> CompletableFuture<T> recover(String what, T fallback, Runnable onFallback,
+                                             Supplier<? extends CompletionStage<T>> query) {
+        CompletableFuture<T> future;
+        try {
+            future = query.get().toCompletableFuture();
         } catch (Exception e) {
-            log.warn("getTop{} failed: {}", idField, e.getMessage());
-            return List.of();
+            future = CompletableFuture.failedFuture(e);
         }
+        return future.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.warn("{} failed: {}", what, cause.getMessage());
+            if (onFallback != null) onFallback.run();
+            return fallback;
+        });
+    }
+
+    /**
+     * MGET results summed per bucket: each run of {@code keysPerBucket}
+     * consecutive values is one bucket (its shard keys); missing keys count as
+     * zero.
+     */
+    static long[] bucketCounts(List<KeyValue<String, String>> values, int keysPerBucket) {
+        long[] counts = new long[values.size() / keysPerBucket];
+        for (int i = 0; i < counts.length * keysPerBucket; i++) {
+            KeyValue<String, String> kv = values.get(i);
+            if (kv.hasValue()) counts[i / keysPerBucket] += Long.parseLong(kv.getValue());
+        }
+        return counts;
+    }
+
+    /** {@code [{bucket, count}, ..]} for consecutive buckets from {@code firstBucket}. */
+    private static List<Map<String, Object>> series(long firstBucket, long[] counts) {
+        List<Map<String, Object>> out = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            out.add(Map.of("bucket", firstBucket + i, "count", counts[i]));
+        }
+        return out;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    /**
+     * {@code EVALSHA} of a read-only script, falling back to {@code EVAL}
+     * (which also caches it) when Redis answers NOSCRIPT.  The script is
+     * idempotent, so re-running it is safe.
+     */
+    private <T> CompletableFuture<T> evalScript(String script, String sha, ScriptOutputType type,
+                                                String[] keys, String... args) {
+        return async.<T>evalsha(sha, type, keys, args).toCompletableFuture()
+            .handle((result, e) -> {
+                if (e == null) return CompletableFuture.completedFuture(result);
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (!(cause instanceof RedisNoScriptException)) return CompletableFuture.<T>failedFuture(cause);
+                return async.<T>eval(script, type, keys, args).toCompletableFuture();
+            })
+            .thenCompose(f -> f);
+    }
+
+    /** The {@code [member, score, ..]} reply of {@link #ZSET_UNION_TOP_SCRIPT}. */
+    static List<ScoredValue<String>> scoredPairs(List<Object> reply) {
+        List<ScoredValue<String>> out = new ArrayList<>(reply.size() / 2);
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            out.add(ScoredValue.just(Double.parseDouble(String.valueOf(reply.get(i + 1))),
+                String.valueOf(reply.get(i))));
+        }
+        return out;
+    }
+
+    /**
+     * Top {@code topN} of the sum of the sorted sets {@code parts}, in
+     * ZREVRANGE order: score descending, then member descending.
+     */
+    static List<ScoredValue<String>> mergeTop(List<List<ScoredValue<String>>> parts, int topN) {
+        Map<String, Double> scores = new HashMap<>();
+        for (List<ScoredValue<String>> part : parts) {
+            for (ScoredValue<String> sv : part) scores.merge(sv.getValue(), sv.getScore(), Double::sum);
+        }
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue()
+            .thenComparing(Map.Entry.comparingByKey()).reversed());
+        List<ScoredValue<String>> out = new ArrayList<>(Math.min(topN, entries.size()));
+        for (Map.Entry<String, Double> e : entries) {
+            if (out.size() >= topN) break;
+            out.add(ScoredValue.just(e.getValue(), e.getKey()));
+        }
+        return out;
+    }
+
+    private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Runs {@code op} over same-slot copies of {@code keys} (see
+     * {@link #colocate}) and deletes the copies once it has completed, without
+     * waiting for the DEL.  Only cluster HLL counts need this: PFCOUNT has to
+     * merge the registers server-side and cannot span slots.
+     */
+    private <T> CompletableFuture<T> onCopies(String purpose, String[] keys,
+                                              Function<String[], CompletionStage<T>> op) {
+        return colocate(tempTag(purpose), keys).thenCompose(copies -> {
+            CompletableFuture<T> result = op.apply(copies).toCompletableFuture();
+            result.whenComplete((r, e) -> {
+                if (copies.length > 0) async.del(copies);
+            });
+            return result;
+        });
+    }
+
+    /**
+     * Copies each existing key to {@code tag:i} (DUMP/RESTORE, temp TTL) so all
+     * copies share the tag's slot.  Missing keys are skipped.  All DUMPs, then
+     * all RESTOREs, are in flight together.
+     */
+    private CompletableFuture<String[]> colocate(String tag, String[] keys) {
+        List<CompletableFuture<byte[]>> dumps = new ArrayList<>(keys.length);
+        for (String key : keys) dumps.add(async.dump(key).toCompletableFuture());
+        return allOf(dumps).thenCompose(v -> {
+            List<String> copies = new ArrayList<>(keys.length);
+            List<CompletableFuture<String>> restores = new ArrayList<>(keys.length);
+            for (CompletableFuture<byte[]> f : dumps) {
+                byte[] dump = f.join();
+                if (dump == null) continue;
+                String copy = tag + ":" + copies.size();
+                restores.add(async.restore(copy, TEMP_KEY_TTL_SECONDS * 1_000L, dump).toCompletableFuture());
+                copies.add(copy);
+            }
+            return allOf(restores).thenApply(x -> copies.toArray(new String[0]));
+        });
     }
 
     // ── Helpers ───────────────────────────────────────────────────────────────
@@ -169,8 +550,123 @@ public class AnalyticsService {
         return keys.toArray(new String[0]);
     }
 
+    private static final long[]   ROLLUP_MINUTES = {1_440L, 60L, 1L};
+    private static final String[] ROLLUP_LEVELS  = {"day", "hour", "minute"};
+    private static final char[]   CLUSTER_LEVELS = {'d', 'h', 'm'};
+    private static final int      MINUTE         = 2;
+
+    /**
+     * Minimal key set covering the minutes of [startMs, endMs] for a rolled-up
+     * family ({@code family:day:N}, {@code family:hour:N},
+     * {@code family:minute:N}), in time order.  Each minute is covered exactly
+     * once, so summing counters or unioning sets over the result is exact.
+     */
+    static String[] rollupKeys(String family, long startMs, long endMs) {
+        return rollupKeys(family, startMs, endMs, false, 1);
+    }
+
+    /**
+     * {@link #rollupKeys(String, long, long)} in the given key layout.  In the
+     * cluster layout each covering bucket contributes its {@code shards}
+     * sub-tag keys ({@code {d:N}:family}, or {@code {d:N.0}:family} ..).
+     */
+    static String[] rollupKeys(String family, long startMs, long endMs, boolean cluster, int shards) {
+        return rollupKeys(family, startMs, endMs, cluster, shards, 0L);
+    }
+
+    /**
+     * {@link #rollupKeys(String, long, long, boolean, int)} for roll-ups that
+     * are complete only from {@code rollupStartMs}: minutes before the first
+     * whole minute at or after it are read as minute keys, and only the rest
+     * of the window is covered by hour / day keys.
+     */
+    static String[] rollupKeys(String family, long startMs, long endMs, boolean cluster, int shards,
+                               long rollupStartMs) {
+        long minStart = startMs / 60_000L;
+        long minEnd   = endMs   / 60_000L;
+        long minRollup = Math.max(minStart, Math.floorDiv(rollupStartMs + 59_999L, 60_000L));
+        List<String> keys = new ArrayList<>();
+        if (minEnd >= minStart) {
+            long lastMinuteOnly = Math.min(minEnd, minRollup - 1);
+            for (long m = minStart; m <= lastMinuteOnly; m++) addBucketKeys(family, MINUTE, m, cluster, shards, keys);
+            if (minEnd >= minRollup) {
+                coverMinutes(family, minRollup, minEnd, 0, cluster, shards, keys);
+            }
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private static void coverMinutes(String family, long from, long to, int level,
+                                     boolean cluster, int shards, List<String> out) {
+        long unit = ROLLUP_MINUTES[level];
+        if (unit == 1L) {
+            for (long m = from; m <= to; m++) addBucketKeys(family, level, m, cluster, shards, out);
+            return;
+        }
+        long first = Math.floorDiv(from + unit - 1, unit);
+        long last  = Math.floorDiv(to + 1, unit) - 1;
+        if (first > last) {
+            coverMinutes(family, from, to, level + 1, cluster, shards, out);
+            return;
+        }
+        if (from < first * unit) coverMinutes(family, from, first * unit - 1, level + 1, cluster, shards, out);
+        for (long u = first; u <= last; u++) addBucketKeys(family, level, u, cluster, shards, out);
+        if ((last + 1) * unit <= to) coverMinutes(family, (last + 1) * unit, to, level + 1, cluster, shards, out);
+    }
+
+    /** Keys of buckets [from, to] of one roll-up level ({@code 0}=day .. {@link #MINUTE}). */
+    static String[] bucketKeys(String family, int level, long from, long to, boolean cluster, int shards) {
+        List<String> keys = new ArrayList<>();
+        for (long b = from; b <= to; b++) addBucketKeys(family, level, b, cluster, shards, keys);
+        return keys.toArray(new String[0]);
+    }
+
+    private static void addBucketKeys(String family, int level, long bucket,
+                                      boolean cluster, int shards, List<String> out) {
+        if (!cluster) {
+            out.add(family + ":" + ROLLUP_LEVELS[level] + ":" + bucket);
+            return;
+        }
+        for (int s = 0; s < shards; s++) {
+            out.add(clusterTag(CLUSTER_LEVELS[level], bucket, s, shards) + ":" + family);
+        }
+    }
+
+    /** Per-second counter keys; in the cluster layout they live under their minute's tag. */
+    static String[] secondKeys(long second, boolean cluster, int shards) {
+        if (!cluster) return new String[] {"messages:second:" + second};
+        long minute = Math.floorDiv(second, 60L);
+        String[] keys = new String[shards];
+        for (int s = 0; s < shards; s++) {
+            keys[s] = clusterTag('m', minute, s, shards) + ":messages:second:" + second;
+        }
+        return keys;
+    }
+
+    /** Hash tag of one bucket (mirrors RedisAnalytics.clusterTag in projection-lambda). */
+    static String clusterTag(char level, long bucket, int shard, int shards) {
+        return shards > 1
+            ? "{" + level + ":" + bucket + "." + shard + "}"
+            : "{" + level + ":" + bucket + "}";
+    }
+
+    /** Hex SHA-1 of a script, as EVALSHA expects. */
+    static String sha1Hex(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            return String.format("%040x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
     /** Generate a temp key with UUID suffix to avoid collisions. */
     static String tempKey(String purpose) {
         return "tmp:" + purpose + ":" + UUID.randomUUID().toString().replace("-", "");
     }
+
+    /** Hash tag for temp keys that must share one cluster slot. */
+    static String tempTag(String purpose) {
+        return "{" + tempKey(purpose) + "}";
+    }
 }
@@ -0,0 +1,179 @@
+package com.chatflow.serverv2;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Materialized analytics summaries shared by {@code /api/analytics/summary}
+ * and {@code /api/metrics/report}.
+ *
+ * <p>Windows are aligned to whole minutes (start floored, end extended to the
+ * end of its minute), the granularity of the Redis buckets.  Every dashboard
+ * asking for "the last 15 minutes" during the same minute therefore maps to
+ * one (window, topN) entry.  Concurrent requests for an entry that is not
+ * cached yet share one {@link AnalyticsService#getSummaryAsync} call.
+ *
+ * <p>A <em>live</em> snapshot, whose window had not settled
+ * ({@link #SETTLE_MS}) when it was generated, is refreshed at most every
+ * {@code refreshMs}.  Until the refresh completes the previous snapshot is
+ * served, up to {@link #LIVE_MAX_STALE_MS}.  Settled windows no longer change
+ * and are kept for {@link #SETTLED_TTL_MS} without refreshing.  A
+ * <em>degraded</em> snapshot, in which some metric fell back to empty / zero
+ * after a Redis failure, is treated as live whatever its window, so it is
+ * recomputed on the next refresh instead of being pinned.  Each snapshot
+ * carries its generation time so responses can show how fresh they are.
+ */
+public class AnalyticsSnapshotCache {
+
+    /** Windows ending this long before generation are not expected to change. */
+    static final long SETTLE_MS         = 2 * 60_000L;
+    /** Oldest live snapshot served while its refresh is still running. */
+    static final long LIVE_MAX_STALE_MS = 60_000L;
+    static final long SETTLED_TTL_MS    = 10 * 60_000L;
+    private static final int MAX_ENTRIES = 1_024;
+
+    /** Computes the summary of a window, as {@link AnalyticsService#getSummaryAsync}. */
+    @FunctionalInterface
+    interface SummaryLoader {
+        CompletableFuture<Map<String, Object>> load(long startMs, long endMs, int topN);
+    }
+
+    /** One computed summary and the aligned window it covers. */
+    public static final class Snapshot {
+        public final long startMs;
+        public final long endMs;
+        public final long generatedAtMs;
+        /** Same keys as {@link AnalyticsService#getSummaryAsync}; read-only. */
+        public final Map<String, Object> summary;
+        /** Some metric fell back after a failure; see {@link AnalyticsService#DEGRADED_METRICS}. */
+        final boolean degraded;
+        /** Refreshed and kept only briefly: the window had not settled, or the snapshot is degraded. */
+        final boolean live;
+
+        Snapshot(long startMs, long endMs, long generatedAtMs, Map<String, Object> summary) {
+            this.startMs       = startMs;
+            this.endMs         = endMs;
+            this.generatedAtMs = generatedAtMs;
+            this.summary       = Collections.unmodifiableMap(summary);
+            this.degraded      = AnalyticsService.isDegraded(summary);
+            this.live          = degraded || endMs > generatedAtMs - SETTLE_MS;
+        }
+    }
+
+    private final SummaryLoader loader;
+    private final LongSupplier  clock;
+    private final AsyncLoadingCache<Key, Snapshot> cache;
+
+    public AnalyticsSnapshotCache(AnalyticsService analytics, long refreshMs) {
+        this(analytics::getSummaryAsync, refreshMs, System::currentTimeMillis, null);
+    }
+
+    /**
+     * Package-private constructor for testing with a stand-in loader and clock.
+     * {@code executor} runs cache maintenance and refreshes; null = Caffeine's default.
+     */
+    AnalyticsSnapshotCache(SummaryLoader loader, long refreshMs, LongSupplier clock, Executor executor) {
+        this.loader = loader;
+        this.clock  = clock;
+        this.cache  = refreshMs > 0 ? newCache(refreshMs, clock, executor) : null;
+    }
+
+    /**
+     * Summary of [startMs, endMs] aligned to whole minutes, from the cache when
+     * enabled.  The future fails only if the loader's future does.
+     */
+    public CompletableFuture<Snapshot> get(long startMs, long endMs, int topN) {
+        Key key = new Key(alignStart(startMs), alignEnd(endMs), topN);
+        return cache != null ? cache.get(key) : load(key);
+    }
+
+    static long alignStart(long startMs) {
+        return Math.floorDiv(startMs, 60_000L) * 60_000L;
+    }
+
+    static long alignEnd(long endMs) {
+        return Math.floorDiv(endMs, 60_000L) * 60_000L + 59_999L;
+    }
+
+    private CompletableFuture<Snapshot> load(Key key) {
+        return loader.load(key.startMs, key.endMs, key.topN)
+            .thenApply(summary -> new Snapshot(key.startMs, key.endMs, clock.getAsLong(), summary));
+    }
+
+    private AsyncLoadingCache<Key, Snapshot> newCache(long refreshMs, LongSupplier clock, Executor executor) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .refreshAfterWrite(refreshMs, TimeUnit.MILLISECONDS)
+            .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.getAsLong()));
+        if (executor != null) builder.executor(executor);
+        return builder
+            .expireAfter(new Expiry<Key, Snapshot>() {
+                @Override
+                public long expireAfterCreate(Key key, Snapshot snap, long now) {
+                    return ttlNanos(snap);
+                }
+
+                @Override
+                public long expireAfterUpdate(Key key, Snapshot snap, long now, long currentDuration) {
+                    return ttlNanos(snap);
+                }
+
+                @Override
+                public long expireAfterRead(Key key, Snapshot snap, long now, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .buildAsync(new AsyncCacheLoader<Key, Snapshot>() {
+                @Override
+                public CompletableFuture<Snapshot> asyncLoad(Key key, Executor ignored) {
+                    return load(key);
+                }
+
+                @Override
+                public CompletableFuture<Snapshot> asyncReload(Key key, Snapshot old, Executor ignored) {
+                    // settled, complete windows do not change; keep the snapshot instead of recomputing
+                    return old.live ? load(key) : CompletableFuture.completedFuture(old);
+                }
+            });
+    }
+
+    private static long ttlNanos(Snapshot snap) {
+        return TimeUnit.MILLISECONDS.toNanos(snap.live ? LIVE_MAX_STALE_MS : SETTLED_TTL_MS);
+    }
+
+    /** Aligned window and top-N size. */
+    private static final class Key {
+        final long startMs;
+        final long endMs;
+        final int  topN;
+
+        Key(long startMs, long endMs, int topN) {
+            this.startMs = startMs;
+            this.endMs   = endMs;
+            this.topN    = topN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return startMs == k.startMs && endMs == k.endMs && topN == k.topN;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startMs, endMs, topN);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.chatflow.serverv2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route concurrency limits for {@link ApiHandler}.
+ *
+ * <p>Each route template has its own {@link Semaphore}.  A permit is taken on
+ * the event loop with {@link Route#tryAcquire} before the request is handed
+ * to a virtual thread; when none is free the request is rejected at once
+ * instead of queueing, so slow DynamoDB history queries cannot starve the
+ * cheap health and analytics routes.  Message-history routes share one limit
+ * value; every other route gets its own semaphore with the default limit.
+ *
+ * <p>Per route the handler reports admitted / rejected / in-flight counts and
+ * the queueing time between admission and the handler starting to run.
+ */
+public class ApiBulkheads {
+
+    static final String ROOM_MESSAGES = "/api/query/rooms/{roomId}/messages";
+    static final String USER_MESSAGES = "/api/query/users/{userId}/messages";
+    static final String USER_ROOMS    = "/api/query/users/{userId}/rooms";
+    static final String OTHER         = "other";
+
+    private final int historyLimit;
+    private final int defaultLimit;
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+
+    public ApiBulkheads(int historyLimit, int defaultLimit) {
+        this.historyLimit = Math.max(1, historyLimit);
+        this.defaultLimit = Math.max(1, defaultLimit);
+    }
+
+    public static ApiBulkheads fromConfig(ServerV2PersistenceConfig config) {
+        return new ApiBulkheads(config.apiHistoryConcurrency, config.apiRouteConcurrency);
+    }
+
+    /** Route template of a request path, as matched by {@link ApiHandler}'s dispatch. */
+    static String template(String path) {
+        if (path.startsWith("/api/query/rooms/") && path.endsWith("/messages")) return ROOM_MESSAGES;
+        if (path.startsWith("/api/query/users/") && path.endsWith("/messages")) return USER_MESSAGES;
+        if (path.startsWith("/api/query/users/") && path.endsWith("/rooms"))    return USER_ROOMS;
+        switch (path) {
+            case "/api/query/active-users":
+            case "/api/analytics/summary":
+            case "/api/metrics/report":
+                return path;
+            default:
+                return OTHER;
+        }
+    }
+
+    /** The bulkhead of the route {@code path} belongs to. */
+    public Route route(String path) {
+        return routes.computeIfAbsent(template(path), name -> new Route(name,
+            name.equals(ROOM_MESSAGES) || name.equals(USER_MESSAGES) ? historyLimit : defaultLimit));
+    }
+
+    /** Stats of every route seen so far, by route template. */
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        routes.keySet().stream().sorted().forEach(name -> out.put(name, routes.get(name).stats()));
+        return out;
+    }
+
+    /** One route's semaphore and counters. */
+    public static final class Route {
+        final String name;
+        private final int        limit;
+        private final Semaphore  permits;
+        private final LongAdder  admitted       = new LongAdder();
+        private final LongAdder  rejected       = new LongAdder();
+        private final LongAdder  queueNanos     = new LongAdder();
+        private final AtomicLong maxQueueNanos  = new AtomicLong();
+
+        Route(String name, int limit) {
+            this.name    = name;
+            this.limit   = limit;
+            this.permits = new Semaphore(limit);
+        }
+
+        /** Take a permit without waiting; false (and counted) when the route is full. */
+        public boolean tryAcquire() {
+            if (permits.tryAcquire()) {
+                admitted.increment();
+                return true;
+            }
+            rejected.increment();
+            return false;
+        }
+
+        /** Record the wait between {@link #tryAcquire} and the handler starting. */
+        public void started(long queuedNanos) {
+            queueNanos.add(queuedNanos);
+            maxQueueNanos.accumulateAndGet(queuedNanos, Math::max);
+        }
+
+        /** Return the permit once the response has been sent. */
+        public void release() {
+            permits.release();
+        }
+
+        int inFlight() {
+            return limit - permits.availablePermits();
+        }
+
+        Map<String, Object> stats() {
+            long n = admitted.sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("limit",      limit);
+            m.put("inFlight",   inFlight());
+            m.put("admitted",   n);
+            m.put("rejected",   rejected.sum());
+            m.put("avgQueueMs", n > 0 ? queueNanos.sum() / n / 1_000_000.0 : 0.0);
+            m.put("maxQueueMs", maxQueueNanos.get() / 1_000_000.0);
+            return m;
+        }
+    }
+}
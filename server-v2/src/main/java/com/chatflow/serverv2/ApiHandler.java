@@ -1,34 +1,66 @@
 package com.chatflow.serverv2;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
 /**
  * Netty handler for all {@code /api/*} HTTP GET endpoints.
  *
  * <p>Handler is {@link ChannelHandler.Sharable} — a single instance is shared
- * across all Netty channels.  Blocking DynamoDB / Redis calls are dispatched
- * to a dedicated {@link ExecutorService} to avoid blocking the I/O event loop.
+ * across all Netty channels.  Each request runs on its own virtual thread so
+ * blocking DynamoDB / Redis calls never block the I/O event loop.  The
+ * analytics endpoints issue their Redis queries asynchronously and do not
+ * hold a thread while waiting for them.
+ *
+ * <p>Concurrency is bounded per route by {@link ApiBulkheads}: the permit is
+ * taken on the event loop and held until the response has been sent, and a
+ * request finding its route full gets an immediate 503.  Per-route in-flight
+ * counts, rejections and queueing time appear under {@code apiRoutes} in
+ * {@code /api/metrics/report}.
  *
  * <h3>Routes</h3>
  * <pre>
- *   GET /api/query/rooms/{roomId}/messages?start=&end=
- *   GET /api/query/users/{userId}/messages?start=&end=
+ *   GET /api/query/rooms/{roomId}/messages?start=&end=[&limit=&cursor=|&stream=true]
+ *   GET /api/query/users/{userId}/messages?start=&end=[&limit=&cursor=|&stream=true]
  *   GET /api/query/users/{userId}/rooms
  *   GET /api/query/active-users?start=&end=
  *   GET /api/analytics/summary?start=&end=&topN=
  *   GET /api/metrics/report?start=&end=&topN=
  * </pre>
  *
+ * <p>Message history has three modes.  Without extra parameters the whole
+ * window (up to {@code QueryService.MAX_RESULTS}) is returned at once.  With
+ * {@code limit} and/or {@code cursor} one page is returned together with
+ * {@code nextCursor}, to be passed back until it is absent.  With
+ * {@code stream=true} the response is sent with chunked transfer encoding
+ * while DynamoDB pages are still being read; {@code count} then comes after
+ * {@code messages}.
+ *
+ * <p>The analytics summary and the report's analytics sections come from an
+ * {@link AnalyticsSnapshotCache}: windows are aligned to whole minutes, the
+ * response's {@code start}/{@code end} show the aligned window, and
+ * {@code generatedAt} shows when the snapshot was computed.
+ *
  * <p>Non-{@code /api/} requests are passed through to the next pipeline handler.
+ *
+ * <p>Connections are persistent: responses carry a Content-Length and leave
+ * the channel open, {@code HttpServerKeepAliveHandler} decides when to close,
+ * and {@link HttpPipeliningHandler} keeps pipelined responses in request
+ * order.  The same instance also serves HTTP/2 streams when h2c is enabled.
  */
 @ChannelHandler.Sharable
 public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
@@ -39,33 +71,44 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     // Default window = last 15 minutes when start/end not supplied
     static final long DEFAULT_WINDOW_MS = 15 * 60 * 1_000L;
     static final int  DEFAULT_TOP_N     = 10;
+    static final int  DEFAULT_PAGE_SIZE = 500;
 
     private final QueryService           queryService;
     private final AnalyticsService       analyticsService;
     private final ProjectionHealthService healthService;
+    private final AnalyticsSnapshotCache analyticsCache;
+    private final ApiBulkheads           bulkheads;
     private final ExecutorService        executor;
 
-    private ApiHandler(QueryService q, AnalyticsService a, ProjectionHealthService h) {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private ApiHandler(QueryService q, AnalyticsService a, ProjectionHealthService h,
+                       AnalyticsSnapshotCache c, ApiBulkheads b) {
         this.queryService     = q;
         this.analyticsService = a;
         this.healthService    = h;
-        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
-        this.executor = Executors.newFixedThreadPool(threads, r -> {
-            Thread t = new Thread(r, "api-query");
-            t.setDaemon(true);
-            return t;
-        });
+        this.analyticsCache   = c;
+        this.bulkheads        = b;
+        this.executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("api-query-", 0).factory());
     }
 
     public static ApiHandler create(ServerV2PersistenceConfig config) {
-        QueryService           q = new QueryService(config);
+        return create(config, null);
+    }
+
+    /** @param recentRing recent broadcasts for latest-message room queries; may be null */
+    public static ApiHandler create(ServerV2PersistenceConfig config, RecentMessageRing recentRing) {
+        QueryService           q = new QueryService(config, recentRing);
         AnalyticsService       a = new AnalyticsService(config);
         // Share the Redis sync commands between AnalyticsService and health service
         ProjectionHealthService h = new ProjectionHealthService(
             config,
             a.isEnabled() ? a.sync() : null);   // package-private accessor
         log.info("ApiHandler created: dynamo={} redis={}", q.isEnabled(), a.isEnabled());
-        return new ApiHandler(q, a, h);
+        return new ApiHandler(q, a, h,
+            new AnalyticsSnapshotCache(a, config.analyticsCacheRefreshMs),
+            ApiBulkheads.fromConfig(config));
     }
 
     @Override
@@ -88,57 +131,72 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         String path = qm >= 0 ? uri.substring(0, qm) : uri;
         String qs   = qm >= 0 ? uri.substring(qm + 1) : "";
 
-        // Dispatch to handler methods (all run on executor to avoid blocking I/O thread)
+        // Full route: reject here, before a thread is started for the request
+        ApiBulkheads.Route route = bulkheads.route(path);
+        if (!route.tryAcquire()) {
+            sendJson(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE,
+                errorMap("Too many concurrent requests for " + route.name));
+            return;
+        }
+
+        // Dispatch to handler methods (each on a virtual thread to avoid blocking I/O thread)
+        long admittedAt = System.nanoTime();
         executor.execute(() -> {
+            route.started(System.nanoTime() - admittedAt);
+            CompletableFuture<?> done = DONE;
             try {
-                dispatch(ctx, path, qs);
+                done = dispatch(ctx, path, qs);
             } catch (Exception e) {
                 log.error("API handler error path={}: {}", path, e.getMessage(), e);
                 sendJson(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR,
                     errorMap("Internal server error: " + e.getMessage()));
+            } finally {
+                done.whenComplete((r, e) -> route.release());
             }
         });
     }
 
     // ── Route dispatch ────────────────────────────────────────────────────────
 
-    private void dispatch(ChannelHandlerContext ctx, String path, String qs) {
+    /** Runs the route's handler; the future completes once its response has been sent. */
+    private CompletableFuture<?> dispatch(ChannelHandlerContext ctx, String path, String qs) {
         Map<String, String> params = parseQueryString(qs);
 
         // /api/query/rooms/{roomId}/messages
         if (path.startsWith("/api/query/rooms/") && path.endsWith("/messages")) {
             String roomId = path.substring("/api/query/rooms/".length(),
                 path.length() - "/messages".length());
-            if (roomId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("roomId is required")); return; }
+            if (roomId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("roomId is required")); return DONE; }
             handleRoomMessages(ctx, roomId, params);
-            return;
+            return DONE;
         }
 
         // /api/query/users/{userId}/messages
         if (path.startsWith("/api/query/users/") && path.endsWith("/messages")) {
             String userId = path.substring("/api/query/users/".length(),
                 path.length() - "/messages".length());
-            if (userId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("userId is required")); return; }
+            if (userId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("userId is required")); return DONE; }
             handleUserMessages(ctx, userId, params);
-            return;
+            return DONE;
         }
 
         // /api/query/users/{userId}/rooms
         if (path.startsWith("/api/query/users/") && path.endsWith("/rooms")) {
             String userId = path.substring("/api/query/users/".length(),
                 path.length() - "/rooms".length());
-            if (userId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("userId is required")); return; }
+            if (userId.isBlank()) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("userId is required")); return DONE; }
             handleUserRooms(ctx, userId);
-            return;
+            return DONE;
         }
 
         switch (path) {
             case "/api/query/active-users"   -> handleActiveUsers(ctx, params);
-            case "/api/analytics/summary"    -> handleAnalyticsSummary(ctx, params);
-            case "/api/metrics/report"       -> handleMetricsReport(ctx, params);
+            case "/api/analytics/summary"    -> { return handleAnalyticsSummary(ctx, params); }
+            case "/api/metrics/report"       -> { return handleMetricsReport(ctx, params); }
             default -> sendJson(ctx, HttpResponseStatus.NOT_FOUND,
                 errorMap("Unknown API endpoint: " + path));
         }
+        return DONE;
     }
 
     // ── Endpoint handlers ─────────────────────────────────────────────────────
@@ -148,13 +206,30 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         long[] range = parseTimeRange(p);
         if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return; }
 
-        List<Map<String, Object>> messages = queryService.getRoomMessages(roomId, range[0], range[1]);
+        if (isStreaming(p)) {
+            streamMessages(ctx, "roomId", roomId, range,
+                sink -> queryService.streamRoomMessages(roomId, range[0], range[1], sink));
+            return;
+        }
         Map<String, Object> resp = new LinkedHashMap<>();
         resp.put("roomId", roomId);
         resp.put("start",  range[0]);
         resp.put("end",    range[1]);
-        resp.put("count",  messages.size());
-        resp.put("messages", messages);
+        if (isPaged(p)) {
+            QueryService.MessagePage page;
+            try {
+                page = queryService.getRoomMessagesPage(roomId, range[0], range[1],
+                    p.get("cursor"), parseInt(p.get("limit"), DEFAULT_PAGE_SIZE));
+            } catch (IllegalArgumentException e) {
+                sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap(e.getMessage()));
+                return;
+            }
+            putPage(resp, page);
+        } else {
+            List<MessageRow> messages = queryService.getRoomMessages(roomId, range[0], range[1]);
+            resp.put("count",  messages.size());
+            resp.put("messages", messages);
+        }
         sendJson(ctx, HttpResponseStatus.OK, resp);
     }
 
@@ -163,13 +238,30 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         long[] range = parseTimeRange(p);
         if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return; }
 
-        List<Map<String, Object>> messages = queryService.getUserMessages(userId, range[0], range[1]);
+        if (isStreaming(p)) {
+            streamMessages(ctx, "userId", userId, range,
+                sink -> queryService.streamUserMessages(userId, range[0], range[1], sink));
+            return;
+        }
         Map<String, Object> resp = new LinkedHashMap<>();
         resp.put("userId",   userId);
         resp.put("start",    range[0]);
         resp.put("end",      range[1]);
-        resp.put("count",    messages.size());
-        resp.put("messages", messages);
+        if (isPaged(p)) {
+            QueryService.MessagePage page;
+            try {
+                page = queryService.getUserMessagesPage(userId, range[0], range[1],
+                    p.get("cursor"), parseInt(p.get("limit"), DEFAULT_PAGE_SIZE));
+            } catch (IllegalArgumentException e) {
+                sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap(e.getMessage()));
+                return;
+            }
+            putPage(resp, page);
+        } else {
+            List<MessageRow> messages = queryService.getUserMessages(userId, range[0], range[1]);
+            resp.put("count",    messages.size());
+            resp.put("messages", messages);
+        }
         sendJson(ctx, HttpResponseStatus.OK, resp);
     }
 
@@ -197,58 +289,144 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
         sendJson(ctx, HttpResponseStatus.OK, resp);
     }
 
-    private void handleAnalyticsSummary(ChannelHandlerContext ctx, Map<String,String> p) {
-        if (!analyticsService.isEnabled()) { sendJson(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE, errorMap("Redis not configured")); return; }
+    private CompletableFuture<?> handleAnalyticsSummary(ChannelHandlerContext ctx, Map<String,String> p) {
+        if (!analyticsService.isEnabled()) { sendJson(ctx, HttpResponseStatus.SERVICE_UNAVAILABLE, errorMap("Redis not configured")); return DONE; }
         long[] range = parseTimeRange(p);
-        if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return; }
+        if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return DONE; }
         int topN = parseInt(p.get("topN"), DEFAULT_TOP_N);
 
-        Map<String, Object> resp = new LinkedHashMap<>();
-        resp.put("start",              range[0]);
-        resp.put("end",                range[1]);
-        resp.put("messagesPerMinute",  analyticsService.getMessagesPerMinute(range[0], range[1]));
-        resp.put("messagesPerSecond",  analyticsService.getMessagesPerSecond(range[0], range[1]));
-        resp.put("topUsers",           analyticsService.getTopUsers(range[0], range[1], topN));
-        resp.put("topRooms",           analyticsService.getTopRooms(range[0], range[1], topN));
-        resp.put("activeUserCount",    analyticsService.getActiveUserCount(range[0], range[1]));
-        sendJson(ctx, HttpResponseStatus.OK, resp);
+        return respondWhenDone(ctx, "/api/analytics/summary",
+            analyticsCache.get(range[0], range[1], topN).thenApply(snap -> {
+                Map<String, Object> resp = new LinkedHashMap<>();
+                resp.put("start",       snap.startMs);
+                resp.put("end",         snap.endMs);
+                resp.put("generatedAt", Instant.ofEpochMilli(snap.generatedAtMs).toString());
+                resp.putAll(snap.summary);
+                return resp;
+            }));
     }
 
-    private void handleMetricsReport(ChannelHandlerContext ctx, Map<String,String> p) {
+    private CompletableFuture<?> handleMetricsReport(ChannelHandlerContext ctx, Map<String,String> p) {
         long[] range = parseTimeRange(p);
-        if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return; }
+        if (range == null) { sendJson(ctx, HttpResponseStatus.BAD_REQUEST, errorMap("end must be >= start")); return DONE; }
         int topN = parseInt(p.get("topN"), DEFAULT_TOP_N);
 
-        Map<String, Object> report = new LinkedHashMap<>();
-        report.put("generatedAt",  Instant.now().toString());
-        report.put("windowStartMs", range[0]);
-        report.put("windowEndMs",   range[1]);
-
-        // coreQueries section
-        Map<String, Object> core = new LinkedHashMap<>();
-        if (analyticsService.isEnabled()) {
-            Map<String, Object> au = new LinkedHashMap<>();
-            au.put("start",           range[0]);
-            au.put("end",             range[1]);
-            au.put("activeUserCount", analyticsService.getActiveUserCount(range[0], range[1]));
-            core.put("activeUsers", au);
-        }
-        report.put("coreQueries", core);
-
-        // analytics section
-        Map<String, Object> analytics = new LinkedHashMap<>();
-        if (analyticsService.isEnabled()) {
-            analytics.put("messagesPerMinute", analyticsService.getMessagesPerMinute(range[0], range[1]));
-            analytics.put("messagesPerSecond", analyticsService.getMessagesPerSecond(range[0], range[1]));
-            analytics.put("topUsers",          analyticsService.getTopUsers(range[0], range[1], topN));
-            analytics.put("topRooms",          analyticsService.getTopRooms(range[0], range[1], topN));
-        }
-        report.put("analytics", analytics);
+        CompletableFuture<AnalyticsSnapshotCache.Snapshot> snapshot = analyticsService.isEnabled()
+            ? analyticsCache.get(range[0], range[1], topN)
+            : CompletableFuture.completedFuture(null);
+        // health reads Redis with blocking commands, so build the report on the executor
+        return respondWhenDone(ctx, "/api/metrics/report", snapshot.thenApplyAsync(snap -> {
+            long start = snap != null ? snap.startMs : range[0];
+            long end   = snap != null ? snap.endMs   : range[1];
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("generatedAt",  Instant.now().toString());
+            report.put("windowStartMs", start);
+            report.put("windowEndMs",   end);
+
+            // coreQueries section
+            Map<String, Object> core = new LinkedHashMap<>();
+            // analytics section
+            Map<String, Object> analytics = new LinkedHashMap<>();
+            if (snap != null) {
+                Map<String, Object> au = new LinkedHashMap<>();
+                au.put("start",           start);
+                au.put("end",             end);
+                au.put("activeUserCount", snap.summary.get("activeUserCount"));
+                core.put("activeUsers", au);
+                analytics.put("generatedAt", Instant.ofEpochMilli(snap.generatedAtMs).toString());
+                analytics.putAll(snap.summary);
+                analytics.remove("activeUserCount");
+            }
+            report.put("coreQueries", core);
+            report.put("analytics", analytics);
+
+            // per-route bulkheads
+            report.put("apiRoutes", bulkheads.stats());
+
+            // health section
+            report.put("health", healthService.getHealth());
+            return report;
+        }, executor));
+    }
+
+    /**
+     * Sends {@code body} once it completes.  The continuation runs on the API
+     * executor, not on the Redis client's event loop that completed the future.
+     */
+    private CompletableFuture<?> respondWhenDone(ChannelHandlerContext ctx, String path,
+                                                 CompletableFuture<? extends Map<String, Object>> body) {
+        return body.whenCompleteAsync((resp, e) -> {
+            if (e == null) {
+                sendJson(ctx, HttpResponseStatus.OK, resp);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("API handler error path={}: {}", path, cause.getMessage(), cause);
+            sendJson(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                errorMap("Internal server error: " + cause.getMessage()));
+        }, executor);
+    }
+
+    // ── Message history modes ─────────────────────────────────────────────────
+
+    static boolean isPaged(Map<String, String> p) {
+        return p.containsKey("limit") || p.containsKey("cursor");
+    }
 
-        // health section
-        report.put("health", healthService.getHealth());
+    static boolean isStreaming(Map<String, String> p) {
+        return "true".equalsIgnoreCase(p.get("stream"));
+    }
+
+    private static void putPage(Map<String, Object> resp, QueryService.MessagePage page) {
+        resp.put("count",      page.messages.size());
+        resp.put("messages",   page.messages);
+        resp.put("nextCursor", page.nextCursor);
+    }
 
-        sendJson(ctx, HttpResponseStatus.OK, report);
+    /**
+     * Send a message history as a chunked JSON body, writing each message as
+     * the merge produces it.  Runs on the API executor; the event loop drains
+     * the chunks through {@link ChunkedWriteHandler}.  Once the 200 head is
+     * out an error can only be signalled by closing the connection.
+     */
+    private void streamMessages(ChannelHandlerContext ctx, String idField, String id, long[] range,
+                                ToIntFunction<Predicate<MessageRow>> query) {
+        HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        head.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+        head.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        HttpUtil.setTransferEncodingChunked(head, true);
+        JsonChunkStream body = JsonChunkStream.forChannel(ctx);
+        ctx.write(head);
+        ctx.writeAndFlush(new HttpChunkedInput(body));
+        try {
+            JsonGenerator gen = MAPPER.getFactory().createGenerator(body.outputStream());
+            gen.writeStartObject();
+            gen.writeStringField(idField, id);
+            gen.writeNumberField("start", range[0]);
+            gen.writeNumberField("end",   range[1]);
+            gen.writeArrayFieldStart("messages");
+            gen.flush();
+            int count = query.applyAsInt(m -> {
+                try {
+                    m.writeJson(gen);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            gen.writeEndArray();
+            gen.writeNumberField("count", count);
+            gen.writeEndObject();
+            gen.close();   // flushes and ends the chunked body
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("Streaming {}={} aborted: {}", idField, id, e.getMessage());
+            body.abort();
+            ctx.close();
+        } catch (RuntimeException e) {
+            log.error("Streaming {}={} failed: {}", idField, id, e.getMessage(), e);
+            body.abort();
+            ctx.close();
+        }
     }
 
     // ── HTTP helpers ──────────────────────────────────────────────────────────
@@ -262,8 +440,8 @@ public class ApiHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
             response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, json.length);
             response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
-            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            // Connection header and close-after-response are HttpServerKeepAliveHandler's call
+            ctx.writeAndFlush(response);
         } catch (Exception e) {
             log.error("Failed to serialize JSON response", e);
             ctx.close();
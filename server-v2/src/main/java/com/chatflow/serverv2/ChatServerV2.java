@@ -14,24 +14,41 @@ import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolConfig;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ChatServerV2 {
     private static final Logger logger = LoggerFactory.getLogger(ChatServerV2.class);
 
+    /** Largest aggregated request body, for HTTP/1.1, h2c upgrade requests and HTTP/2 streams. */
+    static final int MAX_CONTENT_LENGTH = 65536;
+    static final String WEBSOCKET_PATH = "/chat";
+
     private final int port;
     private final int workerThreads;
     private final String serverId;
     private final String internalToken;
     private final RabbitMqPublisher publisher;
+    private final RecentMessageTracker broadcastTracker = new RecentMessageTracker(200_000, 120_000L);
     private RoomSessionRegistry roomSessionRegistry;
     private ApiHandler apiHandler;
+    private boolean h2cEnabled;
+    private int httpIdleTimeoutSeconds = HttpIdleTimeoutHandler.DEFAULT_TIMEOUT_SECONDS;
 
     public ChatServerV2(
             int port,
@@ -65,17 +82,28 @@ public class ChatServerV2 {
                         @Override
                         protected void initChannel(SocketChannel ch) {
                             ChannelPipeline pipeline = ch.pipeline();
-                            pipeline.addLast("httpCodec", new HttpServerCodec());
-                            pipeline.addLast("httpAggregator", new HttpObjectAggregator(65536));
+                            if (httpIdleTimeoutSeconds > 0) {
+                                pipeline.addLast("httpIdle", new HttpIdleTimeoutHandler(httpIdleTimeoutSeconds));
+                            }
+                            if (h2cEnabled) {
+                                // adds its own HttpServerCodec for connections that stay on HTTP/1.1
+                                pipeline.addLast("h2c", createH2cHandler(createHttp2StreamInitializer()));
+                            } else {
+                                pipeline.addLast("httpCodec", new HttpServerCodec());
+                            }
+                            pipeline.addLast("httpKeepAlive", new HttpServerKeepAliveHandler());
+                            pipeline.addLast("httpAggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                            pipeline.addLast("httpPipelining", new HttpPipeliningHandler());
                             pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
                             pipeline.addLast("roomIdExtractor", new RoomIdExtractorHandler());
                             pipeline.addLast("apiHandler", apiHandler);
                             pipeline.addLast(
                                     "internalBroadcast",
-                                    new InternalBroadcastHandler(roomSessionRegistry, internalToken));
+                                    new InternalBroadcastHandler(roomSessionRegistry, internalToken, broadcastTracker));
+                            pipeline.addLast("notFound", new NotFoundHandler(WEBSOCKET_PATH));
 
                             WebSocketServerProtocolConfig wsConfig = WebSocketServerProtocolConfig.newBuilder()
-                                    .websocketPath("/chat")
+                                    .websocketPath(WEBSOCKET_PATH)
                                     .checkStartsWith(true)
                                     .build();
                             pipeline.addLast("webSocketProtocol", new WebSocketServerProtocolHandler(wsConfig));
@@ -92,6 +120,9 @@ public class ChatServerV2 {
             logger.info("Server ID: {}", serverId);
             logger.info("Connect via: ws://localhost:{}/chat?roomId=<room>", port);
             logger.info("Internal broadcast endpoint: http://localhost:{}/internal/broadcast", port);
+            if (h2cEnabled) {
+                logger.info("HTTP/2 cleartext (h2c) enabled on port {} for /api/* and /internal/broadcast", port);
+            }
             serverChannel.closeFuture().sync();
         } finally {
             bossGroup.shutdownGracefully();
@@ -99,6 +130,56 @@ public class ChatServerV2 {
         }
     }
 
+    /**
+     * HTTP/2 cleartext on the HTTP port: prior-knowledge h2c and
+     * {@code Upgrade: h2c} switch the connection to HTTP/2, anything else
+     * (including WebSocket upgrades) continues on the HTTP/1.1 pipeline.
+     * Each HTTP/2 stream gets its own child pipeline that converts frames to
+     * {@link FullHttpRequest}s for the same API and broadcast handlers.
+     *
+     * <p>The upgrade handler aggregates the upgrade request, body included, so
+     * it gets the same {@link #MAX_CONTENT_LENGTH} as the HTTP/1.1 aggregator;
+     * Netty's default of 0 would answer any POST carrying {@code Upgrade: h2c}
+     * with 413.
+     */
+    static CleartextHttp2ServerUpgradeHandler createH2cHandler(ChannelInitializer<Channel> streamInitializer) {
+        HttpServerCodec sourceCodec = new HttpServerCodec();
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol ->
+                AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                        ? new Http2ServerUpgradeCodec(
+                                Http2FrameCodecBuilder.forServer().build(),
+                                new Http2MultiplexHandler(streamInitializer))
+                        : null,
+                MAX_CONTENT_LENGTH);
+        ChannelInitializer<Channel> priorKnowledge = new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ch.pipeline().addLast(
+                        Http2FrameCodecBuilder.forServer().build(),
+                        new Http2MultiplexHandler(streamInitializer));
+            }
+        };
+        return new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledge);
+    }
+
+    private ChannelInitializer<Channel> createHttp2StreamInitializer() {
+        return new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel stream) {
+                ChannelPipeline pipeline = stream.pipeline();
+                pipeline.addLast("http2ToHttp", new Http2StreamFrameToHttpObjectCodec(true));
+                pipeline.addLast("httpAggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+                pipeline.addLast("roomIdExtractor", new RoomIdExtractorHandler());
+                pipeline.addLast("apiHandler", apiHandler);
+                pipeline.addLast(
+                        "internalBroadcast",
+                        new InternalBroadcastHandler(roomSessionRegistry, internalToken, broadcastTracker));
+                pipeline.addLast("notFound", new NotFoundHandler(null));
+            }
+        };
+    }
+
     private EventLoopGroup createWorkerGroup(boolean useEpoll) {
         if (useEpoll) {
             return workerThreads > 0 ? new EpollEventLoopGroup(workerThreads) : new EpollEventLoopGroup();
@@ -112,6 +193,9 @@ public class ChatServerV2 {
         int workerThreads = 0;
         String serverId = System.getenv().getOrDefault("CHATFLOW_SERVER_ID", "server-v2-local");
         String internalToken = System.getenv().getOrDefault("CHATFLOW_INTERNAL_TOKEN", "");
+        boolean h2cEnabled = Boolean.parseBoolean(System.getenv().getOrDefault("CHATFLOW_HTTP2_CLEARTEXT", "false"));
+        int httpIdleTimeoutSeconds = Integer.parseInt(System.getenv().getOrDefault(
+                "CHATFLOW_HTTP_IDLE_TIMEOUT_SECONDS", String.valueOf(HttpIdleTimeoutHandler.DEFAULT_TIMEOUT_SECONDS)));
 
         if (args.length > 0) {
             port = Integer.parseInt(args[0]);
@@ -130,21 +214,24 @@ public class ChatServerV2 {
         }
 
         RabbitMqConfig config = RabbitMqConfig.fromEnvironment();
-        RoomSessionRegistry roomSessionRegistry = new RoomSessionRegistry();
+        ServerV2PersistenceConfig persistenceConfig = ServerV2PersistenceConfig.fromEnv();
+        logger.info("Persistence config: {}", persistenceConfig);
+        RecentMessageRing recentRing = RecentMessageRing.fromConfig(persistenceConfig);
+        RoomSessionRegistry roomSessionRegistry = new RoomSessionRegistry(recentRing);
 
         InternalBroadcastGrpcService grpcService = new InternalBroadcastGrpcService(roomSessionRegistry, internalToken);
         GrpcServerManager grpcServer = new GrpcServerManager(grpcPort, grpcService);
         grpcServer.start();
         logger.info("gRPC internal broadcast service available on port {}", grpcPort);
 
-        ServerV2PersistenceConfig persistenceConfig = ServerV2PersistenceConfig.fromEnv();
-        logger.info("Persistence config: {}", persistenceConfig);
-        ApiHandler apiHandler = ApiHandler.create(persistenceConfig);
+        ApiHandler apiHandler = ApiHandler.create(persistenceConfig, recentRing);
 
         try (RabbitMqPublisher publisher = new RabbitMqPublisher(config)) {
             ChatServerV2 server = new ChatServerV2(port, workerThreads, serverId, internalToken, publisher);
             server.roomSessionRegistry = roomSessionRegistry;
             server.apiHandler = apiHandler;
+            server.h2cEnabled = h2cEnabled;
+            server.httpIdleTimeoutSeconds = httpIdleTimeoutSeconds;
             server.start();
         } finally {
             grpcServer.close();
@@ -0,0 +1,40 @@
+package com.chatflow.serverv2;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes HTTP connections with no reads or writes for {@code timeoutSeconds}.
+ *
+ * <p>The load balancer keeps idle keep-alive connections open for 60 seconds
+ * (ALB default); the server waits longer, {@link #DEFAULT_TIMEOUT_SECONDS},
+ * so the balancer always closes first and never sends a request on a
+ * connection the server is closing.  Clients that bypass the balancer can
+ * no longer hold sockets open indefinitely.
+ *
+ * <p>Placed first in the pipeline, ahead of the HTTP and h2c codecs, so it
+ * sees raw bytes and covers HTTP/1.1 and HTTP/2 connections alike.  Chat
+ * connections stay open while idle: {@link WebSocketChatHandlerV2} removes
+ * this handler once the WebSocket handshake completes.
+ */
+public class HttpIdleTimeoutHandler extends IdleStateHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpIdleTimeoutHandler.class);
+
+    static final int DEFAULT_TIMEOUT_SECONDS = 120;
+
+    public HttpIdleTimeoutHandler(int timeoutSeconds) {
+        super(0, 0, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) {
+        logger.debug("Closing idle HTTP connection {}", ctx.channel().remoteAddress());
+        ctx.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.chatflow.serverv2;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+
+/**
+ * HTTP/1.1 request pipelining with responses in request order.
+ *
+ * <p>A keep-alive client may send several requests before reading the first
+ * response.  {@link ApiHandler} answers from its executor, so two requests on
+ * one connection could otherwise complete out of order.  This handler passes
+ * one request at a time down the pipeline and holds the rest until the
+ * previous response's last part ({@link LastHttpContent}) has been written,
+ * whichever thread wrote it.
+ *
+ * <p>At most {@link #MAX_QUEUED} requests are held per connection; a client
+ * that pipelines more is disconnected.  After a {@code 101 Switching Protocols}
+ * response (WebSocket upgrade) the handler removes itself.
+ *
+ * <p>One instance per channel, placed after {@code HttpObjectAggregator} so
+ * each request arrives as a single {@link FullHttpRequest}.
+ */
+public class HttpPipeliningHandler extends ChannelDuplexHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpPipeliningHandler.class);
+
+    static final int MAX_QUEUED = 64;
+
+    private final ArrayDeque<FullHttpRequest> queued = new ArrayDeque<>();
+    private boolean inFlight;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof FullHttpRequest)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        FullHttpRequest request = (FullHttpRequest) msg;
+        if (!inFlight) {
+            inFlight = true;
+            ctx.fireChannelRead(request);
+            return;
+        }
+        if (queued.size() >= MAX_QUEUED) {
+            logger.warn("Closing {}: more than {} pipelined requests", ctx.channel().remoteAddress(), MAX_QUEUED);
+            ReferenceCountUtil.release(request);
+            ctx.close();
+            return;
+        }
+        queued.add(request);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof HttpResponse
+                && HttpResponseStatus.SWITCHING_PROTOCOLS.equals(((HttpResponse) msg).status())) {
+            ctx.write(msg, promise);
+            ctx.pipeline().remove(this);
+            return;
+        }
+        ctx.write(msg, promise);
+        if (msg instanceof LastHttpContent) {
+            inFlight = false;
+            // Next request on a fresh task: a handler that answers synchronously
+            // would otherwise recurse once per queued request.
+            ctx.executor().execute(() -> releaseNext(ctx));
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        releaseQueued();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        releaseQueued();
+        ctx.fireChannelInactive();
+    }
+
+    /** Requests waiting behind the in-flight one.  Package-private for tests. */
+    int queuedCount() {
+        return queued.size();
+    }
+
+    private void releaseNext(ChannelHandlerContext ctx) {
+        if (inFlight || ctx.isRemoved()) {
+            return;
+        }
+        FullHttpRequest next = queued.poll();
+        if (next != null) {
+            inFlight = true;
+            ctx.fireChannelRead(next);
+        }
+    }
+
+    private void releaseQueued() {
+        FullHttpRequest request;
+        while ((request = queued.poll()) != null) {
+            ReferenceCountUtil.release(request);
+        }
+    }
+}
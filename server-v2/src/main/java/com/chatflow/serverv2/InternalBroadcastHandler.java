@@ -9,9 +9,9 @@ import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.util.CharsetUtil;
 import org.slf4j.Logger;
@@ -32,9 +32,20 @@ public class InternalBroadcastHandler extends SimpleChannelInboundHandler<FullHt
     private final RecentMessageTracker messageTracker;
 
     public InternalBroadcastHandler(RoomSessionRegistry roomSessionRegistry, String internalToken) {
+        this(roomSessionRegistry, internalToken, new RecentMessageTracker(200_000, 120_000L));
+    }
+
+    /**
+     * Shares {@code messageTracker} across connections, so a broadcast retried
+     * on another keep-alive connection or HTTP/2 stream is still deduplicated.
+     */
+    public InternalBroadcastHandler(
+            RoomSessionRegistry roomSessionRegistry,
+            String internalToken,
+            RecentMessageTracker messageTracker) {
         this.roomSessionRegistry = roomSessionRegistry;
         this.internalToken = internalToken == null ? "" : internalToken;
-        this.messageTracker = new RecentMessageTracker(200_000, 120_000L);
+        this.messageTracker = messageTracker;
     }
 
     @Override
@@ -89,7 +100,7 @@ public class InternalBroadcastHandler extends SimpleChannelInboundHandler<FullHt
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.warn("Internal broadcast handler error", cause);
-        sendJson(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, map("error", "Internal server error"));
+        sendJson(ctx, HttpResponseStatus.INTERNAL_SERVER_ERROR, map("error", "Internal server error"), false);
     }
 
     private boolean isTokenValid(FullHttpRequest request) {
@@ -119,6 +130,19 @@ public class InternalBroadcastHandler extends SimpleChannelInboundHandler<FullHt
     }
 
     private void sendJson(ChannelHandlerContext ctx, HttpResponseStatus status, Map<String, Object> payload) {
+        sendJson(ctx, status, payload, true);
+    }
+
+    /**
+     * Writes a JSON response and keeps the connection open unless
+     * {@code keepAlive} is false; HttpServerKeepAliveHandler closes it after
+     * the response when either side asked for {@code Connection: close}.
+     */
+    private void sendJson(
+            ChannelHandlerContext ctx,
+            HttpResponseStatus status,
+            Map<String, Object> payload,
+            boolean keepAlive) {
         try {
             String body = OBJECT_MAPPER.writeValueAsString(payload);
             FullHttpResponse response = new DefaultFullHttpResponse(
@@ -127,8 +151,10 @@ public class InternalBroadcastHandler extends SimpleChannelInboundHandler<FullHt
                     Unpooled.copiedBuffer(body, CharsetUtil.UTF_8));
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
             response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
-            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
-            ctx.writeAndFlush(response).addListener(future -> ctx.close());
+            if (!keepAlive) {
+                HttpUtil.setKeepAlive(response, false);
+            }
+            ctx.writeAndFlush(response);
         } catch (Exception e) {
             logger.warn("Failed to send JSON response", e);
             ctx.close();
@@ -0,0 +1,174 @@
+package com.chatflow.serverv2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response body produced on a worker thread and drained by Netty's
+ * {@link ChunkedWriteHandler} on the event loop.
+ *
+ * <p>The producer writes to {@link #outputStream()} (typically through a
+ * Jackson generator); every {@link #CHUNK_BYTES} bytes become one chunk in a
+ * bounded queue.  {@link #readChunk} never blocks: an empty queue suspends the
+ * transfer, and the next enqueued chunk resumes it.  The handler only reads
+ * while the channel is writable, so a slow client fills the queue and the
+ * producer waits, for at most {@link #STALL_TIMEOUT_MS}, instead of the body
+ * piling up in memory.
+ *
+ * <p>Wrap in {@code HttpChunkedInput} to send as HTTP/1.1 chunked transfer
+ * encoding or as HTTP/2 DATA frames.
+ */
+public class JsonChunkStream implements ChunkedInput<ByteBuf> {
+
+    static final int  CHUNK_BYTES      = 8 * 1024;
+    static final int  MAX_CHUNKS       = 16;
+    static final long STALL_TIMEOUT_MS = 30_000L;
+
+    private final BlockingQueue<ByteBuf> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS);
+    private final Runnable onData;
+    private final ChunkOutputStream out = new ChunkOutputStream();
+    private volatile boolean finished;
+    private volatile boolean closed;
+    private long progress;
+
+    /** {@code onData} runs on the producer thread whenever a chunk is ready. */
+    JsonChunkStream(Runnable onData) {
+        this.onData = onData;
+    }
+
+    /** A stream whose chunks resume the {@link ChunkedWriteHandler} in {@code ctx}'s pipeline. */
+    public static JsonChunkStream forChannel(ChannelHandlerContext ctx) {
+        return new JsonChunkStream(() -> {
+            ChunkedWriteHandler writer = ctx.pipeline().get(ChunkedWriteHandler.class);
+            if (writer != null) writer.resumeTransfer();
+        });
+    }
+
+    /** Producer side; {@code flush()} emits a partial chunk, {@code close()} finishes the body. */
+    public OutputStream outputStream() {
+        return out;
+    }
+
+    /** Stop producing: pending chunks are dropped and further writes fail. */
+    public void abort() {
+        close();
+    }
+
+    // ── ChunkedInput (event loop) ─────────────────────────────────────────────
+
+    @Override
+    public boolean isEndOfInput() {
+        return closed || (finished && chunks.isEmpty());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ByteBuf chunk;
+        while ((chunk = chunks.poll()) != null) {
+            chunk.release();
+        }
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) {
+        return readChunk(ctx.alloc());
+    }
+
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) {
+        ByteBuf chunk = chunks.poll();
+        if (chunk != null) progress += chunk.readableBytes();
+        return chunk;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public long progress() {
+        return progress;
+    }
+
+    // ── Producer side ─────────────────────────────────────────────────────────
+
+    private void enqueue(byte[] buf, int len) throws IOException {
+        ByteBuf chunk = Unpooled.copiedBuffer(buf, 0, len);
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STALL_TIMEOUT_MS);
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) throw new IOException("response stream closed");
+                if (System.nanoTime() > deadline) throw new IOException("client stopped reading");
+            }
+        } catch (InterruptedException e) {
+            chunk.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (IOException e) {
+            chunk.release();
+            throw e;
+        }
+        if (closed) {
+            // close() raced with the offer; make sure the chunk is not leaked
+            close();
+            throw new IOException("response stream closed");
+        }
+        onData.run();
+    }
+
+    private final class ChunkOutputStream extends OutputStream {
+        private final byte[] buf = new byte[CHUNK_BYTES];
+        private int len;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (len == buf.length) drain();
+            buf[len++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int n) throws IOException {
+            while (n > 0) {
+                if (len == buf.length) drain();
+                int copy = Math.min(n, buf.length - len);
+                System.arraycopy(b, off, buf, len, copy);
+                len += copy;
+                off += copy;
+                n   -= copy;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (len > 0) drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished || closed) return;
+            flush();
+            finished = true;
+            onData.run();
+        }
+
+        private void drain() throws IOException {
+            if (closed) throw new IOException("response stream closed");
+            enqueue(buf, len);
+            len = 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.chatflow.serverv2;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * One message-history row as read from {@code room_messages} /
+ * {@code user_messages}.
+ *
+ * <p>Immutable, so cached segments are handed to callers as-is instead of
+ * being deep-copied per request.  Serializes itself straight onto a Jackson
+ * {@link JsonGenerator} with the same field names and order as the former
+ * map representation:
+ * <pre>
+ *   {"messageId":..,"roomId":..,"userId":..,"username":..,"message":..,"messageType":..,"eventTs":..}
+ * </pre>
+ */
+public final class MessageRow extends JsonSerializable.Base {
+
+    public final String messageId;
+    public final String roomId;
+    public final String userId;
+    public final String username;
+    public final String message;
+    public final String messageType;
+    public final long   eventTs;
+
+    MessageRow(String messageId, String roomId, String userId, String username,
+               String message, String messageType, long eventTs) {
+        this.messageId   = messageId;
+        this.roomId      = roomId;
+        this.userId      = userId;
+        this.username    = username;
+        this.message     = message;
+        this.messageType = messageType;
+        this.eventTs     = eventTs;
+    }
+
+    /** The table sort key, {@code eventTsMs#messageId}. */
+    String sortKey() {
+        return eventTs + "#" + messageId;
+    }
+
+    /**
+     * Rough heap footprint: object header, fields, and six strings (header,
+     * array header and one byte per Latin-1 char).
+     */
+    int estimatedBytes() {
+        return 56 + 6 * 40
+            + messageId.length() + roomId.length() + userId.length()
+            + username.length() + message.length() + messageType.length();
+    }
+
+    /** Write this row as a JSON object. */
+    public void writeJson(JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("messageId",   messageId);
+        gen.writeStringField("roomId",      roomId);
+        gen.writeStringField("userId",      userId);
+        gen.writeStringField("username",    username);
+        gen.writeStringField("message",     message);
+        gen.writeStringField("messageType", messageType);
+        gen.writeNumberField("eventTs",     eventTs);
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        writeJson(gen);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers,
+                                  TypeSerializer typeSer) throws IOException {
+        writeJson(gen);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageRow{" + sortKey() + ", roomId=" + roomId + ", userId=" + userId + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatflow.serverv2;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Terminal HTTP handler: answers 404 to any request no earlier handler
+ * claimed, so the response completes and {@link HttpPipeliningHandler}
+ * releases the next pipelined request instead of leaving the keep-alive
+ * connection waiting.
+ *
+ * <p>Requests for the WebSocket path are passed on to
+ * {@code WebSocketServerProtocolHandler}, matched the same way as its
+ * {@code checkStartsWith} option: the path itself, or the path followed by
+ * {@code /} or {@code ?}.  HTTP/2 stream pipelines have no WebSocket handler
+ * and pass {@code null}.
+ */
+public class NotFoundHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private final String webSocketPath;
+
+    public NotFoundHandler(String webSocketPath) {
+        this.webSocketPath = webSocketPath;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        if (isWebSocketPath(request.uri())) {
+            ctx.fireChannelRead(request.retain());
+            return;
+        }
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1,
+                HttpResponseStatus.NOT_FOUND,
+                Unpooled.copiedBuffer("Not Found", CharsetUtil.UTF_8));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        ctx.writeAndFlush(response);
+    }
+
+    private boolean isWebSocketPath(String uri) {
+        if (webSocketPath == null || uri == null || !uri.startsWith(webSocketPath)) {
+            return false;
+        }
+        if (uri.length() == webSocketPath.length()) {
+            return true;
+        }
+        char next = uri.charAt(webSocketPath.length());
+        return next == '/' || next == '?';
+    }
+}
@@ -1,6 +1,6 @@
 package com.chatflow.serverv2;
 
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +16,8 @@ import java.util.Map;
  *   projection:lastProjectedIngestedAt   epoch-ms string
  *   projection:lastProjectedMessageId    message UUID
  * </pre>
+ * In the cluster key layout both live under the {@code {projection}} hash tag
+ * ({@code {projection}:lastProjectedIngestedAt}), as written by the Lambda.
  *
  * <h3>projectionLagMs</h3>
  * {@code now() - lastProjectedIngestedAt}.  When no messages have been
@@ -28,15 +30,19 @@ public class ProjectionHealthService {
 
     private static final Logger log = LoggerFactory.getLogger(ProjectionHealthService.class);
 
-    private final RedisCommands<String, String> sync;
+    private final RedisClusterCommands<String, String> sync;
     private final boolean                       enabled;
     private final long                          thresholdMs;
+    private final String                        ingestedAtKey;
+    private final String                        messageIdKey;
 
     public ProjectionHealthService(ServerV2PersistenceConfig config,
-                                    RedisCommands<String, String> sync) {
-        this.sync        = sync;
-        this.enabled     = config.isRedisEnabled() && sync != null;
-        this.thresholdMs = config.projectionHealthThresholdMs;
+                                    RedisClusterCommands<String, String> sync) {
+        this.sync          = sync;
+        this.enabled       = config.isRedisEnabled() && sync != null;
+        this.thresholdMs   = config.projectionHealthThresholdMs;
+        this.ingestedAtKey = healthKey("lastProjectedIngestedAt", config.isRedisCluster());
+        this.messageIdKey  = healthKey("lastProjectedMessageId",  config.isRedisCluster());
     }
 
     /**
@@ -60,8 +66,8 @@ public class ProjectionHealthService {
             return h;
         }
         try {
-            String ingestedAtStr = sync.get("projection:lastProjectedIngestedAt");
-            String messageId     = sync.get("projection:lastProjectedMessageId");
+            String ingestedAtStr = sync.get(ingestedAtKey);
+            String messageId     = sync.get(messageIdKey);
             long   lastIngestedAt = ingestedAtStr != null ? Long.parseLong(ingestedAtStr.trim()) : 0L;
             long   lagMs          = lastIngestedAt > 0 ? System.currentTimeMillis() - lastIngestedAt : -1L;
             boolean consistent    = lastIngestedAt > 0 && lagMs >= 0 && lagMs < thresholdMs;
@@ -91,6 +97,11 @@ public class ProjectionHealthService {
         return ingestedAtMs > 0 ? nowMs - ingestedAtMs : -1L;
     }
 
+    /** Health marker key in the flat or cluster layout.  Package-private for unit tests. */
+    static String healthKey(String name, boolean cluster) {
+        return (cluster ? "{projection}:" : "projection:") + name;
+    }
+
     static boolean computeConsistent(long lagMs, long thresholdMs) {
         return lagMs >= 0 && lagMs < thresholdMs;
     }
@@ -2,6 +2,7 @@ package com.chatflow.serverv2;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,10 +10,15 @@ import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * DynamoDB query logic for the three projection tables.
@@ -27,31 +33,77 @@ import java.util.concurrent.TimeUnit;
  * <h3>Time-range queries</h3>
  * For each day touched by [startMs, endMs], we issue one DynamoDB Query with
  * the day-bucket pk and an {@code sk BETWEEN :startSk AND :endSk} condition
- * so DynamoDB prunes items outside the time range server-side.  Results are
- * merged and sorted by eventTsMs ascending across all days.
+ * so DynamoDB prunes items outside the time range server-side.  The first page
+ * of every day is fetched concurrently on a bounded fan-out pool
+ * ({@code CHATFLOW_V3_QUERY_FANOUT} threads, shared by all requests).  Each
+ * day is already sorted by sk, so the days are combined with a k-way merge on
+ * eventTsMs that stops at {@link #MAX_RESULTS}; a day's further pages are read
+ * only if the merge runs past its first page.
+ *
+ * <h3>Pagination and streaming</h3>
+ * {@link #getRoomMessagesPage} returns a page plus an opaque cursor (the day
+ * bucket and sk of the last message, base64url).  The consumer derives the
+ * day bucket from the same eventTs as the sk, so day partitions never overlap
+ * in time: the next page resumes that day with the sk as ExclusiveStartKey,
+ * then reads the following days in order until the page is full.
+ * {@link #streamRoomMessages}
+ * hands messages to a sink as the merge produces them, so the caller can
+ * write the response incrementally instead of holding the full list.
+ *
+ * <h3>Recent messages</h3>
+ * With a {@link RecentMessageRing} (opt-in), the part of a room window that
+ * the ring covers (typically the last few minutes) is answered from memory
+ * and only the older remainder goes through DynamoDB.  That part holds only
+ * what this instance received by broadcast, which is best-effort, so a
+ * message whose broadcast was dropped is missing from it.
  *
  * <h3>Caching</h3>
- * Historical query windows (endMs older than 30 s) are cached in a bounded
- * Caffeine cache (30 s TTL, max 5 000 entries) to avoid repeated DynamoDB
- * reads for the same immutable time range.
+ * {@link #getRoomMessages} and {@link #getUserMessages} cache results as
+ * hourly segments per (id, day bucket, hour) rather than per exact window, so
+ * overlapping windows share entries.  A window is assembled from the closed
+ * segments it touches (an hour that ended more than 30 s ago) plus a live
+ * query for the still-open tail, at most about an hour long.  Consecutive
+ * missing segments of one day are read with a single DynamoDB query, and
+ * each hour is cached as soon as it has been read completely; reading stops
+ * once the window has {@link #MAX_RESULTS} rows.  An hour holding more than
+ * {@link #SEGMENT_MAX_ROWS} messages is cached as an "oversized" marker
+ * instead, and later windows query its rows directly.  Segments settled for
+ * {@link #SEGMENT_SETTLE_MS} are kept for an hour; younger closed segments
+ * only for 30 s, in case late projection writes are still arriving.
+ * Eviction is by estimated size ({@code CHATFLOW_V3_QUERY_CACHE_MB}).
  */
 public class QueryService {
 
     private static final Logger log = LoggerFactory.getLogger(QueryService.class);
-    private static final int MAX_RESULTS = 5_000;
+    static final int MAX_RESULTS = 5_000;
+    private static final int MIN_FIRST_PAGE = 500;
 
     /** Queries whose endMs is within this window of now are considered "recent" and not cached. */
     private static final long CACHE_RECENCY_THRESHOLD_MS = 30_000L;
 
+    static final long SEGMENT_MS = 3_600_000L;
+    /** A closed segment older than this is assumed complete and cached long. */
+    private static final long SEGMENT_SETTLE_MS = 10 * 60_000L;
+    private static final long SETTLED_SEGMENT_TTL_MS = 60 * 60_000L;
+    /** Hours holding more messages than this are cached as an oversized marker only. */
+    static final int SEGMENT_MAX_ROWS = MAX_RESULTS;
+
     private final DynamoDbClient dynamo;
     private final String tableRoomMessages;
     private final String tableUserMessages;
     private final String tableUserRooms;
     private final boolean enabled;
 
-    private final Cache<String, List<Map<String, Object>>> messageQueryCache;
+    private final Cache<String, Segment> messageQueryCache;
+    private final ExecutorService fanoutExecutor;
+    private final RecentMessageRing recentRing;
 
     public QueryService(ServerV2PersistenceConfig config) {
+        this(config, null);
+    }
+
+    /** @param recentRing best-effort answers for the room windows it covers; may be null */
+    public QueryService(ServerV2PersistenceConfig config, RecentMessageRing recentRing) {
         if (config.isDynamoEnabled()) {
             this.dynamo = DynamoDbClient.builder()
                 .region(Region.of(config.dynamoRegion))
@@ -64,60 +116,93 @@ public class QueryService {
         this.tableRoomMessages = config.tableRoomMessages;
         this.tableUserMessages = config.tableUserMessages;
         this.tableUserRooms    = config.tableUserRooms;
-        this.messageQueryCache = Caffeine.newBuilder()
-            .maximumSize(5_000)
-            .expireAfterWrite(30, TimeUnit.SECONDS)
-            .recordStats()
-            .build();
+        this.messageQueryCache = newSegmentCache(config.queryCacheMb);
+        this.fanoutExecutor    = newFanoutExecutor(config.queryFanout);
+        this.recentRing        = recentRing;
     }
 
     /** Package-private constructor for testing without AWS. */
     QueryService(DynamoDbClient dynamo, String tableRoomMessages,
                  String tableUserMessages, String tableUserRooms) {
+        this(dynamo, tableRoomMessages, tableUserMessages, tableUserRooms, 4);
+    }
+
+    /** Package-private constructor for testing without AWS, with an explicit fan-out. */
+    QueryService(DynamoDbClient dynamo, String tableRoomMessages,
+                 String tableUserMessages, String tableUserRooms, int queryFanout) {
+        this(dynamo, tableRoomMessages, tableUserMessages, tableUserRooms, queryFanout, null);
+    }
+
+    /** Package-private constructor for testing without AWS, with a recent-message ring. */
+    QueryService(DynamoDbClient dynamo, String tableRoomMessages, String tableUserMessages,
+                 String tableUserRooms, int queryFanout, RecentMessageRing recentRing) {
         this.dynamo             = dynamo;
         this.tableRoomMessages  = tableRoomMessages;
         this.tableUserMessages  = tableUserMessages;
         this.tableUserRooms     = tableUserRooms;
         this.enabled            = dynamo != null;
-        this.messageQueryCache  = Caffeine.newBuilder()
-            .maximumSize(5_000)
-            .expireAfterWrite(30, TimeUnit.SECONDS)
+        this.messageQueryCache  = newSegmentCache(64);
+        this.fanoutExecutor     = newFanoutExecutor(queryFanout);
+        this.recentRing         = recentRing;
+    }
+
+    private static Cache<String, Segment> newSegmentCache(int megabytes) {
+        return Caffeine.newBuilder()
+            .maximumWeight(megabytes * 1024L * 1024L)
+            .weigher((String key, Segment seg) -> seg.bytes)
+            .expireAfter(new Expiry<String, Segment>() {
+                @Override
+                public long expireAfterCreate(String key, Segment seg, long now) {
+                    return seg.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Segment seg, long now, long currentDuration) {
+                    return seg.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterRead(String key, Segment seg, long now, long currentDuration) {
+                    return currentDuration;
+                }
+            })
             .recordStats()
             .build();
     }
 
+    private static ExecutorService newFanoutExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "query-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
     public boolean isEnabled() { return enabled; }
 
     // ── Public API ────────────────────────────────────────────────────────────
 
     /** All messages for roomId in [startMs, endMs], sorted by eventTsMs asc. */
-    public List<Map<String, Object>> getRoomMessages(String roomId, long startMs, long endMs) {
+    public List<MessageRow> getRoomMessages(String roomId, long startMs, long endMs) {
         if (!enabled) return List.of();
-        String cacheKey = cacheKey("room", roomId, startMs, endMs);
-        if (isCacheable(endMs)) {
-            List<Map<String, Object>> cached = messageQueryCache.getIfPresent(cacheKey);
-            if (cached != null) return copyMessages(cached);
-        }
-        List<Map<String, Object>> results = queryRoomMessagesUncached(roomId, startMs, endMs);
-        if (isCacheable(endMs)) {
-            messageQueryCache.put(cacheKey, immutableMessages(results));
+        if (recentRing != null) {
+            long ringFromMs = Math.max(startMs, recentRing.coveredFrom(roomId));
+            List<MessageRow> recent = ringFromMs <= endMs ? recentRing.recent(roomId, ringFromMs, endMs) : null;
+            if (recent != null) {
+                List<MessageRow> out = ringFromMs > startMs
+                    ? querySegmented("room", tableRoomMessages, roomId, startMs, ringFromMs - 1)
+                    : new ArrayList<>();
+                out.addAll(recent.subList(0, Math.min(recent.size(), MAX_RESULTS - out.size())));
+                return out;
+            }
         }
-        return results;
+        return querySegmented("room", tableRoomMessages, roomId, startMs, endMs);
     }
 
     /** All messages for userId in [startMs, endMs], sorted by eventTsMs asc. */
-    public List<Map<String, Object>> getUserMessages(String userId, long startMs, long endMs) {
+    public List<MessageRow> getUserMessages(String userId, long startMs, long endMs) {
         if (!enabled) return List.of();
-        String cacheKey = cacheKey("user", userId, startMs, endMs);
-        if (isCacheable(endMs)) {
-            List<Map<String, Object>> cached = messageQueryCache.getIfPresent(cacheKey);
-            if (cached != null) return copyMessages(cached);
-        }
-        List<Map<String, Object>> results = queryUserMessagesUncached(userId, startMs, endMs);
-        if (isCacheable(endMs)) {
-            messageQueryCache.put(cacheKey, immutableMessages(results));
-        }
-        return results;
+        return querySegmented("user", tableUserMessages, userId, startMs, endMs);
     }
 
     /** All rooms for userId, sorted by lastActivityTs descending. */
@@ -152,86 +237,430 @@ public class QueryService {
         }
     }
 
-    // ── Uncached query helpers ────────────────────────────────────────────────
+    /** One page of a paginated history query. */
+    public static final class MessagePage {
+        public final List<MessageRow> messages;
+        /** Opaque cursor for the next page; {@code null} on the last page. */
+        public final String nextCursor;
 
-    private List<Map<String, Object>> queryRoomMessagesUncached(String roomId, long startMs, long endMs) {
-        List<Map<String, Object>> results = new ArrayList<>();
-        int remaining = MAX_RESULTS;
-        for (String day : expandDayBuckets(startMs, endMs)) {
-            String pk = roomId + "#" + day;
-            results.addAll(queryByPk(tableRoomMessages, pk, startMs, endMs, remaining));
-            remaining = MAX_RESULTS - results.size();
-            if (remaining <= 0) break;
+        MessagePage(List<MessageRow> messages, String nextCursor) {
+            this.messages   = messages;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * Up to {@code limit} messages for roomId in [startMs, endMs] after
+     * {@code cursor} (null = from the start), sorted by eventTsMs asc.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public MessagePage getRoomMessagesPage(String roomId, long startMs, long endMs, String cursor, int limit) {
+        if (!enabled) return new MessagePage(List.of(), null);
+        return queryPage(tableRoomMessages, roomId, startMs, endMs, cursor, limit);
+    }
+
+    /** {@link #getRoomMessagesPage} for a user's history. */
+    public MessagePage getUserMessagesPage(String userId, long startMs, long endMs, String cursor, int limit) {
+        if (!enabled) return new MessagePage(List.of(), null);
+        return queryPage(tableUserMessages, userId, startMs, endMs, cursor, limit);
+    }
+
+    /**
+     * Feeds roomId's messages in [startMs, endMs] to {@code sink} in eventTsMs
+     * order as DynamoDB pages arrive, up to {@link #MAX_RESULTS}; stops early
+     * when the sink returns false.  Bypasses the cache.  Returns the count fed.
+     */
+    public int streamRoomMessages(String roomId, long startMs, long endMs, Predicate<MessageRow> sink) {
+        if (!enabled) return 0;
+        List<DayCursor> days = openDays(tableRoomMessages, roomId, startMs, endMs, MAX_RESULTS);
+        return mergeDays(days, MAX_RESULTS, sink);
+    }
+
+    /** {@link #streamRoomMessages} for a user's history. */
+    public int streamUserMessages(String userId, long startMs, long endMs, Predicate<MessageRow> sink) {
+        if (!enabled) return 0;
+        List<DayCursor> days = openDays(tableUserMessages, userId, startMs, endMs, MAX_RESULTS);
+        return mergeDays(days, MAX_RESULTS, sink);
+    }
+
+    // ── Segment-cached queries ────────────────────────────────────────────────
+
+    /**
+     * An immutable hour of one day bucket, sorted by sk.  The consumer derives
+     * dayBucket from eventTs, so all of an hour's messages are in one bucket.
+     * An {@code oversized} segment holds no rows; its hour is queried directly.
+     */
+    static final class Segment {
+        final List<MessageRow> messages;
+        final boolean oversized;
+        final int  bytes;
+        final long ttlNanos;
+
+        Segment(List<MessageRow> messages, long ttlMs) {
+            this(messages, false, ttlMs);
+        }
+
+        private Segment(List<MessageRow> messages, boolean oversized, long ttlMs) {
+            this.messages  = Collections.unmodifiableList(messages);
+            this.oversized = oversized;
+            this.bytes     = estimateBytes(messages);
+            this.ttlNanos  = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        }
+
+        /** Marker for an hour with more than {@link #SEGMENT_MAX_ROWS} messages. */
+        static Segment oversized(long ttlMs) {
+            return new Segment(List.of(), true, ttlMs);
+        }
+
+        /** View of the rows with eventTs in [startMs, endMs]. */
+        List<MessageRow> slice(long startMs, long endMs) {
+            int from = lowerBound(startMs);
+            int to   = lowerBound(endMs + 1);
+            return messages.subList(from, Math.max(from, to));
+        }
+
+        private int lowerBound(long ts) {
+            int lo = 0;
+            int hi = messages.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (messages.get(mid).eventTs < ts) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private List<MessageRow> querySegmented(String type, String table, String id,
+                                                     long startMs, long endMs) {
+        long openHour = Math.floorDiv(startMs, SEGMENT_MS) * SEGMENT_MS;
+        while (openHour <= endMs && isCacheable(openHour + SEGMENT_MS - 1)) openHour += SEGMENT_MS;
+        long liveFromMs = Math.max(startMs, Math.min(endMs + 1, openHour));
+        List<MessageRow> out = new ArrayList<>();
+        if (liveFromMs > startMs) {
+            readClosedHours(type, table, id, startMs, liveFromMs - 1, out);
+            if (out.size() >= MAX_RESULTS) return out;
+        }
+        if (liveFromMs <= endMs) {
+            int remaining = MAX_RESULTS - out.size();
+            out.addAll(mergeDays(openDays(table, id, liveFromMs, endMs, remaining), remaining));
+        }
+        return out;
+    }
+
+    /**
+     * A run of closed hours of one day bucket, in time order: one cached
+     * segment, or consecutive missing hours read by one cursor.
+     */
+    private static final class HourRun {
+        final String  day;
+        final long    firstHour;
+        long          lastHour;
+        /** Cached segment of the single hour {@code firstHour}, or null if missing. */
+        final Segment cached;
+        DayCursor     cursor;
+
+        HourRun(String day, long hour, Segment cached) {
+            this.day       = day;
+            this.firstHour = hour;
+            this.lastHour  = hour;
+            this.cached    = cached;
+        }
+    }
+
+    /**
+     * Appends the rows of [fromMs, toMs], all in closed hours, to {@code out}
+     * until it holds {@link #MAX_RESULTS}.  Missing hours and oversized hours
+     * get cursors whose first pages are fetched in parallel, as in
+     * {@link #openDays}; their further pages are read only while the window
+     * still needs rows or a missing hour is being completed for the cache.
+     */
+    private void readClosedHours(String type, String table, String id, long fromMs, long toMs,
+                                 List<MessageRow> out) {
+        List<HourRun> runs = new ArrayList<>();
+        HourRun missing = null;
+        for (long hour = Math.floorDiv(fromMs, SEGMENT_MS) * SEGMENT_MS; hour <= toMs; hour += SEGMENT_MS) {
+            String day = expandDayBuckets(hour, hour).get(0);
+            Segment seg = messageQueryCache.getIfPresent(segmentKey(type, id, hour));
+            if (seg == null && missing != null && missing.day.equals(day)) {
+                missing.lastHour = hour;
+                continue;
+            }
+            HourRun run = new HourRun(day, hour, seg);
+            runs.add(run);
+            missing = seg == null ? run : null;
+        }
+
+        List<DayCursor> cursors = new ArrayList<>();
+        for (HourRun run : runs) {
+            if (run.cached == null) {
+                run.cursor = new DayCursor(table, id, run.day, run.firstHour, run.lastHour + SEGMENT_MS - 1);
+            } else if (run.cached.oversized) {
+                run.cursor = new DayCursor(table, id, run.day,
+                    Math.max(fromMs, run.firstHour), Math.min(toMs, run.firstHour + SEGMENT_MS - 1));
+            }
+            if (run.cursor != null) cursors.add(run.cursor);
+        }
+        int firstPage = firstPageLimit(cursors.size(), MAX_RESULTS);
+        CompletableFuture.allOf(cursors.stream()
+            .map(c -> CompletableFuture.runAsync(() -> c.fetch(firstPage), fanoutExecutor))
+            .toArray(CompletableFuture[]::new)).join();
+
+        for (HourRun run : runs) {
+            if (out.size() >= MAX_RESULTS) return;
+            if (run.cached == null) {
+                readMissingHours(type, table, id, run, fromMs, toMs, out);
+            } else if (run.cached.oversized) {
+                while (out.size() < MAX_RESULTS && run.cursor.hasNext(MAX_RESULTS - out.size())) {
+                    out.add(run.cursor.next());
+                }
+            } else {
+                // rows are immutable: hand out the cached objects, only the list is new
+                List<MessageRow> rows = run.cached.slice(fromMs, toMs);
+                out.addAll(rows.subList(0, Math.min(rows.size(), MAX_RESULTS - out.size())));
+            }
+        }
+    }
+
+    /**
+     * Reads a run of missing hours, appending rows in [fromMs, toMs] to
+     * {@code out} and caching every hour as soon as the cursor has moved past
+     * it.  An hour exceeding {@link #SEGMENT_MAX_ROWS} is cached as oversized
+     * and streamed without being kept; reading then stops once the window is
+     * passed, or restarts at {@code fromMs} if the window has not begun yet.
+     * Nothing is cached after a failed page.
+     */
+    private void readMissingHours(String type, String table, String id, HourRun run,
+                                  long fromMs, long toMs, List<MessageRow> out) {
+        DayCursor cursor = run.cursor;
+        long hour = run.firstHour;
+        List<MessageRow> rows = new ArrayList<>();   // current hour; null once oversized
+        while (cursor.hasNext(rows != null ? SEGMENT_MAX_ROWS + 1 - rows.size() : MAX_RESULTS - out.size())) {
+            MessageRow m = cursor.next();
+            for (long h = Math.floorDiv(m.eventTs, SEGMENT_MS) * SEGMENT_MS; hour < h; hour += SEGMENT_MS) {
+                if (rows != null) cacheSegment(type, id, hour, rows);
+                rows = new ArrayList<>();
+            }
+            if (rows != null) {
+                rows.add(m);
+                if (rows.size() > SEGMENT_MAX_ROWS) {
+                    messageQueryCache.put(segmentKey(type, id, hour), Segment.oversized(segmentTtlMs(hour)));
+                    rows = null;
+                    if (m.eventTs < fromMs) {
+                        // skip the rest of the hour before the window instead of reading it
+                        cursor = new DayCursor(table, id, run.day, fromMs, run.lastHour + SEGMENT_MS - 1);
+                        continue;
+                    }
+                }
+            }
+            if (m.eventTs >= fromMs && m.eventTs <= toMs) {
+                out.add(m);
+                if (out.size() >= MAX_RESULTS) return;
+            } else if (rows == null && m.eventTs > toMs) {
+                return;
+            }
         }
-        results.sort(Comparator.comparingLong(m -> (Long) m.get("eventTs")));
-        return results.size() > MAX_RESULTS ? results.subList(0, MAX_RESULTS) : results;
+        if (cursor.failed) return;
+        for (; hour <= run.lastHour; hour += SEGMENT_MS, rows = new ArrayList<>()) {
+            if (rows != null) cacheSegment(type, id, hour, rows);
+        }
+    }
+
+    private void cacheSegment(String type, String id, long hour, List<MessageRow> rows) {
+        messageQueryCache.put(segmentKey(type, id, hour), new Segment(rows, segmentTtlMs(hour)));
+    }
+
+    private static long segmentTtlMs(long hour) {
+        return hour + SEGMENT_MS <= System.currentTimeMillis() - SEGMENT_SETTLE_MS
+            ? SETTLED_SEGMENT_TTL_MS : CACHE_RECENCY_THRESHOLD_MS;
     }
 
-    private List<Map<String, Object>> queryUserMessagesUncached(String userId, long startMs, long endMs) {
-        List<Map<String, Object>> results = new ArrayList<>();
-        int remaining = MAX_RESULTS;
+    private MessagePage queryPage(String table, String id, long startMs, long endMs, String cursor, int limit) {
+        int max = Math.max(1, Math.min(limit, MAX_RESULTS));
+        PageCursor resume = cursor != null && !cursor.isBlank() ? decodeCursor(cursor) : null;
+        List<MessageRow> out = new ArrayList<>(Math.min(max, 1_024));
+        String lastDay = null;
         for (String day : expandDayBuckets(startMs, endMs)) {
-            String pk = userId + "#" + day;
-            results.addAll(queryByPk(tableUserMessages, pk, startMs, endMs, remaining));
-            remaining = MAX_RESULTS - results.size();
-            if (remaining <= 0) break;
+            if (resume != null && day.compareTo(resume.day) < 0) continue;
+            DayCursor partition = new DayCursor(table, id, day, startMs, endMs);
+            if (resume != null && day.equals(resume.day)) partition.resumeAfter(resume.sk);
+            while (out.size() < max && partition.hasNext(max - out.size())) out.add(partition.next());
+            lastDay = day;
+            if (out.size() == max) break;
         }
-        results.sort(Comparator.comparingLong(m -> (Long) m.get("eventTs")));
-        return results.size() > MAX_RESULTS ? results.subList(0, MAX_RESULTS) : results;
+        // A full page may be followed by an empty one; that costs one extra
+        // request instead of a look-ahead read on every page.
+        String next = out.size() == max ? encodeCursor(lastDay, out.get(max - 1).sortKey()) : null;
+        return new MessagePage(out, next);
     }
 
     // ── Internal DynamoDB query ───────────────────────────────────────────────
 
     /**
-     * Query one day-bucket's records from table using sk BETWEEN to limit the
-     * time range server-side.  A defensive Java-side eventTsMs check is kept
-     * but is no longer the primary range-pruning mechanism.
+     * One cursor per day partition of {@code id} in [startMs, endMs], first
+     * pages already fetched in parallel; see the class comment.
      */
-    private List<Map<String, Object>> queryByPk(String table, String pk,
-                                                 long startMs, long endMs, int limit) {
-        List<Map<String, Object>> out = new ArrayList<>();
-        try {
-            Map<String, AttributeValue> lastKey = null;
-            String startSk = startSortKey(startMs);
-            String endSk   = endSortKey(endMs);
-            do {
-                int rem = limit - out.size();
-                if (rem <= 0) break;
-                QueryRequest.Builder req = QueryRequest.builder()
-                    .tableName(table)
-                    .keyConditionExpression("pk = :pk AND sk BETWEEN :startSk AND :endSk")
-                    .expressionAttributeValues(Map.of(
-                        ":pk",      s(pk),
-                        ":startSk", s(startSk),
-                        ":endSk",   s(endSk)))
-                    .scanIndexForward(true)
-                    .limit(rem);
-                if (lastKey != null) req.exclusiveStartKey(lastKey);
-                QueryResponse resp = dynamo.query(req.build());
-                for (Map<String, AttributeValue> item : resp.items()) {
-                    long ts = num(item, "eventTsMs");
-                    if (ts >= startMs && ts <= endMs) { // defensive check
-                        out.add(toMessageMap(item));
+    private List<DayCursor> openDays(String table, String id, long startMs, long endMs, int max) {
+        List<String> days = expandDayBuckets(startMs, endMs);
+        int firstPage = firstPageLimit(days.size(), max);
+        List<DayCursor> cursors = new ArrayList<>(days.size());
+        List<CompletableFuture<Void>> firstPages = new ArrayList<>(days.size());
+        for (String day : days) {
+            DayCursor cursor = new DayCursor(table, id, day, startMs, endMs);
+            cursors.add(cursor);
+            firstPages.add(CompletableFuture.runAsync(() -> cursor.fetch(firstPage), fanoutExecutor));
+        }
+        CompletableFuture.allOf(firstPages.toArray(new CompletableFuture[0])).join();
+        return cursors;
+    }
+
+    static List<MessageRow> mergeDays(List<? extends DayPartition> days, int max) {
+        List<MessageRow> out = new ArrayList<>(Math.min(max, 1_024));
+        mergeDays(days, max, out::add);
+        return out;
+    }
+
+    /**
+     * K-way merge of day cursors in sk order (eventTs, then messageId),
+     * stopping at {@code max} items or when the sink declines.  A cursor whose
+     * buffered page runs out reads its next page on demand, limited to what
+     * the merge can still emit.  Returns the number of items emitted.
+     */
+    static int mergeDays(List<? extends DayPartition> days, int max, Predicate<MessageRow> sink) {
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> {
+            MessageRow x = days.get(a).peek();
+            MessageRow y = days.get(b).peek();
+            int c = Long.compare(x.eventTs, y.eventTs);
+            if (c == 0) c = x.messageId.compareTo(y.messageId);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        for (int i = 0; i < days.size(); i++) {
+            if (days.get(i).hasNext(max)) heads.add(i);
+        }
+        int emitted = 0;
+        while (emitted < max && !heads.isEmpty()) {
+            int head = heads.poll();
+            DayPartition day = days.get(head);
+            emitted++;
+            if (!sink.test(day.next())) break;
+            if (day.hasNext(max - emitted)) heads.add(head);
+        }
+        return emitted;
+    }
+
+    /** Items of one day partition in sk order.  Package-private for tests. */
+    interface DayPartition {
+        /** True if another item is available, reading up to {@code wanted} more if the buffer is empty. */
+        boolean hasNext(int wanted);
+        MessageRow peek();
+        MessageRow next();
+    }
+
+    /**
+     * One day-bucket's records, read page by page with sk BETWEEN to limit
+     * the time range server-side.  A defensive Java-side eventTsMs check is
+     * kept but is not the primary range-pruning mechanism.  A failed page is
+     * logged and ends the partition, keeping whatever was already read.
+     */
+    private final class DayCursor implements DayPartition {
+        private final String table;
+        private final String pk;
+        private final long   startMs;
+        private final long   endMs;
+        private final ArrayDeque<MessageRow> buffered = new ArrayDeque<>();
+        private Map<String, AttributeValue> lastKey;
+        private boolean exhausted;
+        /** A page read failed; what was buffered is only part of the partition. */
+        boolean failed;
+
+        DayCursor(String table, String id, String day, long startMs, long endMs) {
+            this.table   = table;
+            this.pk      = id + "#" + day;
+            this.startMs = startMs;
+            this.endMs   = endMs;
+        }
+
+        /**
+         * Start after {@code sk}, as if a previous page had ended there.  DynamoDB
+         * rejects an ExclusiveStartKey outside the BETWEEN range, so an sk below
+         * it is ignored and one above it leaves nothing to read.
+         */
+        void resumeAfter(String sk) {
+            if (sk.compareTo(endSortKey(endMs)) > 0) {
+                exhausted = true;
+            } else if (sk.compareTo(startSortKey(startMs)) >= 0) {
+                lastKey = Map.of("pk", s(pk), "sk", s(sk));
+            }
+        }
+
+        /** Read pages until at least one in-range item is buffered or the partition ends. */
+        void fetch(int limit) {
+            try {
+                while (buffered.isEmpty() && !exhausted) {
+                    QueryRequest.Builder req = QueryRequest.builder()
+                        .tableName(table)
+                        .keyConditionExpression("pk = :pk AND sk BETWEEN :startSk AND :endSk")
+                        .expressionAttributeValues(Map.of(
+                            ":pk",      s(pk),
+                            ":startSk", s(startSortKey(startMs)),
+                            ":endSk",   s(endSortKey(endMs))))
+                        .scanIndexForward(true)
+                        .limit(Math.max(1, limit));
+                    if (lastKey != null) req.exclusiveStartKey(lastKey);
+                    QueryResponse resp = dynamo.query(req.build());
+                    for (Map<String, AttributeValue> item : resp.items()) {
+                        long ts = num(item, "eventTsMs");
+                        if (ts >= startMs && ts <= endMs) { // defensive check
+                            buffered.add(toMessageRow(item));
+                        }
                     }
+                    lastKey   = resp.lastEvaluatedKey().isEmpty() ? null : resp.lastEvaluatedKey();
+                    exhausted = lastKey == null;
                 }
-                lastKey = resp.lastEvaluatedKey().isEmpty() ? null : resp.lastEvaluatedKey();
-            } while (lastKey != null && out.size() < limit);
-        } catch (Exception e) {
-            log.warn("queryByPk failed table={} pk={}: {}", table, pk, e.getMessage());
+            } catch (Exception e) {
+                log.warn("day query failed table={} pk={}: {}", table, pk, e.getMessage());
+                exhausted = true;
+                failed    = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext(int wanted) {
+            if (buffered.isEmpty() && !exhausted && wanted > 0) fetch(wanted);
+            return !buffered.isEmpty();
+        }
+
+        @Override
+        public MessageRow peek() {
+            return buffered.peekFirst();
+        }
+
+        @Override
+        public MessageRow next() {
+            return buffered.pollFirst();
         }
-        return out;
     }
 
-    private static Map<String, Object> toMessageMap(Map<String, AttributeValue> item) {
-        Map<String, Object> m = new LinkedHashMap<>();
-        m.put("messageId",   str(item, "messageId"));
-        m.put("roomId",      str(item, "roomId"));
-        m.put("userId",      str(item, "userId"));
-        m.put("username",    str(item, "username"));
-        m.put("message",     str(item, "message"));
-        m.put("messageType", str(item, "messageType"));
-        m.put("eventTs",     num(item, "eventTsMs"));
-        return m;
+    /**
+     * Page size for each day's parallel first read: an even share of
+     * {@code max}, but at least {@link #MIN_FIRST_PAGE} so sparse days
+     * usually finish in one round trip.
+     */
+    static int firstPageLimit(int days, int max) {
+        if (days <= 1) return max;
+        int share = (max + days - 1) / days;
+        return Math.min(max, Math.max(MIN_FIRST_PAGE, share));
+    }
+
+    private static MessageRow toMessageRow(Map<String, AttributeValue> item) {
+        return new MessageRow(
+            str(item, "messageId"),
+            str(item, "roomId"),
+            str(item, "userId"),
+            str(item, "username"),
+            str(item, "message"),
+            str(item, "messageType"),
+            num(item, "eventTsMs"));
     }
 
     // ── Day bucket expansion (package-private for tests) ──────────────────────
@@ -258,6 +687,51 @@ public class QueryService {
     /** Upper-bound sk for a given timestamp (inclusive of all messageId suffixes). */
     static String endSortKey(long tsMs) { return tsMs + "#\uFFFF"; }
 
+    // ── Page cursors (package-private for tests) ─────────────────────────────
+
+    /** Position after the last message of a page: its day bucket and sk. */
+    static final class PageCursor {
+        final String day;
+        final String sk;
+
+        PageCursor(String day, String sk) {
+            this.day = day;
+            this.sk  = sk;
+        }
+    }
+
+    /**
+     * Opaque page cursor: the day bucket and sk of the last message returned.
+     * The next page resumes that day partition after the sk.
+     */
+    static String encodeCursor(String day, String sk) {
+        String raw = day + "|" + sk;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor back into its day bucket and sk.
+     *
+     * @throws IllegalArgumentException if it was not produced by {@link #encodeCursor}
+     */
+    static PageCursor decodeCursor(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        int bar  = raw.indexOf('|');
+        String day = bar >= 0 ? raw.substring(0, bar) : "";
+        String sk  = raw.substring(bar + 1);
+        int hash = sk.indexOf('#');
+        if (day.length() != 8 || !day.chars().allMatch(Character::isDigit)
+                || hash <= 0 || !sk.substring(0, hash).chars().allMatch(Character::isDigit)) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        return new PageCursor(day, sk);
+    }
+
     // ── Cache helpers (package-private for tests) ────────────────────────────
 
     /** Build a cache key distinguishing query type, id, and time window. */
@@ -265,30 +739,24 @@ public class QueryService {
         return type + ":" + id + ":" + startMs + ":" + endMs;
     }
 
-    /**
-     * A query window is cacheable only if endMs is at least
-     * {@link #CACHE_RECENCY_THRESHOLD_MS} in the past.
-     */
-    static boolean isCacheable(long endMs) {
-        return endMs <= System.currentTimeMillis() - CACHE_RECENCY_THRESHOLD_MS;
+    /** Cache key of the segment starting at {@code hourMs}. */
+    static String segmentKey(String type, String id, long hourMs) {
+        return cacheKey(type, id, hourMs, hourMs + SEGMENT_MS - 1);
     }
 
-    /** Return an unmodifiable deep-copy suitable for storing in the cache. */
-    static List<Map<String, Object>> immutableMessages(List<Map<String, Object>> src) {
-        List<Map<String, Object>> copy = new ArrayList<>(src.size());
-        for (Map<String, Object> m : src) {
-            copy.add(Collections.unmodifiableMap(new LinkedHashMap<>(m)));
-        }
-        return Collections.unmodifiableList(copy);
+    /** Rough heap footprint of a segment, used as its cache weight. */
+    static int estimateBytes(List<MessageRow> messages) {
+        long bytes = 64 + 4L * messages.size();
+        for (MessageRow m : messages) bytes += m.estimatedBytes();
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
     }
 
-    /** Return a mutable deep-copy so callers cannot corrupt cached data. */
-    static List<Map<String, Object>> copyMessages(List<Map<String, Object>> src) {
-        List<Map<String, Object>> copy = new ArrayList<>(src.size());
-        for (Map<String, Object> m : src) {
-            copy.add(new LinkedHashMap<>(m));
-        }
-        return copy;
+    /**
+     * A query window or segment is cacheable (closed) only if endMs is at
+     * least {@link #CACHE_RECENCY_THRESHOLD_MS} in the past.
+     */
+    static boolean isCacheable(long endMs) {
+        return endMs <= System.currentTimeMillis() - CACHE_RECENCY_THRESHOLD_MS;
     }
 
     /** Expose cache stats for reporting / testing. */
@@ -0,0 +1,218 @@
+package com.chatflow.serverv2;
+
+import com.chatflow.protocol.QueueChatMessage;
+import com.chatflow.util.IsoTimestamps;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-room ring buffers of recently broadcast messages, fed from
+ * {@link RoomSessionRegistry#broadcast} so that "latest messages" queries can
+ * be answered without DynamoDB.
+ *
+ * <p>The broadcast worker sends every message to every server-v2 instance
+ * ({@code CHATFLOW_BROADCAST_TARGETS}), so each room is recorded whether or
+ * not it has local sessions.  A room's <em>coverage start</em> is server
+ * start (plus {@link #COVERAGE_SKEW_MS} for in-flight broadcasts), moved
+ * forward past every message that falls off a full ring, and reset when a
+ * room is evicted; {@link #recent} only answers windows that begin at or
+ * after it, and callers read anything earlier from DynamoDB.
+ *
+ * <p>The ring is not authoritative.  Broadcast is best-effort: the worker
+ * drops a message whose retries are exhausted and a failed target is only
+ * logged, so a message can be persisted and projected yet never reach this
+ * ring, and a query answered from it will not show that message.  The ring
+ * is therefore off unless {@code CHATFLOW_V3_RECENT_RING_PER_ROOM} is set,
+ * for deployments that prefer cheap latest-message reads over completeness.
+ *
+ * <p>Memory is capped by an estimated byte budget.  When it is exceeded, the
+ * rooms least recently written or read are cleared first; a cleared room keeps
+ * only its (new) coverage start.
+ */
+public class RecentMessageRing {
+
+    /** Broadcasts can trail eventTs by queueing and clock skew between servers. */
+    static final long COVERAGE_SKEW_MS = 2_000L;
+    private static final int ROOM_OVERHEAD_BYTES = 128;
+
+    private static final Comparator<MessageRow> SK_ORDER =
+        Comparator.comparingLong((MessageRow m) -> m.eventTs).thenComparing(m -> m.messageId);
+
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final int  perRoom;
+    private final long maxBytes;
+    private final long startCoverageMs;
+    private final LongSupplier clock;
+
+    public RecentMessageRing(int perRoom, long maxBytes) {
+        this(perRoom, maxBytes, System::currentTimeMillis);
+    }
+
+    /** Package-private constructor for testing with a fixed clock. */
+    RecentMessageRing(int perRoom, long maxBytes, LongSupplier clock) {
+        this.perRoom         = Math.max(1, perRoom);
+        this.maxBytes        = Math.max(1L, maxBytes);
+        this.clock           = clock;
+        this.startCoverageMs = clock.getAsLong() + COVERAGE_SKEW_MS;
+    }
+
+    /** The configured ring, or {@code null} when disabled. */
+    public static RecentMessageRing fromConfig(ServerV2PersistenceConfig config) {
+        if (config.recentRingPerRoom <= 0) return null;
+        return new RecentMessageRing(config.recentRingPerRoom, config.recentRingMb * 1024L * 1024L);
+    }
+
+    /** Record a message being broadcast to its room. */
+    public void record(QueueChatMessage message) {
+        String roomId = message.getRoomId();
+        if (roomId == null || roomId.isBlank()) return;
+        MessageRow row = new MessageRow(
+            nullToEmpty(message.getMessageId()),
+            roomId,
+            nullToEmpty(message.getUserId()),
+            nullToEmpty(message.getUsername()),
+            nullToEmpty(message.getMessage()),
+            message.getMessageType() != null ? message.getMessageType().name() : "",
+            eventTs(message.getTimestamp()));
+        Room room = rooms.computeIfAbsent(roomId, id -> {
+            totalBytes.addAndGet(ROOM_OVERHEAD_BYTES);
+            return new Room(startCoverageMs);
+        });
+        if (totalBytes.addAndGet(room.add(row, perRoom, clock.getAsLong())) > maxBytes) {
+            evictColdRooms();
+        }
+    }
+
+    /**
+     * Earliest eventTs from which {@code roomId}'s ring is complete.  A room
+     * with no messages since server start is covered from server start.
+     */
+    public long coveredFrom(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.coveredFrom() : startCoverageMs;
+    }
+
+    /**
+     * Messages of {@code roomId} with eventTs in [fromMs, endMs], sorted by
+     * eventTs then messageId, or {@code null} if fromMs is before the room's
+     * coverage start (which may have moved since {@link #coveredFrom}).
+     */
+    public List<MessageRow> recent(String roomId, long fromMs, long endMs) {
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            return fromMs >= startCoverageMs ? new ArrayList<>() : null;
+        }
+        return room.range(fromMs, endMs, clock.getAsLong());
+    }
+
+    /** Estimated bytes held.  Package-private for tests. */
+    long totalBytes() {
+        return totalBytes.get();
+    }
+
+    private synchronized void evictColdRooms() {
+        if (totalBytes.get() <= maxBytes) return;
+        List<Map.Entry<String, Room>> byAge = new ArrayList<>(rooms.entrySet());
+        byAge.sort(Comparator.comparingLong(e -> e.getValue().lastUsedMs));
+        long target = maxBytes - maxBytes / 10;
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Room> e : byAge) {
+            if (totalBytes.get() <= target) break;
+            totalBytes.addAndGet(-e.getValue().clear(now + COVERAGE_SKEW_MS));
+        }
+    }
+
+    private static long eventTs(String timestamp) {
+        if (timestamp != null && !timestamp.isBlank()) {
+            String v = timestamp.trim();
+            if (v.chars().allMatch(Character::isDigit)) {
+                try { return Long.parseLong(v); } catch (NumberFormatException ignored) { /* fall through */ }
+            }
+            long parsed = IsoTimestamps.parseEpochMillis(v);
+            if (parsed != IsoTimestamps.INVALID) return parsed;
+        }
+        // same fallback as the persistence consumer
+        return System.currentTimeMillis();
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+
+    /** One room's ring, in arrival order. */
+    private static final class Room {
+        private MessageRow[] ring;
+        private int  head;
+        private int  size;
+        private long coveredFromMs;
+        private long bytes;
+        volatile long lastUsedMs;
+
+        Room(long coveredFromMs) {
+            this.coveredFromMs = coveredFromMs;
+        }
+
+        /** Append, overwriting the oldest entry when full; returns the change in bytes. */
+        synchronized long add(MessageRow row, int capacity, long now) {
+            long delta = row.estimatedBytes();
+            if (ring == null) {
+                ring = new MessageRow[capacity];
+                delta += 16 + 4L * capacity;
+            }
+            if (size == ring.length) {
+                MessageRow dropped = ring[head];
+                ring[head] = row;
+                head = (head + 1) % ring.length;
+                delta -= dropped.estimatedBytes();
+                coveredFromMs = Math.max(coveredFromMs, dropped.eventTs + 1);
+            } else {
+                ring[(head + size) % ring.length] = row;
+                size++;
+            }
+            bytes += delta;
+            lastUsedMs = now;
+            return delta;
+        }
+
+        synchronized long coveredFrom() {
+            return coveredFromMs;
+        }
+
+        synchronized List<MessageRow> range(long fromMs, long endMs, long now) {
+            if (fromMs < coveredFromMs) return null;
+            lastUsedMs = now;
+            List<MessageRow> out = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                MessageRow m = ring[(head + i) % ring.length];
+                if (m.eventTs >= fromMs && m.eventTs <= endMs) out.add(m);
+            }
+            out.sort(SK_ORDER);
+            return out;
+        }
+
+        /**
+         * Drop all messages and restart coverage after both {@code coverageRestartMs}
+         * and the newest dropped message; returns the bytes released.
+         */
+        synchronized long clear(long coverageRestartMs) {
+            long restart = coverageRestartMs;
+            for (int i = 0; i < size; i++) {
+                restart = Math.max(restart, ring[(head + i) % ring.length].eventTs + 1);
+            }
+            long released = bytes;
+            ring  = null;
+            head  = 0;
+            size  = 0;
+            bytes = 0;
+            coveredFromMs = Math.max(coveredFromMs, restart);
+            return released;
+        }
+    }
+}
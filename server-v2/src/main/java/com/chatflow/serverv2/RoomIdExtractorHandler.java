@@ -27,7 +27,8 @@ public class RoomIdExtractorHandler extends SimpleChannelInboundHandler<FullHttp
         MDC.put("channelId", channelId);
         try {
             if (isHealthCheck(uri)) {
-                sendResponse(ctx, HttpResponseStatus.OK, "OK");
+                // load balancer health checks reuse their connection
+                sendResponse(ctx, HttpResponseStatus.OK, "OK", true);
                 return;
             }
             String roomId = extractRoomId(uri);
@@ -38,7 +39,7 @@ public class RoomIdExtractorHandler extends SimpleChannelInboundHandler<FullHttp
 
             if (isChatPath(uri) && (roomId == null || roomId.isBlank())) {
                 logger.warn("Missing roomId for request uri={}", uri);
-                sendResponse(ctx, HttpResponseStatus.BAD_REQUEST, "Missing roomId");
+                sendResponse(ctx, HttpResponseStatus.BAD_REQUEST, "Missing roomId", false);
                 return;
             }
 
@@ -89,13 +90,17 @@ public class RoomIdExtractorHandler extends SimpleChannelInboundHandler<FullHttp
         return null;
     }
 
-    private void sendResponse(ChannelHandlerContext ctx, HttpResponseStatus status, String body) {
+    private void sendResponse(ChannelHandlerContext ctx, HttpResponseStatus status, String body, boolean keepAlive) {
         FullHttpResponse response = new DefaultFullHttpResponse(
                 HttpVersion.HTTP_1_1,
                 status,
                 Unpooled.copiedBuffer(body, CharsetUtil.UTF_8));
         response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
         response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        if (keepAlive) {
+            ctx.writeAndFlush(response);
+            return;
+        }
         response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
         ctx.writeAndFlush(response).addListener(future -> ctx.close());
     }
@@ -21,6 +21,16 @@ public class RoomSessionRegistry {
 
     private final ConcurrentHashMap<String, ChannelGroup> roomSessions = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, String> channelRoomMap = new ConcurrentHashMap<>();
+    private final RecentMessageRing recentRing;
+
+    public RoomSessionRegistry() {
+        this(null);
+    }
+
+    /** @param recentRing records every broadcast for recent-message queries; may be null */
+    public RoomSessionRegistry(RecentMessageRing recentRing) {
+        this.recentRing = recentRing;
+    }
 
     public void joinRoom(String roomId, Channel channel) {
         if (roomId == null || roomId.isBlank() || channel == null) {
@@ -53,6 +63,10 @@ public class RoomSessionRegistry {
         if (queueMessage == null || queueMessage.getRoomId() == null || queueMessage.getRoomId().isBlank()) {
             return 0;
         }
+        if (recentRing != null) {
+            // every server receives every broadcast, so record even without local sessions
+            recentRing.record(queueMessage);
+        }
         ChannelGroup group = roomSessions.get(queueMessage.getRoomId());
         if (group == null || group.isEmpty()) {
             return 0;
@@ -20,6 +20,58 @@ public class ServerV2PersistenceConfig {
     /** Projection lag threshold (ms) for isConsistent health field. Default 5 000. */
     public final long projectionHealthThresholdMs;
 
+    /**
+     * Active-user key family written by the analytics Lambda: {@code set},
+     * {@code hll} or {@code both}.  Reads use the HLL keys for hll/both.
+     */
+    public final String activeUsersMode;
+
+    /**
+     * Analytics key layout written by the analytics Lambda: {@code flat}
+     * (single-shard Redis) or {@code cluster} (hash-tagged by time bucket).
+     * Must match the Lambda's {@code REDIS_KEY_LAYOUT}.
+     */
+    public final String redisKeyLayout;
+
+    /** Sub-tags per time bucket in the cluster layout; matches {@code REDIS_CLUSTER_SHARDS}. */
+    public final int    redisClusterShards;
+
+    /** Threads for concurrent per-day DynamoDB queries, shared by all requests. Default 8. */
+    public final int    queryFanout;
+
+    /** Byte budget (MiB) for cached hourly message segments.  Default 64. */
+    public final int    queryCacheMb;
+
+    /**
+     * Recent broadcasts kept per room for latest-message queries; 0 disables.
+     * Default 0: the ring only holds what was broadcast, and broadcast is
+     * best-effort (see {@link RecentMessageRing}).
+     */
+    public final int    recentRingPerRoom;
+
+    /** Byte budget (MiB) for all recent-broadcast rings.  Default 32. */
+    public final int    recentRingMb;
+
+    /**
+     * Refresh interval (ms) of cached analytics snapshots for windows ending
+     * at "now"; older snapshots are served while one refresh runs.  0 disables
+     * the snapshot cache.  Default 5 000.
+     */
+    public final long   analyticsCacheRefreshMs;
+
+    /**
+     * Epoch ms from which the hour/day analytics roll-ups are complete (the
+     * first deploy of the roll-up writer, or later); older minutes are read
+     * from minute keys.  0 trusts the roll-ups for all time.  Default 0.
+     */
+    public final long   analyticsRollupStartMs;
+
+    /** Concurrent requests per message-history route before 503.  Default 64. */
+    public final int    apiHistoryConcurrency;
+
+    /** Concurrent requests per other API route before 503.  Default 32. */
+    public final int    apiRouteConcurrency;
+
     private ServerV2PersistenceConfig(
             String dynamoRegion,
             String tableRoomMessages,
@@ -27,7 +79,18 @@ public class ServerV2PersistenceConfig {
             String tableUserRooms,
             String redisHost,
             int    redisPort,
-            long   projectionHealthThresholdMs) {
+            long   projectionHealthThresholdMs,
+            String activeUsersMode,
+            String redisKeyLayout,
+            int    redisClusterShards,
+            int    queryFanout,
+            int    queryCacheMb,
+            int    recentRingPerRoom,
+            int    recentRingMb,
+            long   analyticsCacheRefreshMs,
+            long   analyticsRollupStartMs,
+            int    apiHistoryConcurrency,
+            int    apiRouteConcurrency) {
         this.dynamoRegion                = dynamoRegion;
         this.tableRoomMessages           = tableRoomMessages;
         this.tableUserMessages           = tableUserMessages;
@@ -35,6 +98,17 @@ public class ServerV2PersistenceConfig {
         this.redisHost                   = redisHost;
         this.redisPort                   = redisPort;
         this.projectionHealthThresholdMs = projectionHealthThresholdMs;
+        this.activeUsersMode             = activeUsersMode;
+        this.redisKeyLayout              = redisKeyLayout;
+        this.redisClusterShards          = redisClusterShards;
+        this.queryFanout                 = queryFanout;
+        this.queryCacheMb                = queryCacheMb;
+        this.recentRingPerRoom           = recentRingPerRoom;
+        this.recentRingMb                = recentRingMb;
+        this.analyticsCacheRefreshMs     = analyticsCacheRefreshMs;
+        this.analyticsRollupStartMs      = analyticsRollupStartMs;
+        this.apiHistoryConcurrency       = apiHistoryConcurrency;
+        this.apiRouteConcurrency         = apiRouteConcurrency;
     }
 
     public boolean isDynamoEnabled() {
@@ -45,6 +119,17 @@ public class ServerV2PersistenceConfig {
         return redisHost != null && !redisHost.isBlank();
     }
 
+    /** True when active-user counts should come from HyperLogLog keys. */
+    public boolean isActiveUsersHll() {
+        String m = activeUsersMode.trim();
+        return m.equalsIgnoreCase("hll") || m.equalsIgnoreCase("both");
+    }
+
+    /** True when analytics keys use the hash-tagged Redis Cluster layout. */
+    public boolean isRedisCluster() {
+        return redisKeyLayout.trim().equalsIgnoreCase("cluster");
+    }
+
     public static ServerV2PersistenceConfig fromEnv() {
         String redisEndpoint = env("CHATFLOW_V3_REDIS_ENDPOINT", "");
         String redisHost = "";
@@ -66,7 +151,18 @@ public class ServerV2PersistenceConfig {
             env("CHATFLOW_V3_DYNAMO_TABLE_USER_ROOMS",     ""),
             redisHost,
             redisPort,
-            longEnv("CHATFLOW_V3_PROJECTION_HEALTH_THRESHOLD_MS", 5_000L)
+            longEnv("CHATFLOW_V3_PROJECTION_HEALTH_THRESHOLD_MS", 5_000L),
+            env("CHATFLOW_V3_ACTIVE_USERS_MODE",           "set"),
+            env("CHATFLOW_V3_REDIS_KEY_LAYOUT",            "flat"),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_REDIS_CLUSTER_SHARDS", 1L)),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_QUERY_FANOUT", 8L)),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_QUERY_CACHE_MB", 64L)),
+            (int) Math.max(0L, longEnv("CHATFLOW_V3_RECENT_RING_PER_ROOM", 0L)),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_RECENT_RING_MB", 32L)),
+            Math.max(0L, longEnv("CHATFLOW_V3_ANALYTICS_CACHE_REFRESH_MS", 5_000L)),
+            Math.max(0L, longEnv("CHATFLOW_V3_ANALYTICS_ROLLUP_START_MS", 0L)),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_API_HISTORY_CONCURRENCY", 64L)),
+            (int) Math.max(1L, longEnv("CHATFLOW_V3_API_ROUTE_CONCURRENCY", 32L))
         );
     }
 
@@ -86,6 +182,15 @@ public class ServerV2PersistenceConfig {
         return "ServerV2PersistenceConfig{dynamo=" + isDynamoEnabled()
             + ", redis=" + isRedisEnabled()
             + (isRedisEnabled() ? "(" + redisHost + ":" + redisPort + ")" : "")
-            + ", healthThreshold=" + projectionHealthThresholdMs + "ms}";
+            + ", queryFanout=" + queryFanout
+            + ", queryCache=" + queryCacheMb + "MiB"
+            + ", recentRing=" + (recentRingPerRoom > 0 ? recentRingPerRoom + "/room," + recentRingMb + "MiB" : "off")
+            + ", analyticsCache=" + (analyticsCacheRefreshMs > 0 ? "refresh " + analyticsCacheRefreshMs + "ms" : "off")
+            + (analyticsRollupStartMs > 0 ? ", rollupStart=" + analyticsRollupStartMs : "")
+            + ", apiConcurrency=" + apiHistoryConcurrency + "/history," + apiRouteConcurrency + "/route"
+            + ", healthThreshold=" + projectionHealthThresholdMs + "ms"
+            + ", activeUsers=" + activeUsersMode
+            + ", keyLayout=" + redisKeyLayout
+            + (isRedisCluster() ? "(shards=" + redisClusterShards + ")" : "") + "}";
     }
 }
@@ -13,6 +13,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.util.AttributeKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -178,6 +179,16 @@ public class WebSocketChatHandlerV2 extends SimpleChannelInboundHandler<WebSocke
         return new ChatMessage(userId, username, message, timestamp, messageType);
     }
 
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete
+                && ctx.pipeline().get(HttpIdleTimeoutHandler.class) != null) {
+            // chat sockets may sit idle between messages; only HTTP connections time out
+            ctx.pipeline().remove(HttpIdleTimeoutHandler.class);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
         ctx.flush();
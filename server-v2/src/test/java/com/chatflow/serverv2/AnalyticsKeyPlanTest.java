@@ -0,0 +1,201 @@
+package com.chatflow.serverv2;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScoredValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the Redis roll-up key planning in {@link AnalyticsService#rollupKeys}
+ * and the client-side folding of MGET, union-script and ZRANGE replies.
+ */
+class AnalyticsKeyPlanTest {
+
+    private static final long MIN  = 60_000L;
+    private static final long HOUR = 60 * MIN;
+    private static final long DAY  = 24 * HOUR;
+
+    private static List<String> plan(String family, long startMs, long endMs) {
+        return Arrays.asList(AnalyticsService.rollupKeys(family, startMs, endMs));
+    }
+
+    @Test
+    void withinOneHour_minuteKeysOnly() {
+        assertEquals(List.of(
+            "active_users_hll:minute:605",
+            "active_users_hll:minute:606",
+            "active_users_hll:minute:607"),
+            plan("active_users_hll", 10 * HOUR + 5 * MIN, 10 * HOUR + 7 * MIN));
+    }
+
+    @Test
+    void alignedDay_singleDayKey() {
+        assertEquals(List.of("top_rooms:day:1"), plan("top_rooms", DAY, 2 * DAY - 1));
+    }
+
+    @Test
+    void alignedSevenDays_sevenKeys() {
+        List<String> keys = plan("top_rooms", 10 * DAY, 17 * DAY - 1);
+        assertEquals(7, keys.size());
+        assertEquals("top_rooms:day:10", keys.get(0));
+        assertEquals("top_rooms:day:16", keys.get(6));
+    }
+
+    @Test
+    void unalignedWindow_minuteEdgesAroundFullHours() {
+        // 10:58 .. 13:01 -> minutes 658,659 | hours 11,12 | minutes 780,781
+        assertEquals(List.of(
+            "messages:minute:658",
+            "messages:minute:659",
+            "messages:hour:11",
+            "messages:hour:12",
+            "messages:minute:780",
+            "messages:minute:781"),
+            plan("messages", 10 * HOUR + 58 * MIN, 13 * HOUR + MIN));
+    }
+
+    @Test
+    void multiDayWindow_daysThenHoursThenMinutes() {
+        // day 0 22:30 .. day 3 01:15
+        List<String> keys = plan("top_users", 22 * HOUR + 30 * MIN, 3 * DAY + HOUR + 15 * MIN);
+        assertEquals("top_users:minute:1350", keys.get(0));
+        assertTrue(keys.contains("top_users:hour:23"));
+        assertTrue(keys.contains("top_users:day:1"));
+        assertTrue(keys.contains("top_users:day:2"));
+        assertTrue(keys.contains("top_users:hour:72"));
+        assertEquals("top_users:minute:4395", keys.get(keys.size() - 1));
+        assertEquals(30 + 1 + 2 + 1 + 16, keys.size());
+    }
+
+    @Test
+    void everyMinuteCoveredExactlyOnce() {
+        long start = 3 * HOUR + 17 * MIN;
+        long end   = 9 * DAY + 29 * HOUR + 44 * MIN;
+        long covered = 0;
+        for (String k : AnalyticsService.rollupKeys("messages", start, end)) {
+            if (k.contains(":day:"))       covered += 1_440;
+            else if (k.contains(":hour:")) covered += 60;
+            else                           covered += 1;
+        }
+        assertEquals(AnalyticsService.minuteKeys("x:", start, end).length, covered);
+    }
+
+    @Test
+    void invertedRange_empty() {
+        assertEquals(0, AnalyticsService.rollupKeys("messages", 2 * HOUR, HOUR).length);
+    }
+
+    @Test
+    void windowSpanningRollupStart_minuteKeysBeforeIt() {
+        // day 0 22:00 .. day 3 00:59, roll-ups complete from day 1 10:30:20
+        long start       = 22 * HOUR;
+        long end         = 3 * DAY + HOUR - 1;
+        long rollupStart = DAY + 10 * HOUR + 30 * MIN + 20_000L;
+        List<String> keys = Arrays.asList(
+            AnalyticsService.rollupKeys("top_users", start, end, false, 1, rollupStart));
+
+        assertEquals("top_users:minute:1320", keys.get(0));
+        assertTrue(keys.contains("top_users:minute:2070"), "minute holding rollupStart read from minute keys");
+        assertFalse(keys.contains("top_users:day:1"), "day 1 roll-up is incomplete");
+        assertFalse(keys.contains("top_users:hour:34"), "hour 34 roll-up is incomplete");
+        assertTrue(keys.contains("top_users:minute:2071"));
+        assertTrue(keys.contains("top_users:hour:35"));
+        assertTrue(keys.contains("top_users:day:2"));
+        assertEquals("top_users:hour:72", keys.get(keys.size() - 1));
+        // minutes 1320..2070 | minutes 2071..2099 | hours 35..47 | day 2 | hour 72
+        assertEquals(751 + 29 + 13 + 1 + 1, keys.size());
+    }
+
+    @Test
+    void rollupStartOutsideWindow_plainPlanOrMinutesOnly() {
+        long start = 10 * HOUR + 58 * MIN;
+        long end   = 13 * HOUR + MIN;
+        assertArrayEquals(AnalyticsService.rollupKeys("messages", start, end),
+            AnalyticsService.rollupKeys("messages", start, end, false, 1, start - DAY));
+        assertArrayEquals(AnalyticsService.minuteKeys("messages:minute:", start, end),
+            AnalyticsService.rollupKeys("messages", start, end, false, 1, end + MIN));
+    }
+
+    @Test
+    void clusterLayout_bucketsHashTaggedByLevel() {
+        // 10:58 .. 13:01 -> same plan as the flat layout, tag per bucket
+        assertEquals(List.of(
+            "{m:658}:messages",
+            "{m:659}:messages",
+            "{h:11}:messages",
+            "{h:12}:messages",
+            "{m:780}:messages",
+            "{m:781}:messages"),
+            Arrays.asList(AnalyticsService.rollupKeys("messages", 10 * HOUR + 58 * MIN, 13 * HOUR + MIN, true, 1)));
+        assertEquals(List.of("{d:1}:top_rooms"),
+            Arrays.asList(AnalyticsService.rollupKeys("top_rooms", DAY, 2 * DAY - 1, true, 1)));
+    }
+
+    @Test
+    void clusterLayout_shardsExpandEachBucket() {
+        assertEquals(List.of("{d:1.0}:top_rooms", "{d:1.1}:top_rooms", "{d:1.2}:top_rooms"),
+            Arrays.asList(AnalyticsService.rollupKeys("top_rooms", DAY, 2 * DAY - 1, true, 3)));
+        assertEquals(List.of("{m:5.0}:active_users", "{m:5.1}:active_users",
+                             "{m:6.0}:active_users", "{m:6.1}:active_users"),
+            Arrays.asList(AnalyticsService.bucketKeys("active_users", 2, 5, 6, true, 2)));
+    }
+
+    @Test
+    void secondKeys_underTheirMinuteTag() {
+        assertArrayEquals(new String[] {"messages:second:125"}, AnalyticsService.secondKeys(125, false, 1));
+        assertArrayEquals(new String[] {"{m:2}:messages:second:125"}, AnalyticsService.secondKeys(125, true, 1));
+        assertArrayEquals(new String[] {"{m:2.0}:messages:second:125", "{m:2.1}:messages:second:125"},
+            AnalyticsService.secondKeys(125, true, 2));
+    }
+
+    @Test
+    void flatBucketKeys_matchLegacyMinuteKeys() {
+        assertArrayEquals(AnalyticsService.minuteKeys("active_users:minute:", 5 * MIN, 9 * MIN),
+            AnalyticsService.bucketKeys("active_users", 2, 5, 9, false, 1));
+    }
+
+    @Test
+    void tempTag_isSingleHashTag() {
+        String tag = AnalyticsService.tempTag("zunion");
+        assertTrue(tag.startsWith("{tmp:zunion:") && tag.endsWith("}"));
+        assertEquals(1, tag.chars().filter(c -> c == '{').count());
+    }
+
+    @Test
+    void bucketCounts_sumShardRunsAndSkipMissing() {
+        List<KeyValue<String, String>> values = List.of(
+            KeyValue.just("{m:5.0}:messages", "3"), KeyValue.empty("{m:5.1}:messages"),
+            KeyValue.just("{m:6.0}:messages", "1"), KeyValue.just("{m:6.1}:messages", "4"));
+        assertArrayEquals(new long[] {3, 5}, AnalyticsService.bucketCounts(values, 2));
+        assertArrayEquals(new long[] {3, 0, 1, 4}, AnalyticsService.bucketCounts(values, 1));
+    }
+
+    @Test
+    void mergeTop_sumsScoresInZrevrangeOrder() {
+        List<ScoredValue<String>> top = AnalyticsService.mergeTop(List.of(
+            List.of(ScoredValue.just(3, "r1"), ScoredValue.just(1, "r2")),
+            List.of(ScoredValue.just(2, "r2"), ScoredValue.just(3, "r3"), ScoredValue.just(1, "r4"))), 3);
+        assertEquals(List.of("r3", "r2", "r1"), top.stream().map(ScoredValue::getValue).toList(),
+            "ties broken by member descending, as ZREVRANGE does");
+        assertEquals(3.0, top.get(1).getScore());
+    }
+
+    @Test
+    void scoredPairs_parsesScriptReply() {
+        List<ScoredValue<String>> top = AnalyticsService.scoredPairs(List.of("u7", "12", "u2", "4"));
+        assertEquals(2, top.size());
+        assertEquals("u7", top.get(0).getValue());
+        assertEquals(12.0, top.get(0).getScore());
+        assertEquals(4.0, top.get(1).getScore());
+    }
+
+    @Test
+    void scriptSha_isHexSha1() {
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", AnalyticsService.sha1Hex(""));
+        assertEquals(40, AnalyticsService.ZSET_UNION_TOP_SHA.length());
+    }
+}
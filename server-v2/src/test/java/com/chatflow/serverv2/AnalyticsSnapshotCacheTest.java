@@ -0,0 +1,123 @@
+package com.chatflow.serverv2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link AnalyticsSnapshotCache}: minute alignment, single-flight
+ * loads, stale-while-revalidate for live windows and no refresh once settled.
+ */
+class AnalyticsSnapshotCacheTest {
+
+    private static final long NOW     = 1_774_400_000_000L;   // 12:53:20 UTC, mid-minute
+    private static final long REFRESH = 5_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    /** Futures handed out by the stand-in loader, in call order. */
+    private final List<CompletableFuture<Map<String, Object>>> loads = new ArrayList<>();
+
+    private AnalyticsSnapshotCache cache(long refreshMs) {
+        return new AnalyticsSnapshotCache((start, end, topN) -> {
+            CompletableFuture<Map<String, Object>> f = new CompletableFuture<>();
+            loads.add(f);
+            return f;
+        }, refreshMs, clock::get, Runnable::run);
+    }
+
+    private static Map<String, Object> summary(long messageCount) {
+        return Map.of("messageCount", messageCount);
+    }
+
+    @Test
+    void sameMinute_sharesOneAlignedLoad() {
+        AnalyticsSnapshotCache cache = cache(REFRESH);
+        CompletableFuture<AnalyticsSnapshotCache.Snapshot> a = cache.get(NOW - 900_000, NOW, 10);
+        CompletableFuture<AnalyticsSnapshotCache.Snapshot> b = cache.get(NOW - 899_000, NOW + 1_000, 10);
+        assertEquals(1, loads.size(), "both requests map to one minute-aligned window");
+
+        loads.get(0).complete(summary(7));
+        AnalyticsSnapshotCache.Snapshot snap = a.join();
+        assertSame(snap, b.join());
+        assertEquals(AnalyticsSnapshotCache.alignStart(NOW - 900_000), snap.startMs);
+        assertEquals(0, snap.startMs % 60_000);
+        assertEquals(59_999, snap.endMs % 60_000);
+        assertEquals(NOW, snap.generatedAtMs);
+        assertEquals(7L, snap.summary.get("messageCount"));
+
+        cache.get(NOW - 900_000, NOW, 5);
+        assertEquals(2, loads.size(), "topN is part of the key");
+    }
+
+    @Test
+    void liveWindow_servesStaleWhileOneRefreshRuns() {
+        AnalyticsSnapshotCache cache = cache(REFRESH);
+        cache.get(NOW - 900_000, NOW, 10);
+        loads.get(0).complete(summary(1));
+
+        clock.addAndGet(REFRESH + 1);
+        assertEquals(1L, cache.get(NOW - 900_000, NOW, 10).join().summary.get("messageCount"));
+        assertEquals(1L, cache.get(NOW - 900_000, NOW, 10).join().summary.get("messageCount"));
+        assertEquals(2, loads.size(), "one refresh, stale snapshot served meanwhile");
+
+        loads.get(1).complete(summary(2));
+        AnalyticsSnapshotCache.Snapshot fresh = cache.get(NOW - 900_000, NOW, 10).join();
+        assertEquals(2L, fresh.summary.get("messageCount"));
+        assertEquals(NOW + REFRESH + 1, fresh.generatedAtMs);
+    }
+
+    @Test
+    void settledWindow_isNotRecomputed() {
+        AnalyticsSnapshotCache cache = cache(REFRESH);
+        long end = NOW - 3_600_000;
+        cache.get(end - 900_000, end, 10);
+        loads.get(0).complete(summary(3));
+
+        clock.addAndGet(REFRESH * 10);
+        assertEquals(3L, cache.get(end - 900_000, end, 10).join().summary.get("messageCount"));
+        assertEquals(1, loads.size());
+    }
+
+    @Test
+    void degradedSettledWindow_recomputedOnNextRefresh() {
+        AnalyticsSnapshotCache cache = cache(REFRESH);
+        long end = NOW - 3_600_000;
+        cache.get(end - 900_000, end, 10);
+        Map<String, Object> degraded = new HashMap<>(summary(0));
+        degraded.put(AnalyticsService.DEGRADED_METRICS, new TreeSet<>(Set.of("messageCount")));
+        loads.get(0).complete(degraded);
+
+        AnalyticsSnapshotCache.Snapshot snap = cache.get(end - 900_000, end, 10).join();
+        assertTrue(snap.degraded);
+        assertTrue(snap.live, "degraded snapshot gets the short live TTL");
+
+        clock.addAndGet(REFRESH + 1);
+        assertEquals(0L, cache.get(end - 900_000, end, 10).join().summary.get("messageCount"));
+        assertEquals(2, loads.size(), "degraded snapshot reloaded, not pinned");
+        loads.get(1).complete(summary(3));
+
+        AnalyticsSnapshotCache.Snapshot fresh = cache.get(end - 900_000, end, 10).join();
+        assertEquals(3L, fresh.summary.get("messageCount"));
+        assertFalse(fresh.degraded);
+        clock.addAndGet(REFRESH * 10);
+        cache.get(end - 900_000, end, 10);
+        assertEquals(2, loads.size(), "complete settled snapshot no longer refreshed");
+    }
+
+    @Test
+    void disabled_loadsEveryRequest() {
+        AnalyticsSnapshotCache cache = cache(0);
+        cache.get(NOW - 900_000, NOW, 10);
+        cache.get(NOW - 900_000, NOW, 10);
+        assertEquals(2, loads.size());
+    }
+}
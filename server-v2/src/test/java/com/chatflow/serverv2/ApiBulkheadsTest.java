@@ -0,0 +1,59 @@
+package com.chatflow.serverv2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link ApiBulkheads}: route templates, fail-fast rejection when a
+ * route is full, and per-route stats.
+ */
+class ApiBulkheadsTest {
+
+    @Test
+    void template_groupsPathsByRoute() {
+        assertEquals(ApiBulkheads.ROOM_MESSAGES, ApiBulkheads.template("/api/query/rooms/r1/messages"));
+        assertEquals(ApiBulkheads.USER_MESSAGES, ApiBulkheads.template("/api/query/users/u1/messages"));
+        assertEquals(ApiBulkheads.USER_ROOMS,    ApiBulkheads.template("/api/query/users/u1/rooms"));
+        assertEquals("/api/metrics/report",      ApiBulkheads.template("/api/metrics/report"));
+        assertEquals(ApiBulkheads.OTHER,         ApiBulkheads.template("/api/nope"));
+    }
+
+    @Test
+    void fullRoute_rejectsWithoutAffectingOthers() {
+        ApiBulkheads bulkheads = new ApiBulkheads(2, 1);
+        ApiBulkheads.Route history = bulkheads.route("/api/query/rooms/r1/messages");
+        assertSame(history, bulkheads.route("/api/query/rooms/r2/messages"), "one bulkhead per route, not per room");
+
+        assertTrue(history.tryAcquire());
+        assertTrue(history.tryAcquire());
+        assertFalse(history.tryAcquire(), "history limit reached");
+        assertTrue(bulkheads.route("/api/metrics/report").tryAcquire(), "other routes unaffected");
+
+        history.release();
+        assertTrue(history.tryAcquire());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stats_reportInFlightRejectionsAndQueueTime() {
+        ApiBulkheads bulkheads = new ApiBulkheads(4, 1);
+        ApiBulkheads.Route summary = bulkheads.route("/api/analytics/summary");
+        assertTrue(summary.tryAcquire());
+        summary.started(4_000_000L);
+        assertFalse(summary.tryAcquire());
+
+        Map<String, Object> stats = (Map<String, Object>) bulkheads.stats().get("/api/analytics/summary");
+        assertEquals(1,   stats.get("limit"));
+        assertEquals(1,   stats.get("inFlight"));
+        assertEquals(1L,  stats.get("admitted"));
+        assertEquals(1L,  stats.get("rejected"));
+        assertEquals(4.0, stats.get("avgQueueMs"));
+        assertEquals(4.0, stats.get("maxQueueMs"));
+
+        summary.release();
+        assertEquals(0, ((Map<String, Object>) bulkheads.stats().get("/api/analytics/summary")).get("inFlight"));
+    }
+}
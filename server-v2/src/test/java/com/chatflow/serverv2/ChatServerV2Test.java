@@ -0,0 +1,78 @@
+package com.chatflow.serverv2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the h2c handler built by {@link ChatServerV2#createH2cHandler}:
+ * {@code Upgrade: h2c} requests with a body switch to HTTP/2 instead of
+ * being rejected by the upgrade handler's aggregator.
+ */
+class ChatServerV2Test {
+
+    /** curl's SETTINGS payload: max streams 100, window 2^30, no push. */
+    private static final String HTTP2_SETTINGS = "AAMAAABkAARAAAAAAAIAAAAA";
+
+    @Test
+    void h2cUpgrade_postWithBody_reachesStream() {
+        List<FullHttpRequest> received = new ArrayList<>();
+        ChannelInitializer<Channel> streams = new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Channel stream) {
+                stream.pipeline().addLast(
+                        new Http2StreamFrameToHttpObjectCodec(true),
+                        new HttpObjectAggregator(ChatServerV2.MAX_CONTENT_LENGTH),
+                        new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                received.add((FullHttpRequest) msg);
+                            }
+                        });
+            }
+        };
+        EmbeddedChannel ch = new EmbeddedChannel(ChatServerV2.createH2cHandler(streams));
+
+        String body = "{\"roomId\":\"1\",\"messageId\":\"m1\"}";
+        ch.writeInbound(Unpooled.copiedBuffer(
+                "POST /internal/broadcast HTTP/1.1\r\n"
+                        + "Host: localhost\r\n"
+                        + "Connection: Upgrade, HTTP2-Settings\r\n"
+                        + "Upgrade: h2c\r\n"
+                        + "HTTP2-Settings: " + HTTP2_SETTINGS + "\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + "Content-Length: " + body.length() + "\r\n"
+                        + "\r\n"
+                        + body,
+                CharsetUtil.US_ASCII));
+        ch.runPendingTasks();
+
+        ByteBuf first = ch.readOutbound();
+        String status = first.toString(CharsetUtil.US_ASCII);
+        first.release();
+        assertTrue(status.startsWith("HTTP/1.1 101"), "upgraded instead of 413: " + status);
+
+        assertEquals(1, received.size(), "upgrade request delivered on stream 1");
+        FullHttpRequest request = received.get(0);
+        assertEquals(HttpMethod.POST, request.method());
+        assertEquals("/internal/broadcast", request.uri());
+        assertEquals(body, request.content().toString(CharsetUtil.UTF_8));
+        request.release();
+        ch.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatflow.serverv2;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link HttpIdleTimeoutHandler}: idle connections are closed after
+ * the timeout, traffic in either direction keeps them open.
+ */
+class HttpIdleTimeoutHandlerTest {
+
+    private static final int TIMEOUT = HttpIdleTimeoutHandler.DEFAULT_TIMEOUT_SECONDS;
+
+    private static void advance(EmbeddedChannel ch, long seconds) {
+        ch.advanceTimeBy(seconds, TimeUnit.SECONDS);
+        ch.runScheduledPendingTasks();
+    }
+
+    @Test
+    void defaultTimeout_outlastsLoadBalancerIdleTimeout() {
+        assertTrue(TIMEOUT > 60, "ALB closes idle connections after 60s; the server must wait longer");
+    }
+
+    @Test
+    void idleConnection_closedAfterTimeout() {
+        EmbeddedChannel ch = new EmbeddedChannel(new HttpIdleTimeoutHandler(TIMEOUT));
+
+        advance(ch, TIMEOUT - 1);
+        assertTrue(ch.isOpen());
+        advance(ch, 2);
+        assertFalse(ch.isOpen());
+    }
+
+    @Test
+    void traffic_resetsTimeout() {
+        EmbeddedChannel ch = new EmbeddedChannel(new HttpIdleTimeoutHandler(TIMEOUT));
+
+        advance(ch, TIMEOUT - 10);
+        ch.writeInbound(Unpooled.copiedBuffer("GET /health HTTP/1.1\r\n\r\n", CharsetUtil.US_ASCII));
+        advance(ch, TIMEOUT - 10);
+        ch.writeOutbound(Unpooled.copiedBuffer("HTTP/1.1 200 OK\r\n\r\n", CharsetUtil.US_ASCII));
+        advance(ch, TIMEOUT - 10);
+        assertTrue(ch.isOpen());
+
+        advance(ch, 11);
+        assertFalse(ch.isOpen());
+        ch.finishAndReleaseAll();
+    }
+}
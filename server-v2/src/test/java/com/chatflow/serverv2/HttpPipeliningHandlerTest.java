@@ -0,0 +1,99 @@
+package com.chatflow.serverv2;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link HttpPipeliningHandler}: one request in flight per
+ * connection, the next released only after the previous response is written.
+ */
+class HttpPipeliningHandlerTest {
+
+    /** Collects the requests that reach the application; the test answers them. */
+    private static final class Recorder extends ChannelInboundHandlerAdapter {
+        final List<FullHttpRequest> received = new ArrayList<>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            received.add((FullHttpRequest) msg);
+        }
+    }
+
+    private static FullHttpRequest get(String uri) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static FullHttpResponse response(HttpResponseStatus status) {
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+    }
+
+    @Test
+    void pipelinedRequests_releasedOneAtATimeInOrder() {
+        Recorder app = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(new HttpPipeliningHandler(), app);
+
+        ch.writeInbound(get("/api/a"), get("/api/b"), get("/api/c"));
+        assertEquals(1, app.received.size());
+        assertEquals("/api/a", app.received.get(0).uri());
+
+        ch.writeOutbound(response(HttpResponseStatus.OK));
+        ch.runPendingTasks();
+        assertEquals(2, app.received.size());
+        assertEquals("/api/b", app.received.get(1).uri());
+
+        ch.writeOutbound(response(HttpResponseStatus.OK));
+        ch.runPendingTasks();
+        assertEquals(3, app.received.size());
+        assertEquals("/api/c", app.received.get(2).uri());
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void nextRequest_waitsForResponse() {
+        Recorder app = new Recorder();
+        HttpPipeliningHandler pipelining = new HttpPipeliningHandler();
+        EmbeddedChannel ch = new EmbeddedChannel(pipelining, app);
+
+        ch.writeInbound(get("/api/slow"), get("/api/fast"));
+        ch.runPendingTasks();
+        assertEquals(1, app.received.size());
+        assertEquals(1, pipelining.queuedCount());
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void switchingProtocols_removesHandler() {
+        EmbeddedChannel ch = new EmbeddedChannel(new HttpPipeliningHandler(), new Recorder());
+
+        ch.writeInbound(get("/chat?roomId=1"));
+        ch.writeOutbound(response(HttpResponseStatus.SWITCHING_PROTOCOLS));
+        assertNull(ch.pipeline().get(HttpPipeliningHandler.class));
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void tooManyPipelinedRequests_closesConnection() {
+        EmbeddedChannel ch = new EmbeddedChannel(new HttpPipeliningHandler(), new Recorder());
+
+        for (int i = 0; i <= HttpPipeliningHandler.MAX_QUEUED; i++) {
+            ch.writeInbound(get("/api/" + i));
+        }
+        assertTrue(ch.isOpen());
+        ch.writeInbound(get("/api/overflow"));
+        assertFalse(ch.isOpen());
+    }
+}
@@ -0,0 +1,74 @@
+package com.chatflow.serverv2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link JsonChunkStream}: producer writes become bounded chunks,
+ * reads never block, and a closed stream fails the producer.
+ */
+class JsonChunkStreamTest {
+
+    private static byte[] drain(JsonChunkStream stream) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ByteBuf chunk;
+        while ((chunk = stream.readChunk(ByteBufAllocator.DEFAULT)) != null) {
+            byte[] bytes = new byte[chunk.readableBytes()];
+            chunk.readBytes(bytes);
+            chunk.release();
+            body.write(bytes, 0, bytes.length);
+        }
+        return body.toByteArray();
+    }
+
+    @Test
+    void writes_splitIntoChunks_endAfterClose() throws IOException {
+        AtomicInteger resumed = new AtomicInteger();
+        JsonChunkStream stream = new JsonChunkStream(resumed::incrementAndGet);
+        OutputStream out = stream.outputStream();
+
+        byte[] payload = new byte[JsonChunkStream.CHUNK_BYTES * 2 + 10];
+        Arrays.fill(payload, (byte) 'x');
+        out.write(payload);
+        assertEquals(2, resumed.get(), "two full chunks handed over");
+        assertFalse(stream.isEndOfInput());
+
+        out.close();
+        assertEquals(4, resumed.get(), "tail chunk, then end of input");
+        assertArrayEquals(payload, drain(stream));
+        assertTrue(stream.isEndOfInput());
+        assertEquals(payload.length, stream.progress());
+    }
+
+    @Test
+    void emptyQueue_readReturnsNullWithoutEnding() throws IOException {
+        JsonChunkStream stream = new JsonChunkStream(() -> { });
+        stream.outputStream().write("{\"messages\":[".getBytes(StandardCharsets.UTF_8));
+        assertNull(stream.readChunk(ByteBufAllocator.DEFAULT), "partial chunk stays buffered");
+        assertFalse(stream.isEndOfInput());
+
+        stream.outputStream().flush();
+        assertEquals("{\"messages\":[", new String(drain(stream), StandardCharsets.UTF_8));
+        assertFalse(stream.isEndOfInput());
+    }
+
+    @Test
+    void aborted_producerWriteFails() {
+        JsonChunkStream stream = new JsonChunkStream(() -> { });
+        stream.abort();
+        assertTrue(stream.isEndOfInput());
+        assertThrows(IOException.class, () -> {
+            stream.outputStream().write(new byte[JsonChunkStream.CHUNK_BYTES + 1]);
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatflow.serverv2;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link MessageRow}: JSON output identical to the former
+ * per-message map, through both ObjectMapper and a streaming generator.
+ */
+class MessageRowTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static MessageRow row() {
+        return new MessageRow("m1", "r1", "u1", "alice", "hi \"there\"", "TEXT", 1_774_396_800_123L);
+    }
+
+    @Test
+    void objectMapper_matchesMapLayout() throws Exception {
+        Map<String, Object> legacy = new LinkedHashMap<>();
+        legacy.put("messageId",   "m1");
+        legacy.put("roomId",      "r1");
+        legacy.put("userId",      "u1");
+        legacy.put("username",    "alice");
+        legacy.put("message",     "hi \"there\"");
+        legacy.put("messageType", "TEXT");
+        legacy.put("eventTs",     1_774_396_800_123L);
+
+        assertEquals(MAPPER.writeValueAsString(List.of(legacy)), MAPPER.writeValueAsString(List.of(row())));
+    }
+
+    @Test
+    void writeJson_streamsOneObject() throws Exception {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = MAPPER.getFactory().createGenerator(out)) {
+            row().writeJson(gen);
+        }
+        assertEquals(MAPPER.writeValueAsString(row()), out.toString());
+    }
+
+    @Test
+    void sortKey_matchesTableSk() {
+        assertEquals("1774396800123#m1", row().sortKey());
+    }
+}
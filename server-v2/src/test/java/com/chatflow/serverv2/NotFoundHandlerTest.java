@@ -0,0 +1,88 @@
+package com.chatflow.serverv2;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link NotFoundHandler}: unclaimed requests are answered so the
+ * next pipelined request is released, WebSocket paths pass through.
+ */
+class NotFoundHandlerTest {
+
+    /** Stands in for the WebSocket handlers after {@link NotFoundHandler}. */
+    private static final class Recorder extends ChannelInboundHandlerAdapter {
+        final List<FullHttpRequest> received = new ArrayList<>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            received.add((FullHttpRequest) msg);
+        }
+    }
+
+    private static FullHttpRequest get(String uri) {
+        return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static HttpResponseStatus readStatus(EmbeddedChannel ch) {
+        FullHttpResponse response = ch.readOutbound();
+        assertNotNull(response, "expected a response");
+        HttpResponseStatus status = response.status();
+        response.release();
+        return status;
+    }
+
+    @Test
+    void unknownPath_answered_thenPipelinedHealthCheck() {
+        Recorder ws = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(
+                new HttpPipeliningHandler(),
+                new RoomIdExtractorHandler(),
+                new NotFoundHandler(ChatServerV2.WEBSOCKET_PATH),
+                ws);
+
+        ch.writeInbound(get("/"), get("/health"));
+        ch.runPendingTasks();
+
+        assertEquals(HttpResponseStatus.NOT_FOUND, readStatus(ch));
+        assertEquals(HttpResponseStatus.OK, readStatus(ch));
+        assertTrue(ws.received.isEmpty());
+        assertTrue(ch.isOpen());
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void webSocketPaths_passThrough() {
+        Recorder ws = new Recorder();
+        EmbeddedChannel ch = new EmbeddedChannel(new NotFoundHandler(ChatServerV2.WEBSOCKET_PATH), ws);
+
+        ch.writeInbound(get("/chat"), get("/chat/room-1"), get("/chat?roomId=1"), get("/chatty"));
+
+        assertEquals(3, ws.received.size());
+        assertEquals(HttpResponseStatus.NOT_FOUND, readStatus(ch), "/chatty is not the WebSocket path");
+        ws.received.forEach(FullHttpRequest::release);
+        ch.finishAndReleaseAll();
+    }
+
+    @Test
+    void withoutWebSocketPath_chatIsNotFound() {
+        EmbeddedChannel ch = new EmbeddedChannel(new NotFoundHandler(null));
+
+        ch.writeInbound(get("/chat?roomId=1"));
+
+        assertEquals(HttpResponseStatus.NOT_FOUND, readStatus(ch));
+        ch.finishAndReleaseAll();
+    }
+}
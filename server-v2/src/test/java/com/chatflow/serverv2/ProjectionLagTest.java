@@ -81,4 +81,12 @@ class ProjectionLagTest {
         assertFalse(ProjectionHealthService.computeConsistent(0L, 0L));
         assertFalse(ProjectionHealthService.computeConsistent(1L, 0L));
     }
+
+    @Test
+    void healthKey_clusterLayout_hashTagged() {
+        assertEquals("projection:lastProjectedMessageId",
+            ProjectionHealthService.healthKey("lastProjectedMessageId", false));
+        assertEquals("{projection}:lastProjectedMessageId",
+            ProjectionHealthService.healthKey("lastProjectedMessageId", true));
+    }
 }
@@ -2,13 +2,11 @@ package com.chatflow.serverv2;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.*;
-
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
- * Tests for QueryService cache helpers: cache key construction,
- * cacheability predicate, and defensive copy behaviour.
+ * Tests for QueryService cache helpers: cache key construction and the
+ * cacheability predicate.
  */
 class QueryServiceCacheTest {
 
@@ -60,45 +58,6 @@ class QueryServiceCacheTest {
         assertFalse(QueryService.isCacheable(futureEnd));
     }
 
-    // ── Defensive copy ──────────────────────────────────────────────────────
-
-    @Test
-    void immutableMessagesReturnsUnmodifiableList() {
-        List<Map<String, Object>> src = new ArrayList<>();
-        Map<String, Object> msg = new LinkedHashMap<>();
-        msg.put("messageId", "m1");
-        msg.put("eventTs", 12345L);
-        src.add(msg);
-
-        List<Map<String, Object>> frozen = QueryService.immutableMessages(src);
-        assertThrows(UnsupportedOperationException.class, () -> frozen.add(Map.of()));
-        assertThrows(UnsupportedOperationException.class, () -> frozen.get(0).put("x", "y"));
-    }
-
-    @Test
-    void copyMessagesReturnsMutableIndependentCopy() {
-        Map<String, Object> orig = new LinkedHashMap<>();
-        orig.put("messageId", "m1");
-        orig.put("eventTs", 100L);
-        List<Map<String, Object>> src = List.of(Collections.unmodifiableMap(orig));
-
-        List<Map<String, Object>> copy = QueryService.copyMessages(src);
-        // Mutation of copy must not affect source
-        copy.get(0).put("messageId", "MUTATED");
-        assertEquals("m1", orig.get("messageId"));
-    }
-
-    @Test
-    void copyMessagesPreservesKeyOrder() {
-        Map<String, Object> orig = new LinkedHashMap<>();
-        orig.put("messageId", "m1");
-        orig.put("roomId", "r1");
-        orig.put("eventTs", 100L);
-        List<Map<String, Object>> copy = QueryService.copyMessages(List.of(orig));
-        List<String> keys = new ArrayList<>(copy.get(0).keySet());
-        assertEquals(List.of("messageId", "roomId", "eventTs"), keys);
-    }
-
     // ── Cache integration (no DynamoDB) ──────────────────────────────────────
 
     @Test
@@ -0,0 +1,386 @@
+package com.chatflow.serverv2;
+
+import com.chatflow.protocol.ChatMessage;
+import com.chatflow.protocol.QueueChatMessage;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the parallel day fan-out and k-way merge behind
+ * {@link QueryService#getRoomMessages}, its hourly segment cache, and the
+ * paged and streaming variants.
+ */
+class QueryServiceFanoutTest {
+
+    private static final long DAY = 86_400_000L;
+    // 2026-03-25T00:00:00Z
+    private static final long T0  = 1_774_396_800_000L;
+
+    /** In-memory room_messages table: items per pk, sorted by sk, sk BETWEEN applied, paged by limit. */
+    private static final class FakeDynamo implements DynamoDbClient {
+        final Map<String, List<Map<String, AttributeValue>>> partitions = new HashMap<>();
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak   = new AtomicInteger();
+        long latencyMs;
+
+        void add(String pk, long eventTs, String messageId) {
+            Map<String, AttributeValue> item = new HashMap<>();
+            item.put("pk",        AttributeValue.fromS(pk));
+            item.put("sk",        AttributeValue.fromS(eventTs + "#" + messageId));
+            item.put("messageId", AttributeValue.fromS(messageId));
+            item.put("eventTsMs", AttributeValue.fromN(Long.toString(eventTs)));
+            List<Map<String, AttributeValue>> items = partitions.computeIfAbsent(pk, k -> new ArrayList<>());
+            items.add(item);
+            items.sort(Comparator.comparing(m -> m.get("sk").s()));
+        }
+
+        @Override
+        public QueryResponse query(QueryRequest request) {
+            int now = active.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                if (latencyMs > 0) Thread.sleep(latencyMs);
+                String pk = request.expressionAttributeValues().get(":pk").s();
+                calls.computeIfAbsent(pk, k -> new AtomicInteger()).incrementAndGet();
+                List<Map<String, AttributeValue>> items = inRange(partitions.getOrDefault(pk, List.of()),
+                    request.expressionAttributeValues().get(":startSk").s(),
+                    request.expressionAttributeValues().get(":endSk").s());
+                int from = 0;
+                if (request.exclusiveStartKey() != null && !request.exclusiveStartKey().isEmpty()) {
+                    String after = request.exclusiveStartKey().get("sk").s();
+                    while (from < items.size() && items.get(from).get("sk").s().compareTo(after) <= 0) from++;
+                }
+                int to = Math.min(items.size(), from + request.limit());
+                QueryResponse.Builder resp = QueryResponse.builder().items(items.subList(from, to));
+                if (to < items.size()) {
+                    resp.lastEvaluatedKey(Map.of("pk", AttributeValue.fromS(pk), "sk", items.get(to - 1).get("sk")));
+                }
+                return resp.build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        private static List<Map<String, AttributeValue>> inRange(
+                List<Map<String, AttributeValue>> items, String startSk, String endSk) {
+            List<Map<String, AttributeValue>> out = new ArrayList<>();
+            for (Map<String, AttributeValue> item : items) {
+                String sk = item.get("sk").s();
+                if (sk.compareTo(startSk) >= 0 && sk.compareTo(endSk) <= 0) out.add(item);
+            }
+            return out;
+        }
+
+        int calls(String pk) {
+            AtomicInteger n = calls.get(pk);
+            return n != null ? n.get() : 0;
+        }
+
+        @Override public String serviceName() { return "dynamodb"; }
+        @Override public void close() { }
+    }
+
+    private static QueryService service(FakeDynamo dynamo, int fanout) {
+        return new QueryService(dynamo, "room_messages", "user_messages", "user_rooms", fanout);
+    }
+
+    @Test
+    void multiDayRange_mergedByEventTs() {
+        FakeDynamo dynamo = new FakeDynamo();
+        dynamo.add("r1#20260325", T0 + 10, "a");
+        dynamo.add("r1#20260326", T0 + DAY + 1, "b");
+        dynamo.add("r1#20260326", T0 + DAY + 9, "c");
+        dynamo.add("r1#20260327", T0 + 2 * DAY + 3, "d");
+
+        List<Object> ids = new ArrayList<>();
+        service(dynamo, 4).streamRoomMessages("r1", T0, T0 + 3 * DAY - 1, m -> ids.add(m.messageId));
+
+        assertEquals(List.of("a", "b", "c", "d"), ids);
+    }
+
+    @Test
+    void daysQueriedConcurrently_boundedByFanout() {
+        FakeDynamo dynamo = new FakeDynamo();
+        dynamo.latencyMs = 30;
+        for (int d = 0; d < 12; d++) dynamo.add("r1#202603" + (10 + d), T0 - (15 - d) * DAY, "m" + d);
+
+        List<MessageRow> out = service(dynamo, 3).getRoomMessages("r1", T0 - 15 * DAY, T0 - 3 * DAY);
+
+        assertEquals(12, out.size());
+        assertTrue(dynamo.peak.get() > 1, "day queries overlapped");
+        assertTrue(dynamo.peak.get() <= 3, "at most 3 in flight, saw " + dynamo.peak.get());
+    }
+
+    @Test
+    void mergeStopsAtMaxResults_laterPagesNotRead() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int i = 0; i < QueryService.MAX_RESULTS + 1_000; i++) {
+            dynamo.add("r1#20260325", T0 + i, String.format("m%05d", i));
+        }
+        for (int i = 0; i < 10; i++) {
+            dynamo.add("r1#20260326", T0 + DAY + i, "next" + i);
+        }
+
+        List<MessageRow> out = new ArrayList<>();
+        service(dynamo, 4).streamRoomMessages("r1", T0, T0 + 2 * DAY - 1, out::add);
+
+        assertEquals(QueryService.MAX_RESULTS, out.size());
+        assertEquals(T0 + QueryService.MAX_RESULTS - 1, out.get(out.size() - 1).eventTs);
+        // first page of 2 500, then one refill sized to what the merge still needed
+        assertEquals(2, dynamo.calls("r1#20260325"));
+        assertEquals(1, dynamo.calls("r1#20260326"));
+    }
+
+    @Test
+    void firstPageLimit_sharesMaxResultsWithFloor() {
+        int max = QueryService.MAX_RESULTS;
+        assertEquals(max,   QueryService.firstPageLimit(1, max));
+        assertEquals(2_500, QueryService.firstPageLimit(2, max));
+        assertEquals(500,   QueryService.firstPageLimit(30, max));
+        assertEquals(50,    QueryService.firstPageLimit(30, 50));
+    }
+
+    @Test
+    void mergeDays_equalTimestampsOrderedByMessageId() {
+        List<QueryService.DayPartition> days = List.of(partition("y", 5L, 7L), partition("x", 5L, 6L));
+        List<MessageRow> out = QueryService.mergeDays(days, 3);
+        assertEquals(List.of("x5", "y5", "x6"), List.of(
+            out.get(0).messageId, out.get(1).messageId, out.get(2).messageId));
+    }
+
+    @Test
+    void closedSegments_sharedAcrossOverlappingWindows() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int i = 0; i < 12; i++) dynamo.add("r1#20260325", T0 + i * 10 * 60_000L, "m" + i);
+        QueryService svc = service(dynamo, 2);
+
+        assertEquals(12, svc.getRoomMessages("r1", T0, T0 + 2 * QueryService.SEGMENT_MS - 1).size());
+        assertEquals(1, dynamo.calls("r1#20260325"), "both hours loaded by one day query");
+
+        List<MessageRow> shifted = svc.getRoomMessages("r1", T0 + 30 * 60_000L, T0 + 90 * 60_000L);
+        assertEquals(List.of("m3", "m4", "m5", "m6", "m7", "m8", "m9"), ids(shifted));
+        assertEquals(1, dynamo.calls("r1#20260325"), "served from cached segments");
+    }
+
+    @Test
+    void oversizedHour_readOnceThenQueriedDirectly() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int i = 0; i < QueryService.SEGMENT_MAX_ROWS + 1_000; i++) {
+            dynamo.add("r1#20260325", T0 + i * 500L, String.format("m%05d", i));
+        }
+        dynamo.add("r1#20260325", T0 + QueryService.SEGMENT_MS + 5, "next-hour");
+        QueryService svc = service(dynamo, 2);
+        long from = T0 + 10 * 60_000L;
+        long to   = T0 + 15 * 60_000L - 1;
+
+        List<MessageRow> first = svc.getRoomMessages("r1", from, to);
+        assertEquals(600, first.size());
+        assertEquals("m01200", first.get(0).messageId);
+        // a first page of 5 000, then one more item shows the hour is over the limit
+        assertEquals(2, dynamo.calls("r1#20260325"));
+
+        assertEquals(600, svc.getRoomMessages("r1", from, to).size());
+        assertEquals(3, dynamo.calls("r1#20260325"), "oversized hour read directly, not re-loaded");
+        assertEquals(600, svc.getRoomMessages("r1", from, to).size());
+        assertEquals(4, dynamo.calls("r1#20260325"));
+
+        assertEquals(List.of("next-hour"),
+            ids(svc.getRoomMessages("r1", T0 + QueryService.SEGMENT_MS, T0 + 2 * QueryService.SEGMENT_MS - 1)));
+        assertEquals(5, dynamo.calls("r1#20260325"), "other hours of the day still cached per hour");
+        svc.getRoomMessages("r1", T0 + QueryService.SEGMENT_MS, T0 + 2 * QueryService.SEGMENT_MS - 1);
+        assertEquals(5, dynamo.calls("r1#20260325"));
+    }
+
+    @Test
+    void oversizedHour_windowLateInHour_skipsToWindow() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int i = 0; i < QueryService.SEGMENT_MAX_ROWS + 1_000; i++) {
+            dynamo.add("r1#20260325", T0 + i * 500L, String.format("m%05d", i));
+        }
+        QueryService svc = service(dynamo, 2);
+        long from = T0 + 45 * 60_000L;
+        long to   = T0 + 46 * 60_000L - 1;
+
+        List<MessageRow> rows = svc.getRoomMessages("r1", from, to);
+        assertEquals(120, rows.size());
+        assertEquals("m05400", rows.get(0).messageId);
+        // 5 000 + 1 items find the limit, then one query starting at the window
+        assertEquals(3, dynamo.calls("r1#20260325"));
+
+        assertEquals(120, svc.getRoomMessages("r1", from, to).size());
+        assertEquals(4, dynamo.calls("r1#20260325"));
+    }
+
+    @Test
+    void cacheHit_returnsCachedRowsWithoutCopying() {
+        FakeDynamo dynamo = new FakeDynamo();
+        dynamo.add("r1#20260325", T0 + 5, "a");
+        dynamo.add("r1#20260325", T0 + 6, "b");
+        QueryService svc = service(dynamo, 2);
+
+        List<MessageRow> first  = svc.getRoomMessages("r1", T0, T0 + 1_000);
+        List<MessageRow> second = svc.getRoomMessages("r1", T0 + 6, T0 + 2_000);
+        assertEquals(List.of("b"), ids(second));
+        assertSame(first.get(1), second.get(0));
+        second.clear();   // callers own the list, not the cached segment
+        assertEquals(2, svc.getRoomMessages("r1", T0, T0 + 1_000).size());
+    }
+
+    @Test
+    void recentRing_answersCoveredTail_dynamoOnlyForOlderPart() {
+        long now = System.currentTimeMillis();
+        RecentMessageRing ring = new RecentMessageRing(100, 1 << 20, () -> now - 60_000);
+        long covered = ring.coveredFrom("r1");
+        ring.record(new QueueChatMessage("live", "r1", "u1", "alice", "hi",
+            Long.toString(covered + 5), ChatMessage.MessageType.TEXT, 1L, "s1", "ip"));
+        FakeDynamo dynamo = new FakeDynamo();
+        long old = covered - 10_000;
+        String oldPk = "r1#" + QueryService.expandDayBuckets(old, old).get(0);
+        dynamo.add(oldPk, old, "old");
+        QueryService svc = new QueryService(dynamo, "room_messages", "user_messages", "user_rooms", 2, ring);
+
+        assertEquals(List.of("live"), ids(svc.getRoomMessages("r1", covered, now)));
+        assertEquals(0, totalCalls(dynamo), "covered window served from the ring");
+
+        assertEquals(List.of("old", "live"), ids(svc.getRoomMessages("r1", covered - 30_000, now)));
+        assertTrue(dynamo.calls(oldPk) > 0);
+    }
+
+    @Test
+    void recentWindow_onlyOpenTailQueriedAgain() {
+        FakeDynamo dynamo = new FakeDynamo();
+        long now = System.currentTimeMillis();
+        long old = now - 90 * 60_000L;
+        long recent = now - 1_000L;
+        dynamo.add("r1#" + QueryService.expandDayBuckets(old, old).get(0), old, "old");
+        dynamo.add("r1#" + QueryService.expandDayBuckets(recent, recent).get(0), recent, "recent");
+        QueryService svc = service(dynamo, 2);
+
+        assertEquals(List.of("old", "recent"), ids(svc.getRoomMessages("r1", now - 2 * 60 * 60_000L, now)));
+        int first = totalCalls(dynamo);
+        assertEquals(List.of("old", "recent"), ids(svc.getRoomMessages("r1", now - 2 * 60 * 60_000L, now)));
+        assertTrue(totalCalls(dynamo) - first < first, "closed hours not re-read");
+    }
+
+    @Test
+    void estimateBytes_growsWithContent() {
+        MessageRow small = new MessageRow("a", "r1", "u1", "user", "hi", "TEXT", 1L);
+        MessageRow large = new MessageRow("a", "r1", "u1", "user", "x".repeat(1_000), "TEXT", 1L);
+        assertTrue(QueryService.estimateBytes(List.of(small)) > QueryService.estimateBytes(List.of()));
+        assertTrue(QueryService.estimateBytes(List.of(large)) > QueryService.estimateBytes(List.of(small)) + 900);
+    }
+
+    private static List<Object> ids(List<MessageRow> messages) {
+        List<Object> ids = new ArrayList<>();
+        for (MessageRow m : messages) ids.add(m.messageId);
+        return ids;
+    }
+
+    private static int totalCalls(FakeDynamo dynamo) {
+        int n = 0;
+        for (AtomicInteger c : dynamo.calls.values()) n += c.get();
+        return n;
+    }
+
+    @Test
+    void pages_coverRangeOnceInOrder() {
+        FakeDynamo dynamo = new FakeDynamo();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            dynamo.add("r1#20260325", T0 + i * 1_000, "a" + i);
+            dynamo.add("r1#20260326", T0 + DAY + i * 1_000, "b" + i);
+            dynamo.add("r1#20260327", T0 + 2 * DAY + i * 1_000, "c" + i);
+        }
+        for (int i = 0; i < 7; i++) expected.add("a" + i);
+        for (int i = 0; i < 7; i++) expected.add("b" + i);
+
+        QueryService svc = service(dynamo, 2);
+        List<Object> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            QueryService.MessagePage page = svc.getRoomMessagesPage("r1", T0, T0 + 2 * DAY - 1, cursor, 4);
+            assertTrue(page.messages.size() <= 4);
+            for (MessageRow m : page.messages) ids.add(m.messageId);
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        assertEquals(expected, ids);
+        assertEquals(4, pages, "14 messages in pages of 4");
+        // pages 1-2 read day 25; page 2 moves on to day 26, pages 3-4 resume there
+        assertEquals(2, dynamo.calls("r1#20260325"), "finished day not queried again");
+        assertEquals(3, dynamo.calls("r1#20260326"));
+        assertEquals(0, dynamo.calls("r1#20260327"), "day outside the window");
+    }
+
+    @Test
+    void page_resumesFromCursorDay_laterDaysOnlyUntilFull() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int d = 0; d < 30; d++) {
+            String pk = "r1#" + QueryService.expandDayBuckets(T0 + d * DAY, T0 + d * DAY).get(0);
+            for (int i = 0; i < 3; i++) dynamo.add(pk, T0 + d * DAY + i, "d" + d + "m" + i);
+        }
+        QueryService svc = service(dynamo, 4);
+        String cursor = QueryService.encodeCursor("20260410", (T0 + 16 * DAY + 1) + "#d16m1");
+
+        QueryService.MessagePage page = svc.getRoomMessagesPage("r1", T0, T0 + 30 * DAY - 1, cursor, 4);
+
+        assertEquals(List.of("d16m2", "d17m0", "d17m1", "d17m2"), ids(page.messages));
+        assertEquals(QueryService.encodeCursor("20260411", (T0 + 17 * DAY + 2) + "#d17m2"), page.nextCursor);
+        assertEquals(2, totalCalls(dynamo), "only the cursor day and the next day are queried");
+    }
+
+    @Test
+    void stream_sinkCanStopEarly() {
+        FakeDynamo dynamo = new FakeDynamo();
+        for (int i = 0; i < 20; i++) dynamo.add("r1#20260325", T0 + i, String.format("m%02d", i));
+
+        List<Object> seen = new ArrayList<>();
+        int fed = service(dynamo, 2).streamRoomMessages("r1", T0, T0 + DAY - 1, m -> {
+            seen.add(m.messageId);
+            return seen.size() < 3;
+        });
+
+        assertEquals(3, fed);
+        assertEquals(List.of("m00", "m01", "m02"), seen);
+    }
+
+    @Test
+    void cursor_roundTripAndRejectsGarbage() {
+        String sk = (T0 + 42) + "#msg-1";
+        QueryService.PageCursor cursor = QueryService.decodeCursor(QueryService.encodeCursor("20260325", sk));
+        assertEquals("20260325", cursor.day);
+        assertEquals(sk, cursor.sk);
+        assertThrows(IllegalArgumentException.class, () -> QueryService.decodeCursor("not base64!"));
+        assertThrows(IllegalArgumentException.class,
+            () -> QueryService.decodeCursor(QueryService.encodeCursor("20260325", "no-hash")));
+        assertThrows(IllegalArgumentException.class,
+            () -> QueryService.decodeCursor(QueryService.encodeCursor("2026-03-25", sk)));
+    }
+
+    private static QueryService.DayPartition partition(String name, Long... ts) {
+        ArrayDeque<Long> items = new ArrayDeque<>(List.of(ts));
+        return new QueryService.DayPartition() {
+            @Override public boolean hasNext(int wanted) { return !items.isEmpty(); }
+            @Override public MessageRow peek() { return message(items.peekFirst()); }
+            @Override public MessageRow next() { return message(items.pollFirst()); }
+            private MessageRow message(long t) {
+                return new MessageRow(name + t, "r1", "u1", "user", "hi", "TEXT", t);
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.chatflow.serverv2;
+
+import com.chatflow.protocol.ChatMessage;
+import com.chatflow.protocol.QueueChatMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link RecentMessageRing}: coverage tracking, ring overwrite and
+ * cold-room eviction under the byte budget.
+ */
+class RecentMessageRingTest {
+
+    private static final long START = 1_774_396_800_000L;
+
+    private static QueueChatMessage msg(String roomId, String messageId, long eventTs) {
+        return new QueueChatMessage(messageId, roomId, "u1", "alice", "hi", Long.toString(eventTs),
+            ChatMessage.MessageType.TEXT, 1L, "s1", "127.0.0.1");
+    }
+
+    private static List<String> ids(List<MessageRow> rows) {
+        List<String> ids = new ArrayList<>();
+        for (MessageRow m : rows) ids.add(m.messageId);
+        return ids;
+    }
+
+    @Test
+    void coverage_startsAfterServerStart() {
+        RecentMessageRing ring = new RecentMessageRing(10, 1 << 20, () -> START);
+        long covered = START + RecentMessageRing.COVERAGE_SKEW_MS;
+
+        assertEquals(covered, ring.coveredFrom("quiet-room"));
+        assertNull(ring.recent("quiet-room", START, START + 60_000));
+        assertEquals(List.of(), ring.recent("quiet-room", covered, covered + 60_000));
+    }
+
+    @Test
+    void recent_filtersAndSortsByEventTs() {
+        RecentMessageRing ring = new RecentMessageRing(10, 1 << 20, () -> START);
+        long t = START + 10_000;
+        ring.record(msg("r1", "b", t + 2));
+        ring.record(msg("r1", "a", t + 1));
+        ring.record(msg("r1", "c", t + 3));
+        ring.record(msg("r2", "x", t + 1));
+
+        assertEquals(List.of("a", "b", "c"), ids(ring.recent("r1", t, t + 10)));
+        assertEquals(List.of("b"), ids(ring.recent("r1", t + 2, t + 2)));
+        assertEquals("TEXT", ring.recent("r2", t, t + 10).get(0).messageType);
+    }
+
+    @Test
+    void fullRing_overwritesOldestAndMovesCoverage() {
+        RecentMessageRing ring = new RecentMessageRing(3, 1 << 20, () -> START);
+        long t = START + 10_000;
+        for (int i = 0; i < 5; i++) ring.record(msg("r1", "m" + i, t + i));
+
+        assertEquals(t + 2, ring.coveredFrom("r1"), "m0 and m1 dropped");
+        assertNull(ring.recent("r1", t, t + 10));
+        assertEquals(List.of("m2", "m3", "m4"), ids(ring.recent("r1", t + 2, t + 10)));
+    }
+
+    @Test
+    void overBudget_evictsLeastRecentlyUsedRoom() {
+        AtomicLong now = new AtomicLong(START);
+        RecentMessageRing ring = new RecentMessageRing(100, 2_500, now::get);
+        long t = START + 10_000;
+        ring.record(msg("cold", "c0", t));
+        now.addAndGet(1_000);
+        ring.record(msg("idle", "i0", t));
+        ring.record(msg("idle", "i1", t + 1));
+        now.addAndGet(1_000);
+        ring.recent("cold", t, t + 10);   // a read counts as use
+        now.addAndGet(1_000);
+        ring.record(msg("hot", "h0", t));
+
+        assertTrue(ring.totalBytes() <= 2_500);
+        assertEquals(List.of("c0"), ids(ring.recent("cold", t, t + 10)));
+        assertEquals(List.of("h0"), ids(ring.recent("hot", t, t + 10)));
+        assertEquals(t + 2, ring.coveredFrom("idle"), "cleared: coverage restarts after the newest dropped message");
+        assertNull(ring.recent("idle", t, t + 10));
+    }
+}